@@ -19,6 +19,7 @@ import org.qortal.data.chat.ActiveChats;
 import org.qortal.data.chat.ChatMessage;
 import org.qortal.data.transaction.ChatTransactionData;
 import org.qortal.data.transaction.TransactionData;
+import org.qortal.repository.ChatRepositoryManager;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
 import org.qortal.repository.RepositoryManager;
@@ -27,6 +28,7 @@ import org.qortal.transaction.Transaction;
 import org.qortal.transaction.Transaction.TransactionType;
 import org.qortal.transaction.Transaction.ValidationResult;
 import org.qortal.transform.TransformationException;
+import org.qortal.transform.Transformer;
 import org.qortal.transform.transaction.ChatTransactionTransformer;
 import org.qortal.transform.transaction.TransactionTransformer;
 import org.qortal.utils.Base58;
@@ -50,7 +52,9 @@ public class ChatResource {
 	@Path("/messages")
 	@Operation(
 		summary = "Find chat messages",
-		description = "Returns CHAT messages that match criteria. Must provide EITHER 'txGroupId' OR two 'involving' addresses.",
+		description = "Returns CHAT messages that match criteria. Must provide EITHER 'txGroupId' OR two 'involving' addresses.<br>"
+				+ "For paging through long conversations, pass signature of last received message as 'beforesignature' "
+				+ "(or 'aftersignature') instead of using 'offset'.",
 		responses = {
 			@ApiResponse(
 				description = "CHAT messages",
@@ -64,8 +68,9 @@ public class ChatResource {
 			)
 		}
 	)
-	@ApiErrors({ApiError.INVALID_CRITERIA, ApiError.INVALID_ADDRESS, ApiError.REPOSITORY_ISSUE})
+	@ApiErrors({ApiError.INVALID_CRITERIA, ApiError.INVALID_ADDRESS, ApiError.INVALID_SIGNATURE, ApiError.REPOSITORY_ISSUE})
 	public List<ChatMessage> searchChat(@QueryParam("before") Long before, @QueryParam("after") Long after,
+			@QueryParam("beforesignature") String beforeSignature58, @QueryParam("aftersignature") String afterSignature58,
 			@QueryParam("txGroupId") Integer txGroupId,
 			@QueryParam("involving") List<String> involvingAddresses,
 			@QueryParam("reference") String reference,
@@ -91,6 +96,13 @@ public class ChatResource {
 		if (after != null && after < 1500000000000L)
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
 
+		byte[] beforeSignature = decodeCursorSignature(beforeSignature58);
+		byte[] afterSignature = decodeCursorSignature(afterSignature58);
+
+		// Cursors are an alternative to offset
+		if ((beforeSignature != null || afterSignature != null) && offset != null)
+			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
+
 		byte[] referenceBytes = null;
 		if (reference != null)
 			referenceBytes = Base58.decode(reference);
@@ -99,10 +111,12 @@ public class ChatResource {
 		if (chatReference != null)
 			chatReferenceBytes = Base58.decode(chatReference);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			return repository.getChatRepository().getMessagesMatchingCriteria(
+		try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+			return chatRepository.getChatRepository().getMessagesMatchingCriteria(
 					before,
 					after,
+					beforeSignature,
+					afterSignature,
 					txGroupId,
 					referenceBytes,
 					chatReferenceBytes,
@@ -133,8 +147,9 @@ public class ChatResource {
 					)
 			}
 	)
-	@ApiErrors({ApiError.INVALID_CRITERIA, ApiError.INVALID_ADDRESS, ApiError.REPOSITORY_ISSUE})
+	@ApiErrors({ApiError.INVALID_CRITERIA, ApiError.INVALID_ADDRESS, ApiError.INVALID_SIGNATURE, ApiError.REPOSITORY_ISSUE})
 	public int countChatMessages(@QueryParam("before") Long before, @QueryParam("after") Long after,
+										@QueryParam("beforesignature") String beforeSignature58, @QueryParam("aftersignature") String afterSignature58,
 										@QueryParam("txGroupId") Integer txGroupId,
 										@QueryParam("involving") List<String> involvingAddresses,
 										@QueryParam("reference") String reference,
@@ -160,6 +175,13 @@ public class ChatResource {
 		if (after != null && after < 1500000000000L)
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
 
+		byte[] beforeSignature = decodeCursorSignature(beforeSignature58);
+		byte[] afterSignature = decodeCursorSignature(afterSignature58);
+
+		// Cursors are an alternative to offset
+		if ((beforeSignature != null || afterSignature != null) && offset != null)
+			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_CRITERIA);
+
 		byte[] referenceBytes = null;
 		if (reference != null)
 			referenceBytes = Base58.decode(reference);
@@ -168,10 +190,12 @@ public class ChatResource {
 		if (chatReference != null)
 			chatReferenceBytes = Base58.decode(chatReference);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			return repository.getChatRepository().getMessagesMatchingCriteria(
+		try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+			return chatRepository.getChatRepository().getMessagesMatchingCriteria(
 					before,
 					after,
+					beforeSignature,
+					afterSignature,
 					txGroupId,
 					referenceBytes,
 					chatReferenceBytes,
@@ -204,14 +228,14 @@ public class ChatResource {
 	public ChatMessage getMessageBySignature(@PathParam("signature") String signature58, @QueryParam("encoding") Encoding encoding) {
 		byte[] signature = Base58.decode(signature58);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
+		try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
 
-			ChatTransactionData chatTransactionData = (ChatTransactionData) repository.getTransactionRepository().fromSignature(signature);
-			if (chatTransactionData == null) {
+			ChatMessage chatMessage = chatRepository.getChatRepository().getMessageBySignature(signature, encoding);
+			if (chatMessage == null) {
 				throw ApiExceptionFactory.INSTANCE.createCustomException(request, ApiError.INVALID_CRITERIA, "Message not found");
 			}
 
-			return repository.getChatRepository().toChatMessage(chatTransactionData, encoding);
+			return chatMessage;
 		} catch (DataException e) {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
 		}
@@ -238,8 +262,8 @@ public class ChatResource {
 		if (address == null || !Crypto.isValidAddress(address))
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_ADDRESS);
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			return repository.getChatRepository().getActiveChats(address, encoding);
+		try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+			return chatRepository.getChatRepository().getActiveChats(address, encoding);
 		} catch (DataException e) {
 			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.REPOSITORY_ISSUE, e);
 		}
@@ -361,4 +385,19 @@ public class ChatResource {
 		}
 	}
 
-}
\ No newline at end of file
+	private byte[] decodeCursorSignature(String signature58) {
+		if (signature58 == null)
+			return null;
+
+		try {
+			byte[] signature = Base58.decode(signature58);
+			if (signature == null || signature.length != Transformer.SIGNATURE_LENGTH)
+				throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_SIGNATURE);
+
+			return signature;
+		} catch (NumberFormatException e) {
+			throw ApiExceptionFactory.INSTANCE.createException(request, ApiError.INVALID_SIGNATURE, e);
+		}
+	}
+
+}
@@ -21,6 +21,7 @@ import org.qortal.controller.Synchronizer;
 import org.qortal.controller.Synchronizer.SynchronizationResult;
 import org.qortal.data.block.BlockSummaryData;
 import org.qortal.data.network.PeerData;
+import org.qortal.network.MessageLanes;
 import org.qortal.network.Network;
 import org.qortal.network.Peer;
 import org.qortal.network.PeerAddress;
@@ -156,6 +157,31 @@ public class PeersResource {
 		return Network.getInstance().getStatsSnapshot();
 	}
 
+	@GET
+	@Path("/lanestats")
+	@Operation(
+		summary = "Fetch statistics for each lane of network message processing",
+		description = "Includes thread and queue usage, and number of messages discarded due to lane saturation",
+		responses = {
+			@ApiResponse(
+				content = @Content(
+					mediaType = MediaType.APPLICATION_JSON,
+					array = @ArraySchema(
+						schema = @Schema(
+							implementation = MessageLanes.LaneStats.class
+						)
+					)
+				)
+			)
+		}
+	)
+	@SecurityRequirement(name = "apiKey")
+	public List<MessageLanes.LaneStats> getLaneStats(@HeaderParam(Security.API_KEY_HEADER) String apiKey) {
+		Security.checkApiCallAllowed(request);
+
+		return Network.getInstance().getMessageLaneStats();
+	}
+
 	@POST
 	@Operation(
 		summary = "Add new peer address",
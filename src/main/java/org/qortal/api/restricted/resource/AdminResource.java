@@ -35,9 +35,13 @@ import org.qortal.data.account.RewardShareData;
 import org.qortal.network.Network;
 import org.qortal.network.Peer;
 import org.qortal.network.PeerAddress;
+import org.qortal.repository.ChatRepositoryManager;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
+import org.qortal.repository.RepositoryFactory;
 import org.qortal.repository.RepositoryManager;
+import org.qortal.repository.hsqldb.HSQLDBPoolMetrics;
+import org.qortal.repository.hsqldb.HSQLDBRepositoryFactory;
 import org.qortal.settings.Settings;
 import org.qortal.utils.Base58;
 import org.qortal.utils.NTP;
@@ -51,6 +55,7 @@ import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -775,6 +780,49 @@ public class AdminResource {
 		}
 	}
 
+	@GET
+	@Path("/repository/pool")
+	@Operation(
+		summary = "Fetch repository connection pool metrics",
+		description = "Includes connection acquire latency histogram, connections in use, hold times by thread (or call-site), "
+				+ "statement cache stats, and stack traces of threads holding a connection for at least longHoldMillis",
+		responses = {
+			@ApiResponse(
+				content = @Content(
+					mediaType = MediaType.APPLICATION_JSON,
+					array = @ArraySchema(
+						schema = @Schema(
+							implementation = HSQLDBPoolMetrics.PoolStats.class
+						)
+					)
+				)
+			)
+		}
+	)
+	@SecurityRequirement(name = "apiKey")
+	public List<HSQLDBPoolMetrics.PoolStats> getRepositoryPoolStats(@HeaderParam(Security.API_KEY_HEADER) String apiKey,
+			@QueryParam("longHoldMillis") @DefaultValue("5000") long longHoldMillis) {
+		Security.checkApiCallAllowed(request);
+
+		List<HSQLDBPoolMetrics.PoolStats> poolStatsList = new ArrayList<>();
+
+		RepositoryFactory repositoryFactory = RepositoryManager.getRepositoryFactory();
+		if (repositoryFactory instanceof HSQLDBRepositoryFactory) {
+			HSQLDBPoolMetrics.PoolStats poolStats = ((HSQLDBRepositoryFactory) repositoryFactory).getPoolStats(longHoldMillis);
+			poolStats.repository = "main";
+			poolStatsList.add(poolStats);
+		}
+
+		RepositoryFactory chatRepositoryFactory = ChatRepositoryManager.getRepositoryFactory();
+		if (chatRepositoryFactory instanceof HSQLDBRepositoryFactory) {
+			HSQLDBPoolMetrics.PoolStats poolStats = ((HSQLDBRepositoryFactory) chatRepositoryFactory).getPoolStats(longHoldMillis);
+			poolStats.repository = "chat";
+			poolStatsList.add(poolStats);
+		}
+
+		return poolStatsList;
+	}
+
 	@POST
 	@Path("/repository/checkpoint")
 	@Operation(
@@ -8,9 +8,9 @@ import org.qortal.controller.ChatNotifier;
 import org.qortal.crypto.Crypto;
 import org.qortal.data.chat.ActiveChats;
 import org.qortal.data.chat.ChatMessage;
+import org.qortal.repository.ChatRepositoryManager;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
-import org.qortal.repository.RepositoryManager;
 
 import java.io.IOException;
 import java.io.StringWriter;
@@ -41,10 +41,25 @@ public class ActiveChatsWebSocket extends ApiWebSocket {
 			return;
 		}
 
+		List<Integer> groupIds;
+		try {
+			groupIds = getGroupIds(address);
+		} catch (DataException e) {
+			// Not a good start
+			session.close(4001, "Couldn't fetch group memberships from repository");
+			return;
+		}
+
 		AtomicReference<String> previousOutput = new AtomicReference<>(null);
 
-		ChatNotifier.Listener listener = chatMessage -> onNotify(session, chatMessage, address, previousOutput);
-		ChatNotifier.getInstance().register(session, listener);
+		ChatNotifier.Listener listener = chatMessage -> {
+			if (chatMessage == null)
+				// Group-membership change, so make sure we're notified of messages to our current groups
+				updateGroups(session, address);
+
+			onNotify(session, chatMessage, address, previousOutput);
+		};
+		ChatNotifier.getInstance().registerForActiveChats(session, address, groupIds, listener);
 
 		this.onNotify(session, null, address, previousOutput);
 	}
@@ -67,6 +82,20 @@ public class ActiveChatsWebSocket extends ApiWebSocket {
 		}
 	}
 
+	private static List<Integer> getGroupIds(String address) throws DataException {
+		try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+			return chatRepository.getChatRepository().getGroupIdsByMember(address);
+		}
+	}
+
+	private void updateGroups(Session session, String address) {
+		try {
+			ChatNotifier.getInstance().updateGroups(session, getGroupIds(address));
+		} catch (DataException e) {
+			// Keep previous groups for now
+		}
+	}
+
 	private void onNotify(Session session, ChatMessage chatMessage, String ourAddress, AtomicReference<String> previousOutput) {
 		// If CHAT has a recipient (i.e. direct message, not group-based) and we're neither sender nor recipient, then it's of no interest
 		if (chatMessage != null) {
@@ -76,8 +105,8 @@ public class ActiveChatsWebSocket extends ApiWebSocket {
 				return;
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			ActiveChats activeChats = repository.getChatRepository().getActiveChats(ourAddress, getTargetEncoding(session));
+		try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+			ActiveChats activeChats = chatRepository.getChatRepository().getActiveChats(ourAddress, getTargetEncoding(session));
 
 			StringWriter stringWriter = new StringWriter();
 
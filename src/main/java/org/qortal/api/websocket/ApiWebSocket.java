@@ -16,12 +16,16 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 @SuppressWarnings("serial")
 abstract class ApiWebSocket extends WebSocketServlet {
 
 	private static final Map<Class<? extends ApiWebSocket>, List<Session>> SESSIONS_BY_CLASS = new HashMap<>();
 
+	/** JAXB contexts are expensive to create but thread-safe, unlike marshallers, so we keep one per class */
+	private static final Map<Class<?>, JAXBContext> JAXB_CONTEXTS = new ConcurrentHashMap<>();
+
 	protected static String getPathInfo(Session session) {
 		ServletUpgradeRequest upgradeRequest = (ServletUpgradeRequest) session.getUpgradeRequest();
 		return upgradeRequest.getHttpServletRequest().getPathInfo();
@@ -76,8 +80,12 @@ abstract class ApiWebSocket extends WebSocketServlet {
 
 	private static Marshaller createMarshaller(Class<?> objectClass) {
 		try {
-			// Create JAXB context aware of object's class
-			JAXBContext jc = JAXBContextFactory.createContext(new Class[] { objectClass }, null);
+			// Fetch, or create, JAXB context aware of object's class
+			JAXBContext jc = JAXB_CONTEXTS.get(objectClass);
+			if (jc == null) {
+				jc = JAXBContextFactory.createContext(new Class[] { objectClass }, null);
+				JAXB_CONTEXTS.put(objectClass, jc);
+			}
 
 			// Create marshaller
 			Marshaller marshaller = jc.createMarshaller();
@@ -6,9 +6,10 @@ import org.eclipse.jetty.websocket.api.annotations.*;
 import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
 import org.qortal.controller.ChatNotifier;
 import org.qortal.data.chat.ChatMessage;
+import org.qortal.repository.ChatRepositoryManager;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
-import org.qortal.repository.RepositoryManager;
+import org.qortal.utils.ByteArray;
 
 import java.io.IOException;
 import java.io.StringWriter;
@@ -20,6 +21,18 @@ import static org.qortal.data.chat.ChatMessage.Encoding;
 @SuppressWarnings("serial")
 public class ChatMessagesWebSocket extends ApiWebSocket {
 
+	/** Number of recent chat messages whose serialized payloads we keep for sending to other sessions */
+	private static final int MAX_PAYLOAD_CACHE_ENTRIES = 100;
+
+	/** Serialized payloads of recent new chat messages, by signature then encoding, so each is marshalled only once */
+	private static final Map<ByteArray, Map<Encoding, String>> PAYLOAD_CACHE = new LinkedHashMap<>(MAX_PAYLOAD_CACHE_ENTRIES + 1, 0.75F, true) {
+		// This method is called just after a new entry has been added
+		@Override
+		public boolean removeEldestEntry(Map.Entry<ByteArray, Map<Encoding, String>> eldest) {
+			return size() > MAX_PAYLOAD_CACHE_ENTRIES;
+		}
+	};
+
 	@Override
 	public void configure(WebSocketServletFactory factory) {
 		factory.register(ChatMessagesWebSocket.class);
@@ -44,8 +57,10 @@ public class ChatMessagesWebSocket extends ApiWebSocket {
 		if (txGroupIds != null && txGroupIds.size() == 1) {
 			int txGroupId = Integer.parseInt(txGroupIds.get(0));
 
-			try (final Repository repository = RepositoryManager.getRepository()) {
-				List<ChatMessage> chatMessages = repository.getChatRepository().getMessagesMatchingCriteria(
+			try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+				List<ChatMessage> chatMessages = chatRepository.getChatRepository().getMessagesMatchingCriteria(
+						null,
+						null,
 						null,
 						null,
 						txGroupId,
@@ -65,7 +80,7 @@ public class ChatMessagesWebSocket extends ApiWebSocket {
 			}
 
 			ChatNotifier.Listener listener = chatMessage -> onNotify(session, chatMessage, txGroupId);
-			ChatNotifier.getInstance().register(session, listener);
+			ChatNotifier.getInstance().registerForGroup(session, txGroupId, listener);
 
 			return;
 		}
@@ -76,8 +91,10 @@ public class ChatMessagesWebSocket extends ApiWebSocket {
 			return;
 		}
 
-		try (final Repository repository = RepositoryManager.getRepository()) {
-			List<ChatMessage> chatMessages = repository.getChatRepository().getMessagesMatchingCriteria(
+		try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+			List<ChatMessage> chatMessages = chatRepository.getChatRepository().getMessagesMatchingCriteria(
+					null,
+					null,
 					null,
 					null,
 					null,
@@ -97,7 +114,7 @@ public class ChatMessagesWebSocket extends ApiWebSocket {
 		}
 
 		ChatNotifier.Listener listener = chatMessage -> onNotify(session, chatMessage, involvingAddresses);
-		ChatNotifier.getInstance().register(session, listener);
+		ChatNotifier.getInstance().registerForAddresses(session, involvingAddresses, listener);
 	}
 
 	@OnWebSocketClose
@@ -160,7 +177,42 @@ public class ChatMessagesWebSocket extends ApiWebSocket {
 	}
 
 	private void sendChat(Session session, ChatMessage chatMessage) {
-		sendMessages(session, Collections.singletonList(chatMessage));
+		String payload = getPayload(chatMessage, getTargetEncoding(session));
+		if (payload == null)
+			return;
+
+		try {
+			session.getRemote().sendStringByFuture(payload);
+		} catch (WebSocketException e) {
+			// No output this time?
+		}
+	}
+
+	/** Returns JSON payload for new chat message in requested encoding, marshalling only once per message/encoding. */
+	private static String getPayload(ChatMessage chatMessage, Encoding encoding) {
+		ByteArray signature = ByteArray.wrap(chatMessage.getSignature());
+
+		synchronized (PAYLOAD_CACHE) {
+			Map<Encoding, String> payloads = PAYLOAD_CACHE.get(signature);
+			if (payloads != null && payloads.containsKey(encoding))
+				return payloads.get(encoding);
+		}
+
+		StringWriter stringWriter = new StringWriter();
+
+		try {
+			marshall(stringWriter, Collections.singletonList(chatMessage.withEncoding(encoding)));
+		} catch (IOException e) {
+			return null;
+		}
+
+		String payload = stringWriter.toString();
+
+		synchronized (PAYLOAD_CACHE) {
+			PAYLOAD_CACHE.computeIfAbsent(signature, k -> new EnumMap<>(Encoding.class)).put(encoding, payload);
+		}
+
+		return payload;
 	}
 
 	private Encoding getTargetEncoding(Session session) {
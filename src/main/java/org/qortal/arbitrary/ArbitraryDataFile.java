@@ -11,10 +11,13 @@ import org.qortal.utils.Base58;
 import org.qortal.utils.FilesystemUtils;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 import static java.util.Arrays.stream;
@@ -85,10 +88,32 @@ public class ArbitraryDataFile {
             return;
         }
 
+        this.writeContent(ByteBuffer.wrap(fileContent), signature, useTemporaryFile);
+    }
+
+    /**
+     * Creates file from buffer's remaining bytes, e.g. a slice of a network receive buffer,
+     * without first copying them into a byte array.
+     * <p>
+     * Buffer's position is advanced to its limit.
+     */
+    public ArbitraryDataFile(ByteBuffer fileContent, byte[] signature, boolean useTemporaryFile) throws DataException {
+        if (fileContent == null) {
+            LOGGER.error("fileContent is null");
+            return;
+        }
+
+        this.writeContent(fileContent, signature, useTemporaryFile);
+    }
+
+    private void writeContent(ByteBuffer fileContent, byte[] signature, boolean useTemporaryFile) throws DataException {
+        final int fileSize = fileContent.remaining();
+
         this.chunks = new ArrayList<>();
-        this.hash58 = Base58.encode(Crypto.digest(fileContent));
+        byte[] digest = Crypto.digest(fileContent.duplicate());
+        this.hash58 = Base58.encode(digest);
         this.signature = signature;
-        LOGGER.trace(String.format("File digest: %s, size: %d bytes", this.hash58, fileContent.length));
+        LOGGER.trace(String.format("File digest: %s, size: %d bytes", this.hash58, fileSize));
 
         Path outputFilePath;
         if (useTemporaryFile) {
@@ -104,14 +129,19 @@ public class ArbitraryDataFile {
             outputFilePath = getOutputFilePath(this.hash58, signature, true);
         }
 
-        File outputFile = outputFilePath.toFile();
-        try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-            outputStream.write(fileContent);
+        try (FileChannel outputChannel = FileChannel.open(outputFilePath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (fileContent.hasRemaining())
+                outputChannel.write(fileContent);
+
             this.filePath = outputFilePath;
         } catch (IOException e) {
             this.delete();
             throw new DataException(String.format("Unable to write data with hash %s: %s", this.hash58, e.getMessage()));
         }
+
+        // We already know the digest, so no need to read the file back later
+        ArbitraryDataFileDigestCache.getInstance().put(outputFilePath, digest);
     }
 
     public static ArbitraryDataFile fromHash58(String hash58, byte[] signature) throws DataException {
@@ -167,18 +197,22 @@ public class ArbitraryDataFile {
         File file = path.toFile();
         if (file.exists()) {
             try {
-                byte[] digest = Crypto.digest(file);
+                byte[] digest = ArbitraryDataFileDigestCache.getInstance().digest(path);
                 ArbitraryDataFile arbitraryDataFile = ArbitraryDataFile.fromHash(digest, signature);
 
                 // Copy file to data directory if needed
                 if (Files.exists(path) && !arbitraryDataFile.isInBaseDirectory(path)) {
-                    arbitraryDataFile.copyToDataDirectory(path, signature);
+                    Path dest = arbitraryDataFile.copyToDataDirectory(path, signature);
+                    if (dest != null) {
+                        ArbitraryDataFileDigestCache.getInstance().put(dest, digest);
+                    }
                 }
                 // Or, if it's already in the data directory, we may need to move it
                 else if (!path.equals(arbitraryDataFile.getFilePath())) {
                     // Wrong path, so relocate (but don't cleanup, as the source folder may still be needed by the caller)
                     Path dest = arbitraryDataFile.getFilePath();
                     FilesystemUtils.moveFile(path, dest, false);
+                    ArbitraryDataFileDigestCache.getInstance().put(dest, digest);
                 }
                 return arbitraryDataFile;
 
@@ -394,6 +428,7 @@ public class ArbitraryDataFile {
             if (Files.exists(this.filePath)) {
                 try {
                     Files.delete(this.filePath);
+                    ArbitraryDataFileDigestCache.getInstance().invalidate(this.filePath);
                     this.cleanupFilesystem();
                     LOGGER.debug("Deleted file {}", this.filePath);
                     return true;
@@ -475,6 +510,32 @@ public class ArbitraryDataFile {
         }
     }
 
+    /**
+     * Reads whole file into <tt>output</tt>, starting at its current position,
+     * e.g. directly into an outgoing network message's buffer.
+     *
+     * @return number of bytes read
+     * @throws IOException if file couldn't be read or doesn't fit in <tt>output</tt>
+     */
+    public int readBytes(ByteBuffer output) throws IOException {
+        try (FileChannel inputChannel = FileChannel.open(this.filePath, StandardOpenOption.READ)) {
+            long fileSize = inputChannel.size();
+            if (fileSize > output.remaining())
+                throw new IOException(String.format("File size %d exceeds buffer space %d", fileSize, output.remaining()));
+
+            int bytesRead = 0;
+            while (bytesRead < fileSize) {
+                int count = inputChannel.read(output);
+                if (count < 0)
+                    throw new EOFException("File truncated while reading");
+
+                bytesRead += count;
+            }
+
+            return bytesRead;
+        }
+    }
+
 
     /* Helper methods */
 
@@ -766,7 +827,7 @@ public class ArbitraryDataFile {
         File file = this.getFile();
         if (file != null && file.exists()) {
             try {
-                return Crypto.digest(file);
+                return ArbitraryDataFileDigestCache.getInstance().digest(this.filePath);
 
             } catch (IOException e) {
                 LOGGER.error("Couldn't compute digest for ArbitraryDataFile");
@@ -776,8 +837,9 @@ public class ArbitraryDataFile {
     }
 
     public String digest58() {
-        if (this.digest() != null) {
-            return Base58.encode(this.digest());
+        byte[] digest = this.digest();
+        if (digest != null) {
+            return Base58.encode(digest);
         }
         return null;
     }
@@ -0,0 +1,227 @@
+package org.qortal.arbitrary;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.qortal.crypto.Crypto;
+import org.qortal.settings.Settings;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SHA-256 digests of data files, shared by all {@link ArbitraryDataFile} instances,
+ * so the same file isn't re-read and re-hashed every time its digest is needed.
+ * <p>
+ * Entries are keyed by absolute path, and only used while the file's size and modification time
+ * (and file key, e.g. inode, where available) are unchanged.
+ * <p>
+ * Optionally, cached digests are saved to a file (see <tt>dataFileDigestCachePath</tt> setting)
+ * so they survive a restart.
+ */
+public class ArbitraryDataFileDigestCache {
+
+    private static final Logger LOGGER = LogManager.getLogger(ArbitraryDataFileDigestCache.class);
+
+    private static final int CACHE_FILE_VERSION = 1;
+
+    private static class CachedDigest {
+        private final long size;
+        private final long lastModified; // ns
+        /** File key, e.g. inode, or null if unknown, e.g. when loaded from cache file */
+        private final Object fileKey;
+        private final byte[] digest;
+
+        private CachedDigest(long size, long lastModified, Object fileKey, byte[] digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.digest = digest;
+        }
+
+        private CachedDigest(BasicFileAttributes attributes, byte[] digest) {
+            this(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), attributes.fileKey(), digest);
+        }
+
+        private boolean matches(BasicFileAttributes attributes) {
+            if (this.size != attributes.size() || this.lastModified != attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS))
+                return false;
+
+            return this.fileKey == null || attributes.fileKey() == null || this.fileKey.equals(attributes.fileKey());
+        }
+    }
+
+    private static ArbitraryDataFileDigestCache instance;
+
+    /** Digests, keyed by absolute path, in least-recently-used order */
+    private final Map<String, CachedDigest> cache;
+
+    /** Whether cache has changed since last loaded/saved */
+    private volatile boolean isDirty = false;
+
+    private ArbitraryDataFileDigestCache(int maxSize) {
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedDigest> eldest) {
+                return this.size() > maxSize;
+            }
+        };
+    }
+
+    public static synchronized ArbitraryDataFileDigestCache getInstance() {
+        if (instance == null)
+            instance = new ArbitraryDataFileDigestCache(Math.max(1, Settings.getInstance().getDataFileDigestCacheSize()));
+
+        return instance;
+    }
+
+    private static String toKey(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Returns SHA-256 digest of file at <tt>path</tt>, only reading the file if it has changed since last hashed.
+     *
+     * @throws IOException if file can't be read
+     */
+    public byte[] digest(Path path) throws IOException {
+        String key = toKey(path);
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+        CachedDigest cachedDigest;
+        synchronized (this.cache) {
+            cachedDigest = this.cache.get(key);
+        }
+
+        if (cachedDigest != null && cachedDigest.matches(attributes))
+            return cachedDigest.digest.clone();
+
+        // Hash outside lock as this might take a while for large files
+        byte[] digest = Crypto.digest(path.toFile());
+
+        // If file changed while we were reading it, then don't cache possibly inconsistent result
+        BasicFileAttributes postAttributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (new CachedDigest(attributes, digest).matches(postAttributes))
+            this.put(key, new CachedDigest(attributes, digest));
+
+        return digest;
+    }
+
+    /**
+     * Records <tt>digest</tt> for file at <tt>path</tt>, e.g. having just written file from data with known digest.
+     */
+    public void put(Path path, byte[] digest) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            this.put(toKey(path), new CachedDigest(attributes, digest.clone()));
+        } catch (IOException e) {
+            // Not cached, so digest will be calculated when needed
+        }
+    }
+
+    private void put(String key, CachedDigest cachedDigest) {
+        synchronized (this.cache) {
+            this.cache.put(key, cachedDigest);
+        }
+
+        this.isDirty = true;
+    }
+
+    public void invalidate(Path path) {
+        synchronized (this.cache) {
+            if (this.cache.remove(toKey(path)) != null)
+                this.isDirty = true;
+        }
+    }
+
+    public int size() {
+        synchronized (this.cache) {
+            return this.cache.size();
+        }
+    }
+
+    // Persistence
+
+    private static Path getCacheFilePath() {
+        String cachePath = Settings.getInstance().getDataFileDigestCachePath();
+        if (cachePath == null || cachePath.isEmpty())
+            return null;
+
+        return Paths.get(cachePath);
+    }
+
+    /** Loads previously saved digests, if enabled and present. */
+    public void load() {
+        Path cacheFilePath = getCacheFilePath();
+        if (cacheFilePath == null || !Files.exists(cacheFilePath))
+            return;
+
+        int loadedCount = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFilePath)))) {
+            if (in.readInt() != CACHE_FILE_VERSION)
+                return;
+
+            int count = in.readInt();
+            for (int i = 0; i < count; ++i) {
+                String key = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                byte[] digest = new byte[32];
+                in.readFully(digest);
+
+                synchronized (this.cache) {
+                    this.cache.putIfAbsent(key, new CachedDigest(size, lastModified, null, digest));
+                }
+                ++loadedCount;
+            }
+        } catch (IOException e) {
+            // Truncated or corrupt, but any entries loaded so far are fine as they're still validated before use
+            LOGGER.info("Unable to fully load data file digest cache: {}", e.getMessage());
+        }
+
+        LOGGER.debug("Loaded {} data file digests", loadedCount);
+    }
+
+    /** Saves digests, if enabled and changed since last load/save. */
+    public void save() {
+        Path cacheFilePath = getCacheFilePath();
+        if (cacheFilePath == null || !this.isDirty)
+            return;
+
+        List<Map.Entry<String, CachedDigest>> entries;
+        synchronized (this.cache) {
+            entries = new ArrayList<>(this.cache.entrySet());
+            this.isDirty = false;
+        }
+
+        Path tempFilePath = cacheFilePath.resolveSibling(cacheFilePath.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFilePath)))) {
+                out.writeInt(CACHE_FILE_VERSION);
+                out.writeInt(entries.size());
+
+                // Least-recently-used first, so reloading preserves order
+                for (Map.Entry<String, CachedDigest> entry : entries) {
+                    CachedDigest cachedDigest = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(cachedDigest.size);
+                    out.writeLong(cachedDigest.lastModified);
+                    out.write(cachedDigest.digest);
+                }
+            }
+
+            Files.move(tempFilePath, cacheFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.info("Unable to save data file digest cache: {}", e.getMessage());
+            this.isDirty = true;
+        }
+    }
+
+}
@@ -243,6 +243,9 @@ public class Block {
 	/** Opportunistic cache of this block's valid online reward-shares. Only created by call to isValid(). */
 	private List<RewardShareData> cachedOnlineRewardShares = null;
 
+	/** Online accounts' public keys that verified this block's aggregate signature, if checked ahead of time by preverifyOnlineAccounts(). */
+	private volatile List<byte[]> preverifiedOnlineAccountsPublicKeys = null;
+
 	// Other useful constants
 
 	public static final BigInteger MAX_DISTANCE;
@@ -579,6 +582,9 @@ public class Block {
 	public void setRepository(Repository repository) throws DataException {
 		this.repository = repository;
 
+		if (!(this.minter instanceof PrivateKeyAccount))
+			this.minter = new PublicKeyAccount(repository, this.minter.getPublicKey());
+
 		for (Transaction transaction : this.getTransactions()) {
 			transaction.setRepository(repository);
 		}
@@ -1134,6 +1140,57 @@ public class Block {
 		if (this.blockData.getTimestamp() < signatureRequirementThreshold)
 			return ValidationResult.OK;
 
+		ValidationResult signaturesResult = this.areOnlineAccountsSignaturesValid(onlineRewardShares);
+		if (signaturesResult != ValidationResult.OK)
+			return signaturesResult;
+
+		// All online accounts valid, so save our list of online accounts for potential later use
+		this.cachedOnlineRewardShares = onlineRewardShares;
+
+		// Remember that the accounts are valid, to speed up subsequent checks
+		this.onlineAccountsAlreadyValid = true;
+
+		return ValidationResult.OK;
+	}
+
+
+	/**
+	 * Checks online accounts' nonces and aggregate signature ahead of {@link #isValid()},
+	 * e.g. while earlier blocks are still being processed during synchronization.
+	 * <p>
+	 * Online accounts are looked up using <tt>repository</tt>'s current state, which might differ from the state
+	 * when this block is actually validated. So only successful checks are remembered, i.e. verified nonces
+	 * (via OnlineAccountsManager) and public keys that verified the aggregate signature, and are only reused
+	 * by {@link #areOnlineAccountsValid()} if they match the online accounts at that time.
+	 * Failures are ignored here, as the definitive check happens later.
+	 */
+	public void preverifyOnlineAccounts(Repository repository) throws DataException {
+		// Nothing to do if already fully checked
+		if (this.onlineAccountsAlreadyValid)
+			return;
+
+		// Only blocks with online accounts signatures
+		if (!this.isOnlineAccountsBlock() || this.isBatchRewardDistributionBlock())
+			return;
+
+		// Signatures aren't checked for older blocks
+		Long now = NTP.getTime();
+		if (now == null || this.blockData.getTimestamp() < now - BlockChain.getInstance().getOnlineAccountSignaturesMinLifetime())
+			return;
+
+		ConciseSet accountIndexes = BlockTransformer.decodeOnlineAccounts(this.blockData.getEncodedOnlineAccounts());
+		if (accountIndexes.size() != this.blockData.getOnlineAccountsCount())
+			return;
+
+		List<RewardShareData> onlineRewardShares = repository.getAccountRepository().getRewardSharesByIndexes(accountIndexes.toArray());
+		if (onlineRewardShares == null)
+			return;
+
+		this.areOnlineAccountsSignaturesValid(onlineRewardShares);
+	}
+
+	/** Returns whether block's online accounts signatures, and nonces, are valid for <tt>onlineRewardShares</tt>. */
+	private ValidationResult areOnlineAccountsSignaturesValid(List<RewardShareData> onlineRewardShares) {
 		if (this.blockData.getOnlineAccountsSignatures() == null || this.blockData.getOnlineAccountsSignatures().length == 0)
 			return ValidationResult.ONLINE_ACCOUNT_SIGNATURES_MISSING;
 
@@ -1170,10 +1227,9 @@ public class Block {
 		// Remove those already validated & cached by online accounts manager - no need to re-validate them
 		OnlineAccountsManager.getInstance().removeKnown(onlineAccounts, onlineTimestamp);
 
-		// Validate the rest
-		for (OnlineAccountData onlineAccount : onlineAccounts)
-			if (!OnlineAccountsManager.getInstance().verifyMemoryPoW(onlineAccount, null))
-				return ValidationResult.ONLINE_ACCOUNT_NONCE_INCORRECT;
+		// Validate the rest, in parallel
+		if (!OnlineAccountsManager.getInstance().verifyMemoryPoWs(onlineAccounts))
+			return ValidationResult.ONLINE_ACCOUNT_NONCE_INCORRECT;
 
 		// Cache the valid online accounts as they will likely be needed for the next block
 		OnlineAccountsManager.getInstance().addBlocksOnlineAccounts(onlineAccounts, onlineTimestamp);
@@ -1182,10 +1238,16 @@ public class Block {
 		List<byte[]> onlineAccountsSignatures = BlockTransformer.decodeTimestampSignatures(encodedOnlineAccountSignatures);
 
 		// Aggregate all public keys
-		Collection<byte[]> publicKeys = onlineRewardShares.stream()
+		List<byte[]> publicKeys = onlineRewardShares.stream()
 				.map(RewardShareData::getRewardSharePublicKey)
 				.collect(Collectors.toList());
 
+		// No need to verify aggregate signature again if already verified using same public keys
+		List<byte[]> preverifiedPublicKeys = this.preverifiedOnlineAccountsPublicKeys;
+		if (preverifiedPublicKeys != null && preverifiedPublicKeys.size() == publicKeys.size()
+				&& Arrays.deepEquals(preverifiedPublicKeys.toArray(), publicKeys.toArray()))
+			return ValidationResult.OK;
+
 		byte[] aggregatePublicKey = Qortal25519Extras.aggregatePublicKeys(publicKeys);
 
 		byte[] aggregateSignature = onlineAccountsSignatures.get(0);
@@ -1194,11 +1256,7 @@ public class Block {
 		if (!Qortal25519Extras.verifyAggregated(aggregatePublicKey, aggregateSignature, onlineTimestampBytes))
 			return ValidationResult.ONLINE_ACCOUNT_SIGNATURE_INCORRECT;
 
-		// All online accounts valid, so save our list of online accounts for potential later use
-		this.cachedOnlineRewardShares = onlineRewardShares;
-
-		// Remember that the accounts are valid, to speed up subsequent checks
-		this.onlineAccountsAlreadyValid = true;
+		this.preverifiedOnlineAccountsPublicKeys = publicKeys;
 
 		return ValidationResult.OK;
 	}
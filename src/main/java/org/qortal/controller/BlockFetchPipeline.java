@@ -0,0 +1,369 @@
+package org.qortal.controller;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.qortal.block.Block;
+import org.qortal.network.Peer;
+import org.qortal.network.message.BlockMessage;
+import org.qortal.network.message.BlockV2Message;
+import org.qortal.network.message.GetBlockMessage;
+import org.qortal.network.message.Message;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.repository.RepositoryManager;
+import org.qortal.utils.Base58;
+import org.qortal.utils.NamedThreadFactory;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches blocks for {@link Synchronizer} ahead of when they're needed.
+ * <p>
+ * Keeps a window of outstanding GET_BLOCK requests, spread across the sync peer and other peers
+ * that share the same common block, so sync isn't limited to one round-trip per block.
+ * Responses wait in a prefetch buffer until taken, in height order.
+ * <p>
+ * Stateless checks, i.e. block signatures, are performed by the fetching threads as blocks arrive.
+ * Online accounts signatures and nonces are also checked speculatively, one block at a time
+ * (see {@link Block#preverifyOnlineAccounts(Repository)}), leaving only stateful validation and processing
+ * for the synchronizing thread.
+ * <p>
+ * Block signatures don't cover everything in a block, e.g. online accounts signatures or AT states,
+ * so other peers are only trusted to supply blocks, never to judge them. If another peer fails to supply
+ * a block with the requested, valid, signature, or its block turns out to be invalid (see {@link #refetchFromSyncPeer(FetchedBlock)}),
+ * the block is requested from the sync peer instead, and the other peer isn't asked again.
+ * <p>
+ * Only used by synchronizing thread, so no synchronization needed.
+ */
+public class BlockFetchPipeline implements AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger(BlockFetchPipeline.class);
+
+	/** Response to block request, with block (without repository) and whether block's signatures are valid. */
+	public static class FetchedBlock {
+		private final Peer peer;
+		private final Message message;
+		private final Block block;
+		private final boolean isSignatureValid;
+
+		private FetchedBlock(Peer peer, Message message, Block block, boolean isSignatureValid) {
+			this.peer = peer;
+			this.message = message;
+			this.block = block;
+			this.isSignatureValid = isSignatureValid;
+		}
+
+		/** Returns peer that supplied block. */
+		public Peer getPeer() {
+			return this.peer;
+		}
+
+		public Message getMessage() {
+			return this.message;
+		}
+
+		/** Returns block, with null repository, or null if response wasn't a block. */
+		public Block getBlock() {
+			return this.block;
+		}
+
+		public boolean isSignatureValid() {
+			return this.isSignatureValid;
+		}
+	}
+
+	private static class BlockRequest {
+		private final int height;
+		private final byte[] signature;
+		/** Peer asked for block, or null if not requested yet */
+		private Peer peer;
+		private Future<FetchedBlock> future;
+
+		private BlockRequest(int height, byte[] signature) {
+			this.height = height;
+			this.signature = signature;
+		}
+	}
+
+	private final Peer syncPeer;
+	/** Sync peer, followed by other peers we can ask */
+	private final List<Peer> peers = new ArrayList<>();
+	private final int window;
+	private final int peerRequestLimit;
+	private final ExecutorService fetchExecutor;
+	private final ExecutorService preverifyExecutor;
+
+	/** Blocks to fetch, in height order, including requested blocks not yet taken */
+	private final Deque<BlockRequest> blockRequests = new ArrayDeque<>();
+	/** Requested-but-not-taken count per peer */
+	private final Map<Peer, Integer> outstandingByPeer = new HashMap<>();
+	private int outstandingCount = 0;
+	/** Where to start looking for least busy peer, so requests are spread evenly */
+	private int nextPeerIndex = 0;
+
+	/** Set when closed, so queued speculative checks can be skipped */
+	private volatile boolean isClosed = false;
+
+	/**
+	 * @param syncPeer peer we're synchronizing with, which is expected to have all requested blocks
+	 * @param otherPeers other peers that probably have requested blocks
+	 * @param window maximum number of outstanding requests; 1 or less disables prefetching
+	 * @param peerRequestLimit maximum number of outstanding requests per peer
+	 * @param fetchExecutor threads for fetching blocks, ideally at least <tt>window</tt> of them
+	 * @param preverifyExecutor executor for speculative online accounts checks, see {@link #newPreverifyExecutor(int)}, or null to skip them
+	 */
+	public BlockFetchPipeline(Peer syncPeer, List<Peer> otherPeers, int window, int peerRequestLimit,
+			ExecutorService fetchExecutor, ExecutorService preverifyExecutor) {
+		this.syncPeer = syncPeer;
+		this.window = window;
+		this.peerRequestLimit = Math.max(1, peerRequestLimit);
+		this.fetchExecutor = fetchExecutor;
+		this.preverifyExecutor = preverifyExecutor;
+
+		this.peers.add(syncPeer);
+		for (Peer peer : otherPeers)
+			if (peer != syncPeer)
+				this.peers.add(peer);
+	}
+
+	/**
+	 * Returns executor for speculative online accounts checks, with a single thread,
+	 * that discards checks once <tt>queueCapacity</tt> are waiting.
+	 */
+	public static ExecutorService newPreverifyExecutor(int queueCapacity) {
+		return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+				new NamedThreadFactory("Synchronizer-preverify"), new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	public int getWindow() {
+		return Math.max(1, this.window);
+	}
+
+	/** Queues fetch of block at <tt>height</tt>, with <tt>signature</tt>, after any previously queued blocks. */
+	public void request(int height, byte[] signature) {
+		this.blockRequests.addLast(new BlockRequest(height, signature));
+		this.fill();
+	}
+
+	/**
+	 * Returns block at <tt>height</tt>, with <tt>signature</tt>, waiting for it to arrive if necessary.
+	 * <p>
+	 * If block wasn't queued in order, it's fetched from sync peer now.
+	 * <p>
+	 * Blocks from other peers are only returned if they have the requested, valid, signature.
+	 * Caller needs to set returned block's repository before use.
+	 *
+	 * @return fetched block, some other response from sync peer, or null if sync peer didn't respond
+	 */
+	public FetchedBlock take(int height, byte[] signature) throws InterruptedException {
+		BlockRequest blockRequest = this.blockRequests.peekFirst();
+		if (blockRequest == null || blockRequest.height != height || !Arrays.equals(blockRequest.signature, signature)) {
+			// Out of order, so previously queued requests are no use
+			this.clear();
+			return this.fetchFromSyncPeer(signature);
+		}
+
+		this.blockRequests.removeFirst();
+
+		FetchedBlock fetchedBlock = null;
+		if (blockRequest.future != null) {
+			this.onRequestTaken(blockRequest.peer);
+
+			try {
+				fetchedBlock = blockRequest.future.get();
+			} catch (ExecutionException | CancellationException e) {
+				// Treat as no response
+			}
+		}
+
+		if (blockRequest.peer == this.syncPeer) {
+			Synchronizer.updateFailedSyncCount(this.syncPeer, fetchedBlock != null ? fetchedBlock.getMessage() : null);
+		} else if (blockRequest.peer != null && (fetchedBlock == null || !fetchedBlock.isSignatureValid())) {
+			LOGGER.debug(() -> String.format("Peer %s didn't supply valid block %d, sig %.8s - no longer asking it for blocks",
+					blockRequest.peer, height, Base58.encode(signature)));
+
+			this.peers.remove(blockRequest.peer);
+			fetchedBlock = null;
+		}
+
+		// Other peer didn't supply block, or block wasn't requested yet
+		if (blockRequest.peer != this.syncPeer && fetchedBlock == null)
+			fetchedBlock = this.fetchFromSyncPeer(signature);
+
+		this.fill();
+
+		return fetchedBlock;
+	}
+
+	/**
+	 * Returns sync peer's copy of block, after <tt>fetchedBlock</tt>, supplied by another peer, turned out to be invalid.
+	 * <p>
+	 * That other peer isn't asked for blocks again.
+	 *
+	 * @return fetched block, some other response from sync peer, or null if sync peer didn't respond
+	 */
+	public FetchedBlock refetchFromSyncPeer(FetchedBlock fetchedBlock) throws InterruptedException {
+		if (fetchedBlock.getPeer() != this.syncPeer && this.peers.remove(fetchedBlock.getPeer()))
+			LOGGER.debug(() -> String.format("Peer %s supplied invalid block sig %.8s - no longer asking it for blocks",
+					fetchedBlock.getPeer(), Base58.encode(fetchedBlock.getBlock().getSignature())));
+
+		return this.fetchFromSyncPeer(fetchedBlock.getBlock().getSignature());
+	}
+
+	/** Cancels all queued and outstanding requests. */
+	public void clear() {
+		for (BlockRequest blockRequest : this.blockRequests)
+			if (blockRequest.future != null)
+				blockRequest.future.cancel(true);
+
+		this.blockRequests.clear();
+		this.outstandingByPeer.clear();
+		this.outstandingCount = 0;
+	}
+
+	@Override
+	public void close() {
+		this.isClosed = true;
+		this.clear();
+	}
+
+	/** Sends requests for queued blocks, in height order, while window and peers allow. */
+	private void fill() {
+		if (this.window <= 1)
+			return;
+
+		for (BlockRequest blockRequest : this.blockRequests) {
+			if (this.outstandingCount >= this.window)
+				return;
+
+			if (blockRequest.future != null)
+				continue;
+
+			Peer peer = this.selectPeer();
+			if (peer == null)
+				// All peers busy
+				return;
+
+			blockRequest.peer = peer;
+			blockRequest.future = this.fetchExecutor.submit(() -> this.fetch(peer, blockRequest.signature));
+
+			this.outstandingByPeer.merge(peer, 1, Integer::sum);
+			++this.outstandingCount;
+		}
+	}
+
+	/** Returns least busy peer, or null if all peers have reached request limit. */
+	private Peer selectPeer() {
+		Peer selectedPeer = null;
+		int selectedOutstanding = this.peerRequestLimit;
+
+		for (int i = 0; i < this.peers.size(); ++i) {
+			Peer peer = this.peers.get((this.nextPeerIndex + i) % this.peers.size());
+			int outstanding = this.outstandingByPeer.getOrDefault(peer, 0);
+
+			if (outstanding < selectedOutstanding) {
+				selectedPeer = peer;
+				selectedOutstanding = outstanding;
+			}
+		}
+
+		this.nextPeerIndex = (this.nextPeerIndex + 1) % this.peers.size();
+
+		return selectedPeer;
+	}
+
+	private void onRequestTaken(Peer peer) {
+		this.outstandingByPeer.computeIfPresent(peer, (k, outstanding) -> outstanding > 1 ? outstanding - 1 : null);
+		--this.outstandingCount;
+	}
+
+	private FetchedBlock fetchFromSyncPeer(byte[] signature) throws InterruptedException {
+		Message message = this.syncPeer.getResponse(new GetBlockMessage(signature));
+		Synchronizer.updateFailedSyncCount(this.syncPeer, message);
+
+		if (message == null)
+			return null;
+
+		Block block = toBlock(message);
+		return new FetchedBlock(this.syncPeer, message, block, block != null && block.isSignatureValid());
+	}
+
+	/** Fetches block from <tt>peer</tt>, then checks block as much as possible before it's needed. Runs on fetch executor's threads. */
+	private FetchedBlock fetch(Peer peer, byte[] signature) throws InterruptedException {
+		Message message = peer.getResponse(new GetBlockMessage(signature));
+		if (message == null)
+			return null;
+
+		Block block = toBlock(message);
+		if (block == null || !Arrays.equals(block.getSignature(), signature))
+			// Not what we asked for, so don't waste effort checking it
+			return new FetchedBlock(peer, message, block, false);
+
+		boolean isSignatureValid = block.isSignatureValid();
+
+		if (isSignatureValid)
+			this.queuePreverification(block);
+
+		return new FetchedBlock(peer, message, block, isSignatureValid);
+	}
+
+	/**
+	 * Queues speculative online accounts checks for <tt>block</tt>.
+	 * <p>
+	 * These are memory-hard and use the online accounts verification threads, shared with the online accounts import queue,
+	 * so only one block is checked at a time, and blocks are skipped if the preverify executor can't keep up.
+	 */
+	private void queuePreverification(Block block) {
+		if (this.preverifyExecutor == null)
+			return;
+
+		try {
+			this.preverifyExecutor.execute(() -> {
+				if (!this.isClosed)
+					preverifyOnlineAccounts(block);
+			});
+		} catch (RejectedExecutionException e) {
+			// Shutting down, or too busy
+		}
+	}
+
+	private static void preverifyOnlineAccounts(Block block) {
+		// Don't hold up synchronizing thread, or anyone else, if no repository connection is spare
+		try (final Repository repository = RepositoryManager.tryRepository()) {
+			if (repository == null)
+				return;
+
+			block.preverifyOnlineAccounts(repository);
+		} catch (DataException e) {
+			// Online accounts will be fully checked later anyway
+			LOGGER.debug(() -> String.format("Unable to preverify online accounts for block %.8s: %s", Base58.encode(block.getSignature()), e.getMessage()));
+		}
+	}
+
+	/** Returns block, with null repository, from BLOCK or BLOCK_V2 message, or null if some other message. */
+	private static Block toBlock(Message message) {
+		switch (message.getType()) {
+			case BLOCK: {
+				BlockMessage blockMessage = (BlockMessage) message;
+				return new Block(null, blockMessage.getBlockData(), blockMessage.getTransactions(), blockMessage.getAtStates());
+			}
+
+			case BLOCK_V2: {
+				BlockV2Message blockMessage = (BlockV2Message) message;
+				return new Block(null, blockMessage.getBlockData(), blockMessage.getTransactions(), blockMessage.getAtStatesHash());
+			}
+
+			default:
+				return null;
+		}
+	}
+
+}
@@ -2,14 +2,140 @@ package org.qortal.controller;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.qortal.api.resource.TransactionsResource.ConfirmationStatus;
+import org.qortal.data.group.GroupData;
+import org.qortal.data.group.GroupMemberData;
+import org.qortal.data.naming.NameData;
+import org.qortal.data.transaction.ChatTransactionData;
+import org.qortal.data.transaction.TransactionData;
+import org.qortal.network.Network;
+import org.qortal.network.Peer;
+import org.qortal.network.message.*;
+import org.qortal.network.message.GetChatMessagesMessage.Direction;
+import org.qortal.repository.ChatRepositoryManager;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.repository.RepositoryManager;
+import org.qortal.settings.Settings;
+import org.qortal.transaction.ChatTransaction;
+import org.qortal.transaction.Transaction;
+import org.qortal.transaction.Transaction.TransactionType;
+import org.qortal.transaction.Transaction.ValidationResult;
+import org.qortal.utils.Base58;
+import org.qortal.utils.ByteArray;
+import org.qortal.utils.NTP;
+import org.qortal.utils.NamedThreadFactory;
+import org.qortal.utils.SignatureSketch;
 
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Chat subsystem: maintains chat repository and keeps it in sync with peers.
+ * <p>
+ * Peers running at least {@link ChatMessageSignaturesMessage#MIN_PEER_VERSION} exchange CHAT messages
+ * directly, bypassing the unconfirmed transaction pipeline:
+ * <ul>
+ *     <li>newly stored messages are announced using CHAT_MESSAGE_SIGNATURES, with peers fetching unknown messages via GET_CHAT_MESSAGE</li>
+ *     <li>history is fetched in batches from each peer using GET_CHAT_MESSAGES with a (timestamp, signature) cursor,
+ *     starting from where we've already caught up with any peer</li>
+ *     <li>once caught up, missed messages are periodically fetched using GET_RECENT_CHAT_MESSAGES,
+ *     which carries a {@link SignatureSketch} of our recent messages so only the differences are transferred</li>
+ * </ul>
+ * Older peers are still sent new CHAT signatures as TRANSACTION_SIGNATURES, and can fetch them via GET_TRANSACTION.
+ */
 public class ChatManager extends Thread {
 
     private static final Logger LOGGER = LogManager.getLogger(ChatManager.class);
 
+    /** Number of CHAT transactions to copy from main repository per batch when rebuilding chat repository */
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    /** Maximum number of CHAT messages we send, or request, in one CHAT_MESSAGES message */
+    private static final int MAX_MESSAGES_PER_RESPONSE = 100;
+    /** Maximum number of signatures we send in one CHAT_MESSAGE_SIGNATURES message */
+    private static final int MAX_SIGNATURES_PER_MESSAGE = 1000;
+    /** Maximum number of received CHAT messages awaiting validation */
+    private static final int MAX_INCOMING_MESSAGES = 5000;
+
+    /** How far back we fetch chat history from newly connected peers, if we haven't caught up with any peer since starting */
+    private static final long HISTORY_LOOKBACK = 24 * 60 * 60 * 1000L; // ms
+    /** Messages within this window are synced using GET_RECENT_CHAT_MESSAGES rather than timestamp cursor */
+    private static final long RECENT_WINDOW = 10 * 60 * 1000L; // ms
+    /** Number of cells in recent-messages sketch, usually enough to recover 60 differences (~3.8KB) */
+    private static final int RECENT_SKETCH_CELL_COUNT = 64 * SignatureSketch.HASH_COUNT;
+
+    /** Minimum interval between history requests to the same peer while catching up */
+    private static final long HISTORY_REQUEST_INTERVAL = 2 * 1000L; // ms
+    /** Minimum interval between recent-messages requests to the same peer once caught up */
+    private static final long RECENT_REQUEST_INTERVAL = 60 * 1000L; // ms
+    /** How long we wait for a peer to respond to a chat sync request */
+    private static final int RESPONSE_TIMEOUT = 10 * 1000; // ms
+    /** Number of threads used for outgoing chat sync requests */
+    private static final int SYNC_THREAD_COUNT = 4;
+
+    /** How long before we'll request an announced CHAT message again, possibly from a different peer */
+    private static final long SIGNATURE_REQUEST_TIMEOUT = 10 * 1000L; // ms
+    /** How long we ignore announcements of CHAT messages that failed validation */
+    private static final long INVALID_MESSAGE_RECHECK_INTERVAL = 60 * 60 * 1000L; // ms
+
     private static ChatManager instance;
     private volatile boolean isStopping = false;
 
+    /** Group IDs whose membership changed in blocks that have yet to be committed/announced */
+    private final Set<Integer> pendingGroupMembershipChanges = ConcurrentHashMap.newKeySet();
+    /** Addresses whose registered names changed in blocks that have yet to be committed */
+    private final Set<String> pendingNameChanges = ConcurrentHashMap.newKeySet();
+
+    /** Chat sync progress with a peer */
+    private static class PeerChatState {
+        /** Timestamp cursor: we have fetched peer's messages up to this timestamp */
+        private volatile long syncedUntil;
+        /** Signature cursor: if not null, we have also fetched peer's messages with <tt>syncedUntil</tt> timestamp up to this signature */
+        private volatile byte[] syncedUntilSignature = null;
+        /** Earliest time we can send another chat sync request to peer */
+        private volatile long nextRequestTimestamp = 0L;
+        /** Whether we are waiting for peer to respond to a chat sync request */
+        private volatile boolean isRequestInFlight = false;
+
+        private PeerChatState(long syncedUntil) {
+            this.syncedUntil = syncedUntil;
+        }
+    }
+
+    /** Chat sync progress, per peer */
+    private final Map<Peer, PeerChatState> peerChatStates = new ConcurrentHashMap<>();
+
+    /** Latest timestamp up to which we've fetched messages from any peer, used as starting point for newly connected peers */
+    private final AtomicLong syncedUntil = new AtomicLong(0L);
+
+    /** Received CHAT messages awaiting validation. Key is message signature. */
+    private final Map<ByteArray, ChatTransactionData> incomingMessages = new ConcurrentHashMap<>();
+
+    /** Announced CHAT messages we have requested from peers. Value is request timestamp. */
+    private final Map<ByteArray, Long> requestedSignatures = new ConcurrentHashMap<>();
+
+    /** Recently rejected CHAT messages. Value is do-not-request expiry timestamp. */
+    private final Map<ByteArray, Long> invalidSignatures = new ConcurrentHashMap<>();
+
+    /** Newly stored CHAT messages, awaiting notification to listeners and announcement to peers */
+    private final Queue<ChatTransactionData> newMessages = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Recent CHAT messages per creator public key, for rate limiting.
+     * Inner map is signature to message timestamp, so the same message is never counted twice.
+     * Entries older than {@link Settings#getRecentChatMessagesMaxAge()} are pruned lazily.
+     */
+    private final Map<ByteArray, Map<ByteArray, Long>> recentMessagesByCreator = new ConcurrentHashMap<>();
+
+    private final ExecutorService syncExecutor = Executors.newFixedThreadPool(SYNC_THREAD_COUNT, new NamedThreadFactory("ChatSync"));
+
     public ChatManager() {
 
     }
@@ -23,11 +149,23 @@ public class ChatManager extends Thread {
     }
 
     public void run() {
+        Thread.currentThread().setName("Chat Manager");
+
+        this.loadRecentMessages();
+
         try {
             while (!Controller.isStopping()) {
                 Thread.sleep(100L);
 
+                Long now = NTP.getTime();
+                if (now == null)
+                    continue;
+
+                processIncomingMessages(now);
+                announceNewMessages();
+                requestChatMessages(now);
 
+                cleanup(now);
             }
         } catch (InterruptedException e) {
             // Fall through to exit thread
@@ -36,7 +174,616 @@ public class ChatManager extends Thread {
 
     public void shutdown() {
         isStopping = true;
+        this.syncExecutor.shutdownNow();
         this.interrupt();
     }
 
+    /** Returns whether peer supports chat sync messages. */
+    public static boolean isChatSyncPeer(Peer peer) {
+        Long peersVersion = peer.getPeersVersion();
+        return peersVersion != null && peersVersion >= ChatMessageSignaturesMessage.MIN_PEER_VERSION;
+    }
+
+
+    // Incoming messages
+
+    private void queueIncomingMessages(Peer peer, List<ChatTransactionData> chatTransactions) {
+        for (ChatTransactionData chatTransactionData : chatTransactions) {
+            if (this.incomingMessages.size() >= MAX_INCOMING_MESSAGES) {
+                LOGGER.debug("Chat import queue full - dropping {} message{} from peer {}", chatTransactions.size(), (chatTransactions.size() == 1 ? "" : "s"), peer);
+                return;
+            }
+
+            ByteArray signature = ByteArray.wrap(chatTransactionData.getSignature());
+            if (this.invalidSignatures.containsKey(signature))
+                continue;
+
+            this.incomingMessages.putIfAbsent(signature, chatTransactionData);
+        }
+    }
+
+    /**
+     * Validates received CHAT messages and stores valid ones in chat repository.
+     * <p>
+     * No blockchain lock is required, as nothing is written to main repository.
+     */
+    private void processIncomingMessages(long now) {
+        if (this.incomingMessages.isEmpty() || ChatRepositoryManager.getRepositoryFactory() == null)
+            return;
+
+        List<ChatTransactionData> chatTransactions = new ArrayList<>(this.incomingMessages.values());
+        boolean isLiteNode = Settings.getInstance().isLite();
+        int storedCount = 0;
+
+        try (final Repository repository = RepositoryManager.getRepository();
+             final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+            for (ChatTransactionData chatTransactionData : chatTransactions) {
+                if (isStopping)
+                    return;
+
+                ByteArray signature = ByteArray.wrap(chatTransactionData.getSignature());
+                this.incomingMessages.remove(signature);
+                this.requestedSignatures.remove(signature);
+
+                // Already have it? (Before expensive proof-of-work check)
+                if (chatRepository.getChatRepository().exists(chatTransactionData.getSignature()))
+                    continue;
+
+                ChatTransaction chatTransaction = (ChatTransaction) Transaction.fromData(repository, chatTransactionData);
+
+                ValidationResult validationResult = chatTransaction.isValidChatMessage();
+                if (validationResult != ValidationResult.OK) {
+                    LOGGER.debug(() -> String.format("Ignoring invalid (%s) CHAT message %s", validationResult.name(), Base58.encode(signature.value)));
+
+                    // Clock or peer issues might resolve, so don't mark too-new messages as invalid
+                    if (validationResult != ValidationResult.CLOCK_NOT_SYNCED && validationResult != ValidationResult.TIMESTAMP_TOO_NEW)
+                        this.invalidSignatures.put(signature, now + INVALID_MESSAGE_RECHECK_INTERVAL);
+
+                    continue;
+                }
+
+                // Same per-account limit as for unconfirmed CHAT transactions. Creator might be allowed more later, so don't mark as invalid.
+                if (this.isRecentMessage(chatTransactionData.getTimestamp(), now)
+                        && this.countRecentMessagesByCreator(chatTransactionData.getCreatorPublicKey(), now) >= Settings.getInstance().getMaxRecentChatMessagesPerAccount()) {
+                    LOGGER.debug(() -> String.format("Ignoring CHAT message %s as creator has too many recent messages", Base58.encode(signature.value)));
+                    continue;
+                }
+
+                // Lite nodes can't easily validate proof-of-work difficulty, so for now we assume it is valid
+                if (!isLiteNode && !chatTransaction.isSignatureValid()) {
+                    LOGGER.debug(() -> String.format("Ignoring CHAT message %s with invalid signature", Base58.encode(signature.value)));
+                    this.invalidSignatures.put(signature, now + INVALID_MESSAGE_RECHECK_INTERVAL);
+                    continue;
+                }
+
+                this.saveChatTransaction(repository, chatTransactionData);
+                storedCount++;
+            }
+        } catch (DataException e) {
+            LOGGER.error("Repository issue while processing incoming chat messages", e);
+        }
+
+        if (storedCount > 0)
+            LOGGER.debug("Stored {} new chat message{} from peers", storedCount, (storedCount == 1 ? "" : "s"));
+    }
+
+    /** Notifies listeners of newly stored CHAT messages, and announces them to peers. */
+    private void announceNewMessages() {
+        if (this.newMessages.isEmpty())
+            return;
+
+        List<ChatTransactionData> chatTransactions = new ArrayList<>();
+        ChatTransactionData chatTransactionData;
+        while ((chatTransactionData = this.newMessages.poll()) != null)
+            chatTransactions.add(chatTransactionData);
+
+        for (ChatTransactionData newChatTransactionData : chatTransactions)
+            ChatNotifier.getInstance().onNewChatTransaction(newChatTransactionData);
+
+        List<byte[]> signatures = chatTransactions.stream().map(ChatTransactionData::getSignature).collect(Collectors.toList());
+
+        for (int i = 0; i < signatures.size(); i += MAX_SIGNATURES_PER_MESSAGE) {
+            List<byte[]> batch = signatures.subList(i, Math.min(i + MAX_SIGNATURES_PER_MESSAGE, signatures.size()));
+
+            // Older peers still exchange CHAT messages as unconfirmed transactions
+            Message chatMessageSignaturesMessage = new ChatMessageSignaturesMessage(batch);
+            Message transactionSignaturesMessage = new TransactionSignaturesMessage(batch);
+            Network.getInstance().broadcast(broadcastPeer -> isChatSyncPeer(broadcastPeer) ? chatMessageSignaturesMessage : transactionSignaturesMessage);
+        }
+    }
+
+
+    // Outgoing chat sync requests
+
+    private void requestChatMessages(long now) {
+        if (ChatRepositoryManager.getRepositoryFactory() == null)
+            return;
+
+        List<Peer> handshakedPeers = Network.getInstance().getImmutableHandshakedPeers();
+
+        // Forget about disconnected peers
+        this.peerChatStates.keySet().retainAll(handshakedPeers);
+
+        final long recentWindowStart = now - RECENT_WINDOW;
+        SignatureSketch recentSketch = null;
+
+        for (Peer peer : handshakedPeers) {
+            if (isStopping)
+                return;
+
+            if (!isChatSyncPeer(peer))
+                continue;
+
+            // New peers only need messages since we last caught up with someone else
+            PeerChatState peerChatState = this.peerChatStates.computeIfAbsent(peer, p -> new PeerChatState(Math.max(now - HISTORY_LOOKBACK, this.syncedUntil.get())));
+            if (peerChatState.isRequestInFlight || now < peerChatState.nextRequestTimestamp)
+                continue;
+
+            final Message requestMessage;
+            final boolean isHistoryRequest = peerChatState.syncedUntil < recentWindowStart;
+
+            if (isHistoryRequest) {
+                // Still catching up, so fetch next batch forwards from cursor
+                requestMessage = new GetChatMessagesMessage(peerChatState.syncedUntil, peerChatState.syncedUntilSignature, MAX_MESSAGES_PER_RESPONSE, Direction.FORWARDS);
+                peerChatState.nextRequestTimestamp = now + HISTORY_REQUEST_INTERVAL;
+            } else {
+                // Caught up, so ask peer for any recent messages we don't have
+                if (recentSketch == null)
+                    recentSketch = this.buildRecentSketch(recentWindowStart, RECENT_SKETCH_CELL_COUNT);
+
+                if (recentSketch == null)
+                    return;
+
+                requestMessage = new GetRecentChatMessagesMessage(recentWindowStart, recentSketch);
+                peerChatState.nextRequestTimestamp = now + RECENT_REQUEST_INTERVAL;
+            }
+
+            peerChatState.isRequestInFlight = true;
+            try {
+                this.syncExecutor.execute(() -> this.syncWithPeer(peer, peerChatState, requestMessage, isHistoryRequest, now));
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                peerChatState.isRequestInFlight = false;
+                return;
+            }
+        }
+    }
+
+    private SignatureSketch buildRecentSketch(long minTimestamp, int cellCount) {
+        try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+            SignatureSketch sketch = new SignatureSketch(cellCount);
+
+            for (byte[] signature : chatRepository.getChatRepository().getRecentSignatures(minTimestamp, null))
+                sketch.add(signature);
+
+            return sketch;
+        } catch (DataException e) {
+            LOGGER.error("Repository issue while fetching recent chat signatures", e);
+            return null;
+        }
+    }
+
+    private void syncWithPeer(Peer peer, PeerChatState peerChatState, Message requestMessage, boolean isHistoryRequest, long requestTimestamp) {
+        try {
+            Message response = peer.getResponseWithTimeout(requestMessage, RESPONSE_TIMEOUT);
+            if (!(response instanceof ChatMessagesMessage)) {
+                LOGGER.trace("No chat sync response from peer {}", peer);
+                return;
+            }
+
+            List<ChatTransactionData> chatTransactions = ((ChatMessagesMessage) response).getChatTransactions();
+            this.queueIncomingMessages(peer, chatTransactions);
+
+            if (!isHistoryRequest && chatTransactions.size() >= MAX_MESSAGES_PER_RESPONSE) {
+                // Too many differences to reconcile in one go, so fall back to fetching recent window by timestamp cursor
+                peerChatState.syncedUntil = requestTimestamp - RECENT_WINDOW;
+                peerChatState.syncedUntilSignature = null;
+                peerChatState.nextRequestTimestamp = requestTimestamp + HISTORY_REQUEST_INTERVAL;
+                return;
+            }
+
+            if (!isHistoryRequest || chatTransactions.size() < MAX_MESSAGES_PER_RESPONSE) {
+                // Peer has nothing newer than what we now have
+                peerChatState.syncedUntil = requestTimestamp;
+                peerChatState.syncedUntilSignature = null;
+                this.syncedUntil.accumulateAndGet(requestTimestamp, Math::max);
+                return;
+            }
+
+            // Continue from last message in batch, which peer sorts by timestamp then signature,
+            // so we don't skip, or repeatedly fetch, messages if a whole batch has the same timestamp
+            ChatTransactionData newestChatTransactionData = chatTransactions.get(chatTransactions.size() - 1);
+            peerChatState.syncedUntil = newestChatTransactionData.getTimestamp();
+            peerChatState.syncedUntilSignature = newestChatTransactionData.getSignature();
+        } catch (InterruptedException e) {
+            // Shutting down
+        } finally {
+            peerChatState.isRequestInFlight = false;
+        }
+    }
+
+    private void cleanup(long now) {
+        this.requestedSignatures.values().removeIf(requestTimestamp -> requestTimestamp < now - SIGNATURE_REQUEST_TIMEOUT);
+        this.invalidSignatures.values().removeIf(expiry -> expiry < now);
+
+        // Forget creators with no recent messages
+        this.recentMessagesByCreator.values().removeIf(recentMessages -> {
+            synchronized (recentMessages) {
+                pruneRecentMessages(recentMessages, now);
+                return recentMessages.isEmpty();
+            }
+        });
+    }
+
+
+    // Rate limiting
+
+    private boolean isRecentMessage(long timestamp, long now) {
+        return timestamp >= now - Settings.getInstance().getRecentChatMessagesMaxAge();
+    }
+
+    private void pruneRecentMessages(Map<ByteArray, Long> recentMessages, long now) {
+        recentMessages.values().removeIf(timestamp -> !this.isRecentMessage(timestamp, now));
+    }
+
+    /**
+     * Returns number of recent CHAT messages by creator, whether imported as unconfirmed transactions or received via chat sync.
+     * <p>
+     * Cost depends only on creator's own recent messages, which is bounded by
+     * {@link Settings#getMaxRecentChatMessagesPerAccount()}, rather than on size of unconfirmed pile.
+     */
+    public int countRecentMessagesByCreator(byte[] creatorPublicKey, long now) {
+        Map<ByteArray, Long> recentMessages = this.recentMessagesByCreator.get(ByteArray.wrap(creatorPublicKey));
+        if (recentMessages == null)
+            return 0;
+
+        synchronized (recentMessages) {
+            this.pruneRecentMessages(recentMessages, now);
+            return recentMessages.size();
+        }
+    }
+
+    private void recordRecentMessage(ChatTransactionData chatTransactionData) {
+        Long now = NTP.getTime();
+        if (now != null && !this.isRecentMessage(chatTransactionData.getTimestamp(), now))
+            return;
+
+        Map<ByteArray, Long> recentMessages = this.recentMessagesByCreator.computeIfAbsent(ByteArray.wrap(chatTransactionData.getCreatorPublicKey()), k -> new HashMap<>());
+
+        synchronized (recentMessages) {
+            recentMessages.put(ByteArray.wrap(chatTransactionData.getSignature()), chatTransactionData.getTimestamp());
+        }
+    }
+
+    /** Populates rate-limiting counters from messages received before we started. */
+    private void loadRecentMessages() {
+        Long now = NTP.getTime();
+        long minTimestamp = (now != null ? now : System.currentTimeMillis()) - Settings.getInstance().getRecentChatMessagesMaxAge();
+
+        try (final Repository repository = RepositoryManager.getRepository()) {
+            for (TransactionData transactionData : repository.getTransactionRepository().getUnconfirmedTransactions(TransactionType.CHAT, null))
+                if (transactionData instanceof ChatTransactionData)
+                    this.recordRecentMessage((ChatTransactionData) transactionData);
+        } catch (DataException e) {
+            LOGGER.error("Repository issue while loading recent unconfirmed chat messages", e);
+        }
+
+        if (ChatRepositoryManager.getRepositoryFactory() == null)
+            return;
+
+        try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+            for (ChatTransactionData chatTransactionData : chatRepository.getChatRepository().getChatTransactionsByTimestamp(minTimestamp, null, null, null, false))
+                this.recordRecentMessage(chatTransactionData);
+        } catch (DataException e) {
+            LOGGER.error("Repository issue while loading recent chat messages", e);
+        }
+    }
+
+
+    // Network handlers
+
+    public void onNetworkChatMessagesMessage(Peer peer, Message message) {
+        ChatMessagesMessage chatMessagesMessage = (ChatMessagesMessage) message;
+        this.queueIncomingMessages(peer, chatMessagesMessage.getChatTransactions());
+    }
+
+    public void onNetworkGetChatMessagesMessage(Peer peer, Message message) {
+        GetChatMessagesMessage getChatMessagesMessage = (GetChatMessagesMessage) message;
+        long timestamp = getChatMessagesMessage.getTimestamp();
+        byte[] signature = getChatMessagesMessage.getSignature();
+        int numberRequested = Math.min(getChatMessagesMessage.getNumberRequested(), MAX_MESSAGES_PER_RESPONSE);
+
+        if (numberRequested <= 0 || ChatRepositoryManager.getRepositoryFactory() == null)
+            return;
+
+        try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+            List<ChatTransactionData> chatTransactions;
+
+            if (getChatMessagesMessage.getDirection() == Direction.FORWARDS)
+                chatTransactions = chatRepository.getChatRepository().getChatTransactionsByTimestamp(timestamp, null, signature, numberRequested, false);
+            else
+                chatTransactions = chatRepository.getChatRepository().getChatTransactionsByTimestamp(null, timestamp, signature, numberRequested, true);
+
+            Message chatMessagesMessage = new ChatMessagesMessage(chatTransactions);
+            chatMessagesMessage.setId(message.getId());
+            if (!peer.sendMessage(chatMessagesMessage))
+                peer.disconnect("failed to send chat messages");
+        } catch (DataException e) {
+            LOGGER.error(String.format("Repository issue while sending chat messages to peer %s", peer), e);
+        } catch (MessageException e) {
+            LOGGER.error(String.format("Message serialization issue while sending chat messages to peer %s", peer), e);
+        }
+    }
+
+    public void onNetworkGetChatMessageMessage(Peer peer, Message message) {
+        GetChatMessageMessage getChatMessageMessage = (GetChatMessageMessage) message;
+        byte[] signature = getChatMessageMessage.getSignature();
+
+        if (ChatRepositoryManager.getRepositoryFactory() == null)
+            return;
+
+        try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+            ChatTransactionData chatTransactionData = chatRepository.getChatRepository().getChatTransaction(signature);
+
+            if (chatTransactionData == null) {
+                LOGGER.debug(() -> String.format("Ignoring GET_CHAT_MESSAGE request from peer %s for unknown message %s", peer, Base58.encode(signature)));
+                return;
+            }
+
+            Message chatMessagesMessage = new ChatMessagesMessage(Collections.singletonList(chatTransactionData));
+            chatMessagesMessage.setId(message.getId());
+            if (!peer.sendMessage(chatMessagesMessage))
+                peer.disconnect("failed to send chat message");
+        } catch (DataException e) {
+            LOGGER.error(String.format("Repository issue while sending chat message %s to peer %s", Base58.encode(signature), peer), e);
+        } catch (MessageException e) {
+            LOGGER.error(String.format("Message serialization issue while sending chat message %s to peer %s", Base58.encode(signature), peer), e);
+        }
+    }
+
+    public void onNetworkGetRecentChatMessagesMessage(Peer peer, Message message) {
+        GetRecentChatMessagesMessage getRecentChatMessagesMessage = (GetRecentChatMessagesMessage) message;
+        SignatureSketch peersSketch = getRecentChatMessagesMessage.getSketch();
+
+        Long now = NTP.getTime();
+        if (now == null || ChatRepositoryManager.getRepositoryFactory() == null)
+            return;
+
+        // Use same window as peer, allowing for some clock drift, but don't let peer make us sketch our whole repository
+        final long minTimestamp = Math.max(getRecentChatMessagesMessage.getMinTimestamp(), now - 2 * RECENT_WINDOW);
+
+        try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+            List<byte[]> ourSignatures = chatRepository.getChatRepository().getRecentSignatures(minTimestamp, null);
+
+            SignatureSketch ourSketch = new SignatureSketch(peersSketch.getCellCount());
+            Map<Long, byte[]> ourSignaturesByShortId = new HashMap<>();
+            for (byte[] signature : ourSignatures) {
+                ourSketch.add(signature);
+                ourSignaturesByShortId.put(SignatureSketch.shortId(signature), signature);
+            }
+
+            SignatureSketch.Difference difference = ourSketch.subtract(peersSketch).decode();
+
+            List<ChatTransactionData> chatTransactions = new ArrayList<>();
+
+            if (difference.isComplete) {
+                for (Long shortId : difference.ourIds) {
+                    if (chatTransactions.size() >= MAX_MESSAGES_PER_RESPONSE)
+                        break;
+
+                    byte[] signature = ourSignaturesByShortId.get(shortId);
+                    if (signature == null)
+                        continue;
+
+                    ChatTransactionData chatTransactionData = chatRepository.getChatRepository().getChatTransaction(signature);
+                    if (chatTransactionData != null)
+                        chatTransactions.add(chatTransactionData);
+                }
+            } else {
+                // Too many differences to decode, so send oldest messages in window instead.
+                // A full response tells peer to fall back to fetching by timestamp cursor.
+                LOGGER.debug(() -> String.format("Unable to reconcile recent chat messages with peer %s, sending by timestamp", peer));
+                chatTransactions = chatRepository.getChatRepository().getChatTransactionsByTimestamp(minTimestamp, null, null, MAX_MESSAGES_PER_RESPONSE, false);
+            }
+
+            Message chatMessagesMessage = new ChatMessagesMessage(chatTransactions);
+            chatMessagesMessage.setId(message.getId());
+            if (!peer.sendMessage(chatMessagesMessage))
+                peer.disconnect("failed to send recent chat messages");
+        } catch (DataException e) {
+            LOGGER.error(String.format("Repository issue while sending recent chat messages to peer %s", peer), e);
+        } catch (MessageException e) {
+            LOGGER.error(String.format("Message serialization issue while sending recent chat messages to peer %s", peer), e);
+        }
+    }
+
+    public void onNetworkChatMessageSignaturesMessage(Peer peer, Message message) {
+        ChatMessageSignaturesMessage chatMessageSignaturesMessage = (ChatMessageSignaturesMessage) message;
+        List<byte[]> signatures = chatMessageSignaturesMessage.getSignatures();
+
+        Long now = NTP.getTime();
+        if (now == null || ChatRepositoryManager.getRepositoryFactory() == null)
+            return;
+
+        try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+            for (byte[] signature : signatures) {
+                ByteArray signatureKey = ByteArray.wrap(signature);
+
+                // Previously invalid, already queued, or recently requested from another peer?
+                if (this.invalidSignatures.containsKey(signatureKey) || this.incomingMessages.containsKey(signatureKey))
+                    continue;
+
+                if (this.requestedSignatures.putIfAbsent(signatureKey, now) != null)
+                    continue;
+
+                if (chatRepository.getChatRepository().exists(signature)) {
+                    this.requestedSignatures.remove(signatureKey);
+                    continue;
+                }
+
+                // Check isInterrupted() here and exit fast
+                if (Thread.currentThread().isInterrupted())
+                    return;
+
+                Message getChatMessageMessage = new GetChatMessageMessage(signature);
+                if (!peer.sendMessage(getChatMessageMessage)) {
+                    peer.disconnect("failed to request chat message");
+                    return;
+                }
+            }
+        } catch (DataException e) {
+            LOGGER.error(String.format("Repository issue while processing chat message signatures from peer %s", peer), e);
+        }
+    }
+
+
+    // Chat repository maintenance
+
+    /**
+     * Populates chat repository from main repository.
+     * <p>
+     * All CHAT transactions are copied if chat repository was freshly created.
+     * Group memberships are always refreshed, as main repository may have been bootstrapped since last run.
+     */
+    public void rebuildChatRepository(Repository repository) throws DataException {
+        if (ChatRepositoryManager.wasPristineAtOpen()) {
+            LOGGER.info("Copying chat messages into chat repository - this may take a while...");
+
+            int offset = 0;
+            int copiedCount = 0;
+            while (!Controller.isStopping()) {
+                List<byte[]> signatures = repository.getTransactionRepository().getSignaturesMatchingCriteria(TransactionType.CHAT,
+                        null, ConfirmationStatus.BOTH, REBUILD_BATCH_SIZE, offset, false);
+                if (signatures.isEmpty())
+                    break;
+
+                for (byte[] signature : signatures) {
+                    TransactionData transactionData = repository.getTransactionRepository().fromSignature(signature);
+                    if (transactionData instanceof ChatTransactionData && this.storeChatTransaction(repository, (ChatTransactionData) transactionData))
+                        copiedCount++;
+                }
+
+                offset += signatures.size();
+            }
+
+            LOGGER.info("Copied {} chat message{} into chat repository", copiedCount, (copiedCount == 1 ? "" : "s"));
+        }
+
+        List<GroupData> groups = repository.getGroupRepository().getAllGroups();
+        for (GroupData groupData : groups)
+            this.saveGroupMembers(repository, groupData.getGroupId());
+    }
+
+    /**
+     * Write-through of newly imported CHAT transaction into chat repository.
+     * <p>
+     * If message is new, listeners are notified and message is announced to peers.
+     * <p>
+     * Sender/recipient names are looked up using passed main <tt>repository</tt>.
+     * Does nothing if there is no chat repository, e.g. in some tools.
+     */
+    public void saveChatTransaction(Repository repository, ChatTransactionData chatTransactionData) throws DataException {
+        this.recordRecentMessage(chatTransactionData);
+
+        if (this.storeChatTransaction(repository, chatTransactionData))
+            // Notify listeners and peers from our own thread
+            this.newMessages.add(chatTransactionData);
+    }
+
+    /** Stores CHAT message in chat repository, returning whether it was new. */
+    private boolean storeChatTransaction(Repository repository, ChatTransactionData chatTransactionData) throws DataException {
+        if (ChatRepositoryManager.getRepositoryFactory() == null)
+            return false;
+
+        try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+            if (chatRepository.getChatRepository().exists(chatTransactionData.getSignature()))
+                return false;
+
+            String senderName = getFirstName(repository, chatTransactionData.getSender());
+            String recipientName = chatTransactionData.getRecipient() != null ? getFirstName(repository, chatTransactionData.getRecipient()) : null;
+
+            chatRepository.getChatRepository().save(chatTransactionData, senderName, recipientName);
+            chatRepository.saveChanges();
+        }
+
+        return true;
+    }
+
+    private static String getFirstName(Repository repository, String address) throws DataException {
+        List<NameData> names = repository.getNameRepository().getNamesByOwner(address);
+        if (names == null || names.isEmpty())
+            return null;
+
+        return names.get(0).getName();
+    }
+
+    /**
+     * Records that address's registered names have changed, e.g. name registered, renamed or bought.
+     * <p>
+     * Likely called mid-block-processing, so actual chat repository update
+     * is deferred until {@link #updateNames()}.
+     */
+    public void onNameChange(String address) {
+        this.pendingNameChanges.add(address);
+    }
+
+    /** Copies names of addresses changed in recently committed blocks into chat repository. */
+    public void updateNames() {
+        if (this.pendingNameChanges.isEmpty() || ChatRepositoryManager.getRepositoryFactory() == null)
+            return;
+
+        List<String> addresses = new ArrayList<>(this.pendingNameChanges);
+        this.pendingNameChanges.removeAll(addresses);
+
+        try (final Repository repository = RepositoryManager.getRepository();
+             final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+            for (String address : addresses)
+                chatRepository.getChatRepository().saveName(address, getFirstName(repository, address));
+
+            chatRepository.saveChanges();
+        } catch (DataException e) {
+            LOGGER.error("Repository issue while updating chat names", e);
+        }
+    }
+
+    /**
+     * Records that group's membership has changed.
+     * <p>
+     * Likely called mid-block-processing, so actual chat repository update
+     * is deferred until {@link #updateGroupMemberships()}.
+     */
+    public void onGroupMembershipChange(int groupId) {
+        this.pendingGroupMembershipChanges.add(groupId);
+    }
+
+    /** Copies membership of groups changed in recently committed blocks into chat repository. */
+    public void updateGroupMemberships() {
+        if (this.pendingGroupMembershipChanges.isEmpty() || ChatRepositoryManager.getRepositoryFactory() == null)
+            return;
+
+        List<Integer> groupIds = new ArrayList<>(this.pendingGroupMembershipChanges);
+        this.pendingGroupMembershipChanges.removeAll(groupIds);
+
+        try (final Repository repository = RepositoryManager.getRepository()) {
+            for (int groupId : groupIds)
+                this.saveGroupMembers(repository, groupId);
+        } catch (DataException e) {
+            LOGGER.error("Repository issue while updating chat group memberships", e);
+        }
+    }
+
+    private void saveGroupMembers(Repository repository, int groupId) throws DataException {
+        GroupData groupData = repository.getGroupRepository().fromGroupId(groupId);
+        String groupName = groupData != null ? groupData.getGroupName() : null;
+
+        List<String> members = groupData == null ? new ArrayList<>() : repository.getGroupRepository().getGroupMembers(groupId).stream()
+                .map(GroupMemberData::getMember)
+                .collect(Collectors.toList());
+
+        try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+            chatRepository.getChatRepository().saveGroupMembers(groupId, groupName, members);
+            chatRepository.saveChanges();
+        }
+    }
+
 }
@@ -1,16 +1,39 @@
 package org.qortal.controller;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.eclipse.jetty.websocket.api.Session;
 import org.qortal.data.chat.ChatMessage;
 import org.qortal.data.transaction.ChatTransactionData;
+import org.qortal.repository.ChatRepositoryManager;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.utils.DaemonThreadFactory;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Notifies websocket sessions of new CHAT messages.
+ * <p>
+ * Listeners are indexed by the group IDs and addresses they're interested in,
+ * so a new message only costs work for the sessions it's relevant to.
+ * <p>
+ * Notifications are delivered asynchronously, using a small shared thread pool,
+ * with a bounded queue per session. If a session falls behind, its oldest pending notifications are dropped.
+ * Listeners that re-read state on every notification (e.g. active chats) are coalesced to a single pending notification.
+ */
 public class ChatNotifier {
 
+	private static final Logger LOGGER = LogManager.getLogger(ChatNotifier.class);
+
+	/** Number of threads delivering notifications to listeners */
+	private static final int DISPATCH_THREAD_COUNT = 2;
+	/** Maximum number of undelivered notifications per session, before we start dropping the oldest */
+	private static final int MAX_PENDING_NOTIFICATIONS = 100;
+
 	private static ChatNotifier instance;
 
 	@FunctionalInterface
@@ -18,7 +41,96 @@ public class ChatNotifier {
 		void notify(ChatMessage chatMessage);
 	}
 
-	private Map<Session, Listener> listenersBySession = new HashMap<>();
+	/** Registered listener, with its queue of pending notifications. */
+	private class SessionListener {
+		private final Session session;
+		private final Listener listener;
+		private final boolean coalesce;
+		/** Index keys, for deregistration */
+		private Set<Integer> txGroupIds = Collections.emptySet();
+		private Set<String> addresses = Collections.emptySet();
+
+		/** Pending new-message notifications */
+		private final Deque<ChatMessage> pending = new ArrayDeque<>();
+		/** Whether group-membership change is pending. Kept separately so coalescing/dropping never loses it. Guarded by <tt>pending</tt>. */
+		private boolean isGroupMembershipChangePending = false;
+		/** Whether a drain task is queued or running */
+		private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+		private volatile boolean isClosed = false;
+
+		private SessionListener(Session session, Listener listener, boolean coalesce) {
+			this.session = session;
+			this.listener = listener;
+			this.coalesce = coalesce;
+		}
+
+		private void offer(ChatMessage chatMessage) {
+			if (this.isClosed)
+				return;
+
+			synchronized (this.pending) {
+				if (chatMessage == null) {
+					this.isGroupMembershipChangePending = true;
+				} else {
+					if (this.coalesce)
+						// Listener re-reads state anyway, so only latest message matters
+						this.pending.clear();
+					else if (this.pending.size() >= MAX_PENDING_NOTIFICATIONS) {
+						this.pending.poll();
+						LOGGER.debug(() -> String.format("Dropped chat notification for slow websocket session %s", this.session.getRemoteAddress()));
+					}
+
+					this.pending.add(chatMessage);
+				}
+			}
+
+			if (this.isScheduled.compareAndSet(false, true))
+				dispatchExecutor.execute(this::drain);
+		}
+
+		private void drain() {
+			while (!this.isClosed) {
+				ChatMessage chatMessage;
+
+				synchronized (this.pending) {
+					if (this.isGroupMembershipChangePending) {
+						// Delivered ahead of pending messages, so listener can update its groups first
+						this.isGroupMembershipChangePending = false;
+						chatMessage = null;
+					} else {
+						chatMessage = this.pending.poll();
+
+						if (chatMessage == null) {
+							this.isScheduled.set(false);
+							return;
+						}
+					}
+				}
+
+				try {
+					this.listener.notify(chatMessage);
+				} catch (RuntimeException e) {
+					LOGGER.debug(() -> String.format("Chat listener for websocket session %s failed", this.session.getRemoteAddress()), e);
+				}
+			}
+
+			this.isScheduled.set(false);
+		}
+	}
+
+	private final ExecutorService dispatchExecutor = Executors.newFixedThreadPool(DISPATCH_THREAD_COUNT, new DaemonThreadFactory("ChatNotifier"));
+
+	/** All registered listeners, so they can be deregistered by session. Also guards indexes below. */
+	private final Map<Session, SessionListener> listenersBySession = new HashMap<>();
+
+	/** Listeners interested in group messages, by txGroupId */
+	private final Map<Integer, Set<SessionListener>> listenersByGroupId = new HashMap<>();
+	/** Listeners interested in direct messages, by sender/recipient address */
+	private final Map<String, Set<SessionListener>> listenersByAddress = new HashMap<>();
+	/** Listeners interested in group-membership changes */
+	private final Set<SessionListener> groupMembershipListeners = new HashSet<>();
+	/** Listeners interested in everything */
+	private final Set<SessionListener> allMessagesListeners = new HashSet<>();
 
 	private ChatNotifier() {
 	}
@@ -30,34 +142,179 @@ public class ChatNotifier {
 		return instance;
 	}
 
+	/** Registers listener for all CHAT messages and group-membership changes. */
 	public void register(Session session, Listener listener) {
 		synchronized (this.listenersBySession) {
-			this.listenersBySession.put(session, listener);
+			SessionListener sessionListener = this.addSessionListener(session, listener, false);
+			this.allMessagesListeners.add(sessionListener);
+		}
+	}
+
+	/** Registers listener for group messages sent to <tt>txGroupId</tt>. */
+	public void registerForGroup(Session session, int txGroupId, Listener listener) {
+		synchronized (this.listenersBySession) {
+			SessionListener sessionListener = this.addSessionListener(session, listener, false);
+			this.indexGroups(sessionListener, Collections.singleton(txGroupId));
+		}
+	}
+
+	/** Registers listener for direct messages sent by, or to, any of <tt>addresses</tt>. */
+	public void registerForAddresses(Session session, Collection<String> addresses, Listener listener) {
+		synchronized (this.listenersBySession) {
+			SessionListener sessionListener = this.addSessionListener(session, listener, false);
+			this.indexAddresses(sessionListener, addresses);
+		}
+	}
+
+	/**
+	 * Registers listener for direct messages sent by, or to, <tt>address</tt>,
+	 * group messages sent to <tt>txGroupIds</tt>, i.e. groups <tt>address</tt> is a member of,
+	 * and group-membership changes.
+	 * <p>
+	 * Listener should call {@link #updateGroups(Session, Collection)} when notified of group-membership changes.
+	 * <p>
+	 * Pending notifications are coalesced, so listener should re-read state rather than rely on every message being delivered.
+	 */
+	public void registerForActiveChats(Session session, String address, Collection<Integer> txGroupIds, Listener listener) {
+		synchronized (this.listenersBySession) {
+			SessionListener sessionListener = this.addSessionListener(session, listener, true);
+			this.indexAddresses(sessionListener, Collections.singleton(address));
+			this.indexGroups(sessionListener, txGroupIds);
+			this.groupMembershipListeners.add(sessionListener);
+		}
+	}
+
+	/** Replaces group IDs that <tt>session</tt>'s listener is interested in, e.g. after group-membership change. */
+	public void updateGroups(Session session, Collection<Integer> txGroupIds) {
+		synchronized (this.listenersBySession) {
+			SessionListener sessionListener = this.listenersBySession.get(session);
+			if (sessionListener == null)
+				return;
+
+			for (Integer txGroupId : sessionListener.txGroupIds)
+				removeFromIndex(this.listenersByGroupId, txGroupId, sessionListener);
+
+			this.indexGroups(sessionListener, txGroupIds);
 		}
 	}
 
 	public void deregister(Session session) {
 		synchronized (this.listenersBySession) {
-			this.listenersBySession.remove(session);
+			SessionListener sessionListener = this.listenersBySession.remove(session);
+			if (sessionListener == null)
+				return;
+
+			sessionListener.isClosed = true;
+
+			for (Integer txGroupId : sessionListener.txGroupIds)
+				removeFromIndex(this.listenersByGroupId, txGroupId, sessionListener);
+
+			for (String address : sessionListener.addresses)
+				removeFromIndex(this.listenersByAddress, address, sessionListener);
+
+			this.groupMembershipListeners.remove(sessionListener);
+			this.allMessagesListeners.remove(sessionListener);
 		}
 	}
 
+	private SessionListener addSessionListener(Session session, Listener listener, boolean coalesce) {
+		// Replace any existing registration for this session
+		this.deregister(session);
+
+		SessionListener sessionListener = new SessionListener(session, listener, coalesce);
+		this.listenersBySession.put(session, sessionListener);
+		return sessionListener;
+	}
+
+	private void indexGroups(SessionListener sessionListener, Collection<Integer> txGroupIds) {
+		sessionListener.txGroupIds = new HashSet<>(txGroupIds);
+
+		for (Integer txGroupId : sessionListener.txGroupIds)
+			this.listenersByGroupId.computeIfAbsent(txGroupId, k -> new HashSet<>()).add(sessionListener);
+	}
+
+	private void indexAddresses(SessionListener sessionListener, Collection<String> addresses) {
+		sessionListener.addresses = new HashSet<>(addresses);
+
+		for (String address : sessionListener.addresses)
+			this.listenersByAddress.computeIfAbsent(address, k -> new HashSet<>()).add(sessionListener);
+	}
+
+	private static <K> void removeFromIndex(Map<K, Set<SessionListener>> index, K key, SessionListener sessionListener) {
+		if (key == null)
+			return;
+
+		Set<SessionListener> listeners = index.get(key);
+		if (listeners == null)
+			return;
+
+		listeners.remove(sessionListener);
+
+		if (listeners.isEmpty())
+			index.remove(key);
+	}
+
+	public void onNewChatTransaction(ChatTransactionData chatTransactionData) {
+		Collection<SessionListener> sessionListeners = this.getListeners(chatTransactionData.getTxGroupId(),
+				chatTransactionData.getSender(), chatTransactionData.getRecipient());
+
+		// Don't bother building ChatMessage if nobody is interested
+		if (sessionListeners.isEmpty())
+			return;
+
+		ChatMessage chatMessage;
+
+		// Sender/recipient names come from chat repository, which was written to during import
+		try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+			chatMessage = chatRepository.getChatRepository().toChatMessage(chatTransactionData, ChatMessage.Encoding.BASE58);
+		} catch (DataException e) {
+			LOGGER.error("Chat repository issue while notifying new chat message", e);
+			return;
+		}
+
+		if (chatMessage == null)
+			return;
+
+		for (SessionListener sessionListener : sessionListeners)
+			sessionListener.offer(chatMessage);
+	}
+
 	public void onNewChatMessage(ChatMessage chatMessage) {
-		for (Listener listener : getAllListeners())
-			listener.notify(chatMessage);
+		for (SessionListener sessionListener : this.getListeners(chatMessage.getTxGroupId(), chatMessage.getSender(), chatMessage.getRecipient()))
+			sessionListener.offer(chatMessage);
 	}
 
 	public void onGroupMembershipChange() {
-		for (Listener listener : getAllListeners())
-			listener.notify(null);
+		List<SessionListener> sessionListeners;
+
+		synchronized (this.listenersBySession) {
+			sessionListeners = new ArrayList<>(this.groupMembershipListeners.size() + this.allMessagesListeners.size());
+			sessionListeners.addAll(this.groupMembershipListeners);
+			sessionListeners.addAll(this.allMessagesListeners);
+		}
+
+		for (SessionListener sessionListener : sessionListeners)
+			sessionListener.offer(null);
 	}
 
-	private Collection<Listener> getAllListeners() {
-		// Make a copy of listeners to both avoid concurrent modification
-		// and reduce synchronization time
+	/** Returns listeners interested in message with passed group ID, sender and recipient. */
+	private Collection<SessionListener> getListeners(int txGroupId, String sender, String recipient) {
+		Set<SessionListener> sessionListeners = new HashSet<>();
+
 		synchronized (this.listenersBySession) {
-			return new ArrayList<>(this.listenersBySession.values());
+			sessionListeners.addAll(this.allMessagesListeners);
+
+			if (recipient == null) {
+				// Group message
+				sessionListeners.addAll(this.listenersByGroupId.getOrDefault(txGroupId, Collections.emptySet()));
+			} else {
+				// Direct message
+				sessionListeners.addAll(this.listenersByAddress.getOrDefault(sender, Collections.emptySet()));
+				sessionListeners.addAll(this.listenersByAddress.getOrDefault(recipient, Collections.emptySet()));
+			}
 		}
+
+		return sessionListeners;
 	}
 
 }
@@ -23,7 +23,6 @@ import org.qortal.data.block.BlockSummaryData;
 import org.qortal.data.naming.NameData;
 import org.qortal.data.network.PeerData;
 import org.qortal.data.transaction.ArbitraryTransactionData;
-import org.qortal.data.transaction.ChatTransactionData;
 import org.qortal.data.transaction.TransactionData;
 import org.qortal.event.Event;
 import org.qortal.event.EventBus;
@@ -34,6 +33,7 @@ import org.qortal.network.Network;
 import org.qortal.network.Peer;
 import org.qortal.network.message.*;
 import org.qortal.repository.*;
+import org.qortal.repository.hsqldb.HSQLDBChatRepositoryFactory;
 import org.qortal.repository.hsqldb.HSQLDBRepositoryFactory;
 import org.qortal.settings.Settings;
 import org.qortal.transaction.Transaction;
@@ -82,6 +82,7 @@ public class Controller extends Thread {
 	private static final int MAX_BLOCKCHAIN_TIP_AGE = 5; // blocks
 	private static final Object shutdownLock = new Object();
 	private static final String repositoryUrlTemplate = "jdbc:hsqldb:file:%s" + File.separator + "blockchain;create=true;hsqldb.full_log_replay=true";
+	private static final String chatRepositoryUrlTemplate = "jdbc:hsqldb:file:%s" + File.separator + "chat;create=true;hsqldb.full_log_replay=true";
 	private static final long NTP_PRE_SYNC_CHECK_PERIOD = 5 * 1000L; // ms
 	private static final long NTP_POST_SYNC_CHECK_PERIOD = 5 * 60 * 1000L; // ms
 	private static final long DELETE_EXPIRED_INTERVAL = 5 * 60 * 1000L; // ms
@@ -294,6 +295,10 @@ public class Controller extends Thread {
 		return String.format(repositoryUrlTemplate, Settings.getInstance().getRepositoryPath());
 	}
 
+	public static String getChatRepositoryUrl() {
+		return String.format(chatRepositoryUrlTemplate, Settings.getInstance().getChatRepositoryPath());
+	}
+
 	public long getBuildTimestamp() {
 		return this.buildTimestamp;
 	}
@@ -418,6 +423,20 @@ public class Controller extends Thread {
 			return; // Not System.exit() so that GUI can display error
 		}
 
+		LOGGER.info("Starting chat repository");
+		try {
+			RepositoryFactory chatRepositoryFactory = new HSQLDBChatRepositoryFactory(getChatRepositoryUrl());
+			ChatRepositoryManager.setRepositoryFactory(chatRepositoryFactory);
+
+			try (final Repository repository = RepositoryManager.getRepository()) {
+				ChatManager.getInstance().rebuildChatRepository(repository);
+			}
+		} catch (DataException e) {
+			LOGGER.error("Unable to start chat repository", e);
+			Gui.getInstance().fatalError("Chat repository issue", e);
+			return; // Not System.exit() so that GUI can display error
+		}
+
 		// If we have a non-lite node, we need to perform some startup actions
 		if (!Settings.getInstance().isLite()) {
 
@@ -516,6 +535,9 @@ public class Controller extends Thread {
 		LOGGER.info("Starting transaction importer");
 		TransactionImporter.getInstance().start();
 
+		LOGGER.info("Starting chat manager");
+		ChatManager.getInstance().start();
+
 		// Auto-update service?
 		if (Settings.getInstance().isAutoUpdateEnabled()) {
 			LOGGER.info("Starting auto-update");
@@ -627,6 +649,7 @@ public class Controller extends Thread {
 					repositoryCheckpointTimestamp = now + repositoryCheckpointInterval;
 
 					RepositoryManager.setRequestedCheckpoint(Boolean.TRUE);
+					ChatRepositoryManager.setRequestedCheckpoint(Boolean.TRUE);
 				}
 
 				// Give repository a chance to backup (if enabled)
@@ -971,6 +994,9 @@ public class Controller extends Thread {
 				LOGGER.info("Shutting down transaction importer");
 				TransactionImporter.getInstance().shutdown();
 
+				LOGGER.info("Shutting down chat manager");
+				ChatManager.getInstance().shutdown();
+
 				if (blockMinter != null) {
 					LOGGER.info("Shutting down block minter");
 					blockMinter.shutdown();
@@ -1014,6 +1040,14 @@ public class Controller extends Thread {
 					LOGGER.error("Error occurred while shutting down repository", e);
 				}
 
+				try {
+					LOGGER.info("Shutting down chat repository");
+					if (ChatRepositoryManager.getRepositoryFactory() != null)
+						ChatRepositoryManager.closeRepositoryFactory();
+				} catch (DataException e) {
+					LOGGER.error("Error occurred while shutting down chat repository", e);
+				}
+
 				// Release the lock if we acquired it
 				if (blockchainLock.isHeldByCurrentThread()) {
 					blockchainLock.unlock();
@@ -1045,9 +1079,15 @@ public class Controller extends Thread {
 		 * and those listeners will be post-saveChanges() and hence see the new
 		 * group membership state.
 		 */
+		ChatManager.getInstance().onGroupMembershipChange(groupId);
 		this.notifyGroupMembershipChange = true;
 	}
 
+	public void onNameChange(String address) {
+		// As above, chat repository is only updated once block is committed, in onNewOrOrphanedBlock()
+		ChatManager.getInstance().onNameChange(address);
+	}
+
 	// Callbacks for/from network
 
 	public void doNetworkBroadcast() {
@@ -1192,8 +1232,11 @@ public class Controller extends Thread {
 		// Notify listeners, trade-bot, etc.
 		EventBus.INSTANCE.notify(eventConstructor.apply(blockDataCopy));
 
+		ChatManager.getInstance().updateNames();
+
 		if (this.notifyGroupMembershipChange) {
 			this.notifyGroupMembershipChange = false;
+			ChatManager.getInstance().updateGroupMemberships();
 			ChatNotifier.getInstance().onGroupMembershipChange();
 		}
 	}
@@ -1217,16 +1260,14 @@ public class Controller extends Thread {
 	 */
 	public void onNewTransaction(TransactionData transactionData) {
 		this.callbackExecutor.execute(() -> {
-			// Notify all peers
-			Message newTransactionSignatureMessage = new TransactionSignaturesMessage(Arrays.asList(transactionData.getSignature()));
-			Network.getInstance().broadcast(broadcastPeer -> newTransactionSignatureMessage);
+			// Notify all peers, unless CHAT, which ChatManager announces (and notifies chat listeners) itself
+			if (transactionData.getType() != TransactionType.CHAT) {
+				Message newTransactionSignatureMessage = new TransactionSignaturesMessage(Arrays.asList(transactionData.getSignature()));
+				Network.getInstance().broadcast(broadcastPeer -> newTransactionSignatureMessage);
+			}
 
 			// Notify listeners
 			EventBus.INSTANCE.notify(new NewTransactionEvent(transactionData));
-
-			// If this is a CHAT transaction, there may be extra listeners to notify
-			if (transactionData.getType() == TransactionType.CHAT)
-				ChatNotifier.getInstance().onNewChatTransaction((ChatTransactionData) transactionData);
 		});
 	}
 
@@ -1368,6 +1409,26 @@ public class Controller extends Thread {
 				onNetworkGetNameMessage(peer, message);
 				break;
 
+			case CHAT_MESSAGES:
+				ChatManager.getInstance().onNetworkChatMessagesMessage(peer, message);
+				break;
+
+			case GET_CHAT_MESSAGES:
+				ChatManager.getInstance().onNetworkGetChatMessagesMessage(peer, message);
+				break;
+
+			case CHAT_MESSAGE_SIGNATURES:
+				ChatManager.getInstance().onNetworkChatMessageSignaturesMessage(peer, message);
+				break;
+
+			case GET_CHAT_MESSAGE:
+				ChatManager.getInstance().onNetworkGetChatMessageMessage(peer, message);
+				break;
+
+			case GET_RECENT_CHAT_MESSAGES:
+				ChatManager.getInstance().onNetworkGetRecentChatMessagesMessage(peer, message);
+				break;
+
 			default:
 				LOGGER.debug(() -> String.format("Unhandled %s message [ID %d] from peer %s", message.getType().name(), message.getId(), peer));
 				break;
@@ -1,6 +1,5 @@
 package org.qortal.controller;
 
-import com.google.common.hash.HashCode;
 import com.google.common.primitives.Longs;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,6 +12,7 @@ import org.qortal.crypto.MemoryPoW;
 import org.qortal.crypto.Qortal25519Extras;
 import org.qortal.data.account.MintingAccountData;
 import org.qortal.data.account.RewardShareData;
+import org.qortal.data.block.BlockData;
 import org.qortal.data.network.OnlineAccountData;
 import org.qortal.network.Network;
 import org.qortal.network.Peer;
@@ -24,13 +24,18 @@ import org.qortal.repository.Repository;
 import org.qortal.repository.RepositoryManager;
 import org.qortal.settings.Settings;
 import org.qortal.utils.Base58;
+import org.qortal.utils.ByteArray;
 import org.qortal.utils.NTP;
 import org.qortal.utils.NamedThreadFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class OnlineAccountsManager {
@@ -66,6 +71,11 @@ public class OnlineAccountsManager {
 
     private static final long ONLINE_ACCOUNTS_COMPUTE_INITIAL_SLEEP_INTERVAL = 30 * 1000L; // ms
 
+    private static final long VERIFIED_NONCES_SAVE_INTERVAL = 10 * 60 * 1000L; // ms
+
+    /** Maximum number of reward-share public keys to look up per repository query */
+    private static final int REWARD_SHARE_LOOKUP_BATCH_SIZE = 1000;
+
     // MemoryPoW - mainnet
     public static final int POW_BUFFER_SIZE = 1 * 1024 * 1024; // bytes
     public static final int POW_DIFFICULTY_V1 = 18; // leading zero bits
@@ -76,23 +86,38 @@ public class OnlineAccountsManager {
     public static final int POW_DIFFICULTY_TESTNET = 5; // leading zero bits
 
     // IMPORTANT: if we ever need to dynamically modify the buffer size using a feature trigger, the
-    // pre-allocated buffer below will NOT work, and we should instead use a dynamically allocated
-    // one for the transition period.
-    private static long[] POW_VERIFY_WORK_BUFFER = new long[getPoWBufferSize() / 8];
+    // pre-allocated buffers below will NOT work, and we should instead use dynamically allocated
+    // ones for the transition period.
+    private static final ThreadLocal<long[]> POW_VERIFY_WORK_BUFFER = ThreadLocal.withInitial(() -> new long[getPoWBufferSize() / 8]);
 
     private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(4, new NamedThreadFactory("OnlineAccounts"));
+    /** For verifying signatures and nonces of incoming online accounts in parallel. Each thread has its own PoW work buffer. */
+    private final ExecutorService verificationExecutor = Executors.newFixedThreadPool(Settings.getInstance().getOnlineAccountsVerificationPoolSize(),
+            new NamedThreadFactory("OnlineAccountsVerification"));
     private volatile boolean isStopping = false;
 
     private final Set<OnlineAccountData> onlineAccountsImportQueue = ConcurrentHashMap.newKeySet();
 
     /**
      * Cache of 'current' online accounts, keyed by timestamp
+     * <p>
+     * Only modify using {@link #addCurrentAccount(OnlineAccountData)}, {@link #removeCurrentAccount(OnlineAccountData)}, etc.
+     * so that the leading-byte index and hashes below are kept up to date.
      */
     private final Map<Long, Set<OnlineAccountData>> currentOnlineAccounts = new ConcurrentHashMap<>();
+    /**
+     * Index of 'current' online accounts, keyed by timestamp, then leading byte of public key.
+     */
+    private final Map<Long, Map<Byte, Set<OnlineAccountData>>> currentOnlineAccountsByLeadingByte = new ConcurrentHashMap<>();
     /**
      * Cache of hash-summary of 'current' online accounts, keyed by timestamp, then leading byte of public key.
+     * <p>
+     * As each hash is an XOR of public keys, it is updated incrementally as accounts are added/removed.
+     * Hash arrays are replaced, never modified, so they can be safely read (e.g. serialized) by other threads.
      */
     private final Map<Long, Map<Byte, byte[]>> currentOnlineAccountsHashes = new ConcurrentHashMap<>();
+    /** Guards modifications to 'current' cache, index and hashes above, so they stay consistent with each other. */
+    private final Object currentOnlineAccountsLock = new Object();
 
     /**
      * Cache of online accounts for latest blocks - not necessarily 'current' / now.
@@ -100,10 +125,24 @@ public class OnlineAccountsManager {
      */
     private final SortedMap<Long, Set<OnlineAccountData>> latestBlocksOnlineAccounts = new ConcurrentSkipListMap<>();
 
+    /**
+     * Online accounts whose PoW nonces have been verified, kept for as long as blocks' online accounts nonces are checked,
+     * and saved across restarts.
+     */
+    private final OnlineAccountsNonceCache verifiedNonces = new OnlineAccountsNonceCache();
+
     private long lastOnlineAccountsRequest = 0;
 
     private boolean hasOurOnlineAccounts = false;
 
+    /**
+     * Cache of whether minting account (address) can mint, only valid for chain tip with signature <tt>canMintCacheTipSignature</tt>.
+     * Keyed by signature, rather than height, so that a same-height reorg also invalidates cache.
+     * Only accessed by import queue processing.
+     */
+    private final Map<String, Boolean> canMintCache = new HashMap<>();
+    private byte[] canMintCacheTipSignature = null;
+
     public static long getOnlineTimestampModulus() {
         Long now = NTP.getTime();
         if (now != null && now >= BlockChain.getInstance().getOnlineAccountsModulusV2Timestamp()) {
@@ -153,6 +192,15 @@ public class OnlineAccountsManager {
     }
 
     public void start() {
+        Path verifiedNoncesPath = getVerifiedNoncesPath();
+        if (verifiedNoncesPath != null) {
+            String verifiedNoncesMarker = getVerifiedNoncesMarker();
+            this.verifiedNonces.load(verifiedNoncesPath, verifiedNoncesMarker);
+            this.expireOldVerifiedNonces();
+
+            executor.scheduleAtFixedRate(() -> this.verifiedNonces.save(verifiedNoncesPath, verifiedNoncesMarker), VERIFIED_NONCES_SAVE_INTERVAL, VERIFIED_NONCES_SAVE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
         // Expire old online accounts signatures
         executor.scheduleAtFixedRate(this::expireOldOnlineAccounts, ONLINE_ACCOUNTS_TASKS_INTERVAL, ONLINE_ACCOUNTS_TASKS_INTERVAL, TimeUnit.MILLISECONDS);
 
@@ -171,6 +219,28 @@ public class OnlineAccountsManager {
     public void shutdown() {
         isStopping = true;
         executor.shutdownNow();
+        verificationExecutor.shutdownNow();
+
+        Path verifiedNoncesPath = getVerifiedNoncesPath();
+        if (verifiedNoncesPath != null)
+            this.verifiedNonces.save(verifiedNoncesPath, getVerifiedNoncesMarker());
+    }
+
+    private static Path getVerifiedNoncesPath() {
+        String cachePath = Settings.getInstance().getOnlineAccountsNonceCachePath();
+        if (cachePath == null || cachePath.isEmpty())
+            return null;
+
+        return Paths.get(cachePath);
+    }
+
+    /** Returns marker identifying network and PoW parameters that cached nonces were verified against. */
+    private static String getVerifiedNoncesMarker() {
+        if (Settings.getInstance().isTestNet())
+            return String.format("testnet:%d:%d", POW_BUFFER_SIZE_TESTNET, POW_DIFFICULTY_TESTNET);
+
+        return String.format("mainnet:%d:%d:%d:%d", POW_BUFFER_SIZE, POW_DIFFICULTY_V1, POW_DIFFICULTY_V2,
+                BlockChain.getInstance().getIncreaseOnlineAccountsDifficultyTimestamp());
     }
 
     // Testing support
@@ -199,7 +269,7 @@ public class OnlineAccountsManager {
             replacementAccounts.add(ourOnlineAccountData);
         }
 
-        this.currentOnlineAccounts.clear();
+        this.clearCurrentAccounts();
         addAccounts(replacementAccounts);
     }
 
@@ -212,6 +282,7 @@ public class OnlineAccountsManager {
 
         LOGGER.debug("Processing online accounts import queue (size: {})", this.onlineAccountsImportQueue.size());
 
+        List<OnlineAccountData> onlineAccountsToVerify = new ArrayList<>();
         Set<OnlineAccountData> onlineAccountsToAdd = new HashSet<>();
         Set<OnlineAccountData> onlineAccountsToRemove = new HashSet<>();
         try (final Repository repository = RepositoryManager.getRepository()) {
@@ -227,17 +298,31 @@ public class OnlineAccountsManager {
                     continue;
                 }
 
-                boolean isValid = this.isValidCurrentAccount(repository, onlineAccountData);
-                if (isValid)
-                    onlineAccountsToAdd.add(onlineAccountData);
-
                 // Don't remove from the queue yet - we'll do this at the end of the process
                 // This prevents duplicates being added to the queue whilst it's being processed
                 onlineAccountsToRemove.add(onlineAccountData);
+
+                // Cheap checks first, so only plausible accounts need repository lookups and expensive verification
+                if (isValidTimestamp(onlineAccountData))
+                    onlineAccountsToVerify.add(onlineAccountData);
             }
+
+            if (onlineAccountsToVerify.isEmpty())
+                return;
+
+            // Repository checks, done in bulk
+            onlineAccountsToVerify = this.filterByMintingRewardShare(repository, onlineAccountsToVerify);
+
+            // Signature and nonce checks, done in parallel
+            boolean[] isValid = this.verifyInParallel(onlineAccountsToVerify, this::isValidSignatureAndNonce, false);
+
+            for (int i = 0; i < isValid.length; ++i)
+                if (isValid[i])
+                    onlineAccountsToAdd.add(onlineAccountsToVerify.get(i));
         } catch (DataException e) {
             LOGGER.error("Repository issue while verifying online accounts", e);
-
+        } catch (InterruptedException e) {
+            // Shutting down
         } finally {
             if (!onlineAccountsToAdd.isEmpty()) {
                 LOGGER.debug("Merging {} validated online accounts from import queue", onlineAccountsToAdd.size());
@@ -247,6 +332,120 @@ public class OnlineAccountsManager {
         }
     }
 
+    /**
+     * Returns those online accounts that are reward-shares whose minting account can currently mint.
+     * <p>
+     * Reward-shares are fetched in a single query, and minting-account results are cached per chain tip,
+     * as the same minters show up with every online timestamp.
+     */
+    private List<OnlineAccountData> filterByMintingRewardShare(Repository repository, List<OnlineAccountData> onlineAccounts) throws DataException {
+        // Same reward-share can be online for more than one timestamp
+        List<byte[]> rewardSharePublicKeys = onlineAccounts.stream()
+                .map(onlineAccountData -> ByteArray.wrap(onlineAccountData.getPublicKey()))
+                .distinct()
+                .map(byteArray -> byteArray.value)
+                .collect(Collectors.toList());
+
+        Map<ByteArray, RewardShareData> rewardSharesByPublicKey = new HashMap<>();
+        for (int i = 0; i < rewardSharePublicKeys.size(); i += REWARD_SHARE_LOOKUP_BATCH_SIZE) {
+            List<byte[]> batch = rewardSharePublicKeys.subList(i, Math.min(i + REWARD_SHARE_LOOKUP_BATCH_SIZE, rewardSharePublicKeys.size()));
+
+            for (RewardShareData rewardShareData : repository.getAccountRepository().getRewardSharesByPublicKeys(batch))
+                rewardSharesByPublicKey.put(ByteArray.wrap(rewardShareData.getRewardSharePublicKey()), rewardShareData);
+        }
+
+        // Minting ability only changes with blocks
+        BlockData chainTip = Controller.getInstance().getChainTip();
+        byte[] chainTipSignature = chainTip != null ? chainTip.getSignature() : null;
+        if (chainTipSignature == null || !Arrays.equals(chainTipSignature, this.canMintCacheTipSignature)) {
+            this.canMintCache.clear();
+            this.canMintCacheTipSignature = chainTipSignature;
+        }
+
+        List<OnlineAccountData> mintingOnlineAccounts = new ArrayList<>(onlineAccounts.size());
+
+        for (OnlineAccountData onlineAccountData : onlineAccounts) {
+            byte[] rewardSharePublicKey = onlineAccountData.getPublicKey();
+
+            // Qortal: check online account is actually reward-share
+            RewardShareData rewardShareData = rewardSharesByPublicKey.get(ByteArray.wrap(rewardSharePublicKey));
+            if (rewardShareData == null) {
+                // Reward-share doesn't even exist - probably not a good sign
+                LOGGER.trace(() -> String.format("Rejecting unknown online reward-share public key %s", Base58.encode(rewardSharePublicKey)));
+                continue;
+            }
+
+            String minter = rewardShareData.getMinter();
+            Boolean canMint = this.canMintCache.get(minter);
+            if (canMint == null) {
+                canMint = new Account(repository, minter).canMint();
+                this.canMintCache.put(minter, canMint);
+            }
+
+            if (!canMint) {
+                // Minting-account component of reward-share can no longer mint - disregard
+                LOGGER.trace(() -> String.format("Rejecting online reward-share with non-minting account %s", minter));
+                continue;
+            }
+
+            mintingOnlineAccounts.add(onlineAccountData);
+        }
+
+        return mintingOnlineAccounts;
+    }
+
+    /**
+     * Verifies passed online accounts using <tt>verifier</tt>, in parallel, using {@link #verificationExecutor}.
+     * <p>
+     * Accounts are interleaved across one batch per worker. Each worker uses its own PoW work buffer.
+     * <p>
+     * If <tt>stopOnInvalid</tt> is true, verification stops at the first invalid account,
+     * leaving remaining accounts marked invalid.
+     *
+     * @return array of whether each online account is valid, in same order as <tt>onlineAccounts</tt>
+     */
+    private boolean[] verifyInParallel(List<OnlineAccountData> onlineAccounts, Predicate<OnlineAccountData> verifier,
+                                       boolean stopOnInvalid) throws InterruptedException {
+        boolean[] isValid = new boolean[onlineAccounts.size()];
+        AtomicBoolean hasInvalid = new AtomicBoolean(false);
+
+        int batchCount = Math.min(Settings.getInstance().getOnlineAccountsVerificationPoolSize(), onlineAccounts.size());
+        List<Callable<Void>> batches = new ArrayList<>(batchCount);
+
+        for (int b = 0; b < batchCount; ++b) {
+            final int firstIndex = b;
+
+            batches.add(() -> {
+                for (int i = firstIndex; i < onlineAccounts.size(); i += batchCount) {
+                    if (isStopping || (stopOnInvalid && hasInvalid.get()))
+                        break;
+
+                    isValid[i] = verifier.test(onlineAccounts.get(i));
+                    if (!isValid[i])
+                        hasInvalid.set(true);
+                }
+
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> future : this.verificationExecutor.invokeAll(batches)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    LOGGER.error("Unexpected issue while verifying online accounts", e.getCause());
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            throw new InterruptedException("Online accounts verification executor has shut down");
+        }
+
+        // Writes to isValid by workers happen-before invokeAll() returns
+        return isValid;
+    }
+
     /**
      * Check if supplied onlineAccountData is superior (i.e. has a nonce value) than existing record.
      * Two entries are considered equal even if the nonce differs, to prevent multiple variations
@@ -306,7 +505,7 @@ public class OnlineAccountsManager {
         return inplaceArray;
     }
 
-    private static boolean isValidCurrentAccount(Repository repository, OnlineAccountData onlineAccountData) throws DataException {
+    private static boolean isValidTimestamp(OnlineAccountData onlineAccountData) {
         final Long now = NTP.getTime();
         if (now == null)
             return false;
@@ -326,6 +525,13 @@ public class OnlineAccountsManager {
             return false;
         }
 
+        return true;
+    }
+
+    /** Verifies online account's signature and PoW nonce. Safe to call from multiple threads. */
+    private boolean isValidSignatureAndNonce(OnlineAccountData onlineAccountData) {
+        byte[] rewardSharePublicKey = onlineAccountData.getPublicKey();
+
         // Verify signature
         byte[] data = Longs.toByteArray(onlineAccountData.getTimestamp());
         boolean isSignatureValid = Qortal25519Extras.verifyAggregated(rewardSharePublicKey, onlineAccountData.getSignature(), data);
@@ -334,75 +540,38 @@ public class OnlineAccountsManager {
             return false;
         }
 
-        // Qortal: check online account is actually reward-share
-        RewardShareData rewardShareData = repository.getAccountRepository().getRewardShare(rewardSharePublicKey);
-        if (rewardShareData == null) {
-            // Reward-share doesn't even exist - probably not a good sign
-            LOGGER.trace(() -> String.format("Rejecting unknown online reward-share public key %s", Base58.encode(rewardSharePublicKey)));
+        // Validate mempow
+        if (!this.isValidNonce(onlineAccountData)) {
+            LOGGER.trace(() -> String.format("Rejecting online reward-share %s due to invalid PoW nonce", Base58.encode(rewardSharePublicKey)));
             return false;
         }
 
-        Account mintingAccount = new Account(repository, rewardShareData.getMinter());
-        if (!mintingAccount.canMint()) {
-            // Minting-account component of reward-share can no longer mint - disregard
-            LOGGER.trace(() -> String.format("Rejecting online reward-share with non-minting account %s", mintingAccount.getAddress()));
-            return false;
-        }
+        return true;
+    }
 
-        // Validate mempow
-        if (!getInstance().verifyMemoryPoW(onlineAccountData, POW_VERIFY_WORK_BUFFER)) {
-            LOGGER.trace(() -> String.format("Rejecting online reward-share for account %s due to invalid PoW nonce", mintingAccount.getAddress()));
+    /** Verifies online account's PoW nonce, unless already verified, using current thread's work buffer. Safe to call from multiple threads. */
+    private boolean isValidNonce(OnlineAccountData onlineAccountData) {
+        if (this.verifiedNonces.isVerified(onlineAccountData))
+            return true;
+
+        if (!this.verifyMemoryPoW(onlineAccountData, POW_VERIFY_WORK_BUFFER.get()))
             return false;
-        }
 
+        this.verifiedNonces.add(onlineAccountData);
         return true;
     }
 
-    /** Adds accounts, maybe rebuilds hashes, returns whether any new accounts were added / hashes rebuilt. */
+    /** Adds accounts, updating hashes, returns whether any new accounts were added / hashes changed. */
     private boolean addAccounts(Collection<OnlineAccountData> onlineAccountsToAdd) {
-        // For keeping track of which hashes to rebuild
-        Map<Long, Set<Byte>> hashesToRebuild = new HashMap<>();
+        boolean hasInfoChanged = false;
 
-        for (OnlineAccountData onlineAccountData : onlineAccountsToAdd) {
-            boolean isNewEntry = this.addAccount(onlineAccountData);
+        for (OnlineAccountData onlineAccountData : onlineAccountsToAdd)
+            hasInfoChanged |= this.addAccount(onlineAccountData);
 
-            if (isNewEntry)
-                hashesToRebuild.computeIfAbsent(onlineAccountData.getTimestamp(), k -> new HashSet<>()).add(onlineAccountData.getPublicKey()[0]);
-        }
-
-        if (hashesToRebuild.isEmpty())
+        if (!hasInfoChanged)
             return false;
 
-        for (var entry : hashesToRebuild.entrySet()) {
-            Long timestamp = entry.getKey();
-
-            LOGGER.trace(() -> String.format("Rehashing for timestamp %d and leading bytes %s",
-                            timestamp,
-                            entry.getValue().stream().sorted(Byte::compareUnsigned).map(leadingByte -> String.format("%02x", leadingByte)).collect(Collectors.joining(", "))
-                    )
-            );
-
-            for (Byte leadingByte : entry.getValue()) {
-                byte[] pubkeyHash = currentOnlineAccounts.get(timestamp).stream()
-                        .map(OnlineAccountData::getPublicKey)
-                        .filter(publicKey -> leadingByte == publicKey[0])
-                        .reduce(null, OnlineAccountsManager::xorByteArrayInPlace);
-
-                currentOnlineAccountsHashes.computeIfAbsent(timestamp, k -> new ConcurrentHashMap<>()).put(leadingByte, pubkeyHash);
-
-                LOGGER.trace(() -> String.format("Rebuilt hash %s for timestamp %d and leading byte %02x using %d public keys",
-                        HashCode.fromBytes(pubkeyHash),
-                        timestamp,
-                        leadingByte,
-                        currentOnlineAccounts.get(timestamp).stream()
-                                .map(OnlineAccountData::getPublicKey)
-                                .filter(publicKey -> leadingByte == publicKey[0])
-                                .count()
-                ));
-            }
-        }
-
-        LOGGER.trace(String.format("we have online accounts for timestamps: %s", String.join(", ", this.currentOnlineAccounts.keySet().stream().map(l -> Long.toString(l)).collect(Collectors.joining(", ")))));
+        LOGGER.trace(() -> String.format("we have online accounts for timestamps: %s", this.currentOnlineAccounts.keySet().stream().map(l -> Long.toString(l)).collect(Collectors.joining(", "))));
 
         return true;
     }
@@ -411,14 +580,12 @@ public class OnlineAccountsManager {
         byte[] rewardSharePublicKey = onlineAccountData.getPublicKey();
         long onlineAccountTimestamp = onlineAccountData.getTimestamp();
 
-        Set<OnlineAccountData> onlineAccounts = this.currentOnlineAccounts.computeIfAbsent(onlineAccountTimestamp, k -> ConcurrentHashMap.newKeySet());
-
         boolean isSuperiorEntry = isOnlineAccountsDataSuperior(onlineAccountData);
         if (isSuperiorEntry)
             // Remove existing inferior entry so it can be re-added below (it's likely the existing copy is missing a nonce value)
-            onlineAccounts.removeIf(a -> Objects.equals(a.getPublicKey(), onlineAccountData.getPublicKey()));
+            this.removeCurrentAccountsByPublicKey(onlineAccountTimestamp, rewardSharePublicKey);
 
-        boolean isNewEntry = onlineAccounts.add(onlineAccountData);
+        boolean isNewEntry = this.addCurrentAccount(onlineAccountData);
 
         if (isNewEntry)
             LOGGER.trace(() -> String.format("Added online account %s with timestamp %d", Base58.encode(rewardSharePublicKey), onlineAccountTimestamp));
@@ -428,6 +595,84 @@ public class OnlineAccountsManager {
         return isNewEntry;
     }
 
+    /** Adds account to 'current' cache, its leading-byte index, and updates corresponding hash. Returns whether account was added. */
+    private boolean addCurrentAccount(OnlineAccountData onlineAccountData) {
+        final long timestamp = onlineAccountData.getTimestamp();
+        final byte[] publicKey = onlineAccountData.getPublicKey();
+        final Byte leadingByte = publicKey[0];
+
+        // Set, index and hash must be updated together
+        synchronized (this.currentOnlineAccountsLock) {
+            Set<OnlineAccountData> onlineAccounts = this.currentOnlineAccounts.computeIfAbsent(timestamp, k -> ConcurrentHashMap.newKeySet());
+            if (!onlineAccounts.add(onlineAccountData))
+                return false;
+
+            this.currentOnlineAccountsByLeadingByte.computeIfAbsent(timestamp, k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(leadingByte, k -> ConcurrentHashMap.newKeySet())
+                    .add(onlineAccountData);
+
+            this.currentOnlineAccountsHashes.computeIfAbsent(timestamp, k -> new ConcurrentHashMap<>())
+                    .compute(leadingByte, (k, hash) -> xorByteArrayInPlace(hash == null ? null : hash.clone(), publicKey));
+        }
+
+        return true;
+    }
+
+    /** Removes account from 'current' cache, its leading-byte index, and updates corresponding hash. Returns whether account was removed. */
+    private boolean removeCurrentAccount(OnlineAccountData onlineAccountData) {
+        final long timestamp = onlineAccountData.getTimestamp();
+        final byte[] publicKey = onlineAccountData.getPublicKey();
+        final Byte leadingByte = publicKey[0];
+
+        synchronized (this.currentOnlineAccountsLock) {
+            Set<OnlineAccountData> onlineAccounts = this.currentOnlineAccounts.get(timestamp);
+            if (onlineAccounts == null || !onlineAccounts.remove(onlineAccountData))
+                return false;
+
+            Map<Byte, Set<OnlineAccountData>> onlineAccountsByLeadingByte = this.currentOnlineAccountsByLeadingByte.get(timestamp);
+            Map<Byte, byte[]> hashes = this.currentOnlineAccountsHashes.get(timestamp);
+            if (onlineAccountsByLeadingByte == null || hashes == null)
+                // Shouldn't happen, as added accounts are always indexed and hashed
+                return true;
+
+            Set<OnlineAccountData> leadingByteOnlineAccounts = onlineAccountsByLeadingByte.getOrDefault(leadingByte, Collections.emptySet());
+            leadingByteOnlineAccounts.remove(onlineAccountData);
+
+            if (leadingByteOnlineAccounts.isEmpty()) {
+                // No public keys left to hash
+                onlineAccountsByLeadingByte.remove(leadingByte);
+                hashes.remove(leadingByte);
+            } else {
+                // XOR is its own inverse
+                hashes.compute(leadingByte, (k, hash) -> xorByteArrayInPlace(hash.clone(), publicKey));
+            }
+        }
+
+        return true;
+    }
+
+    /** Removes all 'current' entries, for timestamp, with matching public key (regardless of nonce). */
+    private void removeCurrentAccountsByPublicKey(long timestamp, byte[] publicKey) {
+        Set<OnlineAccountData> leadingByteOnlineAccounts = this.currentOnlineAccountsByLeadingByte
+                .getOrDefault(timestamp, Collections.emptyMap())
+                .getOrDefault(publicKey[0], Collections.emptySet());
+
+        List<OnlineAccountData> matchingOnlineAccounts = leadingByteOnlineAccounts.stream()
+                .filter(onlineAccountData -> Arrays.equals(onlineAccountData.getPublicKey(), publicKey))
+                .collect(Collectors.toList());
+
+        for (OnlineAccountData onlineAccountData : matchingOnlineAccounts)
+            this.removeCurrentAccount(onlineAccountData);
+    }
+
+    private void clearCurrentAccounts() {
+        synchronized (this.currentOnlineAccountsLock) {
+            this.currentOnlineAccounts.clear();
+            this.currentOnlineAccountsByLeadingByte.clear();
+            this.currentOnlineAccountsHashes.clear();
+        }
+    }
+
     /**
      * Expire old entries.
      */
@@ -437,8 +682,23 @@ public class OnlineAccountsManager {
             return;
 
         final long cutoffThreshold = now - MAX_CACHED_TIMESTAMP_SETS * getOnlineTimestampModulus();
-        this.currentOnlineAccounts.keySet().removeIf(timestamp -> timestamp < cutoffThreshold);
-        this.currentOnlineAccountsHashes.keySet().removeIf(timestamp -> timestamp < cutoffThreshold);
+        synchronized (this.currentOnlineAccountsLock) {
+            this.currentOnlineAccounts.keySet().removeIf(timestamp -> timestamp < cutoffThreshold);
+            this.currentOnlineAccountsByLeadingByte.keySet().removeIf(timestamp -> timestamp < cutoffThreshold);
+            this.currentOnlineAccountsHashes.keySet().removeIf(timestamp -> timestamp < cutoffThreshold);
+        }
+
+        this.expireOldVerifiedNonces();
+    }
+
+    /** Forgets verified nonces for online accounts too old to be checked in new blocks. */
+    private void expireOldVerifiedNonces() {
+        final Long now = NTP.getTime();
+        if (now == null)
+            return;
+
+        // Blocks' online accounts timestamps can be up to one modulus before block timestamp
+        this.verifiedNonces.removeOlderThan(now - BlockChain.getInstance().getOnlineAccountSignaturesMinLifetime() - getOnlineTimestampModulus());
     }
 
     /**
@@ -610,7 +870,9 @@ public class OnlineAccountsManager {
             if (!hasInfoChanged)
                 return false;
 
-            Network.getInstance().broadcast(peer -> new OnlineAccountsV3Message(ourOnlineAccounts));
+            // Same message for all peers, so it's only serialized once
+            Message messageV3 = new OnlineAccountsV3Message(ourOnlineAccounts);
+            Network.getInstance().broadcast(peer -> messageV3);
 
             LOGGER.debug("Broadcasted {} online account{} with timestamp {}", ourOnlineAccounts.size(), (ourOnlineAccounts.size() != 1 ? "s" : ""), onlineAccountsTimestamp);
 
@@ -731,6 +993,45 @@ public class OnlineAccountsManager {
 
     // Block processing
 
+    /**
+     * Verifies memory-hard PoW nonces of block's online accounts, in parallel, using {@link #verificationExecutor}.
+     * <p>
+     * Nonces that have already been verified, e.g. via import queue or before a restart, aren't verified again.
+     * <p>
+     * Typically called by {@link Block#areOnlineAccountsValid()}
+     *
+     * @return true if all nonces are valid
+     */
+    public boolean verifyMemoryPoWs(Collection<OnlineAccountData> blocksOnlineAccounts) {
+        List<OnlineAccountData> onlineAccountsToVerify = blocksOnlineAccounts.stream()
+                .filter(onlineAccountData -> !this.verifiedNonces.isVerified(onlineAccountData))
+                .collect(Collectors.toList());
+
+        if (onlineAccountsToVerify.size() > 1 && Settings.getInstance().getOnlineAccountsVerificationPoolSize() > 1) {
+            try {
+                boolean[] isValid = this.verifyInParallel(onlineAccountsToVerify, this::isValidNonce, true);
+
+                // Workers give up early when shutting down, so results are only trustworthy otherwise
+                if (!isStopping) {
+                    for (boolean isAccountValid : isValid)
+                        if (!isAccountValid)
+                            return false;
+
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                // Block validity mustn't depend on interruption, so verify using this thread instead
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (OnlineAccountData onlineAccountData : onlineAccountsToVerify)
+            if (!this.isValidNonce(onlineAccountData))
+                return false;
+
+        return true;
+    }
+
     /**
      * Removes previously validated entries from block's online accounts.
      * <p>
@@ -783,7 +1084,7 @@ public class OnlineAccountsManager {
     // Utils
 
     public void removeAllOnlineAccounts() {
-        this.currentOnlineAccounts.clear();
+        this.clearCurrentAccounts();
     }
 
 
@@ -811,7 +1112,7 @@ public class OnlineAccountsManager {
 
                 LOGGER.trace(() -> String.format("Going to send all %d online accounts for timestamp %d", timestampsOnlineAccounts.size(), timestamp));
             } else {
-                // Quick cache of which leading bytes to send so we only have to filter once
+                // Which leading bytes to send
                 Set<Byte> outgoingLeadingBytes = new HashSet<>();
 
                 // We have entries for this timestamp so compare against peer's entries
@@ -828,9 +1129,9 @@ public class OnlineAccountsManager {
 
                 int beforeAddSize = outgoingOnlineAccounts.size();
 
-                this.currentOnlineAccounts.getOrDefault(timestamp, Collections.emptySet()).stream()
-                        .filter(account -> outgoingLeadingBytes.contains(account.getPublicKey()[0]))
-                        .forEach(outgoingOnlineAccounts::add);
+                Map<Byte, Set<OnlineAccountData>> onlineAccountsByLeadingByte = this.currentOnlineAccountsByLeadingByte.getOrDefault(timestamp, Collections.emptyMap());
+                for (Byte leadingByte : outgoingLeadingBytes)
+                    outgoingOnlineAccounts.addAll(onlineAccountsByLeadingByte.getOrDefault(leadingByte, Collections.emptySet()));
 
                 if (outgoingOnlineAccounts.size() > beforeAddSize)
                     LOGGER.trace(String.format("Going to send %d online accounts for timestamp %d and leading bytes %s",
@@ -0,0 +1,159 @@
+package org.qortal.controller;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.qortal.data.network.OnlineAccountData;
+import org.qortal.transform.Transformer;
+import org.qortal.utils.ByteArray;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Online accounts' memory-hard PoW nonces that have already been verified,
+ * keyed by online accounts timestamp, then reward-share public key.
+ * <p>
+ * Lets blocks' online accounts be validated without repeating PoW verification for accounts we've already seen,
+ * whether via the online accounts import queue, an earlier (possibly orphaned) block, or before a restart.
+ * <p>
+ * An entry only matches an online account with the same nonce.
+ * <p>
+ * Saved cache files are tagged with a caller-supplied marker, e.g. network and PoW parameters,
+ * and are ignored when loaded with a different marker.
+ */
+public class OnlineAccountsNonceCache {
+
+    private static final Logger LOGGER = LogManager.getLogger(OnlineAccountsNonceCache.class);
+
+    private static final int CACHE_FILE_VERSION = 2;
+
+    private final SortedMap<Long, Map<ByteArray, Integer>> noncesByTimestamp = new ConcurrentSkipListMap<>();
+
+    /** Whether cache has changed since last loaded/saved */
+    private volatile boolean isDirty = false;
+
+    /** Returns whether <tt>onlineAccountData</tt>'s nonce has already been verified. */
+    public boolean isVerified(OnlineAccountData onlineAccountData) {
+        Integer nonce = onlineAccountData.getNonce();
+        if (nonce == null)
+            return false;
+
+        Map<ByteArray, Integer> nonces = this.noncesByTimestamp.get(onlineAccountData.getTimestamp());
+        if (nonces == null)
+            return false;
+
+        return nonce.equals(nonces.get(ByteArray.wrap(onlineAccountData.getPublicKey())));
+    }
+
+    /** Records that <tt>onlineAccountData</tt>'s nonce is valid. */
+    public void add(OnlineAccountData onlineAccountData) {
+        Integer nonce = onlineAccountData.getNonce();
+        if (nonce == null || onlineAccountData.getPublicKey().length != Transformer.PUBLIC_KEY_LENGTH)
+            return;
+
+        this.noncesByTimestamp.computeIfAbsent(onlineAccountData.getTimestamp(), k -> new ConcurrentHashMap<>())
+                .put(ByteArray.wrap(onlineAccountData.getPublicKey()), nonce);
+
+        this.isDirty = true;
+    }
+
+    /** Removes entries for online accounts timestamps before <tt>minimumTimestamp</tt>. */
+    public void removeOlderThan(long minimumTimestamp) {
+        SortedMap<Long, Map<ByteArray, Integer>> expired = this.noncesByTimestamp.headMap(minimumTimestamp);
+        if (expired.isEmpty())
+            return;
+
+        expired.clear();
+        this.isDirty = true;
+    }
+
+    /** Returns total number of cached nonces. */
+    public int size() {
+        return this.noncesByTimestamp.values().stream().mapToInt(Map::size).sum();
+    }
+
+    // Persistence
+
+    /** Loads previously saved nonces from <tt>cacheFilePath</tt>, if present and saved with same <tt>marker</tt>. */
+    public void load(Path cacheFilePath, String marker) {
+        if (!Files.exists(cacheFilePath))
+            return;
+
+        int loadedCount = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFilePath)))) {
+            if (in.readInt() != CACHE_FILE_VERSION)
+                return;
+
+            String savedMarker = in.readUTF();
+            if (!savedMarker.equals(marker)) {
+                // Different network or PoW parameters, so none of these nonces can be trusted
+                LOGGER.info("Ignoring verified online accounts nonces saved for {}, as we're using {}", savedMarker, marker);
+                return;
+            }
+
+            int timestampCount = in.readInt();
+            for (int t = 0; t < timestampCount; ++t) {
+                long timestamp = in.readLong();
+                int count = in.readInt();
+
+                Map<ByteArray, Integer> nonces = this.noncesByTimestamp.computeIfAbsent(timestamp, k -> new ConcurrentHashMap<>());
+                for (int i = 0; i < count; ++i) {
+                    byte[] publicKey = new byte[Transformer.PUBLIC_KEY_LENGTH];
+                    in.readFully(publicKey);
+                    int nonce = in.readInt();
+
+                    nonces.putIfAbsent(ByteArray.wrap(publicKey), nonce);
+                    ++loadedCount;
+                }
+            }
+        } catch (IOException e) {
+            // Truncated or corrupt, but any entries loaded so far were valid when saved
+            LOGGER.info("Unable to fully load verified online accounts nonces: {}", e.getMessage());
+        }
+
+        LOGGER.debug("Loaded {} verified online accounts nonces", loadedCount);
+    }
+
+    /** Saves nonces to <tt>cacheFilePath</tt>, tagged with <tt>marker</tt>, if changed since last load/save. */
+    public void save(Path cacheFilePath, String marker) {
+        if (!this.isDirty)
+            return;
+
+        this.isDirty = false;
+
+        // Snapshot, as entries can be added while saving
+        SortedMap<Long, List<Map.Entry<ByteArray, Integer>>> snapshot = new TreeMap<>();
+        for (Map.Entry<Long, Map<ByteArray, Integer>> entry : this.noncesByTimestamp.entrySet())
+            snapshot.put(entry.getKey(), new ArrayList<>(entry.getValue().entrySet()));
+
+        Path tempFilePath = cacheFilePath.resolveSibling(cacheFilePath.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFilePath)))) {
+                out.writeInt(CACHE_FILE_VERSION);
+                out.writeUTF(marker);
+                out.writeInt(snapshot.size());
+
+                for (Map.Entry<Long, List<Map.Entry<ByteArray, Integer>>> timestampEntry : snapshot.entrySet()) {
+                    out.writeLong(timestampEntry.getKey());
+                    out.writeInt(timestampEntry.getValue().size());
+
+                    for (Map.Entry<ByteArray, Integer> nonceEntry : timestampEntry.getValue()) {
+                        out.write(nonceEntry.getKey().value);
+                        out.writeInt(nonceEntry.getValue());
+                    }
+                }
+            }
+
+            Files.move(tempFilePath, cacheFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.info("Unable to save verified online accounts nonces: {}", e.getMessage());
+            this.isDirty = true;
+        }
+    }
+
+}
@@ -25,12 +25,15 @@ import org.qortal.transaction.Transaction;
 import org.qortal.utils.Base58;
 import org.qortal.utils.ByteArray;
 import org.qortal.utils.NTP;
+import org.qortal.utils.NamedThreadFactory;
 
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
@@ -87,6 +90,12 @@ public class Synchronizer extends Thread {
 	public Long timeValidBlockLastReceived = null;
 	public Long timeInvalidBlockLastReceived = null;
 
+	/** Threads awaiting responses to pipelined block requests, one per request in pipeline's window */
+	private final ExecutorService blockFetchExecutor = Executors.newFixedThreadPool(Math.max(1, Settings.getInstance().getSyncPipelineWindow()),
+			new NamedThreadFactory("Synchronizer-fetch"));
+	/** Single thread for speculative checks of fetched blocks' online accounts, which discards work it can't keep up with */
+	private final ExecutorService blockPreverifyExecutor = BlockFetchPipeline.newPreverifyExecutor(Settings.getInstance().getSyncPipelineWindow());
+
 	private static Synchronizer instance;
 
 	public enum SynchronizationResult {
@@ -159,6 +168,8 @@ public class Synchronizer extends Thread {
 	public void shutdown() {
 		this.running = false;
 		this.interrupt();
+		this.blockFetchExecutor.shutdownNow();
+		this.blockPreverifyExecutor.shutdownNow();
 	}
 
 
@@ -1007,12 +1018,14 @@ public class Synchronizer extends Thread {
 					}
 
 					SynchronizationResult syncResult = null;
-					if (commonBlockHeight < ourInitialHeight) {
-						// Peer's chain is better, sync to that one
-						syncResult = syncToPeerChain(repository, commonBlockData, ourInitialHeight, peer, peerHeight, peerBlockSummaries);
-					} else {
-						// Simply fetch and apply blocks as they arrive
-						syncResult = applyNewBlocks(repository, commonBlockData, ourInitialHeight, peer, peerHeight, peerBlockSummaries);
+					try (BlockFetchPipeline blockFetchPipeline = this.newBlockFetchPipeline(peer, commonBlockData)) {
+						if (commonBlockHeight < ourInitialHeight) {
+							// Peer's chain is better, sync to that one
+							syncResult = syncToPeerChain(repository, blockFetchPipeline, commonBlockData, ourInitialHeight, peer, peerHeight, peerBlockSummaries);
+						} else {
+							// Simply fetch and apply blocks as they arrive
+							syncResult = applyNewBlocks(repository, blockFetchPipeline, commonBlockData, ourInitialHeight, peer, peerHeight, peerBlockSummaries);
+						}
 					}
 
 					if (syncResult != SynchronizationResult.OK)
@@ -1232,7 +1245,7 @@ public class Synchronizer extends Thread {
 		return SynchronizationResult.OK;
 	}
 
-	private SynchronizationResult syncToPeerChain(Repository repository, BlockData commonBlockData, int ourInitialHeight,
+	private SynchronizationResult syncToPeerChain(Repository repository, BlockFetchPipeline blockFetchPipeline, BlockData commonBlockData, int ourInitialHeight,
 												  Peer peer, final int peerHeight, List<BlockSummaryData> peerBlockSummaries) throws DataException, InterruptedException {
 		final int commonBlockHeight = commonBlockData.getHeight();
 		final byte[] commonBlockSig = commonBlockData.getSignature();
@@ -1251,7 +1264,9 @@ public class Synchronizer extends Thread {
 		List<byte[]> peerBlockSignatures = peerBlockSummaries.stream().map(BlockSummaryData::getSignature).collect(Collectors.toList());
 
 		// Keep a list of blocks received so far
-		List<Block> peerBlocks = new ArrayList<>();
+		List<BlockFetchPipeline.FetchedBlock> peerBlocks = new ArrayList<>();
+		// Loop below stops fetching blocks beyond this height
+		final int maxPeerBlockHeight = commonBlockHeight + MAXIMUM_COMMON_DELTA + 1;
 
 		// Calculate the total number of additional blocks this peer has beyond the common block
 		int additionalPeerBlocksAfterCommonBlock = peerHeight - commonBlockHeight;
@@ -1266,6 +1281,8 @@ public class Synchronizer extends Thread {
 		// from a small fork that didn't become part of the main chain. This causes the entire sync process to
 		// use syncToPeerChain(), resulting in potentially thousands of blocks being held in memory if the limit
 		// below isn't applied.
+		this.requestPeerBlocks(blockFetchPipeline, peerBlockSignatures, height, maxPeerBlockHeight);
+
 		while (height < peerHeight && peerBlocks.size() <= MAXIMUM_COMMON_DELTA) {
 			if (Controller.isStopping())
 				return SynchronizationResult.SHUTTING_DOWN;
@@ -1292,7 +1309,7 @@ public class Synchronizer extends Thread {
                     // If we have already received newer blocks from this peer that what we have already, go ahead and apply them
                     if (peerBlocks.size() > 0) {
 						final BlockData ourLatestBlockData = repository.getBlockRepository().getLastBlock();
-						final Block peerLatestBlock = peerBlocks.get(peerBlocks.size() - 1);
+						final Block peerLatestBlock = peerBlocks.get(peerBlocks.size() - 1).getBlock();
 						final Long minLatestBlockTimestamp = Controller.getMinimumLatestBlockTimestamp();
 						if (ourLatestBlockData != null && peerLatestBlock != null && minLatestBlockTimestamp != null) {
 
@@ -1317,6 +1334,8 @@ public class Synchronizer extends Thread {
 
 				numberSignaturesRequired = peerHeight - height - peerBlockSignatures.size();
 				LOGGER.trace(String.format("Received %s signature%s", peerBlockSignatures.size(), (peerBlockSignatures.size() != 1 ? "s" : "")));
+
+				this.requestPeerBlocks(blockFetchPipeline, peerBlockSignatures, height, maxPeerBlockHeight);
 			}
 
 			if (peerBlockSignatures.isEmpty()) {
@@ -1344,7 +1363,8 @@ public class Synchronizer extends Thread {
 			int nextHeight = height + 1;
 
 			LOGGER.trace(String.format("Fetching block %d, sig %.8s from %s", nextHeight, Base58.encode(nextPeerSignature), peer));
-			Block newBlock = this.fetchBlock(repository, peer, nextPeerSignature);
+			BlockFetchPipeline.FetchedBlock fetchedBlock = blockFetchPipeline.take(nextHeight, nextPeerSignature);
+			Block newBlock = this.toBlock(repository, fetchedBlock);
 
 			if (newBlock == null) {
 				LOGGER.info(String.format("Peer %s failed to respond with block for height %d, sig %.8s", peer,
@@ -1354,7 +1374,7 @@ public class Synchronizer extends Thread {
 					// If we have already received newer blocks from this peer that what we have already, go ahead and apply them
 					if (peerBlocks.size() > 0) {
 						final BlockData ourLatestBlockData = repository.getBlockRepository().getLastBlock();
-						final Block peerLatestBlock = peerBlocks.get(peerBlocks.size() - 1);
+						final Block peerLatestBlock = peerBlocks.get(peerBlocks.size() - 1).getBlock();
 						final Long minLatestBlockTimestamp = Controller.getMinimumLatestBlockTimestamp();
 						if (ourLatestBlockData != null && peerLatestBlock != null && minLatestBlockTimestamp != null) {
 
@@ -1379,6 +1399,7 @@ public class Synchronizer extends Thread {
 				} else {
 					// Re-fetch signatures, in case the peer is now on a different fork
 					peerBlockSignatures.clear();
+					blockFetchPipeline.clear();
 					numberSignaturesRequired = peerHeight - height;
 
 					// Retry until retryCount reaches maxRetries
@@ -1394,17 +1415,14 @@ public class Synchronizer extends Thread {
 
 			LOGGER.trace(String.format("Fetched block %d, sig %.8s from %s", nextHeight, Base58.encode(latestPeerSignature), peer));
 
-			if (!newBlock.isSignatureValid()) {
+			// Signatures already checked by fetching thread
+			if (!fetchedBlock.isSignatureValid()) {
 				LOGGER.info(String.format("Peer %s sent block with invalid signature for height %d, sig %.8s", peer,
 						nextHeight, Base58.encode(latestPeerSignature)));
 				return SynchronizationResult.INVALID_DATA;
 			}
 
-			// Transactions are transmitted without approval status so determine that now
-			for (Transaction transaction : newBlock.getTransactions())
-				transaction.setInitialApprovalStatus();
-
-			peerBlocks.add(newBlock);
+			peerBlocks.add(fetchedBlock);
 
 			// Now that we've received this block, we can increase our height and move on to the next one
 			latestPeerSignature = nextPeerSignature;
@@ -1438,13 +1456,36 @@ public class Synchronizer extends Thread {
 
 		LOGGER.debug(String.format("Orphaned blocks back to height %d, sig %.8s - applying new blocks from peer %s", commonBlockHeight, commonBlockSig58, peer));
 
-		for (Block newBlock : peerBlocks) {
+		for (BlockFetchPipeline.FetchedBlock fetchedBlock : peerBlocks) {
 			if (Controller.isStopping())
 				return SynchronizationResult.SHUTTING_DOWN;
 
+			Block newBlock = fetchedBlock.getBlock();
 			newBlock.preProcess();
 
 			ValidationResult blockResult = newBlock.isValid();
+			if (blockResult != ValidationResult.OK && fetchedBlock.getPeer() != peer) {
+				// Another peer's copy might have been tampered with, so don't hold it against block or sync peer
+				LOGGER.info(String.format("Peer %s sent invalid block for height %d, sig %.8s: %s - re-fetching from %s", fetchedBlock.getPeer(),
+						newBlock.getBlockData().getHeight(), Base58.encode(newBlock.getSignature()), blockResult.name(), peer));
+
+				BlockFetchPipeline.FetchedBlock refetchedBlock = blockFetchPipeline.refetchFromSyncPeer(fetchedBlock);
+				newBlock = this.toBlock(repository, refetchedBlock);
+
+				if (newBlock == null) {
+					LOGGER.info(String.format("Peer %s failed to respond with block sig %.8s", peer, Base58.encode(fetchedBlock.getBlock().getSignature())));
+					return SynchronizationResult.NO_REPLY;
+				}
+
+				if (!refetchedBlock.isSignatureValid()) {
+					LOGGER.info(String.format("Peer %s sent block with invalid signature, sig %.8s", peer, Base58.encode(newBlock.getSignature())));
+					return SynchronizationResult.INVALID_DATA;
+				}
+
+				newBlock.preProcess();
+				blockResult = newBlock.isValid();
+			}
+
 			if (blockResult != ValidationResult.OK) {
 				LOGGER.info(String.format("Peer %s sent invalid block for height %d, sig %.8s: %s", peer,
 						newBlock.getBlockData().getHeight(), Base58.encode(newBlock.getSignature()), blockResult.name()));
@@ -1481,7 +1522,7 @@ public class Synchronizer extends Thread {
 		return SynchronizationResult.OK;
 	}
 
-	private SynchronizationResult applyNewBlocks(Repository repository, BlockData commonBlockData, int ourInitialHeight,
+	private SynchronizationResult applyNewBlocks(Repository repository, BlockFetchPipeline blockFetchPipeline, BlockData commonBlockData, int ourInitialHeight,
 												 Peer peer, int peerHeight, List<BlockSummaryData> peerBlockSummaries) throws InterruptedException, DataException {
 		LOGGER.debug(String.format("Fetching new blocks from peer %s", peer));
 
@@ -1497,26 +1538,47 @@ public class Synchronizer extends Thread {
 		// Convert any block summaries from above into signatures to request from peer
 		List<byte[]> peerBlockSignatures = peerBlockSummaries.stream().map(BlockSummaryData::getSignature).collect(Collectors.toList());
 
+		// Height of last block requested from pipeline
+		int requestedHeight = ourHeight;
+		for (byte[] peerBlockSignature : peerBlockSignatures)
+			blockFetchPipeline.request(++requestedHeight, peerBlockSignature);
+
+		// Whether peer had no more signatures last time we asked, so we don't keep asking while we still have some
+		boolean isPeerOutOfSignatures = false;
+
 		while (ourHeight < peerHeight && ourHeight < maxBatchHeight) {
 			if (Controller.isStopping())
 				return SynchronizationResult.SHUTTING_DOWN;
 
-			// Do we need more signatures?
-			if (peerBlockSignatures.isEmpty()) {
-				int numberRequested = Math.min(maxBatchHeight - ourHeight, MAXIMUM_REQUEST_SIZE);
+			// Do we need more signatures? Ask before we run out, so block requests can keep ahead of block processing
+			if (peerBlockSignatures.isEmpty() || (!isPeerOutOfSignatures && requestedHeight < maxBatchHeight
+					&& peerBlockSignatures.size() < blockFetchPipeline.getWindow())) {
+				int numberRequested = Math.min(maxBatchHeight - requestedHeight, MAXIMUM_REQUEST_SIZE);
+				byte[] parentSignature = peerBlockSignatures.isEmpty() ? latestPeerSignature : peerBlockSignatures.get(peerBlockSignatures.size() - 1);
 
 				LOGGER.trace(String.format("Requesting %d signature%s after height %d, sig %.8s",
-						numberRequested, (numberRequested != 1 ? "s": ""), ourHeight, Base58.encode(latestPeerSignature)));
+						numberRequested, (numberRequested != 1 ? "s": ""), requestedHeight, Base58.encode(parentSignature)));
 
-				peerBlockSignatures = this.getBlockSignatures(peer, latestPeerSignature, numberRequested);
+				List<byte[]> moreBlockSignatures = this.getBlockSignatures(peer, parentSignature, numberRequested);
 
-				if (peerBlockSignatures == null || peerBlockSignatures.isEmpty()) {
-					LOGGER.info(String.format("Peer %s failed to respond with more block signatures after height %d, sig %.8s", peer,
-							ourHeight, Base58.encode(latestPeerSignature)));
-					return SynchronizationResult.NO_REPLY;
-				}
+				if (moreBlockSignatures == null || moreBlockSignatures.isEmpty()) {
+					if (peerBlockSignatures.isEmpty()) {
+						LOGGER.info(String.format("Peer %s failed to respond with more block signatures after height %d, sig %.8s", peer,
+								ourHeight, Base58.encode(latestPeerSignature)));
+						return SynchronizationResult.NO_REPLY;
+					}
 
-				LOGGER.trace(String.format("Received %s signature%s", peerBlockSignatures.size(), (peerBlockSignatures.size() != 1 ? "s" : "")));
+					// Carry on with the signatures we already have
+					isPeerOutOfSignatures = true;
+				} else {
+					LOGGER.trace(String.format("Received %s signature%s", moreBlockSignatures.size(), (moreBlockSignatures.size() != 1 ? "s" : "")));
+					isPeerOutOfSignatures = false;
+
+					for (byte[] peerBlockSignature : moreBlockSignatures) {
+						peerBlockSignatures.add(peerBlockSignature);
+						blockFetchPipeline.request(++requestedHeight, peerBlockSignature);
+					}
+				}
 			}
 
 			latestPeerSignature = peerBlockSignatures.get(0);
@@ -1524,7 +1586,8 @@ public class Synchronizer extends Thread {
 			++ourHeight;
 
 			LOGGER.trace(String.format("Fetching block %d, sig %.8s from %s", ourHeight, Base58.encode(latestPeerSignature), peer));
-			Block newBlock = this.fetchBlock(repository, peer, latestPeerSignature);
+			BlockFetchPipeline.FetchedBlock fetchedBlock = blockFetchPipeline.take(ourHeight, latestPeerSignature);
+			Block newBlock = this.toBlock(repository, fetchedBlock);
 			LOGGER.trace(String.format("Fetched block %d, sig %.8s from %s", ourHeight, Base58.encode(latestPeerSignature), peer));
 
 			if (newBlock == null) {
@@ -1533,19 +1596,40 @@ public class Synchronizer extends Thread {
 				return SynchronizationResult.NO_REPLY;
 			}
 
-			if (!newBlock.isSignatureValid()) {
+			// Signatures already checked by fetching thread
+			if (!fetchedBlock.isSignatureValid()) {
 				LOGGER.info(String.format("Peer %s sent block with invalid signature for height %d, sig %.8s", peer,
 						ourHeight, Base58.encode(latestPeerSignature)));
 				return SynchronizationResult.INVALID_DATA;
 			}
 
-			// Transactions are transmitted without approval status so determine that now
-			for (Transaction transaction : newBlock.getTransactions())
-				transaction.setInitialApprovalStatus();
-
 			newBlock.preProcess();
 
 			ValidationResult blockResult = newBlock.isValid();
+			if (blockResult != ValidationResult.OK && fetchedBlock.getPeer() != peer) {
+				// Another peer's copy might have been tampered with, so don't hold it against block or sync peer
+				LOGGER.info(String.format("Peer %s sent invalid block for height %d, sig %.8s: %s - re-fetching from %s", fetchedBlock.getPeer(),
+						ourHeight, Base58.encode(latestPeerSignature), blockResult.name(), peer));
+
+				fetchedBlock = blockFetchPipeline.refetchFromSyncPeer(fetchedBlock);
+				newBlock = this.toBlock(repository, fetchedBlock);
+
+				if (newBlock == null) {
+					LOGGER.info(String.format("Peer %s failed to respond with block for height %d, sig %.8s", peer,
+							ourHeight, Base58.encode(latestPeerSignature)));
+					return SynchronizationResult.NO_REPLY;
+				}
+
+				if (!fetchedBlock.isSignatureValid()) {
+					LOGGER.info(String.format("Peer %s sent block with invalid signature for height %d, sig %.8s", peer,
+							ourHeight, Base58.encode(latestPeerSignature)));
+					return SynchronizationResult.INVALID_DATA;
+				}
+
+				newBlock.preProcess();
+				blockResult = newBlock.isValid();
+			}
+
 			if (blockResult != ValidationResult.OK) {
 				LOGGER.info(String.format("Peer %s sent invalid block for height %d, sig %.8s: %s", peer,
 						ourHeight, Base58.encode(latestPeerSignature), blockResult.name()));
@@ -1612,10 +1696,56 @@ public class Synchronizer extends Thread {
 		return signaturesMessage.getSignatures();
 	}
 
-	private Block fetchBlock(Repository repository, Peer peer, byte[] signature) throws InterruptedException {
-		Message getBlockMessage = new GetBlockMessage(signature);
+	private BlockFetchPipeline newBlockFetchPipeline(Peer peer, BlockData commonBlockData) {
+		final int commonBlockHeight = commonBlockData.getHeight();
+		final byte[] commonBlockSig = commonBlockData.getSignature();
+
+		// Other peers that found the same common block, and have blocks beyond it, can help supply blocks
+		List<Peer> otherPeers = new ArrayList<>(Network.getInstance().getImmutableHandshakedPeers());
+		otherPeers.removeIf(otherPeer -> otherPeer == peer);
+		otherPeers.removeIf(Controller.hasMisbehaved);
+		otherPeers.removeIf(otherPeer -> {
+			CommonBlockData otherCommonBlockData = otherPeer.getCommonBlockData();
+			BlockSummaryData otherChainTipData = otherPeer.getChainTipData();
+
+			return otherCommonBlockData == null || otherCommonBlockData.getCommonBlockSummary() == null
+					|| !Arrays.equals(otherCommonBlockData.getCommonBlockSummary().getSignature(), commonBlockSig)
+					|| otherChainTipData == null || otherChainTipData.getHeight() <= commonBlockHeight;
+		});
+
+		LOGGER.debug(() -> String.format("Fetching blocks from peer %s with help from %d other peer%s", peer, otherPeers.size(), (otherPeers.size() != 1 ? "s" : "")));
+
+		return new BlockFetchPipeline(peer, otherPeers, Settings.getInstance().getSyncPipelineWindow(),
+				Settings.getInstance().getSyncPipelinePeerRequests(), this.blockFetchExecutor, this.blockPreverifyExecutor);
+	}
+
+	/** Queues fetches of blocks with <tt>peerBlockSignatures</tt>, which follow block at <tt>height</tt>, up to <tt>maxHeight</tt>. */
+	private void requestPeerBlocks(BlockFetchPipeline blockFetchPipeline, List<byte[]> peerBlockSignatures, int height, int maxHeight) {
+		for (byte[] peerBlockSignature : peerBlockSignatures) {
+			if (++height > maxHeight)
+				break;
+
+			blockFetchPipeline.request(height, peerBlockSignature);
+		}
+	}
+
+	/** Returns block from <tt>fetchedBlock</tt>, ready to use with <tt>repository</tt>, or null if peer didn't supply a block. */
+	private Block toBlock(Repository repository, BlockFetchPipeline.FetchedBlock fetchedBlock) throws DataException {
+		if (fetchedBlock == null || fetchedBlock.getBlock() == null)
+			return null;
+
+		Block block = fetchedBlock.getBlock();
+		block.setRepository(repository);
+
+		// Transactions are transmitted without approval status so determine that now
+		for (Transaction transaction : block.getTransactions())
+			transaction.setInitialApprovalStatus();
+
+		return block;
+	}
 
-		Message message = peer.getResponse(getBlockMessage);
+	/** Updates sync peer's failed sync count, given <tt>message</tt> in response to block request. */
+	/* package */ static void updateFailedSyncCount(Peer peer, Message message) {
 		if (message == null) {
 			peer.getPeerData().incrementFailedSyncCount();
 			if (peer.getPeerData().getFailedSyncCount() >= MAX_CONSECUTIVE_FAILED_SYNC_ATTEMPTS) {
@@ -1623,28 +1753,13 @@ public class Synchronizer extends Thread {
 				LOGGER.info("Marking peer {} as misbehaved due to {} failed sync attempts", peer, peer.getPeerData().getFailedSyncCount());
 				Network.getInstance().peerMisbehaved(peer);
 			}
-			return null;
+			return;
 		}
 
 		// Reset failed sync count now that we have a block response
 		// FUTURE: we could move this to the end of the sync process, but to reduce risk this can be done
 		// at a later stage. For now we are only defending against serialization errors or no responses.
 		peer.getPeerData().setFailedSyncCount(0);
-
-		switch (message.getType()) {
-			case BLOCK: {
-				BlockMessage blockMessage = (BlockMessage) message;
-				return new Block(repository, blockMessage.getBlockData(), blockMessage.getTransactions(), blockMessage.getAtStates());
-			}
-
-			case BLOCK_V2: {
-				BlockV2Message blockMessage = (BlockV2Message) message;
-				return new Block(repository, blockMessage.getBlockData(), blockMessage.getTransactions(), blockMessage.getAtStatesHash());
-			}
-
-			default:
-				return null;
-		}
 	}
 
 	public void populateBlockSummariesMinterLevels(Repository repository, List<BlockSummaryData> blockSummaries) throws DataException {
@@ -10,6 +10,7 @@ import org.qortal.network.message.GetTransactionMessage;
 import org.qortal.network.message.Message;
 import org.qortal.network.message.TransactionMessage;
 import org.qortal.network.message.TransactionSignaturesMessage;
+import org.qortal.repository.ChatRepositoryManager;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
 import org.qortal.repository.RepositoryManager;
@@ -17,9 +18,12 @@ import org.qortal.settings.Settings;
 import org.qortal.transaction.Transaction;
 import org.qortal.transform.TransformationException;
 import org.qortal.utils.Base58;
+import org.qortal.utils.ByteArray;
 import org.qortal.utils.NTP;
+import org.qortal.utils.NamedThreadFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
@@ -41,12 +45,26 @@ public class TransactionImporter extends Thread {
     public static final long EXPIRED_TRANSACTION_RECHECK_INTERVAL = 10 * 60 * 1000L; // ms
 
 
-    /** Map of incoming transaction that are in the import queue. Key is transaction data, value is whether signature has been validated. */
-    private final Map<TransactionData, Boolean> incomingTransactions = Collections.synchronizedMap(new HashMap<>());
+    /** Incoming transaction in the import queue, along with whether its signature has been validated. */
+    private static class IncomingTransaction {
+        private final TransactionData transactionData;
+        private volatile boolean isSigValid = false;
+
+        private IncomingTransaction(TransactionData transactionData) {
+            this.transactionData = transactionData;
+        }
+    }
+
+    /** Map of incoming transactions that are in the import queue. Key is transaction signature. */
+    private final Map<ByteArray, IncomingTransaction> incomingTransactions = new ConcurrentHashMap<>();
 
     /** Map of recent invalid unconfirmed transactions. Key is base58 transaction signature, value is do-not-request expiry timestamp. */
     private final Map<String, Long> invalidUnconfirmedTransactions = Collections.synchronizedMap(new HashMap<>());
 
+    /** Workers for checking signatures (and proof-of-work nonces) of incoming transactions */
+    private final ExecutorService validationExecutor = Executors.newFixedThreadPool(Settings.getInstance().getTransactionValidationPoolSize(),
+            new NamedThreadFactory("TransactionValidation"));
+
     /** Cached list of unconfirmed transactions, used when counting per creator. This is replaced regularly */
     public static List<TransactionData> unconfirmedTransactionsCache = null;
 
@@ -81,6 +99,7 @@ public class TransactionImporter extends Thread {
 
     public void shutdown() {
         isStopping = true;
+        this.validationExecutor.shutdownNow();
         this.interrupt();
     }
 
@@ -88,13 +107,11 @@ public class TransactionImporter extends Thread {
     // Incoming transactions queue
 
     private boolean incomingTransactionQueueContains(byte[] signature) {
-        synchronized (incomingTransactions) {
-            return incomingTransactions.keySet().stream().anyMatch(t -> Arrays.equals(t.getSignature(), signature));
-        }
+        return incomingTransactions.containsKey(ByteArray.wrap(signature));
     }
 
     private void removeIncomingTransaction(byte[] signature) {
-        incomingTransactions.keySet().removeIf(t -> Arrays.equals(t.getSignature(), signature));
+        incomingTransactions.remove(ByteArray.wrap(signature));
     }
 
     /**
@@ -102,17 +119,18 @@ public class TransactionImporter extends Thread {
      * @return a list of TransactionData objects, with valid signatures.
      */
     private List<TransactionData> getCachedSigValidTransactions() {
-        synchronized (this.incomingTransactions) {
-            return this.incomingTransactions.entrySet().stream()
-                    .filter(t -> Boolean.TRUE.equals(t.getValue()))
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toList());
-        }
+        return this.incomingTransactions.values().stream()
+                .filter(incomingTransaction -> incomingTransaction.isSigValid)
+                .map(incomingTransaction -> incomingTransaction.transactionData)
+                .collect(Collectors.toList());
     }
 
     /**
      * Validate the signatures of any transactions pending import, then update their
      * entries in the queue to mark them as valid/invalid.
+     * <p>
+     * Signature checks (including proof-of-work nonces, e.g. for CHAT) are fanned out
+     * across {@link #validationExecutor}, with bookkeeping done back on this thread.
      *
      * No database lock is required.
      */
@@ -122,105 +140,182 @@ public class TransactionImporter extends Thread {
             return;
         }
 
-        try (final Repository repository = RepositoryManager.getRepository()) {
-            // Take a snapshot of incomingTransactions, so we don't need to lock it while processing
-            Map<TransactionData, Boolean> incomingTransactionsCopy = Map.copyOf(this.incomingTransactions);
+        // Take a snapshot of incomingTransactions, so we aren't affected by concurrent changes while processing
+        List<IncomingTransaction> incomingTransactionsCopy = new ArrayList<>(this.incomingTransactions.values());
 
-            int unvalidatedCount = Collections.frequency(incomingTransactionsCopy.values(), Boolean.FALSE);
-            int validatedCount = 0;
+        int unvalidatedCount = (int) incomingTransactionsCopy.stream().filter(incomingTransaction -> !incomingTransaction.isSigValid).count();
 
-            if (unvalidatedCount > 0) {
-                LOGGER.debug("Validating signatures in incoming transactions queue (size {})...", unvalidatedCount);
+        if (unvalidatedCount > 0) {
+            LOGGER.debug("Validating signatures in incoming transactions queue (size {})...", unvalidatedCount);
+        }
+
+        // Number of pending transactions that have valid signatures, for logging purposes
+        int sigValidCount = 0;
+
+        // Transactions whose signatures need checking this round
+        List<IncomingTransaction> toValidate = new ArrayList<>();
+
+        boolean isLiteNode = Settings.getInstance().isLite();
+
+        // We need the latest block in order to check for expired transactions
+        BlockData latestBlock = Controller.getInstance().getChainTip();
+
+        for (IncomingTransaction incomingTransaction : incomingTransactionsCopy) {
+            // Quick exit?
+            if (isStopping) {
+                return;
             }
 
-            // A list of all currently pending transactions that have valid signatures
-            List<Transaction> sigValidTransactions = new ArrayList<>();
+            TransactionData transactionData = incomingTransaction.transactionData;
 
-            // A list of signatures that became valid in this round
-            List<byte[]> newlyValidSignatures = new ArrayList<>();
+            Long now = NTP.getTime();
+            if (now == null) {
+                return;
+            }
 
-            boolean isLiteNode = Settings.getInstance().isLite();
+            // Drop expired transactions before they are considered "sig valid"
+            if (latestBlock != null && Transaction.getDeadline(transactionData) <= latestBlock.getTimestamp()) {
+                String signature58 = Base58.encode(transactionData.getSignature());
+                LOGGER.debug("Removing expired {} transaction {} from import queue", transactionData.getType().name(), signature58);
+                removeIncomingTransaction(transactionData.getSignature());
+                invalidUnconfirmedTransactions.put(signature58, (now + EXPIRED_TRANSACTION_RECHECK_INTERVAL));
+                continue;
+            }
 
-            // We need the latest block in order to check for expired transactions
-            BlockData latestBlock = Controller.getInstance().getChainTip();
+            // Only validate signature if we haven't already done so
+            if (incomingTransaction.isSigValid) {
+                LOGGER.trace(() -> String.format("Transaction %s known to have valid signature", Base58.encode(transactionData.getSignature())));
+                sigValidCount++;
+                continue;
+            }
 
-            // Signature validation round - does not require blockchain lock
-            for (Map.Entry<TransactionData, Boolean> transactionEntry : incomingTransactionsCopy.entrySet()) {
-                // Quick exit?
-                if (isStopping) {
-                    return;
-                }
+            if (isLiteNode) {
+                // Lite nodes can't easily validate transactions, so for now we will have to assume that everything is valid
+                // Mark signature as valid (harmless if transaction has since left import queue)
+                incomingTransaction.isSigValid = true;
+                sigValidCount++;
+                continue;
+            }
+
+            toValidate.add(incomingTransaction);
+        }
+
+        if (toValidate.isEmpty()) {
+            return;
+        }
+
+        // Signature validation round - does not require blockchain lock
+        Boolean[] isSigValid;
+        try {
+            isSigValid = this.validateSignatures(toValidate.stream()
+                    .map(incomingTransaction -> incomingTransaction.transactionData)
+                    .collect(Collectors.toList()));
+        } catch (InterruptedException e) {
+            // Shutting down
+            return;
+        }
 
-                TransactionData transactionData = transactionEntry.getKey();
-                Transaction transaction = Transaction.fromData(repository, transactionData);
+        int validatedCount = 0;
+
+        for (int i = 0; i < toValidate.size(); ++i) {
+            IncomingTransaction incomingTransaction = toValidate.get(i);
+            TransactionData transactionData = incomingTransaction.transactionData;
+
+            if (isSigValid[i] == null) {
+                // Check wasn't completed, so leave in queue to try again next round
+                continue;
+            }
+
+            if (!isSigValid[i]) {
                 String signature58 = Base58.encode(transactionData.getSignature());
+                LOGGER.debug("Ignoring {} transaction {} with invalid signature", transactionData.getType().name(), signature58);
+                removeIncomingTransaction(transactionData.getSignature());
 
+                // Also add to invalidIncomingTransactions map
                 Long now = NTP.getTime();
-                if (now == null) {
-                    return;
+                if (now != null) {
+                    Long expiry = now + INVALID_TRANSACTION_RECHECK_INTERVAL;
+                    LOGGER.trace("Adding invalid transaction {} to invalidUnconfirmedTransactions...", signature58);
+                    // Add to invalidUnconfirmedTransactions so that we don't keep requesting it
+                    invalidUnconfirmedTransactions.put(signature58, expiry);
                 }
 
-                // Drop expired transactions before they are considered "sig valid"
-                if (latestBlock != null && transaction.getDeadline() <= latestBlock.getTimestamp()) {
-                    LOGGER.debug("Removing expired {} transaction {} from import queue", transactionData.getType().name(), signature58);
-                    removeIncomingTransaction(transactionData.getSignature());
-                    invalidUnconfirmedTransactions.put(signature58, (now + EXPIRED_TRANSACTION_RECHECK_INTERVAL));
-                    continue;
-                }
+                // We're done with this transaction
+                continue;
+            }
 
-                // Only validate signature if we haven't already done so
-                Boolean isSigValid = transactionEntry.getValue();
-                if (!Boolean.TRUE.equals(isSigValid)) {
-                    if (isLiteNode) {
-                        // Lite nodes can't easily validate transactions, so for now we will have to assume that everything is valid
-                        sigValidTransactions.add(transaction);
-                        newlyValidSignatures.add(transactionData.getSignature());
-                        // Add mark signature as valid if transaction still exists in import queue
-                        incomingTransactions.computeIfPresent(transactionData, (k, v) -> Boolean.TRUE);
-                        continue;
-                    }
+            // Count the number that were validated in this round, for logging purposes
+            validatedCount++;
+            sigValidCount++;
 
-                    if (!transaction.isSignatureValid()) {
-                        LOGGER.debug("Ignoring {} transaction {} with invalid signature", transactionData.getType().name(), signature58);
-                        removeIncomingTransaction(transactionData.getSignature());
-
-                        // Also add to invalidIncomingTransactions map
-                        now = NTP.getTime();
-                        if (now != null) {
-                            Long expiry = now + INVALID_TRANSACTION_RECHECK_INTERVAL;
-                            LOGGER.trace("Adding invalid transaction {} to invalidUnconfirmedTransactions...", signature58);
-                            // Add to invalidUnconfirmedTransactions so that we don't keep requesting it
-                            invalidUnconfirmedTransactions.put(signature58, expiry);
-                        }
+            // Mark signature as valid (harmless if transaction has since left import queue)
+            incomingTransaction.isSigValid = true;
+        }
 
-                        // We're done with this transaction
-                        continue;
-                    }
+        LOGGER.debug("Finished validating signatures in incoming transactions queue (valid this round: {}, total pending import: {})...", validatedCount, sigValidCount);
+    }
 
-                    // Count the number that were validated in this round, for logging purposes
-                    validatedCount++;
+    /**
+     * Checks signatures of passed transactions, in parallel, using {@link #validationExecutor}.
+     * <p>
+     * Transactions are split into one batch per worker, with each batch using its own repository
+     * as some checks (e.g. CHAT proof-of-work difficulty) need account data.
+     * Transactions whose check couldn't be completed, e.g. due to shutdown or repository issues,
+     * are reported as unchecked (null), rather than invalid, so they aren't wrongly discarded.
+     * Transactions whose check throws, e.g. due to malformed data, are reported as invalid,
+     * so they don't stay in the queue forever.
+     *
+     * @return array of whether each transaction's signature is valid, or null if unchecked, in same order as <tt>transactions</tt>
+     * @throws InterruptedException
+     */
+    public Boolean[] validateSignatures(List<TransactionData> transactions) throws InterruptedException {
+        Boolean[] isSigValid = new Boolean[transactions.size()];
 
-                    // Add mark signature as valid if transaction still exists in import queue
-                    incomingTransactions.computeIfPresent(transactionData, (k, v) -> Boolean.TRUE);
+        int batchCount = Math.min(Settings.getInstance().getTransactionValidationPoolSize(), transactions.size());
+        List<Callable<Void>> batches = new ArrayList<>(batchCount);
 
-                    // Signature validated in this round
-                    newlyValidSignatures.add(transactionData.getSignature());
+        for (int b = 0; b < batchCount; ++b) {
+            final int firstIndex = b;
 
-                } else {
-                    LOGGER.trace(() -> String.format("Transaction %s known to have valid signature", Base58.encode(transactionData.getSignature())));
+            batches.add(() -> {
+                try (final Repository repository = RepositoryManager.getRepository()) {
+                    // Interleave batches so that slow (e.g. proof-of-work) checks are spread across workers
+                    for (int i = firstIndex; i < transactions.size(); i += batchCount) {
+                        if (isStopping)
+                            break;
+
+                        try {
+                            Transaction transaction = Transaction.fromData(repository, transactions.get(i));
+                            isSigValid[i] = transaction.isSignatureValid();
+                        } catch (RuntimeException e) {
+                            // Transaction can't be checked, e.g. can't be serialized, so it never will be
+                            LOGGER.debug("Unable to check incoming transaction signature: {}", e.getMessage());
+                            isSigValid[i] = false;
+                        }
+                    }
+                } catch (DataException e) {
+                    LOGGER.error("Repository issue while validating incoming transaction signatures", e);
                 }
 
-                // Signature valid - add to shortlist
-                sigValidTransactions.add(transaction);
-            }
+                return null;
+            });
+        }
 
-            if (unvalidatedCount > 0) {
-                LOGGER.debug("Finished validating signatures in incoming transactions queue (valid this round: {}, total pending import: {})...", validatedCount, sigValidTransactions.size());
+        try {
+            for (Future<Void> future : this.validationExecutor.invokeAll(batches)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    LOGGER.error("Unexpected issue while validating incoming transaction signatures", e.getCause());
+                }
             }
-
-        } catch (DataException e) {
-            LOGGER.error("Repository issue while processing incoming transactions", e);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            throw new InterruptedException("Transaction validation executor has shut down");
         }
+
+        // Writes to isSigValid by workers happen-before invokeAll() returns
+        return isSigValid;
     }
 
     /**
@@ -298,8 +393,9 @@ public class TransactionImporter extends Thread {
                                 unconfirmedTransactionsCache.add(transactionData);
                             }
 
-                            // Signature imported in this round
-                            newlyImportedSignatures.add(transactionData.getSignature());
+                            // Signature imported in this round (CHAT transactions are announced by ChatManager)
+                            if (transactionData.getType() != Transaction.TransactionType.CHAT)
+                                newlyImportedSignatures.add(transactionData.getSignature());
 
                             break;
                         }
@@ -363,11 +459,7 @@ public class TransactionImporter extends Thread {
         TransactionData transactionData = transactionMessage.getTransactionData();
 
         if (this.incomingTransactions.size() < MAX_INCOMING_TRANSACTIONS) {
-            synchronized (this.incomingTransactions) {
-                if (!incomingTransactionQueueContains(transactionData.getSignature())) {
-                    this.incomingTransactions.put(transactionData, Boolean.FALSE);
-                }
-            }
+            this.incomingTransactions.putIfAbsent(ByteArray.wrap(transactionData.getSignature()), new IncomingTransaction(transactionData));
         }
     }
 
@@ -377,15 +469,21 @@ public class TransactionImporter extends Thread {
 
         try (final Repository repository = RepositoryManager.getRepository()) {
             // Firstly check the sig-valid transactions that are currently queued for import
-            TransactionData transactionData = this.getCachedSigValidTransactions().stream()
-                    .filter(t -> Arrays.equals(signature, t.getSignature()))
-                    .findFirst().orElse(null);
+            IncomingTransaction incomingTransaction = this.incomingTransactions.get(ByteArray.wrap(signature));
+            TransactionData transactionData = incomingTransaction != null && incomingTransaction.isSigValid ? incomingTransaction.transactionData : null;
 
             if (transactionData == null) {
                 // Not found in import queue, so try the database
                 transactionData = repository.getTransactionRepository().fromSignature(signature);
             }
 
+            if (transactionData == null && ChatRepositoryManager.getRepositoryFactory() != null) {
+                // Older peers fetch CHAT messages, received via chat sync, as transactions
+                try (final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+                    transactionData = chatRepository.getChatRepository().getChatTransaction(signature);
+                }
+            }
+
             if (transactionData == null) {
                 // Still not found - so we don't have this transaction
                 LOGGER.debug(() -> String.format("Ignoring GET_TRANSACTION request from peer %s for unknown transaction %s", peer, Base58.encode(signature)));
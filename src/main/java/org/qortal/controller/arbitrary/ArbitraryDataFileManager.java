@@ -4,6 +4,7 @@ import com.google.common.net.InetAddresses;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.arbitrary.ArbitraryDataFile;
+import org.qortal.arbitrary.ArbitraryDataFileDigestCache;
 import org.qortal.controller.Controller;
 import org.qortal.data.arbitrary.ArbitraryDirectConnectionInfo;
 import org.qortal.data.arbitrary.ArbitraryFileListResponseInfo;
@@ -21,8 +22,8 @@ import org.qortal.utils.ArbitraryTransactionUtils;
 import org.qortal.utils.Base58;
 import org.qortal.utils.NTP;
 
-import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
@@ -38,12 +39,12 @@ public class ArbitraryDataFileManager extends Thread {
     /**
      * Map to keep track of our in progress (outgoing) arbitrary data file requests
      */
-    public Map<String, Long> arbitraryDataFileRequests = Collections.synchronizedMap(new HashMap<>());
+    public final Map<String, Long> arbitraryDataFileRequests = new ConcurrentHashMap<>();
 
     /**
      * Map to keep track of hashes that we might need to relay
      */
-    public List<ArbitraryRelayInfo> arbitraryRelayMap = Collections.synchronizedList(new ArrayList<>());
+    private final ArbitraryRelayMap arbitraryRelayMap = new ArbitraryRelayMap();
 
     /**
      * List to keep track of any arbitrary data file hash responses
@@ -60,11 +61,14 @@ public class ArbitraryDataFileManager extends Thread {
      * Key = peer address string, value = time of last request.
      * This allows for additional "burst" connections beyond existing limits.
      */
-    private Map<String, Long> recentDataRequests = Collections.synchronizedMap(new HashMap<>());
+    private final Map<String, Long> recentDataRequests = new ConcurrentHashMap<>();
 
 
     public static int MAX_FILE_HASH_RESPONSES = 1000;
 
+    /** How often to save cached data file digests, if changed */
+    private static final long DIGEST_CACHE_SAVE_INTERVAL = 10 * 60 * 1000L; // ms
+
 
     private ArbitraryDataFileManager() {
     }
@@ -80,6 +84,10 @@ public class ArbitraryDataFileManager extends Thread {
     public void run() {
         Thread.currentThread().setName("Arbitrary Data File Manager");
 
+        ArbitraryDataFileDigestCache digestCache = ArbitraryDataFileDigestCache.getInstance();
+        digestCache.load();
+        long nextDigestCacheSave = System.currentTimeMillis() + DIGEST_CACHE_SAVE_INTERVAL;
+
         try {
             // Use a fixed thread pool to execute the arbitrary data file requests
             int threadCount = 5;
@@ -89,12 +97,18 @@ public class ArbitraryDataFileManager extends Thread {
             }
 
             while (!isStopping) {
-                // Nothing to do yet
                 Thread.sleep(1000);
+
+                if (System.currentTimeMillis() >= nextDigestCacheSave) {
+                    digestCache.save();
+                    nextDigestCacheSave = System.currentTimeMillis() + DIGEST_CACHE_SAVE_INTERVAL;
+                }
             }
         } catch (InterruptedException e) {
             // Fall-through to exit thread...
         }
+
+        digestCache.save();
     }
 
     public void shutdown() {
@@ -108,17 +122,17 @@ public class ArbitraryDataFileManager extends Thread {
             return;
         }
         final long requestMinimumTimestamp = now - ArbitraryDataManager.getInstance().ARBITRARY_REQUEST_TIMEOUT;
-        arbitraryDataFileRequests.entrySet().removeIf(entry -> entry.getValue() == null || entry.getValue() < requestMinimumTimestamp);
+        arbitraryDataFileRequests.values().removeIf(requestTimestamp -> requestTimestamp < requestMinimumTimestamp);
 
         final long relayMinimumTimestamp = now - ArbitraryDataManager.getInstance().ARBITRARY_RELAY_TIMEOUT;
-        arbitraryRelayMap.removeIf(entry -> entry == null || entry.getTimestamp() == null || entry.getTimestamp() < relayMinimumTimestamp);
+        arbitraryRelayMap.removeExpired(relayMinimumTimestamp);
         arbitraryDataFileHashResponses.removeIf(entry -> entry.getTimestamp() < relayMinimumTimestamp);
 
         final long directConnectionInfoMinimumTimestamp = now - ArbitraryDataManager.getInstance().ARBITRARY_DIRECT_CONNECTION_INFO_TIMEOUT;
         directConnectionInfo.removeIf(entry -> entry.getTimestamp() < directConnectionInfoMinimumTimestamp);
 
         final long recentDataRequestMinimumTimestamp = now - ArbitraryDataManager.getInstance().ARBITRARY_RECENT_DATA_REQUESTS_TIMEOUT;
-        recentDataRequests.entrySet().removeIf(entry -> entry.getValue() < recentDataRequestMinimumTimestamp);
+        recentDataRequests.values().removeIf(requestTimestamp -> requestTimestamp < recentDataRequestMinimumTimestamp);
     }
 
 
@@ -143,7 +157,7 @@ public class ArbitraryDataFileManager extends Thread {
             String hash58 = Base58.encode(hash);
             if (!arbitraryDataFile.chunkExists(hash)) {
                 // Only request the file if we aren't already requesting it from someone else
-                if (!arbitraryDataFileRequests.containsKey(Base58.encode(hash))) {
+                if (!arbitraryDataFileRequests.containsKey(hash58)) {
                     LOGGER.debug("Requesting data file {} from peer {}", hash58, peer);
                     Long startTime = NTP.getTime();
                     ArbitraryDataFile receivedArbitraryDataFile = fetchArbitraryDataFile(peer, null, arbitraryTransactionData, signature, hash, null);
@@ -200,7 +214,9 @@ public class ArbitraryDataFileManager extends Thread {
         // Fetch the file if it doesn't exist locally
         if (!fileAlreadyExists) {
             LOGGER.debug(String.format("Fetching data file %.8s from peer %s", hash58, peer));
-            arbitraryDataFileRequests.put(hash58, NTP.getTime());
+            // Concurrent map can't hold null, so fall back to zero, which is treated as expired
+            Long requestTimestamp = NTP.getTime();
+            arbitraryDataFileRequests.put(hash58, requestTimestamp != null ? requestTimestamp : 0L);
             Message getArbitraryDataFileMessage = new GetArbitraryDataFileMessage(signature, hash);
 
             Message response = null;
@@ -443,53 +459,22 @@ public class ArbitraryDataFileManager extends Thread {
 
     // Relays
 
-    private List<ArbitraryRelayInfo> getRelayInfoListForHash(String hash58) {
-        synchronized (arbitraryRelayMap) {
-            return arbitraryRelayMap.stream()
-                    .filter(relayInfo -> Objects.equals(relayInfo.getHash58(), hash58))
-                    .collect(Collectors.toList());
-        }
-    }
-
     private ArbitraryRelayInfo getOptimalRelayInfoEntryForHash(String hash58) {
         LOGGER.trace("Fetching relay info for hash: {}", hash58);
-        List<ArbitraryRelayInfo> relayInfoList = this.getRelayInfoListForHash(hash58);
-        if (relayInfoList != null && !relayInfoList.isEmpty()) {
 
-            // Remove any with null requestHops
-            relayInfoList.removeIf(r -> r.getRequestHops() == null);
-
-            // If list is now empty, then just return one at random
-            if (relayInfoList.isEmpty()) {
-                return this.getRandomRelayInfoEntryForHash(hash58);
-            }
-
-            // Sort by number of hops (lowest first)
-            relayInfoList.sort(Comparator.comparingInt(ArbitraryRelayInfo::getRequestHops));
-
-            // FUTURE: secondary sort by requestTime?
-
-            ArbitraryRelayInfo relayInfo = relayInfoList.get(0);
-
-            LOGGER.trace("Returning optimal relay info for hash: {} (requestHops {})", hash58, relayInfo.getRequestHops());
-            return relayInfo;
+        Long now = NTP.getTime();
+        if (now == null) {
+            return null;
         }
-        LOGGER.trace("No relay info exists for hash: {}", hash58);
-        return null;
-    }
-
-    private ArbitraryRelayInfo getRandomRelayInfoEntryForHash(String hash58) {
-        LOGGER.trace("Fetching random relay info for hash: {}", hash58);
-        List<ArbitraryRelayInfo> relayInfoList = this.getRelayInfoListForHash(hash58);
-        if (relayInfoList != null && !relayInfoList.isEmpty()) {
 
-            // Pick random item
-            int index = new SecureRandom().nextInt(relayInfoList.size());
-            LOGGER.trace("Returning random relay info for hash: {} (index {})", hash58, index);
-            return relayInfoList.get(index);
+        ArbitraryRelayInfo relayInfo = arbitraryRelayMap.getOptimal(hash58, now - ArbitraryDataManager.ARBITRARY_RELAY_TIMEOUT);
+        if (relayInfo == null) {
+            LOGGER.trace("No relay info exists for hash: {}", hash58);
+            return null;
         }
-        LOGGER.trace("No relay info exists for hash: {}", hash58);
-        return null;
+
+        LOGGER.trace("Returning optimal relay info for hash: {} (requestHops {})", hash58, relayInfo.getRequestHops());
+        return relayInfo;
     }
 
     public void addToRelayMap(ArbitraryRelayInfo newEntry) {
@@ -497,18 +482,11 @@ public class ArbitraryDataFileManager extends Thread {
             return;
         }
 
-        // Remove existing entry for this peer if it exists, to renew the timestamp
-        this.removeFromRelayMap(newEntry);
-
-        // Re-add
+        // Replaces existing entry for this peer if it exists, to renew the timestamp
         arbitraryRelayMap.add(newEntry);
         LOGGER.debug("Added entry to relay map: {}", newEntry);
     }
 
-    private void removeFromRelayMap(ArbitraryRelayInfo entry) {
-        arbitraryRelayMap.removeIf(relayInfo -> relayInfo.equals(entry));
-    }
-
 
     // Peers requesting QDN data from us
 
@@ -569,7 +547,15 @@ public class ArbitraryDataFileManager extends Thread {
             ArbitraryDataFile arbitraryDataFile = ArbitraryDataFile.fromHash(hash, signature);
             ArbitraryRelayInfo relayInfo = this.getOptimalRelayInfoEntryForHash(hash58);
 
-            if (arbitraryDataFile.exists()) {
+            // If we're already sending this peer as much bulk data as it can take, don't read yet another file to add to the backlog.
+            // Peer is better off asking someone else, so fall through to the quick 'file unknown' response below.
+            boolean isCongested = peer.isSendQueueCongested(MessageType.ARBITRARY_DATA_FILE);
+
+            if (isCongested) {
+                LOGGER.debug("Send queue to peer {} is congested, so not serving file {}", peer, hash58);
+            }
+
+            if (!isCongested && arbitraryDataFile.exists()) {
                 LOGGER.trace("Hash {} exists", hash58);
 
                 // We can serve the file directly as we already have it
@@ -584,7 +570,7 @@ public class ArbitraryDataFileManager extends Thread {
                     LOGGER.debug("Sent file {}", arbitraryDataFile);
                 }
             }
-            else if (relayInfo != null) {
+            else if (!isCongested && relayInfo != null) {
                 LOGGER.debug("We have relay info for hash {}", Base58.encode(hash));
                 // We need to ask this peer for the file
                 Peer peerToAsk = relayInfo.getPeer();
@@ -601,10 +587,11 @@ public class ArbitraryDataFileManager extends Thread {
                 }
             }
             else {
-                LOGGER.debug("Hash {} doesn't exist and we don't have relay info", hash58);
-
-                // We don't have this file
-                Controller.getInstance().stats.getArbitraryDataFileMessageStats.unknownFiles.getAndIncrement();
+                // We don't have this file, or can't send it right now
+                if (!isCongested) {
+                    LOGGER.debug("Hash {} doesn't exist and we don't have relay info", hash58);
+                    Controller.getInstance().stats.getArbitraryDataFileMessageStats.unknownFiles.getAndIncrement();
+                }
 
                 // Send valid, yet unexpected message type in response, so peer's synchronizer doesn't have to wait for timeout
                 LOGGER.debug(String.format("Sending 'file unknown' response to peer %s for GET_FILE request for unknown file %s", peer, arbitraryDataFile));
@@ -0,0 +1,93 @@
+package org.qortal.controller.arbitrary;
+
+import org.qortal.data.arbitrary.ArbitraryRelayInfo;
+
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Relay info for hashes that we might need to relay, indexed by hash.
+ * <p>
+ * Each hash has its own small list of relay entries (typically one per peer),
+ * kept sorted by number of request hops (lowest first, unknown last), then most recent first,
+ * so finding the optimal relay for a hash doesn't involve scanning entries for every other hash.
+ * <p>
+ * Per-hash lists are only accessed inside ConcurrentHashMap's compute methods, which serialize access per hash.
+ */
+public class ArbitraryRelayMap {
+
+    /** Fewest hops first, with unknown hops last, then most recently renewed first */
+    private static final Comparator<ArbitraryRelayInfo> RELAY_ORDER = Comparator
+            .comparing(ArbitraryRelayInfo::getRequestHops, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(ArbitraryRelayInfo::getTimestamp, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private final Map<String, List<ArbitraryRelayInfo>> relayInfoByHash = new ConcurrentHashMap<>();
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Adds relay entry, replacing any existing entry for the same hash, signature and peer, to renew its timestamp.
+     */
+    public void add(ArbitraryRelayInfo newEntry) {
+        this.relayInfoByHash.compute(newEntry.getHash58(), (hash58, relayInfoList) -> {
+            if (relayInfoList == null)
+                relayInfoList = new ArrayList<>(2);
+            else
+                relayInfoList.removeIf(relayInfo -> relayInfo.equals(newEntry));
+
+            // Insert in order
+            int index = Collections.binarySearch(relayInfoList, newEntry, RELAY_ORDER);
+            if (index < 0)
+                index = -index - 1;
+
+            relayInfoList.add(index, newEntry);
+
+            return relayInfoList;
+        });
+    }
+
+    /**
+     * Returns entry with fewest request hops for <tt>hash58</tt>,
+     * or a random entry if no entries have known hops,
+     * or null if there are no entries with timestamps at or after <tt>minimumTimestamp</tt>.
+     * <p>
+     * Expired entries for <tt>hash58</tt> are discarded along the way.
+     */
+    public ArbitraryRelayInfo getOptimal(String hash58, long minimumTimestamp) {
+        ArbitraryRelayInfo[] optimalRelayInfo = new ArbitraryRelayInfo[1];
+
+        this.relayInfoByHash.computeIfPresent(hash58, (k, relayInfoList) -> {
+            relayInfoList.removeIf(relayInfo -> relayInfo.getTimestamp() < minimumTimestamp);
+            if (relayInfoList.isEmpty())
+                return null;
+
+            ArbitraryRelayInfo first = relayInfoList.get(0);
+
+            if (first.getRequestHops() != null)
+                optimalRelayInfo[0] = first;
+            else
+                // None have known hops, so pick any
+                optimalRelayInfo[0] = relayInfoList.get(this.random.nextInt(relayInfoList.size()));
+
+            return relayInfoList;
+        });
+
+        return optimalRelayInfo[0];
+    }
+
+    /** Removes entries with timestamps older than <tt>minimumTimestamp</tt>. */
+    public void removeExpired(long minimumTimestamp) {
+        for (String hash58 : this.relayInfoByHash.keySet())
+            this.relayInfoByHash.computeIfPresent(hash58, (k, relayInfoList) -> {
+                relayInfoList.removeIf(relayInfo -> relayInfo.getTimestamp() < minimumTimestamp);
+                return relayInfoList.isEmpty() ? null : relayInfoList;
+            });
+    }
+
+    /** Returns number of hashes with relay entries. */
+    public int size() {
+        return this.relayInfoByHash.size();
+    }
+
+}
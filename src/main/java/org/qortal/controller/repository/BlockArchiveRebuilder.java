@@ -58,6 +58,7 @@ public class BlockArchiveRebuilder {
                     if (startHeight >= maximumArchiveHeight) {
                         // We've finished.
                         // Delete existing archive and move the newly built one into its place
+                        BlockArchiveReader.getInstance().releaseArchiveFiles();
                         FileUtils.deleteDirectory(originalArchivePath.toFile());
                         FileUtils.moveDirectory(newArchivePath.toFile(), originalArchivePath.toFile());
                         BlockArchiveReader.getInstance().invalidateFileListCache();
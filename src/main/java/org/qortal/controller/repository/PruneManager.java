@@ -5,6 +5,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.controller.Controller;
 import org.qortal.data.block.BlockData;
+import org.qortal.repository.BlockArchiveReader;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
 import org.qortal.settings.Settings;
@@ -108,15 +109,21 @@ public class PruneManager {
         this.executorService.execute(new BlockArchiver());
     }
 
-    private void deleteArchive() {
+    public void deleteArchive() {
         if (!Settings.getInstance().isTopOnly()) {
             LOGGER.error("Refusing to delete archive when not in top-only mode");
+            return;
         }
 
         try {
             Path archivePath = Paths.get(Settings.getInstance().getRepositoryPath(), "archive");
             if (archivePath.toFile().exists()) {
                 LOGGER.info("Deleting block archive because we are in top-only mode...");
+
+                // Drop mappings first, as mapped files can't be deleted on some platforms,
+                // and so reader doesn't keep serving blocks from deleted files
+                BlockArchiveReader.getInstance().releaseArchiveFiles();
+
                 FileUtils.deleteDirectory(archivePath.toFile());
             }
 
@@ -88,6 +88,24 @@ public class ChatMessage {
 		this.signature = signature;
 	}
 
+	/**
+	 * Returns this message with data using passed encoding.
+	 * <p>
+	 * Returns <tt>this</tt> if encoding already matches, otherwise a re-encoded copy.
+	 */
+	public ChatMessage withEncoding(Encoding encoding) {
+		if (encoding == null || encoding == this.encoding)
+			return this;
+
+		byte[] rawData = null;
+		if (this.data != null)
+			rawData = this.encoding == Encoding.BASE64 ? Base64.decode(this.data) : Base58.decode(this.data);
+
+		return new ChatMessage(this.timestamp, this.txGroupId, this.reference, this.senderPublicKey, this.sender,
+				this.senderName, this.recipient, this.recipientName, this.chatReference, encoding, rawData,
+				this.isText, this.isEncrypted, this.signature);
+	}
+
 	public long getTimestamp() {
 		return this.timestamp;
 	}
@@ -124,6 +142,10 @@ public class ChatMessage {
 		return this.chatReference;
 	}
 
+	public Encoding getEncoding() {
+		return this.encoding;
+	}
+
 	public String getData() {
 		return this.data;
 	}
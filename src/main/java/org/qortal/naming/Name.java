@@ -3,6 +3,7 @@ package org.qortal.naming;
 import org.qortal.account.Account;
 import org.qortal.account.PublicKeyAccount;
 import org.qortal.asset.Asset;
+import org.qortal.controller.Controller;
 import org.qortal.crypto.Crypto;
 import org.qortal.data.naming.NameData;
 import org.qortal.data.transaction.*;
@@ -59,10 +60,14 @@ public class Name {
 
 	public void register() throws DataException {
 		this.repository.getNameRepository().save(this.nameData);
+
+		Controller.getInstance().onNameChange(this.nameData.getOwner());
 	}
 
 	public void unregister() throws DataException {
 		this.repository.getNameRepository().delete(this.nameData.getName());
+
+		Controller.getInstance().onNameChange(this.nameData.getOwner());
 	}
 
 	public void update(UpdateNameTransactionData updateNameTransactionData) throws DataException {
@@ -89,6 +94,8 @@ public class Name {
 
 		// Save updated name data
 		this.repository.getNameRepository().save(this.nameData);
+
+		Controller.getInstance().onNameChange(this.nameData.getOwner());
 	}
 
 	public void revert(UpdateNameTransactionData updateNameTransactionData) throws DataException {
@@ -117,6 +124,8 @@ public class Name {
 			// Name has changed, delete old entry
 			this.repository.getNameRepository().delete(updateNameTransactionData.getNewName());
 
+		Controller.getInstance().onNameChange(this.nameData.getOwner());
+
 		// Remove reference to previous name-changing transaction
 		updateNameTransactionData.setNameReference(null);
 	}
@@ -228,6 +237,9 @@ public class Name {
 
 		// Save updated name data
 		this.repository.getNameRepository().save(this.nameData);
+
+		Controller.getInstance().onNameChange(buyNameTransactionData.getSeller());
+		Controller.getInstance().onNameChange(buyer.getAddress());
 	}
 
 	public void unbuy(BuyNameTransactionData buyNameTransactionData) throws DataException {
@@ -247,6 +259,9 @@ public class Name {
 		// Save updated name data
 		this.repository.getNameRepository().save(this.nameData);
 
+		Controller.getInstance().onNameChange(buyNameTransactionData.getSeller());
+		Controller.getInstance().onNameChange(Crypto.toAddress(buyNameTransactionData.getBuyerPublicKey()));
+
 		// Revert buyer's balance
 		Account buyer = new PublicKeyAccount(this.repository, buyNameTransactionData.getBuyerPublicKey());
 		buyer.modifyAssetBalance(Asset.QORT, buyNameTransactionData.getAmount());
@@ -0,0 +1,168 @@
+package org.qortal.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.qortal.network.message.MessageType;
+import org.qortal.settings.Settings;
+import org.qortal.utils.NamedThreadFactory;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Separate, bounded thread pools for processing incoming network messages, by kind of message.
+ * <p>
+ * Each lane has its own threads and queue, so a flood of one kind of message (e.g. GET_ARBITRARY_DATA_FILE)
+ * can only saturate its own lane, leaving block sync, pings, etc. unaffected.
+ * Messages arriving for a saturated lane are discarded, and counted, much like per-message-type thread limits.
+ * <p>
+ * Thread count and queue size for each lane are configured via settings' <tt>messageLaneLimits</tt>.
+ */
+public class MessageLanes {
+
+	private static final Logger LOGGER = LogManager.getLogger(MessageLanes.class);
+
+	/** Idle lane threads are stopped after this many seconds */
+	private static final long LANE_THREAD_KEEPALIVE = 60L; // seconds
+
+	private static final int DEFAULT_LANE_THREADS = 8;
+	private static final int DEFAULT_LANE_QUEUE_SIZE = 500;
+
+	public enum Lane {
+		/** Keep-alive, peer discovery */
+		CONTROL,
+		/** Chain tips, blocks, signatures, online accounts */
+		SYNC,
+		/** Transactions, trade presences, account queries */
+		TRANSACTIONS,
+		/** Chat message sync */
+		CHAT,
+		/** QDN data, file lists and metadata */
+		ARBITRARY;
+
+		public static Lane of(MessageType messageType) {
+			switch (messageType) {
+				case CHAT_MESSAGES:
+				case GET_CHAT_MESSAGES:
+				case CHAT_MESSAGE_SIGNATURES:
+				case GET_CHAT_MESSAGE:
+				case GET_RECENT_CHAT_MESSAGES:
+					return CHAT;
+
+				default:
+					break;
+			}
+
+			// Otherwise same classification as outgoing traffic
+			switch (PeerSendQueue.TrafficClass.of(messageType)) {
+				case CONTROL:
+					return CONTROL;
+
+				case SYNC:
+					return SYNC;
+
+				case BULK:
+					return ARBITRARY;
+
+				default:
+					return TRANSACTIONS;
+			}
+		}
+	}
+
+	@XmlAccessorType(XmlAccessType.FIELD)
+	public static class LaneStats {
+		public String lane;
+		public int maxThreads;
+		public int activeThreads;
+		public int greatestThreads;
+		public int queuedMessages;
+		public int queueCapacity;
+		public long processedMessages;
+		public long discardedMessages;
+
+		public LaneStats() {
+		}
+	}
+
+	private final Map<Lane, ThreadPoolExecutor> executors = new EnumMap<>(Lane.class);
+	private final Map<Lane, LongAdder> discardedCounts = new EnumMap<>(Lane.class);
+
+	public MessageLanes() {
+		for (Lane lane : Lane.values()) {
+			Settings.LaneLimit laneLimit = Settings.getInstance().getMessageLaneLimit(lane.name());
+
+			int threads = laneLimit != null ? Math.max(1, laneLimit.getThreads()) : DEFAULT_LANE_THREADS;
+			int queueSize = laneLimit != null ? Math.max(1, laneLimit.getQueueSize()) : DEFAULT_LANE_QUEUE_SIZE;
+
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+					LANE_THREAD_KEEPALIVE, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<>(queueSize),
+					new NamedThreadFactory("Network-" + lane.name()));
+			executor.allowCoreThreadTimeOut(true);
+
+			this.executors.put(lane, executor);
+			this.discardedCounts.put(lane, new LongAdder());
+		}
+	}
+
+	/**
+	 * Queues message processing on <tt>messageType</tt>'s lane.
+	 *
+	 * @return false if lane is saturated, in which case processing is discarded
+	 */
+	public boolean execute(MessageType messageType, Runnable processor) {
+		Lane lane = Lane.of(messageType);
+
+		try {
+			this.executors.get(lane).execute(processor);
+			return true;
+		} catch (RejectedExecutionException e) {
+			// Lane saturated, or shutting down
+			this.discardedCounts.get(lane).increment();
+			LOGGER.trace("Discarding {} message as {} lane is saturated", messageType.name(), lane.name());
+			return false;
+		}
+	}
+
+	public List<LaneStats> getStats() {
+		List<LaneStats> laneStatsList = new ArrayList<>();
+
+		for (Map.Entry<Lane, ThreadPoolExecutor> entry : this.executors.entrySet()) {
+			ThreadPoolExecutor executor = entry.getValue();
+
+			LaneStats laneStats = new LaneStats();
+			laneStats.lane = entry.getKey().name();
+			laneStats.maxThreads = executor.getMaximumPoolSize();
+			laneStats.activeThreads = executor.getActiveCount();
+			laneStats.greatestThreads = executor.getLargestPoolSize();
+			laneStats.queuedMessages = executor.getQueue().size();
+			laneStats.queueCapacity = laneStats.queuedMessages + executor.getQueue().remainingCapacity();
+			laneStats.processedMessages = executor.getCompletedTaskCount();
+			laneStats.discardedMessages = this.discardedCounts.get(entry.getKey()).sum();
+
+			laneStatsList.add(laneStats);
+		}
+
+		return laneStatsList;
+	}
+
+	public boolean shutdown(long timeout) throws InterruptedException {
+		for (ThreadPoolExecutor executor : this.executors.values())
+			executor.shutdownNow();
+
+		long deadline = System.currentTimeMillis() + timeout;
+		for (ThreadPoolExecutor executor : this.executors.values())
+			if (!executor.awaitTermination(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS))
+				return false;
+
+		return true;
+	}
+
+}
@@ -98,6 +98,7 @@ public class Network {
     private final String ourNodeId = Crypto.toNodeAddress(edPublicKeyParams.getEncoded());
 
     private final int maxMessageSize;
+    private final ReceiveBufferPool receiveBufferPool;
     private final int minOutboundPeers;
     private final int maxPeers;
 
@@ -142,6 +143,8 @@ public class Network {
     private String bindAddress = null;
 
     private final ExecuteProduceConsume networkEPC;
+    /** Thread pools, by kind of message, for processing non-handshaking messages */
+    private final MessageLanes messageLanes;
     private Selector channelSelector;
     private ServerSocketChannel serverChannel;
     private SelectionKey serverSelectionKey;
@@ -159,6 +162,7 @@ public class Network {
 
     private Network() {
         maxMessageSize = 4 + 1 + 4 + BlockChain.getInstance().getMaxBlockSize();
+        receiveBufferPool = new ReceiveBufferPool(maxMessageSize);
 
         minOutboundPeers = Settings.getInstance().getMinOutboundPeers();
         maxPeers = Settings.getInstance().getMaxPeers();
@@ -170,6 +174,8 @@ public class Network {
                 new SynchronousQueue<Runnable>(),
                 new NamedThreadFactory("Network-EPC"));
         networkEPC = new NetworkProcessor(networkExecutor);
+
+        messageLanes = new MessageLanes();
     }
 
     public void start() throws IOException, DataException {
@@ -296,10 +302,19 @@ public class Network {
         return this.maxMessageSize;
     }
 
+    /** Pool of receive buffers shared by all peers. */
+    protected ReceiveBufferPool getReceiveBufferPool() {
+        return this.receiveBufferPool;
+    }
+
     public StatsSnapshot getStatsSnapshot() {
         return this.networkEPC.getStatsSnapshot();
     }
 
+    public List<MessageLanes.LaneStats> getMessageLaneStats() {
+        return this.messageLanes.getStats();
+    }
+
     // Peer lists
 
     public List<PeerData> getAllKnownPeers() {
@@ -977,6 +992,13 @@ public class Network {
 
         // Should be non-handshaking messages from now on
 
+        // Process on message's lane, so floods of one kind of message can't starve processing of others
+        if (!this.messageLanes.execute(message.getType(), () -> processMessage(peer, message)))
+            LOGGER.trace("[{}] Discarded {} message with ID {} from peer {} as lane is saturated", peer.getPeerConnectionId(),
+                    message.getType().name(), message.getId(), peer);
+    }
+
+    private void processMessage(Peer peer, Message message) {
         // Limit threads per message type and discard if there are already too many
         Integer maxThreadsForMessageType = Settings.getInstance().getMaxThreadsForMessageType(message.getType());
         if (maxThreadsForMessageType != null) {
@@ -1662,6 +1684,14 @@ public class Network {
             LOGGER.warn("Interrupted while waiting for networking threads to terminate");
         }
 
+        try {
+            if (!this.messageLanes.shutdown(5000)) {
+                LOGGER.warn("Network message processing threads failed to terminate");
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while waiting for network message processing threads to terminate");
+        }
+
         // Close all peer connections
         for (Peer peer : this.getImmutableConnectedPeers()) {
             peer.shutdown();
@@ -46,10 +46,20 @@ public class Peer {
     private static final int RESPONSE_TIMEOUT = 3000; // ms
 
     /**
-     * Maximum time to wait for a message to be added to sendQueue (ms)
+     * Maximum time for writer to wait for a message to be added to sendQueue (ms)
      */
     private static final int QUEUE_TIMEOUT = 1000; // ms
 
+    /**
+     * Maximum number of queued messages to write to socket in one go.
+     */
+    private static final int MAX_GATHERED_MESSAGES = 16;
+
+    /**
+     * Stop gathering more queued messages once we have this many bytes to write.
+     */
+    private static final int MAX_GATHERED_BYTES = 256 * 1024; // bytes
+
     /**
      * Interval between PING messages to a peer. (ms)
      * <p>
@@ -77,10 +87,13 @@ public class Peer {
     private Map<Integer, BlockingQueue<Message>> replyQueues;
     private LinkedBlockingQueue<Message> pendingMessages;
 
-    private TransferQueue<Message> sendQueue;
-    private ByteBuffer outputBuffer;
-    private String outputMessageType;
-    private int outputMessageId;
+    private PeerSendQueue sendQueue;
+    /** Serialized messages waiting to be written, in order, via a single gathering write */
+    private final ByteBuffer[] outputBuffers = new ByteBuffer[MAX_GATHERED_MESSAGES];
+    /** Index of first outputBuffers entry with data remaining */
+    private int outputBufferIndex;
+    /** Number of outputBuffers entries in use */
+    private int outputBufferCount;
 
     /**
      * True if we created connection to peer, false if we accepted incoming connection from peer.
@@ -444,8 +457,8 @@ public class Peer {
         this.socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
         this.socketChannel.configureBlocking(false);
         Network.getInstance().setInterestOps(this.socketChannel, SelectionKey.OP_READ);
-        this.byteBuffer = null; // Defer allocation to when we need it, to save memory. Sorry GC!
-        this.sendQueue = new LinkedTransferQueue<>();
+        this.byteBuffer = null; // Borrowed from receive buffer pool only while we have partial data
+        this.sendQueue = new PeerSendQueue();
         this.replyQueues = new ConcurrentHashMap<>();
         this.pendingMessages = new LinkedBlockingQueue<>();
 
@@ -500,17 +513,20 @@ public class Peer {
         synchronized (this.byteBufferLock) {
             while (true) {
                 if (!this.socketChannel.isOpen() || this.socketChannel.socket().isClosed()) {
+                    this.releaseByteBuffer();
                     return;
                 }
 
-                // Do we need to allocate byteBuffer?
+                // Do we need to borrow byteBuffer? Start with a small one
                 if (this.byteBuffer == null) {
-                    this.byteBuffer = ByteBuffer.allocate(Network.getInstance().getMaxMessageSize());
+                    this.byteBuffer = Network.getInstance().getReceiveBufferPool().borrow(0);
                 }
 
                 final int priorPosition = this.byteBuffer.position();
                 final int bytesRead = this.socketChannel.read(this.byteBuffer);
                 if (bytesRead == -1) {
+                    this.releaseByteBuffer();
+
                     if (priorPosition > 0) {
                         this.disconnect("EOF - read " + priorPosition + " bytes");
                     } else {
@@ -543,20 +559,31 @@ public class Peer {
                         message = Message.fromByteBuffer(readOnlyBuffer);
                     } catch (MessageException e) {
                         LOGGER.debug("[{}] {}, from peer {}", this.peerConnectionId, e.getMessage(), this);
+                        this.releaseByteBuffer();
                         this.disconnect(e.getMessage());
                         return;
                     }
 
+                    if (message == null) {
+                        // Partial message - make sure byteBuffer is big enough to hold all of it
+                        final int messageLength = Message.peekMessageLength(this.byteBuffer.asReadOnlyBuffer().flip());
+
+                        if (messageLength > this.byteBuffer.capacity() && !this.growByteBuffer(messageLength)) {
+                            this.releaseByteBuffer();
+                            this.disconnect(String.format("message length %d larger than max allowed %d",
+                                    messageLength, Network.getInstance().getReceiveBufferPool().getLargeBufferSize()));
+                            return;
+                        }
+                    }
+
                     if (message == null && bytesRead == 0 && !wasByteBufferFull) {
                         // No complete message in buffer, no more bytes to read from socket
                         // even though there was room to read bytes
 
-                        /* DISABLED
-                        // If byteBuffer is empty then we can deallocate it, to save memory, albeit costing GC
-                        if (this.byteBuffer.remaining() == this.byteBuffer.capacity()) {
-                            this.byteBuffer = null;
+                        // If byteBuffer is empty then return it to pool, to save memory
+                        if (this.byteBuffer.position() == 0) {
+                            this.releaseByteBuffer();
                         }
-                        */
 
                         return;
                     }
@@ -613,6 +640,41 @@ public class Peer {
         }
     }
 
+    /**
+     * Replaces byteBuffer with a larger pooled buffer, copying over any partial data.
+     * <p>
+     * Must be called while holding byteBufferLock.
+     *
+     * @return false if no buffer is big enough
+     */
+    private boolean growByteBuffer(int minCapacity) {
+        ByteBuffer largerBuffer = Network.getInstance().getReceiveBufferPool().borrow(minCapacity);
+        if (largerBuffer == null) {
+            return false;
+        }
+
+        this.byteBuffer.flip();
+        largerBuffer.put(this.byteBuffer);
+
+        this.releaseByteBuffer();
+        this.byteBuffer = largerBuffer;
+        return true;
+    }
+
+    /**
+     * Returns byteBuffer, if any, to pool.
+     * <p>
+     * Must be called while holding byteBufferLock.
+     */
+    private void releaseByteBuffer() {
+        if (this.byteBuffer == null) {
+            return;
+        }
+
+        Network.getInstance().getReceiveBufferPool().release(this.byteBuffer);
+        this.byteBuffer = null;
+    }
+
     /** Maybe send some pending outgoing messages.
      *
      * @return true if more data is pending to be sent
@@ -621,64 +683,72 @@ public class Peer {
         // It is the responsibility of ChannelWriteTask's producer to produce only one call to writeChannel() at a time
 
         while (true) {
-            // If output byte buffer is null, fetch next message from queue (if any)
-            while (this.outputBuffer == null) {
-                Message message;
+            // If we have nothing left to write, fetch next message from queue (if any)
+            if (this.outputBufferCount == 0) {
+                PeerSendQueue.Entry entry;
 
                 try {
                     // Allow other thread time to add message to queue having raised OP_WRITE.
                     // Timeout is overkill but not excessive enough to clog up networking / EPC.
                     // This is to avoid race condition in sendMessageWithTimeout() below.
-                    message = this.sendQueue.poll(QUEUE_TIMEOUT, TimeUnit.MILLISECONDS);
+                    entry = this.sendQueue.poll(QUEUE_TIMEOUT, TimeUnit.MILLISECONDS);
                 } catch (InterruptedException e) {
                     // Shutdown situation
                     return false;
                 }
 
                 // No message? No further work to be done
-                if (message == null)
+                if (entry == null)
                     return false;
 
-                try {
-                    this.outputBuffer = ByteBuffer.wrap(message.toBytes());
-                    this.outputMessageType = message.getType().name();
-                    this.outputMessageId = message.getId();
+                // Gather any other messages already queued, in priority order, so they can be written with fewer syscalls
+                int gatheredBytes = 0;
+                do {
+                    this.recordSentMessage(entry);
 
-                    LOGGER.trace("[{}] Sending {} message with ID {} to peer {}",
-                            this.peerConnectionId, this.outputMessageType, this.outputMessageId, this);
+                    this.outputBuffers[this.outputBufferCount++] = entry.frame;
+                    gatheredBytes += entry.frame.remaining();
+                } while (this.outputBufferCount < MAX_GATHERED_MESSAGES && gatheredBytes < MAX_GATHERED_BYTES
+                        && (entry = this.sendQueue.poll()) != null);
 
-                    // Record message stats
-                    MessageStats messageStats = this.sentMessageStats.computeIfAbsent(message.getType(), k -> new MessageStats());
-                    // Ideally these two operations would be atomic, we could pack 'count' in top X bits of the 64-bit long, but meh
-                    messageStats.count.increment();
-                    messageStats.totalBytes.add(this.outputBuffer.limit());
-                } catch (MessageException e) {
-                    // Something went wrong converting message to bytes, so discard but allow another round
-                    LOGGER.warn("[{}] Failed to send {} message with ID {} to peer {}: {}", this.peerConnectionId,
-                            message.getType().name(), message.getId(), this, e.getMessage());
-                }
+                this.outputBufferIndex = 0;
             }
 
-            // If output byte buffer is not null, send from that
-            int bytesWritten = this.socketChannel.write(outputBuffer);
+            // Send as much of gathered messages as we can
+            long bytesWritten = this.socketChannel.write(this.outputBuffers, this.outputBufferIndex, this.outputBufferCount - this.outputBufferIndex);
 
-            LOGGER.trace("[{}] Sent {} bytes of {} message with ID {} to peer {} ({} total)", this.peerConnectionId,
-                    bytesWritten, this.outputMessageType, this.outputMessageId, this, outputBuffer.limit());
+            LOGGER.trace("[{}] Sent {} bytes of {} pending message(s) to peer {}", this.peerConnectionId,
+                    bytesWritten, this.outputBufferCount - this.outputBufferIndex, this);
 
             // If we've sent 0 bytes then socket buffer is full so we need to wait until it's empty again
             if (bytesWritten == 0) {
                 return true;
             }
 
-            // If we then exhaust the byte buffer, set it to null (otherwise loop and try to send more)
-            if (!this.outputBuffer.hasRemaining()) {
-                this.outputMessageType = null;
-                this.outputMessageId = 0;
-                this.outputBuffer = null;
+            // Discard fully sent messages (then loop and try to send more)
+            while (this.outputBufferIndex < this.outputBufferCount && !this.outputBuffers[this.outputBufferIndex].hasRemaining()) {
+                this.outputBuffers[this.outputBufferIndex] = null;
+                ++this.outputBufferIndex;
+            }
+
+            if (this.outputBufferIndex == this.outputBufferCount) {
+                this.outputBufferIndex = 0;
+                this.outputBufferCount = 0;
             }
         }
     }
 
+    private void recordSentMessage(PeerSendQueue.Entry entry) {
+        LOGGER.trace("[{}] Sending {} message with ID {} to peer {}",
+                this.peerConnectionId, entry.message.getType().name(), entry.message.getId(), this);
+
+        // Record message stats
+        MessageStats messageStats = this.sentMessageStats.computeIfAbsent(entry.message.getType(), k -> new MessageStats());
+        // Ideally these two operations would be atomic, we could pack 'count' in top X bits of the 64-bit long, but meh
+        messageStats.count.increment();
+        messageStats.totalBytes.add(entry.frame.limit());
+    }
+
     protected Task getMessageTask() {
         /*
          * If we are still handshaking and there is a message yet to be processed then
@@ -732,14 +802,16 @@ public class Peer {
             LOGGER.trace("[{}] Queuing {} message with ID {} to peer {}", this.peerConnectionId,
                     message.getType().name(), message.getId(), this);
 
-            // Check message properly constructed
-            message.checkValidOutgoing();
+            // Check message properly constructed, and serialize
+            ByteBuffer frame = message.toFrame();
 
             // Possible race condition:
             // We set OP_WRITE, EPC creates ChannelWriteTask which calls Peer.writeChannel, writeChannel's poll() finds no message to send
             // Avoided by poll-with-timeout in writeChannel() above.
             Network.getInstance().setInterestOps(this.socketChannel, SelectionKey.OP_WRITE);
-            return this.sendQueue.tryTransfer(message, timeout, TimeUnit.MILLISECONDS);
+
+            // If message's traffic class already has too much queued, this waits for room, up to timeout
+            return this.sendQueue.offer(message, frame, timeout, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
             // Send failure
             return false;
@@ -749,6 +821,15 @@ public class Peer {
         }
     }
 
+    /**
+     * Returns whether we already have a backlog of outgoing messages of <tt>messageType</tt>'s traffic class for this peer.
+     * <p>
+     * Callers can use this to hold back optional work, e.g. serving bulk data, rather than wait on a full queue.
+     */
+    public boolean isSendQueueCongested(MessageType messageType) {
+        return this.sendQueue.isCongested(PeerSendQueue.TrafficClass.of(messageType));
+    }
+
     /**
      * Send message to peer and await response, using default RESPONSE_TIMEOUT.
      * <p>
@@ -859,6 +940,11 @@ public class Peer {
             }
         }
 
+        // Return any partial-message buffer to pool, as large buffers are limited
+        synchronized (this.byteBufferLock) {
+            this.releaseByteBuffer();
+        }
+
         if (logStats && this.receivedMessageStats.size() > 0) {
             StringBuilder statsBuilder = new StringBuilder(1024);
             statsBuilder.append("peer ").append(this).append(" message stats:\n=received=");
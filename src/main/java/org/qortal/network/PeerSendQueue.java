@@ -0,0 +1,237 @@
+package org.qortal.network;
+
+import org.qortal.network.message.Message;
+import org.qortal.network.message.MessageType;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outgoing messages waiting to be written to a peer, split by traffic class.
+ * <p>
+ * Control messages (e.g. PING, handshake) always go first. Remaining classes share the connection
+ * using deficit round-robin, weighted by each class's quantum, so a run of bulk QDN data transfers
+ * can't starve block sync or transaction/chat propagation, and vice versa.
+ * <p>
+ * Each class has a budget of queued bytes. Once a class is over budget, senders of that class
+ * wait for room (up to their timeout), and callers can check {@link #isCongested(TrafficClass)}
+ * to avoid queuing more work, e.g. by declining to serve further data files.
+ * A message is always accepted into an empty class queue, regardless of size.
+ * <p>
+ * Note that once a message has started to be written, it has to be completed before the next,
+ * so a large message can still delay smaller ones by the time it takes to finish sending it.
+ */
+public class PeerSendQueue {
+
+    public enum TrafficClass {
+        /** Handshaking, keep-alive, peer discovery, 'unknown' replies. Strict priority. */
+        CONTROL(0, 1024 * 1024),
+        /** Chain tip announcements, blocks, signatures, online accounts */
+        SYNC(256 * 1024, 4 * 1024 * 1024),
+        /** Transactions, chat, trade presences, account queries */
+        TRANSACTIONS(128 * 1024, 1024 * 1024),
+        /** QDN data, file lists and metadata */
+        BULK(64 * 1024, 2 * 1024 * 1024);
+
+        /** Bytes added to class's deficit each round */
+        public final int quantum;
+        /** Queued bytes beyond which senders have to wait */
+        public final int maxQueuedBytes;
+
+        TrafficClass(int quantum, int maxQueuedBytes) {
+            this.quantum = quantum;
+            this.maxQueuedBytes = maxQueuedBytes;
+        }
+
+        public static TrafficClass of(MessageType messageType) {
+            switch (messageType) {
+                case HELLO:
+                case GOODBYE:
+                case CHALLENGE:
+                case RESPONSE:
+                case PING:
+                case PONG:
+                case PEERS_V2:
+                case GET_PEERS:
+                case GENERIC_UNKNOWN:
+                    return CONTROL;
+
+                case HEIGHT_V2:
+                case BLOCK:
+                case GET_BLOCK:
+                case BLOCK_V2:
+                case SIGNATURES:
+                case GET_SIGNATURES_V2:
+                case BLOCK_SUMMARIES:
+                case GET_BLOCK_SUMMARIES:
+                case BLOCK_SUMMARIES_V2:
+                case ONLINE_ACCOUNTS_V3:
+                case GET_ONLINE_ACCOUNTS_V3:
+                    return SYNC;
+
+                case ARBITRARY_DATA:
+                case GET_ARBITRARY_DATA:
+                case ARBITRARY_DATA_FILE:
+                case GET_ARBITRARY_DATA_FILE:
+                case ARBITRARY_DATA_FILE_LIST:
+                case GET_ARBITRARY_DATA_FILE_LIST:
+                case ARBITRARY_SIGNATURES:
+                case ARBITRARY_METADATA:
+                case GET_ARBITRARY_METADATA:
+                    return BULK;
+
+                default:
+                    return TRANSACTIONS;
+            }
+        }
+    }
+
+    /** Queued message, along with its serialized form */
+    public static class Entry {
+        public final Message message;
+        public final ByteBuffer frame;
+
+        private Entry(Message message, ByteBuffer frame) {
+            this.message = message;
+            this.frame = frame;
+        }
+    }
+
+    private static class ClassQueue {
+        private final TrafficClass trafficClass;
+        private final Deque<Entry> entries = new ArrayDeque<>();
+        private long queuedBytes;
+        private long deficit;
+
+        private ClassQueue(TrafficClass trafficClass) {
+            this.trafficClass = trafficClass;
+        }
+    }
+
+    private static final TrafficClass[] TRAFFIC_CLASSES = TrafficClass.values();
+
+    private final ClassQueue[] classQueues = new ClassQueue[TRAFFIC_CLASSES.length];
+    private int queuedCount;
+
+    /** Weighted class currently being served, i.e. index into classQueues, excluding CONTROL */
+    private int currentIndex = 1;
+    /** Whether currentIndex's class has been given its quantum this round */
+    private boolean hasCurrentQuantum;
+
+    public PeerSendQueue() {
+        for (TrafficClass trafficClass : TRAFFIC_CLASSES)
+            this.classQueues[trafficClass.ordinal()] = new ClassQueue(trafficClass);
+    }
+
+    /**
+     * Queues message for sending, waiting up to <tt>timeout</tt> for room if its class is over budget.
+     *
+     * @param frame serialized message, e.g. from {@link Message#toFrame()}
+     * @return true if queued, false if timed out waiting for room
+     */
+    public synchronized boolean offer(Message message, ByteBuffer frame, long timeout, TimeUnit unit) throws InterruptedException {
+        ClassQueue classQueue = this.classQueues[TrafficClass.of(message.getType()).ordinal()];
+        final int frameLength = frame.remaining();
+
+        long remainingNanos = unit.toNanos(timeout);
+        while (!classQueue.entries.isEmpty() && classQueue.queuedBytes + frameLength > classQueue.trafficClass.maxQueuedBytes) {
+            if (remainingNanos <= 0)
+                return false;
+
+            long startNanos = System.nanoTime();
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            remainingNanos -= System.nanoTime() - startNanos;
+        }
+
+        classQueue.entries.add(new Entry(message, frame));
+        classQueue.queuedBytes += frameLength;
+        ++this.queuedCount;
+
+        this.notifyAll();
+        return true;
+    }
+
+    /**
+     * Returns next message to send, waiting up to <tt>timeout</tt> for one to be queued.
+     *
+     * @return next entry, or null if none queued within timeout
+     */
+    public synchronized Entry poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        while (this.queuedCount == 0) {
+            if (remainingNanos <= 0)
+                return null;
+
+            long startNanos = System.nanoTime();
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            remainingNanos -= System.nanoTime() - startNanos;
+        }
+
+        return this.poll();
+    }
+
+    /** Returns next message to send, or null if nothing queued. */
+    public synchronized Entry poll() {
+        if (this.queuedCount == 0)
+            return null;
+
+        // Control messages have strict priority
+        ClassQueue controlQueue = this.classQueues[TrafficClass.CONTROL.ordinal()];
+        if (!controlQueue.entries.isEmpty())
+            return this.take(controlQueue);
+
+        // Deficit round-robin over remaining classes.
+        // At least one queue is non-empty so this terminates, once its deficit has grown enough.
+        while (true) {
+            ClassQueue classQueue = this.classQueues[this.currentIndex];
+            Entry head = classQueue.entries.peek();
+
+            if (head == null) {
+                // Idle classes don't accumulate credit
+                classQueue.deficit = 0;
+                this.nextClass();
+                continue;
+            }
+
+            if (!this.hasCurrentQuantum) {
+                classQueue.deficit += classQueue.trafficClass.quantum;
+                this.hasCurrentQuantum = true;
+            }
+
+            if (classQueue.deficit >= head.frame.remaining()) {
+                classQueue.deficit -= head.frame.remaining();
+                return this.take(classQueue);
+            }
+
+            this.nextClass();
+        }
+    }
+
+    private Entry take(ClassQueue classQueue) {
+        Entry entry = classQueue.entries.poll();
+
+        classQueue.queuedBytes -= entry.frame.remaining();
+        --this.queuedCount;
+
+        // Wake any senders waiting for room
+        this.notifyAll();
+        return entry;
+    }
+
+    private void nextClass() {
+        this.currentIndex = this.currentIndex + 1 < this.classQueues.length ? this.currentIndex + 1 : 1;
+        this.hasCurrentQuantum = false;
+    }
+
+    /** Returns whether <tt>trafficClass</tt> is at, or over, its budget of queued bytes. */
+    public synchronized boolean isCongested(TrafficClass trafficClass) {
+        return this.classQueues[trafficClass.ordinal()].queuedBytes >= trafficClass.maxQueuedBytes;
+    }
+
+    public synchronized long getQueuedBytes(TrafficClass trafficClass) {
+        return this.classQueues[trafficClass.ordinal()].queuedBytes;
+    }
+
+}
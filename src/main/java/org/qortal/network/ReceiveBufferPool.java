@@ -0,0 +1,111 @@
+package org.qortal.network;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool of direct buffers used by peers to receive network data.
+ * <p>
+ * Buffers come in two sizes: small buffers, big enough for most messages,
+ * and large buffers, big enough for the largest possible message (e.g. BLOCK_V2 or ARBITRARY_DATA_FILE).
+ * Peers borrow a small buffer while they have partial data, only switch to a large buffer
+ * while assembling a message that won't fit, and return buffers once they're drained.
+ * <p>
+ * Only a limited number of idle small buffers are kept. Buffers not returned are simply left for the garbage collector.
+ * <p>
+ * Large direct buffers are bounded in total, idle or not, as the garbage collector is slow to free direct memory.
+ * Once the limit is reached, large buffers fall back to heap buffers, which are never pooled.
+ */
+public class ReceiveBufferPool {
+
+	/** Size of small buffers (bytes) */
+	public static final int SMALL_BUFFER_SIZE = 64 * 1024;
+
+	/** Maximum number of idle small buffers kept for reuse */
+	private static final int MAX_IDLE_SMALL_BUFFERS = 128;
+	/** Maximum number of large direct buffers, idle or borrowed */
+	public static final int MAX_LARGE_BUFFERS = 8;
+
+	private final int largeBufferSize;
+
+	private final Queue<ByteBuffer> idleSmallBuffers = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger idleSmallBufferCount = new AtomicInteger();
+
+	private final Queue<ByteBuffer> idleLargeBuffers = new ConcurrentLinkedQueue<>();
+	/** Number of large direct buffers allocated, idle or borrowed */
+	private final AtomicInteger largeBufferCount = new AtomicInteger();
+
+	public ReceiveBufferPool(int largeBufferSize) {
+		this.largeBufferSize = Math.max(largeBufferSize, SMALL_BUFFER_SIZE);
+	}
+
+	public int getLargeBufferSize() {
+		return this.largeBufferSize;
+	}
+
+	/**
+	 * Returns empty buffer with at least <tt>minCapacity</tt> bytes.
+	 *
+	 * @return buffer, or null if <tt>minCapacity</tt> is larger than our large buffer size
+	 */
+	public ByteBuffer borrow(int minCapacity) {
+		if (minCapacity > this.largeBufferSize)
+			return null;
+
+		if (minCapacity <= SMALL_BUFFER_SIZE)
+			return borrow(this.idleSmallBuffers, this.idleSmallBufferCount, SMALL_BUFFER_SIZE);
+
+		return borrowLarge();
+	}
+
+	/** Returns buffer to pool. Caller must not use buffer afterwards. */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect())
+			return;
+
+		buffer.clear();
+
+		if (buffer.capacity() == SMALL_BUFFER_SIZE)
+			release(this.idleSmallBuffers, this.idleSmallBufferCount, MAX_IDLE_SMALL_BUFFERS, buffer);
+		else if (buffer.capacity() == this.largeBufferSize)
+			// Large direct buffers are bounded in total, so always worth keeping
+			this.idleLargeBuffers.offer(buffer);
+	}
+
+	private ByteBuffer borrowLarge() {
+		ByteBuffer buffer = this.idleLargeBuffers.poll();
+		if (buffer != null)
+			return buffer;
+
+		if (this.largeBufferCount.incrementAndGet() > MAX_LARGE_BUFFERS) {
+			// Too many large direct buffers already - use heap instead
+			this.largeBufferCount.decrementAndGet();
+			return ByteBuffer.allocate(this.largeBufferSize);
+		}
+
+		return ByteBuffer.allocateDirect(this.largeBufferSize);
+	}
+
+	private static ByteBuffer borrow(Queue<ByteBuffer> idleBuffers, AtomicInteger idleBufferCount, int bufferSize) {
+		ByteBuffer buffer = idleBuffers.poll();
+
+		if (buffer == null)
+			return ByteBuffer.allocateDirect(bufferSize);
+
+		idleBufferCount.decrementAndGet();
+		return buffer;
+	}
+
+	private static void release(Queue<ByteBuffer> idleBuffers, AtomicInteger idleBufferCount, int maxIdleBuffers, ByteBuffer buffer) {
+		if (idleBufferCount.incrementAndGet() > maxIdleBuffers) {
+			// Enough idle buffers already - leave this one for GC
+			idleBufferCount.decrementAndGet();
+			return;
+		}
+
+		idleBuffers.offer(buffer);
+	}
+
+}
@@ -1,13 +1,11 @@
 package org.qortal.network.message;
 
-import com.google.common.primitives.Ints;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.arbitrary.ArbitraryDataFile;
 import org.qortal.repository.DataException;
 import org.qortal.transform.Transformer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
@@ -22,21 +20,33 @@ public class ArbitraryDataFileMessage extends Message {
 	public ArbitraryDataFileMessage(byte[] signature, ArbitraryDataFile arbitraryDataFile) {
 		super(MessageType.ARBITRARY_DATA_FILE);
 
-		byte[] data = arbitraryDataFile.getBytes();
+		long fileSize = arbitraryDataFile.size();
+		if (fileSize > Integer.MAX_VALUE - Transformer.SIGNATURE_LENGTH - Transformer.INT_LENGTH) {
+			LOGGER.error("File {} too large to send", arbitraryDataFile);
+			return;
+		}
 
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		// Read file straight into our data buffer, rather than via intermediate byte arrays
+		ByteBuffer bytes = ByteBuffer.allocate(Transformer.SIGNATURE_LENGTH + Transformer.INT_LENGTH + (int) fileSize);
 
-		try {
-			bytes.write(signature);
+		bytes.put(signature);
 
-			bytes.write(Ints.toByteArray(data.length));
+		bytes.putInt((int) fileSize);
 
-			bytes.write(data);
+		try {
+			arbitraryDataFile.readBytes(bytes);
 		} catch (IOException e) {
-			throw new AssertionError("IOException shouldn't occur with ByteArrayOutputStream");
+			// Leaving dataBytes null causes send to fail
+			LOGGER.error("Unable to read file {}: {}", arbitraryDataFile, e.getMessage());
+			return;
+		}
+
+		if (bytes.hasRemaining()) {
+			LOGGER.error("File {} changed size while reading", arbitraryDataFile);
+			return;
 		}
 
-		this.dataBytes = bytes.toByteArray();
+		this.dataBytes = bytes.array();
 		this.checksumBytes = Message.generateChecksum(this.dataBytes);
 	}
 
@@ -60,12 +70,16 @@ public class ArbitraryDataFileMessage extends Message {
 		byteBuffer.get(signature);
 
 		int dataLength = byteBuffer.getInt();
+		if (dataLength < 0)
+			throw new MessageException("Invalid negative data length");
 
 		if (byteBuffer.remaining() < dataLength)
 			throw new BufferUnderflowException();
 
-		byte[] data = new byte[dataLength];
-		byteBuffer.get(data);
+		// Write file directly from (slice of) receive buffer, without copying into a byte array first
+		ByteBuffer data = byteBuffer.slice();
+		data.limit(dataLength);
+		byteBuffer.position(byteBuffer.position() + dataLength);
 
 		try {
 			ArbitraryDataFile arbitraryDataFile = new ArbitraryDataFile(data, signature, false);
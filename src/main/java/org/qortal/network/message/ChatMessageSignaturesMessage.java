@@ -12,7 +12,8 @@ import java.util.List;
 
 public class ChatMessageSignaturesMessage extends Message {
 
-	public static final long MIN_PEER_VERSION = 0x300040000L; // 3.4.0
+	/** Minimum peer version for all chat sync messages */
+	public static final long MIN_PEER_VERSION = 0x400060000L; // 4.6.0
 
 	private List<byte[]> signatures;
 
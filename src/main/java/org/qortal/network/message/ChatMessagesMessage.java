@@ -1,138 +1,76 @@
 package org.qortal.network.message;
 
 import com.google.common.primitives.Ints;
-import com.google.common.primitives.Longs;
-import org.qortal.data.chat.ChatMessage;
+import org.qortal.data.transaction.ChatTransactionData;
+import org.qortal.data.transaction.TransactionData;
 import org.qortal.transform.TransformationException;
-import org.qortal.transform.Transformer;
-import org.qortal.utils.Serialization;
+import org.qortal.transform.transaction.TransactionTransformer;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
-import static org.qortal.naming.Name.MAX_NAME_SIZE;
-import static org.qortal.transform.Transformer.SIGNATURE_LENGTH;
-
+/**
+ * Batch of CHAT messages, sent in response to chat sync requests.
+ * <p>
+ * Messages are sent as complete, signed CHAT transactions so that
+ * recipients can verify signature and proof-of-work nonce before storing them.
+ */
 public class ChatMessagesMessage extends Message {
 
-	private List<ChatMessage> chatMessages;
-
-	private static final int CHAT_REFERENCE_LENGTH = SIGNATURE_LENGTH;
+	private List<ChatTransactionData> chatTransactions;
 
-
-	public ChatMessagesMessage(List<ChatMessage> chatMessages) {
+	public ChatMessagesMessage(List<ChatTransactionData> chatTransactions) throws MessageException {
 		super(MessageType.CHAT_MESSAGES);
 
 		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
 
 		try {
-			bytes.write(Ints.toByteArray(chatMessages.size()));
-
-			for (ChatMessage chatMessage : chatMessages) {
-				bytes.write(Longs.toByteArray(chatMessage.getTimestamp()));
-
-				bytes.write(Ints.toByteArray(chatMessage.getTxGroupId()));
-
-				bytes.write(chatMessage.getReference());
-
-				bytes.write(chatMessage.getSenderPublicKey());
-
-				Serialization.serializeSizedStringV2(bytes, chatMessage.getSender());
-
-				Serialization.serializeSizedStringV2(bytes, chatMessage.getSenderName());
-
-				Serialization.serializeSizedStringV2(bytes, chatMessage.getRecipient());
-
-				Serialization.serializeSizedStringV2(bytes, chatMessage.getRecipientName());
-
-				// Include chat reference if it's not null
-				if (chatMessage.getChatReference() != null) {
-					bytes.write((byte) 1);
-					bytes.write(chatMessage.getChatReference());
-				} else {
-					bytes.write((byte) 0);
-				}
-
-				bytes.write(Ints.toByteArray(chatMessage.getData().length));
-				bytes.write(chatMessage.getData());
-
-				bytes.write(Ints.toByteArray(chatMessage.isText() ? 1 : 0));
-
-				bytes.write(Ints.toByteArray(chatMessage.isEncrypted() ? 1 : 0));
+			bytes.write(Ints.toByteArray(chatTransactions.size()));
 
-				bytes.write(chatMessage.getSignature());
-			}
+			for (ChatTransactionData chatTransactionData : chatTransactions)
+				bytes.write(TransactionTransformer.toBytes(chatTransactionData));
 		} catch (IOException e) {
 			throw new AssertionError("IOException shouldn't occur with ByteArrayOutputStream");
+		} catch (TransformationException e) {
+			throw new MessageException(e.getMessage(), e);
 		}
 
 		this.dataBytes = bytes.toByteArray();
 		this.checksumBytes = Message.generateChecksum(this.dataBytes);
 	}
 
-	private ChatMessagesMessage(int id, List<ChatMessage> chatMessages) {
+	private ChatMessagesMessage(int id, List<ChatTransactionData> chatTransactions) {
 		super(id, MessageType.CHAT_MESSAGES);
 
-		this.chatMessages = chatMessages;
+		this.chatTransactions = chatTransactions;
 	}
 
-	public List<ChatMessage> getChatMessages() {
-		return this.chatMessages;
+	public List<ChatTransactionData> getChatTransactions() {
+		return this.chatTransactions;
 	}
 
 	public static Message fromByteBuffer(int id, ByteBuffer bytes) throws MessageException {
 		try {
 			int count = bytes.getInt();
 
-			List<ChatMessage> chatMessages = new ArrayList<>();
+			List<ChatTransactionData> chatTransactions = new ArrayList<>();
 			for (int i = 0; i < count; ++i) {
-				long timestamp = bytes.getLong();
-
-				int txGroupId = bytes.getInt();
-
-				byte[] reference = new byte[SIGNATURE_LENGTH];
-				bytes.get(reference);
-
-				byte[] senderPublicKey = new byte[Transformer.PUBLIC_KEY_LENGTH];
-				bytes.get(senderPublicKey);
-
-				String sender = Serialization.deserializeSizedStringV2(bytes, Transformer.BASE58_ADDRESS_LENGTH);
-
-				String senderName = Serialization.deserializeSizedStringV2(bytes, MAX_NAME_SIZE);
-
-				String recipient = Serialization.deserializeSizedStringV2(bytes, Transformer.BASE58_ADDRESS_LENGTH);
-
-				String recipientName = Serialization.deserializeSizedStringV2(bytes, MAX_NAME_SIZE);
-
-				byte[] chatReference = null;
-				boolean hasChatReference = bytes.get() != 0;
-
-				if (hasChatReference) {
-					chatReference = new byte[CHAT_REFERENCE_LENGTH];
-					bytes.get(chatReference);
-				}
-
-				int dataLength = bytes.getInt();
-				byte[] data = new byte[dataLength];
-				bytes.get(data);
-
-				boolean isText = bytes.getInt() == 1;
-
-				boolean isEncrypted = bytes.getInt() == 1;
+				TransactionData transactionData = TransactionTransformer.fromByteBuffer(bytes);
 
-				byte[] signature = new byte[SIGNATURE_LENGTH];
-				bytes.get(signature);
+				if (!(transactionData instanceof ChatTransactionData))
+					throw new MessageException("Non-CHAT transaction in CHAT_MESSAGES message");
 
-				ChatMessage chatMessage = new ChatMessage(timestamp, txGroupId, reference, senderPublicKey,
-						sender, senderName, recipient, recipientName, chatReference, data, isText, isEncrypted, signature);
-				chatMessages.add(chatMessage);
+				chatTransactions.add((ChatTransactionData) transactionData);
 			}
 
-			return new ChatMessagesMessage(id, chatMessages);
+			if (bytes.hasRemaining())
+				throw new BufferUnderflowException();
 
+			return new ChatMessagesMessage(id, chatTransactions);
 		} catch (TransformationException e) {
 			throw new MessageException(e.getMessage(), e);
 		}
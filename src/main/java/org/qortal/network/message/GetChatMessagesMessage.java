@@ -1,8 +1,8 @@
 package org.qortal.network.message;
 
 import com.google.common.primitives.Ints;
-import org.qortal.transaction.Transaction;
-import org.qortal.transform.block.BlockTransformer;
+import com.google.common.primitives.Longs;
+import org.qortal.transform.Transformer;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -32,20 +32,30 @@ public class GetChatMessagesMessage extends Message {
 	}
 
 	private long timestamp;
+	private byte[] signature;
 	private int numberRequested;
 	private Direction direction;
 
-	public GetChatMessagesMessage(byte[] referenceSignature, int numberRequested, Direction direction) {
+	/**
+	 * Requests CHAT messages from <tt>timestamp</tt>, inclusive, in <tt>direction</tt>.
+	 * <p>
+	 * If <tt>signature</tt> is not null, then messages with exactly <tt>timestamp</tt> are only returned
+	 * if their signature follows <tt>signature</tt> in <tt>direction</tt>, i.e. paging on (timestamp, signature).
+	 */
+	public GetChatMessagesMessage(long timestamp, byte[] signature, int numberRequested, Direction direction) {
 		super(MessageType.GET_CHAT_MESSAGES);
 
 		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
 
 		try {
-			bytes.write(referenceSignature);
+			bytes.write(Longs.toByteArray(timestamp));
 
 			bytes.write(Ints.toByteArray(numberRequested));
 
 			bytes.write(Ints.toByteArray(direction.value));
+
+			if (signature != null)
+				bytes.write(signature);
 		} catch (IOException e) {
 			throw new AssertionError("IOException shouldn't occur with ByteArrayOutputStream");
 		}
@@ -54,10 +64,15 @@ public class GetChatMessagesMessage extends Message {
 		this.checksumBytes = Message.generateChecksum(this.dataBytes);
 	}
 
-	private GetChatMessagesMessage(int id, long timestamp, int numberRequested, Direction direction) {
+	public GetChatMessagesMessage(long timestamp, int numberRequested, Direction direction) {
+		this(timestamp, null, numberRequested, direction);
+	}
+
+	private GetChatMessagesMessage(int id, long timestamp, byte[] signature, int numberRequested, Direction direction) {
 		super(id, MessageType.GET_CHAT_MESSAGES);
 
 		this.timestamp = timestamp;
+		this.signature = signature;
 		this.numberRequested = numberRequested;
 		this.direction = direction;
 	}
@@ -66,6 +81,11 @@ public class GetChatMessagesMessage extends Message {
 		return this.timestamp;
 	}
 
+	/** Returns signature of last message already received with {@link #getTimestamp()}, or null. */
+	public byte[] getSignature() {
+		return this.signature;
+	}
+
 	public int getNumberRequested() {
 		return this.numberRequested;
 	}
@@ -74,14 +94,26 @@ public class GetChatMessagesMessage extends Message {
 		return this.direction;
 	}
 
-	public static Message fromByteBuffer(int id, ByteBuffer bytes) {
+	public static Message fromByteBuffer(int id, ByteBuffer bytes) throws MessageException {
 		long timestamp = bytes.getLong();
 
 		int numberRequested = bytes.getInt();
 
 		Direction direction = Direction.valueOf(bytes.getInt());
+		if (direction == null)
+			throw new MessageException("Invalid direction in GET_CHAT_MESSAGES message");
+
+		// Optional signature cursor
+		byte[] signature = null;
+		if (bytes.hasRemaining()) {
+			if (bytes.remaining() != Transformer.SIGNATURE_LENGTH)
+				throw new MessageException("Invalid signature cursor in GET_CHAT_MESSAGES message");
+
+			signature = new byte[Transformer.SIGNATURE_LENGTH];
+			bytes.get(signature);
+		}
 
-		return new GetChatMessagesMessage(id, timestamp, numberRequested, direction);
+		return new GetChatMessagesMessage(id, timestamp, signature, numberRequested, direction);
 	}
 
 }
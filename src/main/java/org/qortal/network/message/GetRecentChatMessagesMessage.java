@@ -1,60 +1,65 @@
 package org.qortal.network.message;
 
-import com.google.common.primitives.Ints;
-import org.qortal.transform.Transformer;
-import org.qortal.utils.ByteArray;
+import org.qortal.utils.SignatureSketch;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
 
+/**
+ * Request for recent CHAT messages that we don't have.
+ * <p>
+ * Rather than listing all our recent signatures, we send a {@link SignatureSketch} of them,
+ * so the responding peer can find which of its messages we're missing in a single round trip,
+ * using bandwidth proportional to the number of differences.
+ * <p>
+ * <tt>minTimestamp</tt> is the start of the window our sketch covers,
+ * so the responding peer builds its own sketch over the same messages.
+ */
 public class GetRecentChatMessagesMessage extends Message {
 
-	private List<ByteArray> signatures;
+	private long minTimestamp;
+	private SignatureSketch sketch;
 
-	public GetRecentChatMessagesMessage(List<ByteArray> signatures) {
+	public GetRecentChatMessagesMessage(long minTimestamp, SignatureSketch sketch) {
 		super(MessageType.GET_RECENT_CHAT_MESSAGES);
 
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ByteBuffer bytes = ByteBuffer.allocate(8 + sketch.getDataLength());
+		bytes.putLong(minTimestamp);
+		sketch.serialize(bytes);
 
-		try {
-			bytes.write(Ints.toByteArray(signatures.size()));
-
-			for (ByteArray signature : signatures) {
-				bytes.write(signature.value);
-			}
-		} catch (IOException e) {
-			throw new AssertionError("IOException shouldn't occur with ByteArrayOutputStream");
-		}
-
-		this.dataBytes = bytes.toByteArray();
+		this.dataBytes = bytes.array();
 		this.checksumBytes = Message.generateChecksum(this.dataBytes);
 	}
 
-	private GetRecentChatMessagesMessage(int id, List<ByteArray> signatures) {
+	private GetRecentChatMessagesMessage(int id, long minTimestamp, SignatureSketch sketch) {
 		super(id, MessageType.GET_RECENT_CHAT_MESSAGES);
 
-		this.signatures = signatures;
+		this.minTimestamp = minTimestamp;
+		this.sketch = sketch;
 	}
 
-	public List<ByteArray> getSignatures() {
-		return this.signatures;
+	public long getMinTimestamp() {
+		return this.minTimestamp;
 	}
 
-	public static Message fromByteBuffer(int id, ByteBuffer bytes) {
-		int count = bytes.getInt();
+	public SignatureSketch getSketch() {
+		return this.sketch;
+	}
 
-		List<ByteArray> signatures = new ArrayList<>();
-		for (int i = 0; i < count; ++i) {
-			byte[] signature = new byte[Transformer.SIGNATURE_LENGTH];
-			bytes.get(signature);
+	public static Message fromByteBuffer(int id, ByteBuffer bytes) throws MessageException {
+		long minTimestamp = bytes.getLong();
 
-			signatures.add(ByteArray.wrap(signature));
+		SignatureSketch sketch;
+		try {
+			sketch = SignatureSketch.deserialize(bytes);
+		} catch (IllegalArgumentException e) {
+			throw new MessageException(e.getMessage(), e);
 		}
 
-		return new GetRecentChatMessagesMessage(id, signatures);
+		if (bytes.hasRemaining())
+			throw new BufferUnderflowException();
+
+		return new GetRecentChatMessagesMessage(id, minTimestamp, sketch);
 	}
 
 }
@@ -1,11 +1,8 @@
 package org.qortal.network.message;
 
-import com.google.common.primitives.Ints;
 import org.qortal.crypto.Crypto;
 import org.qortal.network.Network;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -55,6 +52,20 @@ public abstract class Message {
 	/** Serialized outgoing message checksum. Expected to be written to by subclass. */
 	protected byte[] checksumBytes;
 
+	/** Serialized outgoing message, along with the ID it was serialized with. */
+	private static class CachedFrame {
+		private final int id;
+		private final byte[] bytes;
+
+		private CachedFrame(int id, byte[] bytes) {
+			this.id = id;
+			this.bytes = bytes;
+		}
+	}
+
+	/** Cached result of {@link #toFrame()}. Benign race if built by more than one thread. */
+	private volatile CachedFrame cachedFrame;
+
 	/** Typically called by subclass when constructing message from received network data. */
 	protected Message(int id, MessageType type) {
 		this.id = id;
@@ -82,6 +93,37 @@ public abstract class Message {
 		return this.type;
 	}
 
+	/**
+	 * Returns total length, in bytes, of message starting at buffer's position, based on message's header.
+	 * <p>
+	 * Buffer's position is not changed. Message's "magic" and checksum are not checked.
+	 *
+	 * @param readOnlyBuffer ByteBuffer containing bytes read from network
+	 * @return total message length, or -1 if not enough bytes to determine length
+	 */
+	public static int peekMessageLength(ByteBuffer readOnlyBuffer) {
+		final int position = readOnlyBuffer.position();
+
+		int headerLength = MAGIC_LENGTH + TYPE_LENGTH + HAS_ID_LENGTH;
+		if (readOnlyBuffer.remaining() < headerLength)
+			return -1;
+
+		if (readOnlyBuffer.get(position + MAGIC_LENGTH + TYPE_LENGTH) != 0)
+			headerLength += ID_LENGTH;
+
+		if (readOnlyBuffer.remaining() < headerLength + DATA_SIZE_LENGTH)
+			return -1;
+
+		int dataSize = readOnlyBuffer.getInt(position + headerLength);
+		headerLength += DATA_SIZE_LENGTH;
+
+		if (dataSize <= 0)
+			return headerLength;
+
+		// Avoid overflow with bogus data sizes
+		return (int) Math.min(Integer.MAX_VALUE, (long) headerLength + CHECKSUM_LENGTH + dataSize);
+	}
+
 	/**
 	 * Attempt to read a message from byte buffer.
 	 * 
@@ -175,38 +217,53 @@ public abstract class Message {
 		// We can calculate exact length
 		int messageLength = MAGIC_LENGTH + TYPE_LENGTH + HAS_ID_LENGTH;
 		messageLength += this.hasId() ? ID_LENGTH : 0;
-		messageLength += DATA_SIZE_LENGTH + this.dataBytes.length > 0 ? CHECKSUM_LENGTH + this.dataBytes.length : 0;
+		messageLength += DATA_SIZE_LENGTH;
+		messageLength += this.dataBytes.length > 0 ? CHECKSUM_LENGTH + this.dataBytes.length : 0;
 
 		if (messageLength > MAX_DATA_SIZE)
 			throw new MessageException(String.format("About to send message with length %d larger than allowed %d", messageLength, MAX_DATA_SIZE));
 
-		try {
-			ByteArrayOutputStream bytes = new ByteArrayOutputStream(messageLength);
+		ByteBuffer bytes = ByteBuffer.allocate(messageLength);
 
-			// Magic
-			bytes.write(Network.getInstance().getMessageMagic());
+		// Magic
+		bytes.put(Network.getInstance().getMessageMagic());
 
-			bytes.write(Ints.toByteArray(this.type.value));
+		bytes.putInt(this.type.value);
 
-			if (this.hasId()) {
-				bytes.write(1);
+		if (this.hasId()) {
+			bytes.put((byte) 1);
 
-				bytes.write(Ints.toByteArray(this.id));
-			} else {
-				bytes.write(0);
-			}
+			bytes.putInt(this.id);
+		} else {
+			bytes.put((byte) 0);
+		}
 
-			bytes.write(Ints.toByteArray(this.dataBytes.length));
+		bytes.putInt(this.dataBytes.length);
 
-			if (this.dataBytes.length > 0) {
-				bytes.write(this.checksumBytes);
-				bytes.write(this.dataBytes);
-			}
+		if (this.dataBytes.length > 0) {
+			bytes.put(this.checksumBytes);
+			bytes.put(this.dataBytes);
+		}
 
-			return bytes.toByteArray();
-		} catch (IOException e) {
-			throw new MessageException("Failed to serialize message", e);
+		return bytes.array();
+	}
+
+	/**
+	 * Returns serialized message as read-only buffer, ready for writing to network.
+	 * <p>
+	 * Serialized bytes are cached, as outgoing messages are immutable apart from their ID,
+	 * so broadcasting the same message to many peers only serializes it once.
+	 * Each call returns a new buffer, with its own position, over the shared bytes.
+	 */
+	public ByteBuffer toFrame() throws MessageException {
+		CachedFrame cachedFrame = this.cachedFrame;
+
+		if (cachedFrame == null || cachedFrame.id != this.id) {
+			cachedFrame = new CachedFrame(this.id, this.toBytes());
+			this.cachedFrame = cachedFrame;
 		}
+
+		return ByteBuffer.wrap(cachedFrame.bytes).asReadOnlyBuffer();
 	}
 
 	public static <M extends Message> M cloneWithNewId(M message, int newId) {
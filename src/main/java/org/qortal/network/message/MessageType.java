@@ -79,7 +79,15 @@ public enum MessageType {
     GET_NAME(182, GetNameMessage::fromByteBuffer),
 
     TRANSACTIONS(190, TransactionsMessage::fromByteBuffer),
-    GET_ACCOUNT_TRANSACTIONS(191, GetAccountTransactionsMessage::fromByteBuffer);
+    GET_ACCOUNT_TRANSACTIONS(191, GetAccountTransactionsMessage::fromByteBuffer),
+
+    // Chat sync
+    CHAT_MESSAGES(200, ChatMessagesMessage::fromByteBuffer),
+    GET_CHAT_MESSAGES(201, GetChatMessagesMessage::fromByteBuffer),
+
+    CHAT_MESSAGE_SIGNATURES(210, ChatMessageSignaturesMessage::fromByteBuffer),
+    GET_CHAT_MESSAGE(211, GetChatMessageMessage::fromByteBuffer),
+    GET_RECENT_CHAT_MESSAGES(212, GetRecentChatMessagesMessage::fromByteBuffer);
 
     public final int value;
     public final MessageProducer fromByteBufferMethod;
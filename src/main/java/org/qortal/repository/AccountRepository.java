@@ -163,6 +163,9 @@ public interface AccountRepository {
 
 	public RewardShareData getRewardShare(byte[] rewardSharePublicKey) throws DataException;
 
+	/** Returns reward-shares matching any of passed reward-share public keys, in no particular order. Unknown keys are skipped. */
+	public List<RewardShareData> getRewardSharesByPublicKeys(List<byte[]> rewardSharePublicKeys) throws DataException;
+
 	public List<byte[]> getRewardSharePublicKeys() throws DataException;
 
 	public boolean isRewardSharePublicKey(byte[] publicKey) throws DataException;
@@ -1,6 +1,5 @@
 package org.qortal.repository;
 
-import com.google.common.primitives.Ints;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.qortal.data.block.BlockArchiveData;
@@ -10,21 +9,146 @@ import org.qortal.transform.block.BlockTransformation;
 import org.qortal.transform.block.BlockTransformer;
 import org.qortal.utils.Triple;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.qortal.transform.Transformer.INT_LENGTH;
 
+/**
+ * Reads blocks from archive files.
+ * <p>
+ * Each archive file is memory-mapped, once, on first use, and its block index accessed in place,
+ * so reading a block is a bounds-checked slice of mapped memory rather than a file open, seeks and reads.
+ * Archive files are kept sorted by start height, so the file for a height is found by binary search.
+ * <p>
+ * Mappings of unchanged files are kept when the file list is refreshed.
+ */
 public class BlockArchiveReader {
 
     private static BlockArchiveReader instance;
-    private Map<String, Triple<Integer, Integer, Integer>> fileListCache;
+
+    /** Archive files sorted by start height, or null if file list needs (re)building */
+    private volatile ArchiveFile[] fileListCache;
+    /** Previous file list, keyed by filename, for reusing existing mappings of unchanged files */
+    private Map<String, ArchiveFile> previousFileList = Collections.emptyMap();
 
     private static final Logger LOGGER = LogManager.getLogger(BlockArchiveReader.class);
 
+    /** Version, start height, end height, block count, variable header length */
+    private static final int FIXED_HEADER_LENGTH = 5 * INT_LENGTH;
+
+    /** Mapped archive file contents, and whereabouts of block index and data segment within */
+    private static class MappedArchive {
+        private final ByteBuffer buffer;
+        private final int version;
+        private final int startHeight;
+        private final int endHeight;
+        private final IntBuffer blockIndex;
+        private final int dataSegmentStartIndex;
+
+        private MappedArchive(ByteBuffer buffer, int version, int startHeight, int endHeight, IntBuffer blockIndex, int dataSegmentStartIndex) {
+            this.buffer = buffer;
+            this.version = version;
+            this.startHeight = startHeight;
+            this.endHeight = endHeight;
+            this.blockIndex = blockIndex;
+            this.dataSegmentStartIndex = dataSegmentStartIndex;
+        }
+    }
+
+    private static class ArchiveFile {
+        private final String filename;
+        private final int startHeight;
+        private final int endHeight;
+        private final long length;
+        private final long lastModified;
+
+        private volatile MappedArchive mappedArchive;
+
+        private ArchiveFile(String filename, int startHeight, int endHeight, long length, long lastModified) {
+            this.filename = filename;
+            this.startHeight = startHeight;
+            this.endHeight = endHeight;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        private boolean isSameFileAs(ArchiveFile other) {
+            return this.filename.equals(other.filename) && this.length == other.length && this.lastModified == other.lastModified;
+        }
+
+        /** Returns mapped archive, mapping file if necessary, or null if file can't be read. */
+        private MappedArchive getMappedArchive() {
+            MappedArchive mappedArchive = this.mappedArchive;
+            if (mappedArchive != null)
+                return mappedArchive;
+
+            synchronized (this) {
+                if (this.mappedArchive == null)
+                    this.mappedArchive = this.map();
+
+                return this.mappedArchive;
+            }
+        }
+
+        private MappedArchive map() {
+            Path filePath = Paths.get(Settings.getInstance().getRepositoryPath(), "archive", this.filename).toAbsolutePath();
+
+            // Mapping remains valid after channel is closed
+            ByteBuffer buffer;
+            try (FileChannel fileChannel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+                long fileLength = fileChannel.size();
+                if (fileLength > Integer.MAX_VALUE || fileLength < FIXED_HEADER_LENGTH) {
+                    LOGGER.info("Error: unusable length of file {}: {}", this.filename, fileLength);
+                    return null;
+                }
+
+                buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+            } catch (IOException e) {
+                LOGGER.info("Unable to map archive file {}: {}", this.filename, e.getMessage());
+                return null;
+            }
+
+            // Get info about this file (the "fixed length header")
+            final int version = buffer.getInt(0);
+            final int startHeight = buffer.getInt(INT_LENGTH);
+            final int endHeight = buffer.getInt(2 * INT_LENGTH);
+            // Block count (unused) at 3 * INT_LENGTH
+            final int variableHeaderLength = buffer.getInt(4 * INT_LENGTH);
+            // End of fixed length header
+
+            // Make sure the version is one we recognize
+            if (version != 1 && version != 2) {
+                LOGGER.info("Error: unknown version in file {}: {}", this.filename, version);
+                return null;
+            }
+
+            // Data segment follows block index and data segment length.
+            // If file is shorter than its headers claim then it might still be being written.
+            final long dataSegmentStartIndex = (long) FIXED_HEADER_LENGTH + variableHeaderLength + INT_LENGTH; // Confirmed correct
+            if (endHeight < startHeight || variableHeaderLength < (endHeight - startHeight + 1) * INT_LENGTH
+                    || dataSegmentStartIndex > buffer.capacity()) {
+                LOGGER.info("Error: inconsistent headers in file {}", this.filename);
+                return null;
+            }
+
+            ByteBuffer blockIndexBuffer = buffer.duplicate();
+            blockIndexBuffer.position(FIXED_HEADER_LENGTH);
+            blockIndexBuffer.limit(FIXED_HEADER_LENGTH + variableHeaderLength);
+            IntBuffer blockIndex = blockIndexBuffer.slice().asIntBuffer();
+
+            return new MappedArchive(buffer, version, startHeight, endHeight, blockIndex, (int) dataSegmentStartIndex);
+        }
+    }
+
     public BlockArchiveReader() {
 
     }
@@ -37,16 +161,20 @@ public class BlockArchiveReader {
         return instance;
     }
 
-    private void fetchFileList() {
+    private synchronized ArchiveFile[] fetchFileList() {
+        // Another thread might have beaten us to it
+        ArchiveFile[] fileList = this.fileListCache;
+        if (fileList != null)
+            return fileList;
+
         Path archivePath = Paths.get(Settings.getInstance().getRepositoryPath(), "archive").toAbsolutePath();
         File archiveDirFile = archivePath.toFile();
-        String[] files = archiveDirFile.list();
-        Map<String, Triple<Integer, Integer, Integer>> map = new HashMap<>();
+        File[] files = archiveDirFile.listFiles();
+        List<ArchiveFile> archiveFiles = new ArrayList<>();
 
         if (files != null) {
-            for (String file : files) {
-                Path filePath = Paths.get(file);
-                String filename = filePath.getFileName().toString();
+            for (File file : files) {
+                String filename = file.getName();
 
                 // Parse the filename
                 if (filename == null || !filename.contains("-") || !filename.contains(".")) {
@@ -55,21 +183,38 @@ public class BlockArchiveReader {
                 }
                 // Remove the extension and split into two parts
                 String[] parts = filename.substring(0, filename.lastIndexOf('.')).split("-");
-                Integer startHeight = Integer.parseInt(parts[0]);
-                Integer endHeight = Integer.parseInt(parts[1]);
-                Integer range = endHeight - startHeight;
-                map.put(filename, new Triple(startHeight, endHeight, range));
+                int startHeight = Integer.parseInt(parts[0]);
+                int endHeight = Integer.parseInt(parts[1]);
+
+                ArchiveFile archiveFile = new ArchiveFile(filename, startHeight, endHeight, file.length(), file.lastModified());
+
+                // Reuse existing entry, and hence mapping, if file is unchanged
+                ArchiveFile previousArchiveFile = this.previousFileList.get(filename);
+                if (previousArchiveFile != null && previousArchiveFile.isSameFileAs(archiveFile))
+                    archiveFile = previousArchiveFile;
+
+                archiveFiles.add(archiveFile);
             }
         }
-        this.fileListCache = Map.copyOf(map);
+
+        archiveFiles.sort(Comparator.comparingInt(archiveFile -> archiveFile.startHeight));
+
+        fileList = archiveFiles.toArray(new ArchiveFile[0]);
+        this.previousFileList = archiveFiles.stream().collect(Collectors.toMap(archiveFile -> archiveFile.filename, archiveFile -> archiveFile));
+        this.fileListCache = fileList;
+        return fileList;
     }
 
-    public Integer fetchSerializationVersionForHeight(int height) {
-        if (this.fileListCache == null) {
-            this.fetchFileList();
-        }
+    private ArchiveFile[] getFileList() {
+        ArchiveFile[] fileList = this.fileListCache;
+        if (fileList != null)
+            return fileList;
 
-        Triple<byte[], Integer, Integer> serializedBlock = this.fetchSerializedBlockBytesForHeight(height);
+        return this.fetchFileList();
+    }
+
+    public Integer fetchSerializationVersionForHeight(int height) {
+        Triple<ByteBuffer, Integer, Integer> serializedBlock = this.fetchSerializedBlockBufferForHeight(height);
         if (serializedBlock == null) {
             return null;
         }
@@ -78,21 +223,16 @@ public class BlockArchiveReader {
     }
 
     public BlockTransformation fetchBlockAtHeight(int height) {
-        if (this.fileListCache == null) {
-            this.fetchFileList();
-        }
-
-        Triple<byte[], Integer, Integer> serializedBlock = this.fetchSerializedBlockBytesForHeight(height);
+        Triple<ByteBuffer, Integer, Integer> serializedBlock = this.fetchSerializedBlockBufferForHeight(height);
         if (serializedBlock == null) {
             return null;
         }
-        byte[] serializedBytes = serializedBlock.getA();
+        ByteBuffer byteBuffer = serializedBlock.getA();
         Integer serializationVersion = serializedBlock.getB();
-        if (serializedBytes == null || serializationVersion == null) {
+        if (byteBuffer == null || serializationVersion == null) {
             return null;
         }
 
-        ByteBuffer byteBuffer = ByteBuffer.wrap(serializedBytes);
         BlockTransformation blockInfo = null;
         try {
             switch (serializationVersion) {
@@ -122,10 +262,6 @@ public class BlockArchiveReader {
 
     public BlockTransformation fetchBlockWithSignature(byte[] signature, Repository repository) {
 
-        if (this.fileListCache == null) {
-            this.fetchFileList();
-        }
-
         Integer height = this.fetchHeightForSignature(signature, repository);
         if (height != null) {
             return this.fetchBlockAtHeight(height);
@@ -171,173 +307,164 @@ public class BlockArchiveReader {
         }
     }
 
-    private String getFilenameForHeight(int height) {
-        if (this.fileListCache == null) {
-            this.fetchFileList();
-        }
+    private ArchiveFile getArchiveFileForHeight(int height) {
+        ArchiveFile[] fileList = this.getFileList();
 
-        Iterator it = this.fileListCache.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry pair = (Map.Entry) it.next();
-            if (pair == null && pair.getKey() == null && pair.getValue() == null) {
-                continue;
-            }
-            Triple<Integer, Integer, Integer> heightInfo = (Triple<Integer, Integer, Integer>) pair.getValue();
-            Integer startHeight = heightInfo.getA();
-            Integer endHeight = heightInfo.getB();
-
-            if (height >= startHeight && height <= endHeight) {
-                // Found the correct file
-                String filename = (String) pair.getKey();
-                return filename;
+        // Binary search for last file starting at, or before, height
+        int low = 0;
+        int high = fileList.length - 1;
+        ArchiveFile candidate = null;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+
+            if (fileList[mid].startHeight <= height) {
+                candidate = fileList[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
             }
         }
 
-        return null;
+        if (candidate == null || height > candidate.endHeight)
+            return null;
+
+        // Found the correct file
+        return candidate;
     }
 
     public Triple<byte[], Integer, Integer> fetchSerializedBlockBytesForSignature(byte[] signature, boolean includeHeightPrefix, Repository repository) {
-        if (this.fileListCache == null) {
-            this.fetchFileList();
-        }
-
         Integer height = this.fetchHeightForSignature(signature, repository);
         if (height != null) {
-            Triple<byte[], Integer, Integer> serializedBlock = this.fetchSerializedBlockBytesForHeight(height);
+            Triple<ByteBuffer, Integer, Integer> serializedBlock = this.fetchSerializedBlockBufferForHeight(height);
             if (serializedBlock == null) {
                 return null;
             }
-            byte[] blockBytes = serializedBlock.getA();
+            ByteBuffer blockBuffer = serializedBlock.getA();
             Integer version = serializedBlock.getB();
-            if (blockBytes == null || version == null) {
+            if (blockBuffer == null || version == null) {
                 return null;
             }
 
             // When responding to a peer with a BLOCK message, we must prefix the byte array with the block height
             // This mimics the toData() method in BlockMessage and CachedBlockMessage
+            int prefixLength = includeHeightPrefix ? INT_LENGTH : 0;
+            byte[] bytes = new byte[prefixLength + blockBuffer.remaining()];
+            ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
             if (includeHeightPrefix) {
-                ByteArrayOutputStream bytes = new ByteArrayOutputStream(blockBytes.length + INT_LENGTH);
-                try {
-                    bytes.write(Ints.toByteArray(height));
-                    bytes.write(blockBytes);
-                    return new Triple<>(bytes.toByteArray(), version, height);
-
-                } catch (IOException e) {
-                    return null;
-                }
+                byteBuffer.putInt(height);
             }
-            return new Triple<>(blockBytes, version, height);
+            byteBuffer.put(blockBuffer);
+
+            return new Triple<>(bytes, version, height);
         }
         return null;
     }
 
     public Triple<byte[], Integer, Integer> fetchSerializedBlockBytesForHeight(int height) {
-        String filename = this.getFilenameForHeight(height);
-        if (filename == null) {
-            // We don't have this block in the archive
-            // Invalidate the file list cache in case it is out of date
-            this.invalidateFileListCache();
+        Triple<ByteBuffer, Integer, Integer> serializedBlock = this.fetchSerializedBlockBufferForHeight(height);
+        if (serializedBlock == null) {
             return null;
         }
 
-        Path filePath = Paths.get(Settings.getInstance().getRepositoryPath(), "archive", filename).toAbsolutePath();
-        RandomAccessFile file = null;
-        try {
-            file = new RandomAccessFile(filePath.toString(), "r");
-            // Get info about this file (the "fixed length header")
-            final int version = file.readInt(); // Do not remove or comment out, as it is moving the file pointer
-            final int startHeight = file.readInt(); // Do not remove or comment out, as it is moving the file pointer
-            final int endHeight = file.readInt(); // Do not remove or comment out, as it is moving the file pointer
-            file.readInt(); // Block count (unused) // Do not remove or comment out, as it is moving the file pointer
-            final int variableHeaderLength = file.readInt(); // Do not remove or comment out, as it is moving the file pointer
-            final int fixedHeaderLength = (int)file.getFilePointer();
-            // End of fixed length header
+        ByteBuffer byteBuffer = serializedBlock.getA();
+        byte[] blockBytes = new byte[byteBuffer.remaining()];
+        byteBuffer.get(blockBytes);
 
-            // Make sure the version is one we recognize
-            if (version != 1 && version != 2) {
-                LOGGER.info("Error: unknown version in file {}: {}", filename, version);
-                return null;
-            }
-
-            // Verify that the block is within the reported range
-            if (height < startHeight || height > endHeight) {
-                LOGGER.info("Error: requested height {} but the range of file {} is {}-{}",
-                        height, filename, startHeight, endHeight);
-                return null;
-            }
+        return new Triple<>(blockBytes, serializedBlock.getB(), height);
+    }
 
-            // Seek to the location of the block index in the variable length header
-            final int locationOfBlockIndexInVariableHeaderSegment = (height - startHeight) * INT_LENGTH;
-            file.seek(fixedHeaderLength + locationOfBlockIndexInVariableHeaderSegment);
+    /**
+     * Returns block's serialized bytes, as read-only slice of mapped archive file, along with serialization version and height.
+     */
+    private Triple<ByteBuffer, Integer, Integer> fetchSerializedBlockBufferForHeight(int height) {
+        ArchiveFile archiveFile = this.getArchiveFileForHeight(height);
+        if (archiveFile == null) {
+            // We don't have this block in the archive
+            // Invalidate the file list cache in case it is out of date
+            this.invalidateFileListCache();
+            return null;
+        }
 
-            // Read the value to obtain the index of this block in the data segment
-            int locationOfBlockInDataSegment = file.readInt();
+        MappedArchive mappedArchive = archiveFile.getMappedArchive();
+        if (mappedArchive == null) {
+            // Already logged
+            return null;
+        }
 
-            // Now seek to the block data itself
-            int dataSegmentStartIndex = fixedHeaderLength + variableHeaderLength + INT_LENGTH; // Confirmed correct
-            file.seek(dataSegmentStartIndex + locationOfBlockInDataSegment);
+        final String filename = archiveFile.filename;
 
-            // Read the block metadata
-            int blockHeight = file.readInt(); // Do not remove or comment out, as it is moving the file pointer
-            int blockLength = file.readInt(); // Do not remove or comment out, as it is moving the file pointer
+        // Verify that the block is within the reported range
+        if (height < mappedArchive.startHeight || height > mappedArchive.endHeight) {
+            LOGGER.info("Error: requested height {} but the range of file {} is {}-{}",
+                    height, filename, mappedArchive.startHeight, mappedArchive.endHeight);
+            return null;
+        }
 
-            // Ensure the block height matches the one requested
-            if (blockHeight != height) {
-                LOGGER.info("Error: height {} does not match requested: {}", blockHeight, height);
-                return null;
-            }
+        // Obtain the index of this block in the data segment from the block index in the variable length header
+        final int locationOfBlockInDataSegment = mappedArchive.blockIndex.get(height - mappedArchive.startHeight);
 
-            // Now retrieve the block's serialized bytes
-            byte[] blockBytes = new byte[blockLength];
-            file.read(blockBytes);
+        ByteBuffer buffer = mappedArchive.buffer;
+        final long blockMetadataIndex = (long) mappedArchive.dataSegmentStartIndex + locationOfBlockInDataSegment;
+        if (locationOfBlockInDataSegment < 0 || blockMetadataIndex + 2 * INT_LENGTH > buffer.capacity()) {
+            LOGGER.info("Error: block {} location out of bounds in file {}", height, filename);
+            return null;
+        }
 
-            return new Triple<>(blockBytes, version, height);
+        // Read the block metadata
+        final int blockHeight = buffer.getInt((int) blockMetadataIndex);
+        final int blockLength = buffer.getInt((int) blockMetadataIndex + INT_LENGTH);
 
-        } catch (FileNotFoundException e) {
-            LOGGER.info("File {} not found: {}", filename, e.getMessage());
-            return null;
-        } catch (IOException e) {
-            LOGGER.info("Unable to read block {} from archive: {}", height, e.getMessage());
+        // Ensure the block height matches the one requested
+        if (blockHeight != height) {
+            LOGGER.info("Error: height {} does not match requested: {}", blockHeight, height);
             return null;
         }
-        finally {
-            // Close the file
-            if (file != null) {
-                try {
-                    file.close();
-                } catch (IOException e) {
-                    // Failed to close, but no need to handle this
-                }
-            }
+
+        final long blockIndex = blockMetadataIndex + 2 * INT_LENGTH;
+        if (blockLength < 0 || blockIndex + blockLength > buffer.capacity()) {
+            LOGGER.info("Error: block {} length out of bounds in file {}", height, filename);
+            return null;
         }
+
+        // Slice of the block's serialized bytes
+        ByteBuffer blockBuffer = buffer.duplicate();
+        blockBuffer.position((int) blockIndex);
+        blockBuffer.limit((int) blockIndex + blockLength);
+
+        return new Triple<>(blockBuffer.slice().asReadOnlyBuffer(), mappedArchive.version, height);
     }
 
     public int getHeightOfLastArchivedBlock() {
-        if (this.fileListCache == null) {
-            this.fetchFileList();
-        }
-
         int maxEndHeight = 0;
 
-        Iterator it = this.fileListCache.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry pair = (Map.Entry) it.next();
-            if (pair == null && pair.getKey() == null && pair.getValue() == null) {
-                continue;
-            }
-            Triple<Integer, Integer, Integer> heightInfo = (Triple<Integer, Integer, Integer>) pair.getValue();
-            Integer endHeight = heightInfo.getB();
-
-            if (endHeight != null && endHeight > maxEndHeight) {
-                maxEndHeight = endHeight;
+        for (ArchiveFile archiveFile : this.getFileList()) {
+            if (archiveFile.endHeight > maxEndHeight) {
+                maxEndHeight = archiveFile.endHeight;
             }
         }
 
         return maxEndHeight;
     }
 
+    /**
+     * Forces file list to be rebuilt on next use. Unchanged archive files keep their existing mappings.
+     */
     public void invalidateFileListCache() {
         this.fileListCache = null;
     }
 
+    /**
+     * Drops all archive file mappings, e.g. before deleting or replacing archive files.
+     * <p>
+     * Mapped files are only unmapped once garbage collected, and some platforms (e.g. Windows)
+     * refuse to delete files that are still mapped, hence the GC request.
+     */
+    public synchronized void releaseArchiveFiles() {
+        this.previousFileList = Collections.emptyMap();
+        this.fileListCache = null;
+
+        System.gc();
+    }
+
 }
@@ -8,20 +8,83 @@ import java.util.List;
 
 import static org.qortal.data.chat.ChatMessage.Encoding;
 
+/**
+ * Chat message storage.
+ * <p>
+ * Implementations are backed by the dedicated chat database,
+ * so should be obtained via {@link ChatRepositoryManager#getRepository()}.
+ */
 public interface ChatRepository {
 
 	/**
 	 * Returns CHAT messages matching criteria.
 	 * <p>
 	 * Expects EITHER non-null txGroupID OR non-null sender and recipient addresses.
+	 * <p>
+	 * Results are ordered by timestamp, then signature. For paging through long conversations,
+	 * <tt>beforeSignature</tt> / <tt>afterSignature</tt> can be used as a cursor instead of <tt>offset</tt>,
+	 * returning only messages strictly before/after the message with that signature.
+	 * An unknown cursor signature returns no messages.
 	 */
 	public List<ChatMessage> getMessagesMatchingCriteria(Long before, Long after,
+			byte[] beforeSignature, byte[] afterSignature,
 			Integer txGroupId, byte[] reference, byte[] chatReferenceBytes, Boolean hasChatReference,
 			List<String> involving, String senderAddress, Encoding encoding,
 			Integer limit, Integer offset, Boolean reverse) throws DataException;
 
+	/** Returns stored CHAT message with passed signature, or null if not found. */
+	public ChatMessage getMessageBySignature(byte[] signature, Encoding encoding) throws DataException;
+
 	public ChatMessage toChatMessage(ChatTransactionData chatTransactionData, Encoding encoding) throws DataException;
 
 	public ActiveChats getActiveChats(String address, Encoding encoding) throws DataException;
 
+	/** Returns IDs of groups that <tt>address</tt> is a member of, as copied into chat repository. */
+	public List<Integer> getGroupIdsByMember(String address) throws DataException;
+
+	public boolean exists(byte[] signature) throws DataException;
+
+	// Chat sync
+
+	/** Returns stored CHAT transaction with passed signature, or null if not found. */
+	public ChatTransactionData getChatTransaction(byte[] signature) throws DataException;
+
+	/**
+	 * Returns stored CHAT transactions with timestamps within inclusive range, ordered by timestamp then signature.
+	 * <p>
+	 * Either bound can be null. Used when serving chat sync requests.
+	 * <p>
+	 * If <tt>cursorSignature</tt> is not null, messages with exactly the starting timestamp
+	 * (<tt>minTimestamp</tt>, or <tt>maxTimestamp</tt> if <tt>reverse</tt>) are only returned
+	 * if they're strictly after <tt>cursorSignature</tt> in result order.
+	 */
+	public List<ChatTransactionData> getChatTransactionsByTimestamp(Long minTimestamp, Long maxTimestamp, byte[] cursorSignature,
+			Integer limit, Boolean reverse) throws DataException;
+
+	/** Returns signatures of CHAT messages with timestamp at or after <tt>minTimestamp</tt>, most recent first. */
+	public List<byte[]> getRecentSignatures(long minTimestamp, Integer limit) throws DataException;
+
+	/**
+	 * Saves CHAT message, along with sender's and recipient's registered names (if any).
+	 * <p>
+	 * Names are copied from the main repository at save time so that reads
+	 * don't need to join against the main repository's <tt>Names</tt> table,
+	 * and are refreshed using {@link #saveName(String, String)} whenever names change.
+	 */
+	public void save(ChatTransactionData chatTransactionData, String senderName, String recipientName) throws DataException;
+
+	/**
+	 * Replaces chat database's copy of address's registered name.
+	 * <p>
+	 * Pass null <tt>name</tt> if address no longer has a registered name.
+	 */
+	public void saveName(String address, String name) throws DataException;
+
+	/**
+	 * Replaces chat database's copy of group's name and membership.
+	 * <p>
+	 * Pass null <tt>groupName</tt> to remove group entirely, e.g. if group creation was orphaned.
+	 */
+	public void saveGroupMembers(int groupId, String groupName, List<String> members) throws DataException;
+
 }
@@ -708,6 +708,46 @@ public class HSQLDBAccountRepository implements AccountRepository {
 		}
 	}
 
+	@Override
+	public List<RewardShareData> getRewardSharesByPublicKeys(List<byte[]> rewardSharePublicKeys) throws DataException {
+		List<RewardShareData> rewardShares = new ArrayList<>();
+		if (rewardSharePublicKeys.isEmpty())
+			return rewardShares;
+
+		StringBuilder sql = new StringBuilder(1024);
+		sql.append("SELECT minter_public_key, minter, recipient, share_percent, reward_share_public_key FROM RewardShares ");
+		sql.append("JOIN (VALUES ");
+
+		final int publicKeysSize = rewardSharePublicKeys.size();
+		for (int pki = 0; pki < publicKeysSize; ++pki) {
+			if (pki != 0)
+				sql.append(", ");
+
+			sql.append("(CAST(? AS QortalPublicKey))");
+		}
+
+		sql.append(") AS PublicKeys (public_key) ON RewardShares.reward_share_public_key = PublicKeys.public_key");
+
+		try (ResultSet resultSet = this.repository.checkedExecute(sql.toString(), rewardSharePublicKeys.toArray())) {
+			if (resultSet == null)
+				return rewardShares;
+
+			do {
+				byte[] minterPublicKey = resultSet.getBytes(1);
+				String minter = resultSet.getString(2);
+				String recipient = resultSet.getString(3);
+				int sharePercent = resultSet.getInt(4);
+				byte[] rewardSharePublicKey = resultSet.getBytes(5);
+
+				rewardShares.add(new RewardShareData(minterPublicKey, minter, recipient, rewardSharePublicKey, sharePercent));
+			} while (resultSet.next());
+
+			return rewardShares;
+		} catch (SQLException e) {
+			throw new DataException("Unable to fetch reward-shares from repository", e);
+		}
+	}
+
 	@Override
 	public List<byte[]> getRewardSharePublicKeys() throws DataException {
 		String sql = "SELECT reward_share_public_key FROM RewardShares ORDER BY reward_share_public_key";
@@ -100,23 +100,99 @@ public class HSQLDBChatDatabaseUpdates {
 					stmt.execute("CREATE TABLE DatabaseInfo ( version INTEGER NOT NULL )");
 					stmt.execute("INSERT INTO DatabaseInfo VALUES ( 0 )");
 
-					stmt.execute("CREATE TYPE Signature AS VARBINARY(64)");
-					stmt.execute("CREATE TYPE QortalAddress AS VARCHAR(36)");
+					stmt.execute("CREATE TYPE EpochMillis AS BIGINT");
+					stmt.execute("CREATE TYPE GroupID AS INTEGER");
+					stmt.execute("CREATE TYPE GroupName AS VARCHAR(400) COLLATE SQL_TEXT_UCC_NO_PAD");
 					stmt.execute("CREATE TYPE MessageData AS VARBINARY(4000)");
+					stmt.execute("CREATE TYPE QortalAddress AS VARCHAR(36)");
+					stmt.execute("CREATE TYPE QortalPublicKey AS VARBINARY(32)");
+					stmt.execute("CREATE TYPE RegisteredName AS VARCHAR(128) COLLATE SQL_TEXT_NO_PAD");
+					stmt.execute("CREATE TYPE Signature AS VARBINARY(64)");
 
 					break;
 
 				case 1:
 					// Chat messages
-					stmt.execute("CREATE TABLE ChatMessages (signature Signature, reference Signature,"
+					stmt.execute("CREATE TABLE ChatMessages (signature Signature, reference Signature, "
 							+ "created_when EpochMillis NOT NULL, tx_group_id GroupID NOT NULL, "
-							+ "sender QortalAddress NOT NULL, nonce INT NOT NULL, recipient QortalAddress, "
+							+ "sender_public_key QortalPublicKey NOT NULL, sender QortalAddress NOT NULL, "
+							+ "nonce INT NOT NULL, recipient QortalAddress, chat_reference Signature, "
 							+ "is_text BOOLEAN NOT NULL, is_encrypted BOOLEAN NOT NULL, data MessageData NOT NULL, "
 							+ "PRIMARY KEY (signature))");
 					// For finding chat messages by sender
 					stmt.execute("CREATE INDEX ChatMessagesSenderIndex ON ChatMessages (sender)");
 					// For finding chat messages by recipient
 					stmt.execute("CREATE INDEX ChatMessagesRecipientIndex ON ChatMessages (recipient, sender)");
+					// For finding chat messages by group, most recent first
+					stmt.execute("CREATE INDEX ChatMessagesTxGroupIndex ON ChatMessages (tx_group_id, created_when)");
+					// For finding replies, reactions, etc.
+					stmt.execute("CREATE INDEX ChatMessagesChatReferenceIndex ON ChatMessages (chat_reference)");
+					break;
+
+				case 2:
+					// Registered names of chat participants, copied from main repository when messages are stored,
+					// so that reading chat messages never needs to touch the main repository
+					stmt.execute("CREATE TABLE ChatNames (address QortalAddress, name RegisteredName NOT NULL, "
+							+ "PRIMARY KEY (address))");
+
+					// Copy of group names and memberships, refreshed from main repository after blocks that change membership
+					stmt.execute("CREATE TABLE ChatGroups (group_id GroupID, group_name GroupName NOT NULL, "
+							+ "PRIMARY KEY (group_id))");
+					stmt.execute("CREATE TABLE ChatGroupMembers (group_id GroupID, address QortalAddress, "
+							+ "PRIMARY KEY (group_id, address), FOREIGN KEY (group_id) REFERENCES ChatGroups (group_id) ON DELETE CASCADE)");
+					// For finding groups by member address
+					stmt.execute("CREATE INDEX ChatGroupMembersAddressIndex ON ChatGroupMembers (address)");
+					break;
+
+				case 3:
+					// Normalized conversation key, so direct and group chat history can be fetched using a single index range.
+					// Direct messages use "<lower address>:<higher address>", group messages use "group:<group ID>".
+					// See HSQLDBChatRepository.conversationKey()
+					stmt.execute("CREATE TYPE ConversationKey AS VARCHAR(80)");
+					stmt.execute("ALTER TABLE ChatMessages ADD COLUMN conversation ConversationKey BEFORE is_text");
+					stmt.execute("UPDATE ChatMessages SET conversation = CASE "
+							+ "WHEN recipient IS NULL THEN 'group:' || CAST(tx_group_id AS VARCHAR(12)) "
+							+ "WHEN sender < recipient THEN sender || ':' || recipient "
+							+ "ELSE recipient || ':' || sender END");
+					stmt.execute("ALTER TABLE ChatMessages ALTER COLUMN conversation SET NOT NULL");
+					// For fetching chat history using keyset pagination, i.e. (created_when, signature) cursor
+					stmt.execute("CREATE INDEX ChatMessagesConversationIndex ON ChatMessages (conversation, created_when, signature)");
+					break;
+
+				case 4:
+					// Latest message per conversation, maintained as messages are saved, for cheap active-chats lookups.
+					// Direct chats have a row for each participant, keyed by participant's address.
+					stmt.execute("CREATE TABLE ChatLatestDirectMessages (address QortalAddress, other_address QortalAddress, "
+							+ "created_when EpochMillis NOT NULL, signature Signature NOT NULL, "
+							+ "PRIMARY KEY (address, other_address))");
+					// Group chats have a single row per group, combined with ChatGroupMembers when read
+					stmt.execute("CREATE TABLE ChatLatestGroupMessages (group_id GroupID, "
+							+ "created_when EpochMillis NOT NULL, signature Signature NOT NULL, "
+							+ "PRIMARY KEY (group_id))");
+
+					// Populate from any existing messages
+					final String isLatestInConversation = "NOT EXISTS (SELECT TRUE FROM ChatMessages AS Newer "
+							+ "WHERE Newer.conversation = ChatMessages.conversation "
+							+ "AND (Newer.created_when > ChatMessages.created_when "
+							+ "OR (Newer.created_when = ChatMessages.created_when AND Newer.signature > ChatMessages.signature)))";
+
+					stmt.execute("INSERT INTO ChatLatestGroupMessages (group_id, created_when, signature) "
+							+ "SELECT tx_group_id, created_when, signature FROM ChatMessages "
+							+ "WHERE recipient IS NULL AND " + isLatestInConversation);
+					stmt.execute("INSERT INTO ChatLatestDirectMessages (address, other_address, created_when, signature) "
+							+ "SELECT sender, recipient, created_when, signature FROM ChatMessages "
+							+ "WHERE recipient IS NOT NULL AND " + isLatestInConversation);
+					stmt.execute("INSERT INTO ChatLatestDirectMessages (address, other_address, created_when, signature) "
+							+ "SELECT recipient, sender, created_when, signature FROM ChatMessages "
+							+ "WHERE recipient IS NOT NULL AND recipient <> sender AND " + isLatestInConversation);
+					break;
+
+				case 5:
+					// Chat sync: peers exchange complete CHAT transactions, so we need enough to rebuild signed bytes
+					stmt.execute("CREATE TYPE QortalAmount AS BIGINT");
+					stmt.execute("ALTER TABLE ChatMessages ADD COLUMN fee QortalAmount DEFAULT 0 NOT NULL");
+					// For serving chat sync requests by timestamp cursor
+					stmt.execute("CREATE INDEX ChatMessagesTimestampIndex ON ChatMessages (created_when, signature)");
 					break;
 
 				default:
@@ -4,10 +4,10 @@ import org.qortal.data.chat.ActiveChats;
 import org.qortal.data.chat.ActiveChats.DirectChat;
 import org.qortal.data.chat.ActiveChats.GroupChat;
 import org.qortal.data.chat.ChatMessage;
+import org.qortal.data.transaction.BaseTransactionData;
 import org.qortal.data.transaction.ChatTransactionData;
 import org.qortal.repository.ChatRepository;
 import org.qortal.repository.DataException;
-import org.qortal.transaction.Transaction.TransactionType;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -16,16 +16,56 @@ import java.util.List;
 
 import static org.qortal.data.chat.ChatMessage.Encoding;
 
+/**
+ * Chat repository, backed by the dedicated chat database.
+ * <p>
+ * All queries run against <tt>ChatMessages</tt> and supporting tables in the chat database,
+ * never against the main repository, so <tt>repository</tt> must be a chat database session.
+ */
 public class HSQLDBChatRepository implements ChatRepository {
 
+	private static final String CHAT_MESSAGE_COLUMNS = "created_when, tx_group_id, reference, sender_public_key, "
+			+ "sender, SenderNames.name, recipient, RecipientNames.name, "
+			+ "chat_reference, data, is_text, is_encrypted, signature ";
+
+	private static final String CHAT_TRANSACTION_COLUMNS = "created_when, tx_group_id, reference, sender_public_key, fee, "
+			+ "signature, sender, nonce, recipient, chat_reference, data, is_text, is_encrypted ";
+
+	private static final String CHAT_MESSAGE_TABLES = "ChatMessages "
+			+ "LEFT OUTER JOIN ChatNames AS SenderNames ON SenderNames.address = sender "
+			+ "LEFT OUTER JOIN ChatNames AS RecipientNames ON RecipientNames.address = recipient ";
+
+	/** WHERE clause fragment matching latest-message rows at least as new as (created_when, created_when, signature) bind params */
+	private static final String NEWER_OR_SAME_MESSAGE = "(created_when > ? OR (created_when = ? AND signature >= ?))";
+
 	protected HSQLDBRepository repository;
 
 	public HSQLDBChatRepository(HSQLDBRepository repository) {
 		this.repository = repository;
 	}
 
+	/**
+	 * Returns normalized conversation key for CHAT message.
+	 * <p>
+	 * Direct messages (i.e. with recipient) use both addresses in lexicographic order,
+	 * so both directions of a conversation share the same key.
+	 * Otherwise, messages are keyed by transaction group ID.
+	 * <p>
+	 * Must match SQL used to populate <tt>conversation</tt> column in {@link HSQLDBChatDatabaseUpdates}.
+	 */
+	protected static String conversationKey(int txGroupId, String sender, String recipient) {
+		if (recipient == null)
+			return "group:" + txGroupId;
+
+		if (sender.compareTo(recipient) < 0)
+			return sender + ":" + recipient;
+
+		return recipient + ":" + sender;
+	}
+
 	@Override
-	public List<ChatMessage> getMessagesMatchingCriteria(Long before, Long after, Integer txGroupId, byte[] referenceBytes,
+	public List<ChatMessage> getMessagesMatchingCriteria(Long before, Long after, byte[] beforeSignature, byte[] afterSignature,
+														 Integer txGroupId, byte[] referenceBytes,
 														 byte[] chatReferenceBytes, Boolean hasChatReference, List<String> involving, String senderAddress,
 														 Encoding encoding, Integer limit, Integer offset, Boolean reverse) throws DataException {
 		// Check args meet expectations
@@ -35,19 +75,23 @@ public class HSQLDBChatRepository implements ChatRepository {
 
 		StringBuilder sql = new StringBuilder(1024);
 
-		sql.append("SELECT created_when, tx_group_id, Transactions.reference, creator, "
-				+ "sender, SenderNames.name, recipient, RecipientNames.name, "
-				+ "chat_reference, data, is_text, is_encrypted, signature "
-				+ "FROM ChatTransactions "
-				+ "JOIN Transactions USING (signature) "
-				+ "LEFT OUTER JOIN Names AS SenderNames ON SenderNames.owner = sender "
-				+ "LEFT OUTER JOIN Names AS RecipientNames ON RecipientNames.owner = recipient ");
+		sql.append("SELECT ");
+		sql.append(CHAT_MESSAGE_COLUMNS);
+		sql.append("FROM ");
+		sql.append(CHAT_MESSAGE_TABLES);
 
 		// WHERE clauses
 
 		List<String> whereClauses = new ArrayList<>();
 		List<Object> bindParams = new ArrayList<>();
 
+		// Conversation first, as leading column of ChatMessagesConversationIndex
+		whereClauses.add("conversation = ?");
+		if (txGroupId != null)
+			bindParams.add(conversationKey(txGroupId, null, null));
+		else
+			bindParams.add(conversationKey(0, involving.get(0), involving.get(1)));
+
 		// Timestamp range
 		if (before != null) {
 			whereClauses.add("created_when < ?");
@@ -59,6 +103,31 @@ public class HSQLDBChatRepository implements ChatRepository {
 			bindParams.add(after);
 		}
 
+		// Keyset cursors, ordered by (created_when, signature)
+		if (beforeSignature != null) {
+			Long cursorTimestamp = this.getMessageTimestamp(beforeSignature);
+			if (cursorTimestamp == null)
+				// Unknown cursor
+				return new ArrayList<>();
+
+			whereClauses.add("(created_when < ? OR (created_when = ? AND signature < ?))");
+			bindParams.add(cursorTimestamp);
+			bindParams.add(cursorTimestamp);
+			bindParams.add(beforeSignature);
+		}
+
+		if (afterSignature != null) {
+			Long cursorTimestamp = this.getMessageTimestamp(afterSignature);
+			if (cursorTimestamp == null)
+				// Unknown cursor
+				return new ArrayList<>();
+
+			whereClauses.add("(created_when > ? OR (created_when = ? AND signature > ?))");
+			bindParams.add(cursorTimestamp);
+			bindParams.add(cursorTimestamp);
+			bindParams.add(afterSignature);
+		}
+
 		if (referenceBytes != null) {
 			whereClauses.add("reference = ?");
 			bindParams.add(referenceBytes);
@@ -81,15 +150,6 @@ public class HSQLDBChatRepository implements ChatRepository {
 			bindParams.add(senderAddress);
 		}
 
-		if (txGroupId != null) {
-			whereClauses.add("tx_group_id = " + txGroupId); // int safe to use literally
-			whereClauses.add("recipient IS NULL");
-		} else {
-			whereClauses.add("((sender = ? AND recipient = ?) OR (recipient = ? AND sender = ?))");
-			bindParams.addAll(involving);
-			bindParams.addAll(involving);
-		}
-
 		if (!whereClauses.isEmpty()) {
 			sql.append(" WHERE ");
 
@@ -102,8 +162,10 @@ public class HSQLDBChatRepository implements ChatRepository {
 			}
 		}
 
-		sql.append(" ORDER BY Transactions.created_when");
-		sql.append((reverse == null || !reverse) ? " ASC" : " DESC");
+		// Signature is tie-breaker for messages with same timestamp, so keyset cursors are stable
+		String direction = (reverse == null || !reverse) ? " ASC" : " DESC";
+		sql.append(" ORDER BY created_when").append(direction);
+		sql.append(", signature").append(direction);
 
 		HSQLDBRepository.limitOffsetSql(sql, limit, offset);
 
@@ -114,41 +176,67 @@ public class HSQLDBChatRepository implements ChatRepository {
 				return chatMessages;
 
 			do {
-				long timestamp = resultSet.getLong(1);
-				int groupId = resultSet.getInt(2);
-				byte[] reference = resultSet.getBytes(3);
-				byte[] senderPublicKey = resultSet.getBytes(4);
-				String sender = resultSet.getString(5);
-				String senderName = resultSet.getString(6);
-				String recipient = resultSet.getString(7);
-				String recipientName = resultSet.getString(8);
-				byte[] chatReference = resultSet.getBytes(9);
-				byte[] data = resultSet.getBytes(10);
-				boolean isText = resultSet.getBoolean(11);
-				boolean isEncrypted = resultSet.getBoolean(12);
-				byte[] signature = resultSet.getBytes(13);
-
-				ChatMessage chatMessage = new ChatMessage(timestamp, groupId, reference, senderPublicKey, sender,
-						senderName, recipient, recipientName, chatReference, encoding, data, isText, isEncrypted, signature);
-
-				chatMessages.add(chatMessage);
+				chatMessages.add(chatMessageFromResultSet(resultSet, encoding));
 			} while (resultSet.next());
 
 			return chatMessages;
 		} catch (SQLException e) {
-			throw new DataException("Unable to fetch matching chat transactions from repository", e);
+			throw new DataException("Unable to fetch matching chat messages from repository", e);
+		}
+	}
+
+	private Long getMessageTimestamp(byte[] signature) throws DataException {
+		try (ResultSet resultSet = this.repository.checkedExecute("SELECT created_when FROM ChatMessages WHERE signature = ?", signature)) {
+			if (resultSet == null)
+				return null;
+
+			return resultSet.getLong(1);
+		} catch (SQLException e) {
+			throw new DataException("Unable to fetch chat message timestamp from repository", e);
 		}
 	}
 
+	@Override
+	public ChatMessage getMessageBySignature(byte[] signature, Encoding encoding) throws DataException {
+		String sql = "SELECT " + CHAT_MESSAGE_COLUMNS + "FROM " + CHAT_MESSAGE_TABLES + "WHERE signature = ?";
+
+		try (ResultSet resultSet = this.repository.checkedExecute(sql, signature)) {
+			if (resultSet == null)
+				return null;
+
+			return chatMessageFromResultSet(resultSet, encoding);
+		} catch (SQLException e) {
+			throw new DataException("Unable to fetch chat message from repository", e);
+		}
+	}
+
+	private static ChatMessage chatMessageFromResultSet(ResultSet resultSet, Encoding encoding) throws SQLException {
+		long timestamp = resultSet.getLong(1);
+		int groupId = resultSet.getInt(2);
+		byte[] reference = resultSet.getBytes(3);
+		byte[] senderPublicKey = resultSet.getBytes(4);
+		String sender = resultSet.getString(5);
+		String senderName = resultSet.getString(6);
+		String recipient = resultSet.getString(7);
+		String recipientName = resultSet.getString(8);
+		byte[] chatReference = resultSet.getBytes(9);
+		byte[] data = resultSet.getBytes(10);
+		boolean isText = resultSet.getBoolean(11);
+		boolean isEncrypted = resultSet.getBoolean(12);
+		byte[] signature = resultSet.getBytes(13);
+
+		return new ChatMessage(timestamp, groupId, reference, senderPublicKey, sender,
+				senderName, recipient, recipientName, chatReference, encoding, data, isText, isEncrypted, signature);
+	}
+
 	@Override
 	public ChatMessage toChatMessage(ChatTransactionData chatTransactionData, Encoding encoding) throws DataException {
 		String sql = "SELECT SenderNames.name, RecipientNames.name "
-				+ "FROM ChatTransactions "
-				+ "LEFT OUTER JOIN Names AS SenderNames ON SenderNames.owner = sender "
-				+ "LEFT OUTER JOIN Names AS RecipientNames ON RecipientNames.owner = recipient "
-				+ "WHERE signature = ?";
+				+ "FROM (VALUES (CAST(? AS QortalAddress), CAST(? AS QortalAddress))) AS Participants (sender, recipient) "
+				+ "LEFT OUTER JOIN ChatNames AS SenderNames ON SenderNames.address = sender "
+				+ "LEFT OUTER JOIN ChatNames AS RecipientNames ON RecipientNames.address = recipient";
 
-		try (ResultSet resultSet = this.repository.checkedExecute(sql, chatTransactionData.getSignature())) {
+		try (ResultSet resultSet = this.repository.checkedExecute(sql, chatTransactionData.getSender(), chatTransactionData.getRecipient())) {
 			if (resultSet == null)
 				return null;
 
@@ -185,20 +273,13 @@ public class HSQLDBChatRepository implements ChatRepository {
 
 	private List<GroupChat> getActiveGroupChats(String address, Encoding encoding) throws DataException {
 		// Find groups where address is a member and potential latest message details
-		String groupsSql = "SELECT group_id, group_name, latest_timestamp, sender, sender_name, signature, data "
-				+ "FROM GroupMembers "
-				+ "JOIN Groups USING (group_id) "
-				+ "LEFT OUTER JOIN LATERAL("
-					+ "SELECT created_when AS latest_timestamp, sender, name AS sender_name, signature, data "
-					+ "FROM ChatTransactions "
-					+ "JOIN Transactions USING (signature) "
-					+ "LEFT OUTER JOIN Names AS SenderNames ON SenderNames.owner = sender "
-					// NOTE: We need to qualify "Groups.group_id" here to avoid "General error" bug in HSQLDB v2.5.0
-					+ "WHERE tx_group_id = Groups.group_id AND type = " + TransactionType.CHAT.value + " "
-					+ "ORDER BY created_when DESC "
-					+ "LIMIT 1"
-				+ ") AS LatestMessages ON TRUE "
-				+ "WHERE address = ?";
+		String groupsSql = "SELECT group_id, group_name, ChatLatestGroupMessages.created_when, sender, SenderNames.name, signature, data "
+				+ "FROM ChatGroupMembers "
+				+ "JOIN ChatGroups USING (group_id) "
+				+ "LEFT OUTER JOIN ChatLatestGroupMessages USING (group_id) "
+				+ "LEFT OUTER JOIN ChatMessages USING (signature) "
+				+ "LEFT OUTER JOIN ChatNames AS SenderNames ON SenderNames.address = sender "
+				+ "WHERE ChatGroupMembers.address = ?";
 
 		List<GroupChat> groupChats = new ArrayList<>();
 		try (ResultSet resultSet = this.repository.checkedExecute(groupsSql, address)) {
@@ -224,15 +305,12 @@ public class HSQLDBChatRepository implements ChatRepository {
 			throw new DataException("Unable to fetch active group chats from repository", e);
 		}
 
-		// We need different SQL to handle group-less chat
-		String grouplessSql = "SELECT created_when, sender, SenderNames.name, signature, data "
-				+ "FROM ChatTransactions "
-				+ "JOIN Transactions USING (signature) "
-				+ "LEFT OUTER JOIN Names AS SenderNames ON SenderNames.owner = sender "
-				+ "WHERE tx_group_id = 0 "
-				+ "AND recipient IS NULL "
-				+ "ORDER BY created_when DESC "
-				+ "LIMIT 1";
+		// Group-less chat has no membership so needs fetching separately
+		String grouplessSql = "SELECT ChatLatestGroupMessages.created_when, sender, SenderNames.name, signature, data "
+				+ "FROM ChatLatestGroupMessages "
+				+ "JOIN ChatMessages USING (signature) "
+				+ "LEFT OUTER JOIN ChatNames AS SenderNames ON SenderNames.address = sender "
+				+ "WHERE group_id = 0";
 
 		try (ResultSet resultSet = this.repository.checkedExecute(grouplessSql)) {
 			Long timestamp = null;
@@ -260,31 +338,15 @@ public class HSQLDBChatRepository implements ChatRepository {
 	}
 
 	private List<DirectChat> getActiveDirectChats(String address) throws DataException {
-		// Find chat messages involving address
-		String directSql = "SELECT other_address, name, latest_timestamp, sender, sender_name "
-				+ "FROM ("
-					+ "SELECT recipient FROM ChatTransactions "
-					+ "WHERE sender = ? AND recipient IS NOT NULL "
-					+ "UNION "
-					+ "SELECT sender FROM ChatTransactions "
-					+ "WHERE recipient = ?"
-				+ ") AS OtherParties (other_address) "
-				+ "CROSS JOIN LATERAL("
-					+ "SELECT created_when AS latest_timestamp, sender, name AS sender_name "
-					+ "FROM ChatTransactions "
-					+ "NATURAL JOIN Transactions "
-					+ "LEFT OUTER JOIN Names AS SenderNames ON SenderNames.owner = sender "
-					+ "WHERE (sender = other_address AND recipient = ?) "
-					+ "OR (sender = ? AND recipient = other_address) "
-					+ "ORDER BY created_when DESC "
-					+ "LIMIT 1"
-				+ ") AS LatestMessages "
-				+ "LEFT OUTER JOIN Names ON owner = other_address";
-
-		Object[] bindParams = new Object[] { address, address, address, address };
+		String directSql = "SELECT other_address, OtherNames.name, ChatLatestDirectMessages.created_when, sender, SenderNames.name "
+				+ "FROM ChatLatestDirectMessages "
+				+ "JOIN ChatMessages USING (signature) "
+				+ "LEFT OUTER JOIN ChatNames AS OtherNames ON OtherNames.address = other_address "
+				+ "LEFT OUTER JOIN ChatNames AS SenderNames ON SenderNames.address = sender "
+				+ "WHERE ChatLatestDirectMessages.address = ?";
 
 		List<DirectChat> directChats = new ArrayList<>();
-		try (ResultSet resultSet = this.repository.checkedExecute(directSql, bindParams)) {
+		try (ResultSet resultSet = this.repository.checkedExecute(directSql, address)) {
 			if (resultSet == null)
 				return directChats;
 
@@ -305,4 +367,253 @@ public class HSQLDBChatRepository implements ChatRepository {
 		return directChats;
 	}
 
-}
\ No newline at end of file
+	@Override
+	public List<Integer> getGroupIdsByMember(String address) throws DataException {
+		String sql = "SELECT group_id FROM ChatGroupMembers WHERE address = ?";
+
+		List<Integer> groupIds = new ArrayList<>();
+
+		try (ResultSet resultSet = this.repository.checkedExecute(sql, address)) {
+			if (resultSet == null)
+				return groupIds;
+
+			do {
+				groupIds.add(resultSet.getInt(1));
+			} while (resultSet.next());
+
+			return groupIds;
+		} catch (SQLException e) {
+			throw new DataException("Unable to fetch chat group memberships from repository", e);
+		}
+	}
+
+	@Override
+	public boolean exists(byte[] signature) throws DataException {
+		try {
+			return this.repository.exists("ChatMessages", "signature = ?", signature);
+		} catch (SQLException e) {
+			throw new DataException("Unable to check for chat message in repository", e);
+		}
+	}
+
+	// Chat sync
+
+	@Override
+	public ChatTransactionData getChatTransaction(byte[] signature) throws DataException {
+		String sql = "SELECT " + CHAT_TRANSACTION_COLUMNS + "FROM ChatMessages WHERE signature = ?";
+
+		try (ResultSet resultSet = this.repository.checkedExecute(sql, signature)) {
+			if (resultSet == null)
+				return null;
+
+			return chatTransactionFromResultSet(resultSet);
+		} catch (SQLException e) {
+			throw new DataException("Unable to fetch chat transaction from repository", e);
+		}
+	}
+
+	@Override
+	public List<ChatTransactionData> getChatTransactionsByTimestamp(Long minTimestamp, Long maxTimestamp, byte[] cursorSignature,
+			Integer limit, Boolean reverse) throws DataException {
+		StringBuilder sql = new StringBuilder(512);
+		List<Object> bindParams = new ArrayList<>();
+
+		sql.append("SELECT ");
+		sql.append(CHAT_TRANSACTION_COLUMNS);
+		sql.append("FROM ChatMessages WHERE TRUE");
+
+		boolean isReverse = reverse != null && reverse;
+
+		if (minTimestamp != null) {
+			if (cursorSignature != null && !isReverse) {
+				sql.append(" AND (created_when > ? OR (created_when = ? AND signature > ?))");
+				bindParams.add(minTimestamp);
+				bindParams.add(minTimestamp);
+				bindParams.add(cursorSignature);
+			} else {
+				sql.append(" AND created_when >= ?");
+				bindParams.add(minTimestamp);
+			}
+		}
+
+		if (maxTimestamp != null) {
+			if (cursorSignature != null && isReverse) {
+				sql.append(" AND (created_when < ? OR (created_when = ? AND signature < ?))");
+				bindParams.add(maxTimestamp);
+				bindParams.add(maxTimestamp);
+				bindParams.add(cursorSignature);
+			} else {
+				sql.append(" AND created_when <= ?");
+				bindParams.add(maxTimestamp);
+			}
+		}
+
+		String direction = isReverse ? " DESC" : " ASC";
+		sql.append(" ORDER BY created_when").append(direction);
+		sql.append(", signature").append(direction);
+
+		HSQLDBRepository.limitOffsetSql(sql, limit, null);
+
+		List<ChatTransactionData> chatTransactions = new ArrayList<>();
+
+		try (ResultSet resultSet = this.repository.checkedExecute(sql.toString(), bindParams.toArray())) {
+			if (resultSet == null)
+				return chatTransactions;
+
+			do {
+				chatTransactions.add(chatTransactionFromResultSet(resultSet));
+			} while (resultSet.next());
+
+			return chatTransactions;
+		} catch (SQLException e) {
+			throw new DataException("Unable to fetch chat transactions from repository", e);
+		}
+	}
+
+	@Override
+	public List<byte[]> getRecentSignatures(long minTimestamp, Integer limit) throws DataException {
+		StringBuilder sql = new StringBuilder(256);
+		sql.append("SELECT signature FROM ChatMessages WHERE created_when >= ? ORDER BY created_when DESC, signature DESC");
+
+		HSQLDBRepository.limitOffsetSql(sql, limit, null);
+
+		List<byte[]> signatures = new ArrayList<>();
+
+		try (ResultSet resultSet = this.repository.checkedExecute(sql.toString(), minTimestamp)) {
+			if (resultSet == null)
+				return signatures;
+
+			do {
+				signatures.add(resultSet.getBytes(1));
+			} while (resultSet.next());
+
+			return signatures;
+		} catch (SQLException e) {
+			throw new DataException("Unable to fetch recent chat signatures from repository", e);
+		}
+	}
+
+	private static ChatTransactionData chatTransactionFromResultSet(ResultSet resultSet) throws SQLException {
+		long timestamp = resultSet.getLong(1);
+		int txGroupId = resultSet.getInt(2);
+		byte[] reference = resultSet.getBytes(3);
+		byte[] senderPublicKey = resultSet.getBytes(4);
+		long fee = resultSet.getLong(5);
+		byte[] signature = resultSet.getBytes(6);
+		String sender = resultSet.getString(7);
+		int nonce = resultSet.getInt(8);
+		String recipient = resultSet.getString(9);
+		byte[] chatReference = resultSet.getBytes(10);
+		byte[] data = resultSet.getBytes(11);
+		boolean isText = resultSet.getBoolean(12);
+		boolean isEncrypted = resultSet.getBoolean(13);
+
+		BaseTransactionData baseTransactionData = new BaseTransactionData(timestamp, txGroupId, reference, senderPublicKey, fee, signature);
+
+		return new ChatTransactionData(baseTransactionData, sender, nonce, recipient, chatReference, data, isText, isEncrypted);
+	}
+
+	@Override
+	public void save(ChatTransactionData chatTransactionData, String senderName, String recipientName) throws DataException {
+		HSQLDBSaver saveHelper = new HSQLDBSaver("ChatMessages");
+
+		saveHelper.bind("signature", chatTransactionData.getSignature()).bind("reference", chatTransactionData.getReference())
+				.bind("created_when", chatTransactionData.getTimestamp()).bind("tx_group_id", chatTransactionData.getTxGroupId())
+				.bind("sender_public_key", chatTransactionData.getSenderPublicKey()).bind("sender", chatTransactionData.getSender())
+				.bind("nonce", chatTransactionData.getNonce()).bind("recipient", chatTransactionData.getRecipient())
+				.bind("chat_reference", chatTransactionData.getChatReference())
+				.bind("conversation", conversationKey(chatTransactionData.getTxGroupId(), chatTransactionData.getSender(), chatTransactionData.getRecipient()))
+				.bind("is_text", chatTransactionData.getIsText()).bind("is_encrypted", chatTransactionData.getIsEncrypted())
+				.bind("data", chatTransactionData.getData()).bind("fee", chatTransactionData.getFee());
+
+		try {
+			saveHelper.execute(this.repository);
+
+			this.saveLatestMessage(chatTransactionData);
+
+			this.saveName(chatTransactionData.getSender(), senderName);
+
+			if (chatTransactionData.getRecipient() != null)
+				this.saveName(chatTransactionData.getRecipient(), recipientName);
+		} catch (SQLException e) {
+			throw new DataException("Unable to save chat message into repository", e);
+		}
+	}
+
+	/** Updates latest-message-per-conversation tables, unless passed message is older than current latest. */
+	private void saveLatestMessage(ChatTransactionData chatTransactionData) throws SQLException {
+		long timestamp = chatTransactionData.getTimestamp();
+		byte[] signature = chatTransactionData.getSignature();
+		String sender = chatTransactionData.getSender();
+		String recipient = chatTransactionData.getRecipient();
+
+		if (recipient == null) {
+			int groupId = chatTransactionData.getTxGroupId();
+
+			if (this.repository.exists("ChatLatestGroupMessages", "group_id = ? AND " + NEWER_OR_SAME_MESSAGE, groupId, timestamp, timestamp, signature))
+				return;
+
+			HSQLDBSaver saveHelper = new HSQLDBSaver("ChatLatestGroupMessages");
+			saveHelper.bind("group_id", groupId).bind("created_when", timestamp).bind("signature", signature);
+			saveHelper.execute(this.repository);
+			return;
+		}
+
+		// Both directions of direct chat share the same latest message,
+		// so there's no need to check recipient's entry separately
+		if (this.repository.exists("ChatLatestDirectMessages", "address = ? AND other_address = ? AND " + NEWER_OR_SAME_MESSAGE, sender, recipient, timestamp, timestamp, signature))
+			return;
+
+		HSQLDBSaver saveHelper = new HSQLDBSaver("ChatLatestDirectMessages");
+		saveHelper.bind("address", sender).bind("other_address", recipient).bind("created_when", timestamp).bind("signature", signature);
+		saveHelper.execute(this.repository);
+
+		if (recipient.equals(sender))
+			return;
+
+		saveHelper = new HSQLDBSaver("ChatLatestDirectMessages");
+		saveHelper.bind("address", recipient).bind("other_address", sender).bind("created_when", timestamp).bind("signature", signature);
+		saveHelper.execute(this.repository);
+	}
+
+	@Override
+	public void saveName(String address, String name) throws DataException {
+		try {
+			if (name == null) {
+				// Name may have been transferred away since previous message
+				this.repository.delete("ChatNames", "address = ?", address);
+				return;
+			}
+
+			HSQLDBSaver saveHelper = new HSQLDBSaver("ChatNames");
+			saveHelper.bind("address", address).bind("name", name);
+			saveHelper.execute(this.repository);
+		} catch (SQLException e) {
+			throw new DataException("Unable to save chat name into repository", e);
+		}
+	}
+
+	@Override
+	public void saveGroupMembers(int groupId, String groupName, List<String> members) throws DataException {
+		try {
+			// Cascades to ChatGroupMembers
+			this.repository.delete("ChatGroups", "group_id = ?", groupId);
+
+			if (groupName == null)
+				return;
+
+			HSQLDBSaver saveHelper = new HSQLDBSaver("ChatGroups");
+			saveHelper.bind("group_id", groupId).bind("group_name", groupName);
+			saveHelper.execute(this.repository);
+
+			List<Object[]> batchedObjects = new ArrayList<>(members.size());
+			for (String member : members)
+				batchedObjects.add(new Object[] { groupId, member });
+
+			this.repository.executeCheckedBatchUpdate("INSERT INTO ChatGroupMembers (group_id, address) VALUES (?, ?)", batchedObjects);
+		} catch (SQLException e) {
+			throw new DataException("Unable to save chat group members into repository", e);
+		}
+	}
+
+}
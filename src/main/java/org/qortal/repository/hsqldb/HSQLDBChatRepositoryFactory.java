@@ -0,0 +1,29 @@
+package org.qortal.repository.hsqldb;
+
+import org.qortal.repository.DataException;
+import org.qortal.repository.RepositoryFactory;
+import org.qortal.settings.Settings;
+
+/**
+ * RepositoryFactory for the dedicated chat database.
+ * <p>
+ * Uses its own, smaller, connection pool and chat-specific schema
+ * so that chat reads/writes don't compete with the main repository.
+ */
+public class HSQLDBChatRepositoryFactory extends HSQLDBRepositoryFactory {
+
+	public HSQLDBChatRepositoryFactory(String connectionUrl) throws DataException {
+		super(connectionUrl, Settings.getInstance().getChatRepositoryConnectionPoolSize(), HSQLDBChatDatabaseUpdates::updateDatabase);
+	}
+
+	@Override
+	public RepositoryFactory reopen() throws DataException {
+		return new HSQLDBChatRepositoryFactory(this.connectionUrl);
+	}
+
+	@Override
+	protected HSQLDBRepository newRepository(HSQLDBPooledConnection pooledConnection) throws DataException {
+		return new HSQLDBRepository(this, pooledConnection, true);
+	}
+
+}
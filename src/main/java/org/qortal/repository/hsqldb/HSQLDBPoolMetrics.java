@@ -0,0 +1,241 @@
+package org.qortal.repository.hsqldb;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Instrumentation for {@link HSQLDBRepositoryFactory}'s connection pool.
+ * <p>
+ * Records how long callers wait to acquire a connection, how long connections are held, and by whom,
+ * so pool exhaustion can be attributed to e.g. API traffic or block sync.
+ * <p>
+ * Callers are identified by thread name, with any numeric suffix removed so pooled threads are grouped,
+ * or optionally by call-site (see <tt>repositoryCallSiteTracking</tt> setting), which costs a partial stack walk per acquisition.
+ * <p>
+ * Per-holder totals are capped at {@link #MAX_HOLDERS} entries, as some thread names are unique even without numeric suffix.
+ * Holders beyond that are accumulated under {@link #OTHER_HOLDER}.
+ */
+public class HSQLDBPoolMetrics {
+
+	/** Upper bounds of acquire-latency histogram buckets, with final bucket catching everything else. (ms) */
+	private static final long[] ACQUIRE_LATENCY_BUCKETS = new long[] { 1L, 10L, 100L, 1000L, 10000L, Long.MAX_VALUE };
+
+	/** Trailing thread numbers, e.g. "-12" in "Network-SYNC-12" */
+	private static final Pattern THREAD_NUMBER_SUFFIX = Pattern.compile("[-_ ]?\\d+$");
+
+	private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+	private static final String REPOSITORY_PACKAGE_PREFIX = "org.qortal.repository.";
+
+	/** Maximum number of distinct holders tracked, before further holders are lumped together */
+	public static final int MAX_HOLDERS = 100;
+	/** Holder name used once {@link #MAX_HOLDERS} is reached */
+	public static final String OTHER_HOLDER = "other";
+
+	/** Maximum number of frames included in long-holder stack traces */
+	private static final int MAX_STACK_FRAMES = 30;
+
+	@XmlAccessorType(XmlAccessType.FIELD)
+	public static class AcquireLatencyBucket {
+		/** Upper bound of bucket, or null for unbounded final bucket. (ms) */
+		public Long maxMillis;
+		public long count;
+
+		public AcquireLatencyBucket() {
+		}
+	}
+
+	@XmlAccessorType(XmlAccessType.FIELD)
+	public static class HolderStats {
+		public String holder;
+		public long acquisitions;
+		public int inUse;
+		public long totalHoldMillis;
+		public long maxHoldMillis;
+
+		public HolderStats() {
+		}
+	}
+
+	@XmlAccessorType(XmlAccessType.FIELD)
+	public static class LongHolder {
+		public String holder;
+		public String thread;
+		public boolean isPriority;
+		public long heldMillis;
+		/** Holding thread's stack, sampled when stats requested */
+		public List<String> stackTrace;
+
+		public LongHolder() {
+		}
+	}
+
+	@XmlAccessorType(XmlAccessType.FIELD)
+	public static class PoolStats {
+		/** Which repository, e.g. "main" or "chat" */
+		public String repository;
+		public int poolSize;
+		public int priorityReserve;
+		public int openConnections;
+		public int idleConnections;
+		public int inUseConnections;
+		public int waitingThreads;
+
+		public long acquisitions;
+		public long totalAcquireMillis;
+		public List<AcquireLatencyBucket> acquireLatency;
+
+		public long statementCacheHits;
+		public long statementCacheMisses;
+		public long statementCacheEvictions;
+
+		public boolean isCallSiteTracking;
+		public List<HolderStats> holders;
+		public List<LongHolder> longHolders;
+
+		public PoolStats() {
+		}
+	}
+
+	private static class HoldTotals {
+		private final LongAdder acquisitions = new LongAdder();
+		private final LongAdder inUse = new LongAdder();
+		private final LongAdder totalHoldMillis = new LongAdder();
+		private final LongAccumulator maxHoldMillis = new LongAccumulator(Math::max, 0L);
+	}
+
+	private final boolean isCallSiteTracking;
+
+	private final LongAdder acquisitions = new LongAdder();
+	private final LongAdder totalAcquireMillis = new LongAdder();
+	private final LongAdder[] acquireLatencyCounts = new LongAdder[ACQUIRE_LATENCY_BUCKETS.length];
+
+	private final Map<String, HoldTotals> holdTotalsByHolder = new ConcurrentHashMap<>();
+	private final Set<HSQLDBPooledConnection> inUseConnections = ConcurrentHashMap.newKeySet();
+
+	public HSQLDBPoolMetrics(boolean isCallSiteTracking) {
+		this.isCallSiteTracking = isCallSiteTracking;
+
+		for (int i = 0; i < this.acquireLatencyCounts.length; ++i)
+			this.acquireLatencyCounts[i] = new LongAdder();
+	}
+
+	/** Records connection acquisition by current thread, after waiting <tt>acquireMillis</tt>. */
+	/* package */ void onAcquire(HSQLDBPooledConnection pooledConnection, long acquireMillis) {
+		this.acquisitions.increment();
+		this.totalAcquireMillis.add(acquireMillis);
+
+		for (int i = 0; i < ACQUIRE_LATENCY_BUCKETS.length; ++i)
+			if (acquireMillis <= ACQUIRE_LATENCY_BUCKETS[i]) {
+				this.acquireLatencyCounts[i].increment();
+				break;
+			}
+
+		Thread thread = Thread.currentThread();
+		String holder = this.isCallSiteTracking ? findCallSite() : THREAD_NUMBER_SUFFIX.matcher(thread.getName()).replaceFirst("");
+
+		// Cap is approximate, as concurrent acquisitions by new holders might all pass size check
+		if (!this.holdTotalsByHolder.containsKey(holder) && this.holdTotalsByHolder.size() >= MAX_HOLDERS)
+			holder = OTHER_HOLDER;
+
+		HoldTotals holdTotals = this.holdTotalsByHolder.computeIfAbsent(holder, k -> new HoldTotals());
+		holdTotals.acquisitions.increment();
+		holdTotals.inUse.increment();
+
+		pooledConnection.setHolder(thread, holder, System.currentTimeMillis());
+		this.inUseConnections.add(pooledConnection);
+	}
+
+	/** Records connection no longer held. */
+	/* package */ void onRelease(HSQLDBPooledConnection pooledConnection) {
+		if (!this.inUseConnections.remove(pooledConnection))
+			return;
+
+		long heldMillis = System.currentTimeMillis() - pooledConnection.getAcquiredTimestamp();
+
+		HoldTotals holdTotals = this.holdTotalsByHolder.get(pooledConnection.getHolder());
+		if (holdTotals != null) {
+			holdTotals.inUse.decrement();
+			holdTotals.totalHoldMillis.add(heldMillis);
+			holdTotals.maxHoldMillis.accumulate(heldMillis);
+		}
+
+		pooledConnection.setHolder(null, null, 0L);
+	}
+
+	/**
+	 * Returns stats, including stack traces of threads that have held a connection for longer than <tt>longHoldMillis</tt>.
+	 */
+	/* package */ PoolStats getStats(long longHoldMillis) {
+		PoolStats poolStats = new PoolStats();
+
+		poolStats.acquisitions = this.acquisitions.sum();
+		poolStats.totalAcquireMillis = this.totalAcquireMillis.sum();
+
+		poolStats.acquireLatency = new ArrayList<>(ACQUIRE_LATENCY_BUCKETS.length);
+		for (int i = 0; i < ACQUIRE_LATENCY_BUCKETS.length; ++i) {
+			AcquireLatencyBucket bucket = new AcquireLatencyBucket();
+			bucket.maxMillis = ACQUIRE_LATENCY_BUCKETS[i] != Long.MAX_VALUE ? ACQUIRE_LATENCY_BUCKETS[i] : null;
+			bucket.count = this.acquireLatencyCounts[i].sum();
+			poolStats.acquireLatency.add(bucket);
+		}
+
+		poolStats.isCallSiteTracking = this.isCallSiteTracking;
+
+		poolStats.holders = new ArrayList<>(this.holdTotalsByHolder.size());
+		for (Map.Entry<String, HoldTotals> entry : this.holdTotalsByHolder.entrySet()) {
+			HoldTotals holdTotals = entry.getValue();
+
+			HolderStats holderStats = new HolderStats();
+			holderStats.holder = entry.getKey();
+			holderStats.acquisitions = holdTotals.acquisitions.sum();
+			holderStats.inUse = holdTotals.inUse.intValue();
+			holderStats.totalHoldMillis = holdTotals.totalHoldMillis.sum();
+			holderStats.maxHoldMillis = holdTotals.maxHoldMillis.get();
+			poolStats.holders.add(holderStats);
+		}
+
+		// Biggest consumers first
+		poolStats.holders.sort(Comparator.comparingLong((HolderStats holderStats) -> holderStats.totalHoldMillis).reversed());
+
+		final long now = System.currentTimeMillis();
+		poolStats.longHolders = new ArrayList<>();
+		for (HSQLDBPooledConnection pooledConnection : this.inUseConnections) {
+			Thread holderThread = pooledConnection.getHolderThread();
+			long acquiredTimestamp = pooledConnection.getAcquiredTimestamp();
+			if (holderThread == null || now - acquiredTimestamp < longHoldMillis)
+				continue;
+
+			LongHolder longHolder = new LongHolder();
+			longHolder.holder = pooledConnection.getHolder();
+			longHolder.thread = holderThread.getName();
+			longHolder.isPriority = pooledConnection.isPriority();
+			longHolder.heldMillis = now - acquiredTimestamp;
+
+			StackTraceElement[] stackTrace = holderThread.getStackTrace();
+			longHolder.stackTrace = new ArrayList<>(Math.min(stackTrace.length, MAX_STACK_FRAMES));
+			for (int i = 0; i < stackTrace.length && i < MAX_STACK_FRAMES; ++i)
+				longHolder.stackTrace.add(stackTrace[i].toString());
+
+			poolStats.longHolders.add(longHolder);
+		}
+
+		poolStats.longHolders.sort(Comparator.comparingLong((LongHolder longHolder) -> longHolder.heldMillis).reversed());
+
+		return poolStats;
+	}
+
+	/** Returns first class/method, outside of repository code, that led to current connection acquisition. */
+	private static String findCallSite() {
+		return STACK_WALKER.walk(frames -> frames
+				.filter(frame -> !frame.getClassName().startsWith(REPOSITORY_PACKAGE_PREFIX))
+				.findFirst()
+				.map(frame -> frame.getClassName() + "." + frame.getMethodName())
+				.orElse("unknown"));
+	}
+
+}
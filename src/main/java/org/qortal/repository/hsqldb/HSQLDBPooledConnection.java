@@ -0,0 +1,225 @@
+package org.qortal.repository.hsqldb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Repository connection, kept open by {@link HSQLDBRepositoryFactory} between repository sessions,
+ * along with its cache of prepared statements.
+ * <p>
+ * Returning the underlying connection to HSQLDB's pool resets its HSQLDB session, discarding all compiled statements.
+ * By keeping the connection, statements prepared by one repository session can be reused by later sessions,
+ * saving the cost of re-preparing the same SQL every time a short-lived repository is opened.
+ * <p>
+ * Only used by one repository session at a time, so no synchronization needed.
+ */
+public class HSQLDBPooledConnection {
+
+	private static final Logger LOGGER = LogManager.getLogger(HSQLDBPooledConnection.class);
+
+	/** Cache hit/miss/eviction counts, shared by all connections in pool */
+	public static class StatementCacheStats {
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder evictions = new LongAdder();
+
+		public long getHits() {
+			return this.hits.sum();
+		}
+
+		public long getMisses() {
+			return this.misses.sum();
+		}
+
+		public long getEvictions() {
+			return this.evictions.sum();
+		}
+	}
+
+	private final Connection connection;
+	private final StatementCacheStats stats;
+	/** HSQLDB session ID, which doesn't change while connection is kept */
+	private Long sessionId;
+
+	// Current holder, for pool metrics. Read by other threads.
+	private volatile Thread holderThread;
+	private volatile String holder;
+	private volatile long acquiredTimestamp;
+	/** Whether connection was acquired using priority lane, i.e. possibly from reserved part of pool */
+	private volatile boolean isPriority;
+
+	/** Prepared statements, keyed by SQL, in least-recently-used order */
+	private final Map<String, PreparedStatement> statementCache;
+
+	/** Statements used by current repository session, so their results can be closed on release */
+	private final Set<PreparedStatement> sessionStatements = Collections.newSetFromMap(new IdentityHashMap<>());
+	/** Statements evicted while possibly still in use by current repository session, closed on release */
+	private final List<PreparedStatement> evictedStatements = new ArrayList<>();
+
+	/* package */ HSQLDBPooledConnection(Connection connection, int maxCachedStatements, StatementCacheStats stats) {
+		this.connection = connection;
+		this.stats = stats;
+
+		this.statementCache = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (this.size() <= maxCachedStatements)
+					return false;
+
+				// Caller might still be reading results, so defer closing statements used by current session
+				if (sessionStatements.remove(eldest.getValue()))
+					evictedStatements.add(eldest.getValue());
+				else
+					closeQuietly(eldest.getValue());
+
+				// Long-running sessions can't be allowed to accumulate evicted statements indefinitely
+				if (evictedStatements.size() > maxCachedStatements)
+					closeQuietly(evictedStatements.remove(0));
+
+				stats.evictions.increment();
+				return true;
+			}
+		};
+	}
+
+	public Connection getConnection() {
+		return this.connection;
+	}
+
+	public Long getSessionId() {
+		return this.sessionId;
+	}
+
+	public void setSessionId(Long sessionId) {
+		this.sessionId = sessionId;
+	}
+
+	public Thread getHolderThread() {
+		return this.holderThread;
+	}
+
+	public String getHolder() {
+		return this.holder;
+	}
+
+	public long getAcquiredTimestamp() {
+		return this.acquiredTimestamp;
+	}
+
+	/* package */ void setHolder(Thread holderThread, String holder, long acquiredTimestamp) {
+		this.holderThread = holderThread;
+		this.holder = holder;
+		this.acquiredTimestamp = acquiredTimestamp;
+	}
+
+	public boolean isPriority() {
+		return this.isPriority;
+	}
+
+	/* package */ void setPriority(boolean isPriority) {
+		this.isPriority = isPriority;
+	}
+
+	/**
+	 * Returns prepared statement for passed SQL, reusing cached statement if possible.
+	 * <p>
+	 * Reused statements have their parameters and batch cleared.
+	 */
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		/*
+		 * We cache a duplicate PreparedStatement for this SQL string,
+		 * which we only close upon eviction, which means HSQLDB also caches a parsed,
+		 * prepared statement that can be reused for subsequent
+		 * calls to HSQLDB.prepareStatement(sql).
+		 *
+		 * See org.hsqldb.StatementManager for more details.
+		 */
+		PreparedStatement preparedStatement = this.statementCache.get(sql);
+		if (preparedStatement == null || preparedStatement.isClosed()) {
+			if (preparedStatement != null)
+				// This shouldn't occur, so log, but recompile
+				LOGGER.debug(() -> String.format("Recompiling closed PreparedStatement: %s", sql));
+
+			this.stats.misses.increment();
+
+			preparedStatement = this.connection.prepareStatement(sql);
+			this.statementCache.put(sql, preparedStatement);
+		} else {
+			this.stats.hits.increment();
+
+			// Clean up ready for reuse
+			preparedStatement.clearBatch();
+			preparedStatement.clearParameters();
+		}
+
+		this.sessionStatements.add(preparedStatement);
+
+		return preparedStatement;
+	}
+
+	/**
+	 * Tidies up after repository session, ready for next session.
+	 * <p>
+	 * Closes any results left open, and rolls back anything uncommitted, much like HSQLDB's session reset,
+	 * but keeps prepared statements.
+	 *
+	 * @throws SQLException if connection is no longer usable
+	 */
+	/* package */ void reset() throws SQLException {
+		for (PreparedStatement preparedStatement : this.sessionStatements) {
+			if (preparedStatement.isClosed())
+				continue;
+
+			ResultSet resultSet = preparedStatement.getResultSet();
+			if (resultSet != null)
+				resultSet.close();
+		}
+
+		this.sessionStatements.clear();
+
+		for (PreparedStatement preparedStatement : this.evictedStatements)
+			closeQuietly(preparedStatement);
+
+		this.evictedStatements.clear();
+
+		// Release any locks/snapshot held by read-only transactions
+		this.connection.rollback();
+	}
+
+	/** Closes cached statements and connection, e.g. when discarding broken connection. */
+	/* package */ void close() {
+		for (PreparedStatement preparedStatement : this.statementCache.values())
+			closeQuietly(preparedStatement);
+
+		for (PreparedStatement preparedStatement : this.evictedStatements)
+			closeQuietly(preparedStatement);
+
+		this.statementCache.clear();
+		this.sessionStatements.clear();
+		this.evictedStatements.clear();
+
+		try {
+			this.connection.close();
+		} catch (SQLException e) {
+			// Already broken, so nothing more we can do
+		}
+	}
+
+	private static void closeQuietly(PreparedStatement preparedStatement) {
+		try {
+			preparedStatement.close();
+		} catch (SQLException e) {
+			// Connection probably closed, so statement effectively closed too
+		}
+	}
+
+}
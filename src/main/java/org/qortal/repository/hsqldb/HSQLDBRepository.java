@@ -33,13 +33,16 @@ public class HSQLDBRepository implements Repository {
 	// "serialization failure"
 	private static final Integer DEADLOCK_ERROR_CODE = Integer.valueOf(-4861);
 
+	protected final HSQLDBRepositoryFactory repositoryFactory;
+	protected HSQLDBPooledConnection pooledConnection;
 	protected Connection connection;
 	protected final Deque<Savepoint> savepoints = new ArrayDeque<>(3);
 	protected boolean debugState = false;
 	protected Long slowQueryThreshold = null;
 	protected List<String> sqlStatements;
 	protected long sessionId;
-	protected final Map<String, PreparedStatement> preparedStatementCache = new HashMap<>();
+	/** Whether this session is connected to the chat database, rather than the main repository */
+	protected final boolean isChatRepository;
 	// We want the same object corresponding to the actual DB
 	protected final Object trimHeightsLock = RepositoryManager.getRepositoryFactory();
 	protected final Object latestATStatesLock = RepositoryManager.getRepositoryFactory();
@@ -62,26 +65,40 @@ public class HSQLDBRepository implements Repository {
 	// Constructors
 
 	// NB: no visibility modifier so only callable from within same package
-	/* package */ HSQLDBRepository(Connection connection) throws DataException {
-		this.connection = connection;
+	/* package */ HSQLDBRepository(HSQLDBRepositoryFactory repositoryFactory, HSQLDBPooledConnection pooledConnection) throws DataException {
+		this(repositoryFactory, pooledConnection, false);
+	}
+
+	/* package */ HSQLDBRepository(HSQLDBRepositoryFactory repositoryFactory, HSQLDBPooledConnection pooledConnection, boolean isChatRepository) throws DataException {
+		this.repositoryFactory = repositoryFactory;
+		this.pooledConnection = pooledConnection;
+		this.connection = pooledConnection.getConnection();
+		this.isChatRepository = isChatRepository;
 
 		this.slowQueryThreshold = Settings.getInstance().getSlowQueryThreshold();
 		if (this.slowQueryThreshold != null)
 			this.sqlStatements = new ArrayList<>();
 
-		// Find out our session ID
-		try (Statement stmt = this.connection.createStatement()) {
-			if (!stmt.execute("SELECT SESSION_ID()"))
-				throw new DataException("Unable to fetch session ID from repository");
-
-			try (ResultSet resultSet = stmt.getResultSet()) {
-				if (resultSet == null || !resultSet.next())
+		// Find out our session ID, unless already known from previous use of pooled connection
+		Long pooledSessionId = pooledConnection.getSessionId();
+		if (pooledSessionId != null) {
+			this.sessionId = pooledSessionId;
+		} else {
+			try (Statement stmt = this.connection.createStatement()) {
+				if (!stmt.execute("SELECT SESSION_ID()"))
 					throw new DataException("Unable to fetch session ID from repository");
 
-				this.sessionId = resultSet.getLong(1);
+				try (ResultSet resultSet = stmt.getResultSet()) {
+					if (resultSet == null || !resultSet.next())
+						throw new DataException("Unable to fetch session ID from repository");
+
+					this.sessionId = resultSet.getLong(1);
+				}
+			} catch (SQLException e) {
+				throw new DataException("Unable to fetch session ID from repository", e);
 			}
-		} catch (SQLException e) {
-			throw new DataException("Unable to fetch session ID from repository", e);
+
+			pooledConnection.setSessionId(this.sessionId);
 		}
 
 		// synchronize to block new connections if checkpointing in progress 
@@ -269,25 +286,25 @@ public class HSQLDBRepository implements Repository {
 			assertEmptyTransaction("connection close");
 
 			// Assume we are not going to be GC'd for a while
-			this.preparedStatementCache.clear();
 			this.sqlStatements = null;
 			this.savepoints.clear();
 
 			// If a checkpoint has been requested, we could perform that now
 			this.maybeCheckpoint();
-
-			// Give connection back to the pool
-			this.connection.close();
+		} finally {
+			// Give connection, and its prepared statements, back to the pool
+			this.repositoryFactory.releaseConnection(this.pooledConnection);
+			this.pooledConnection = null;
 			this.connection = null;
-		} catch (SQLException e) {
-			throw new DataException("Error while closing repository", e);
 		}
 	}
 
 	private void maybeCheckpoint() throws DataException {
 		// To serialize checkpointing and to block new sessions when checkpointing in progress
 		synchronized (CHECKPOINT_LOCK) {
-			Boolean quickCheckpointRequest = RepositoryManager.getRequestedCheckpoint();
+			Boolean quickCheckpointRequest = this.isChatRepository
+					? ChatRepositoryManager.getRequestedCheckpoint()
+					: RepositoryManager.getRequestedCheckpoint();
 			if (quickCheckpointRequest == null)
 				return;
 
@@ -329,7 +346,10 @@ public class HSQLDBRepository implements Repository {
 
 				// Completed!
 				LOGGER.info("Repository CHECKPOINT completed!");
-				RepositoryManager.setRequestedCheckpoint(null);
+				if (this.isChatRepository)
+					ChatRepositoryManager.setRequestedCheckpoint(null);
+				else
+					RepositoryManager.setRequestedCheckpoint(null);
 			} catch (SQLException e) {
 				throw new DataException("Unable to check repository session status", e);
 			}
@@ -564,29 +584,8 @@ public class HSQLDBRepository implements Repository {
 	}
 
 	private PreparedStatement cachePreparedStatement(String sql) throws SQLException {
-		/*
-		 * We cache a duplicate PreparedStatement for this SQL string,
-		 * which we never close, which means HSQLDB also caches a parsed,
-		 * prepared statement that can be reused for subsequent
-		 * calls to HSQLDB.prepareStatement(sql).
-		 * 
-		 * See org.hsqldb.StatementManager for more details.
-		 */
-		PreparedStatement preparedStatement = this.preparedStatementCache.get(sql);
-		if (preparedStatement == null || preparedStatement.isClosed()) {
-			if (preparedStatement != null)
-				// This shouldn't occur, so log, but recompile
-				LOGGER.debug(() -> String.format("Recompiling closed PreparedStatement: %s", sql));
-
-			preparedStatement =  this.connection.prepareStatement(sql);
-			this.preparedStatementCache.put(sql, preparedStatement);
-		} else {
-			// Clean up ready for reuse
-			preparedStatement.clearBatch();
-			preparedStatement.clearParameters();
-		}
-
-		return preparedStatement;
+		// Cached statements outlive this repository session, see HSQLDBPooledConnection
+		return this.pooledConnection.prepareStatement(sql);
 	}
 
 	/**
@@ -603,7 +602,7 @@ public class HSQLDBRepository implements Repository {
 		PreparedStatement preparedStatement = this.prepareStatement(sql);
 
 		// We don't close the PreparedStatement when the ResultSet is closed because we cached PreparedStatements now.
-		// They are cleaned up when connection/session is closed.
+		// They are cleaned up when evicted from the pooled connection's cache.
 
 		long beforeQuery = this.slowQueryThreshold == null ? 0 : System.currentTimeMillis();
 
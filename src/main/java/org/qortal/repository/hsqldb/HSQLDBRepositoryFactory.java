@@ -15,6 +15,11 @@ import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Properties;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HSQLDBRepositoryFactory implements RepositoryFactory {
 
@@ -22,11 +27,44 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 
 	/** Log getConnection() calls that take longer than this. (ms) */
 	private static final long SLOW_CONNECTION_THRESHOLD = 1000L;
+	/** How often a thread waiting for a connection rechecks whether factory has been closed. (ms) */
+	private static final long CONNECTION_WAIT_INTERVAL = 1000L;
 
-	private String connectionUrl;
+	/** Applies any incremental schema changes, returning whether database was non-existent/empty. */
+	@FunctionalInterface
+	protected interface DatabaseUpdater {
+		boolean updateDatabase(Connection connection) throws SQLException;
+	}
+
+	protected final String connectionUrl;
 	private HSQLDBPool connectionPool;
 	private final boolean wasPristine;
 
+	/*
+	 * Connections are kept out of HSQLDB's pool once obtained, as returning them to the pool
+	 * resets their HSQLDB session, discarding compiled statements.
+	 * Instead, idle connections, and their prepared statements, wait here for reuse by the next repository session.
+	 */
+	private final int poolSize;
+	private final int maxCachedStatements;
+
+	/*
+	 * Priority lane: a reserve of connections that only threads named with one of the priority prefixes can use,
+	 * e.g. block sync and minting, so that they can't be starved of connections by API or other traffic.
+	 * General threads need a permit from both semaphores, priority threads only from the overall one.
+	 */
+	private final int priorityReserve;
+	private final String[] priorityThreadPrefixes;
+	private final Semaphore connectionPermits;
+	private final Semaphore generalConnectionPermits;
+	private final HSQLDBPoolMetrics poolMetrics;
+	/** Idle connections, most-recently-used first, to keep the same few connections' statement caches warm */
+	private final BlockingDeque<HSQLDBPooledConnection> idleConnections = new LinkedBlockingDeque<>();
+	/** Number of connections obtained from HSQLDB's pool, whether idle or in use */
+	private final AtomicInteger openConnectionCount = new AtomicInteger();
+	private final HSQLDBPooledConnection.StatementCacheStats statementCacheStats = new HSQLDBPooledConnection.StatementCacheStats();
+	private volatile boolean isClosed = false;
+
 	/**
 	 * Constructs new RepositoryFactory using passed <tt>connectionUrl</tt>.
 	 * 
@@ -35,6 +73,25 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 	 * @throws DataException <i>with throwable</i> if repository cannot be opened for some other reason.
 	 */
 	public HSQLDBRepositoryFactory(String connectionUrl) throws DataException {
+		this(connectionUrl, Settings.getInstance().getRepositoryConnectionPoolSize(),
+				Settings.getInstance().getRepositoryPriorityConnections(), HSQLDBDatabaseUpdates::updateDatabase);
+	}
+
+	/**
+	 * Constructs new RepositoryFactory using passed <tt>connectionUrl</tt>,
+	 * pool size and schema updater.
+	 * <p>
+	 * Allows other databases, e.g. chat, to share connection pooling and recovery logic.
+	 */
+	protected HSQLDBRepositoryFactory(String connectionUrl, int poolSize, DatabaseUpdater databaseUpdater) throws DataException {
+		this(connectionUrl, poolSize, 0, databaseUpdater);
+	}
+
+	/**
+	 * Constructs new RepositoryFactory using passed <tt>connectionUrl</tt>,
+	 * pool size, of which <tt>priorityReserve</tt> connections are reserved for priority threads, and schema updater.
+	 */
+	protected HSQLDBRepositoryFactory(String connectionUrl, int poolSize, int priorityReserve, DatabaseUpdater databaseUpdater) throws DataException {
 		// one-time initialization goes in here
 		this.connectionUrl = connectionUrl;
 
@@ -57,7 +114,17 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 			HSQLDBRepository.attemptRecovery(connectionUrl, "backup");
 		}
 
-		this.connectionPool = new HSQLDBPool(Settings.getInstance().getRepositoryConnectionPoolSize());
+		this.poolSize = poolSize;
+		this.maxCachedStatements = Settings.getInstance().getRepositoryStatementCacheSize();
+
+		// Don't let a small, user-configured, pool end up mostly reserved
+		this.priorityReserve = Math.max(0, Math.min(priorityReserve, poolSize / 2));
+		this.priorityThreadPrefixes = Settings.getInstance().getRepositoryPriorityThreads();
+		this.connectionPermits = new Semaphore(poolSize);
+		this.generalConnectionPermits = new Semaphore(poolSize - this.priorityReserve);
+		this.poolMetrics = new HSQLDBPoolMetrics(Settings.getInstance().isRepositoryCallSiteTracking());
+
+		this.connectionPool = new HSQLDBPool(poolSize);
 		this.connectionPool.setUrl(this.connectionUrl);
 
 		Properties properties = new Properties();
@@ -66,7 +133,7 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 
 		// Perform DB updates?
 		try (final Connection connection = this.connectionPool.getConnection()) {
-			this.wasPristine = HSQLDBDatabaseUpdates.updateDatabase(connection);
+			this.wasPristine = databaseUpdater.updateDatabase(connection);
 		} catch (SQLException e) {
 			throw new DataException("Repository initialization error", e);
 		}
@@ -84,46 +151,219 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 
 	@Override
 	public Repository getRepository() throws DataException {
+		HSQLDBPooledConnection pooledConnection;
 		try {
-			return new HSQLDBRepository(this.getConnection());
+			pooledConnection = this.getConnection();
 		} catch (SQLException e) {
 			throw new DataException("Repository instantiation error", e);
 		}
+
+		return this.newRepositoryOrRelease(pooledConnection);
 	}
 
 	@Override
 	public Repository tryRepository() throws DataException {
+		HSQLDBPooledConnection pooledConnection;
 		try {
-			Connection connection = this.tryConnection();
-			if (connection == null)
-				return null;
-
-			return new HSQLDBRepository(connection);
+			pooledConnection = this.tryConnection();
 		} catch (SQLException e) {
 			throw new DataException("Repository instantiation error", e);
 		}
+
+		if (pooledConnection == null)
+			return null;
+
+		return this.newRepositoryOrRelease(pooledConnection);
 	}
 
-	private Connection getConnection() throws SQLException {
+	private HSQLDBRepository newRepositoryOrRelease(HSQLDBPooledConnection pooledConnection) throws DataException {
+		try {
+			return this.newRepository(pooledConnection);
+		} catch (DataException | RuntimeException e) {
+			this.releaseConnection(pooledConnection);
+			throw e;
+		}
+	}
+
+	protected HSQLDBRepository newRepository(HSQLDBPooledConnection pooledConnection) throws DataException {
+		return new HSQLDBRepository(this, pooledConnection);
+	}
+
+	private HSQLDBPooledConnection getConnection() throws SQLException {
 		final long before = System.currentTimeMillis();
-		Connection connection = this.connectionPool.getConnection();
+		final boolean isPriority = this.isPriorityThread();
+
+		this.acquirePermits(isPriority);
+
+		HSQLDBPooledConnection pooledConnection;
+		try {
+			pooledConnection = this.takeConnection(true);
+		} catch (SQLException | RuntimeException e) {
+			this.releasePermits(isPriority);
+			throw e;
+		}
+
 		final long delay = System.currentTimeMillis() - before;
 
 		if (delay > SLOW_CONNECTION_THRESHOLD)
 			// This could be an indication of excessive repository use, or insufficient pool size
 			LOGGER.warn(() -> String.format("Fetching repository connection from pool took %dms (threshold: %dms)", delay, SLOW_CONNECTION_THRESHOLD));
 
-		setupConnection(connection);
-		return connection;
+		return this.checkOut(pooledConnection, isPriority, delay);
+	}
+
+	private HSQLDBPooledConnection tryConnection() throws SQLException {
+		final boolean isPriority = this.isPriorityThread();
+
+		if (!this.tryAcquirePermits(isPriority))
+			return null;
+
+		HSQLDBPooledConnection pooledConnection;
+		try {
+			pooledConnection = this.takeConnection(false);
+		} catch (SQLException | RuntimeException e) {
+			this.releasePermits(isPriority);
+			throw e;
+		}
+
+		if (pooledConnection == null) {
+			this.releasePermits(isPriority);
+			return null;
+		}
+
+		return this.checkOut(pooledConnection, isPriority, 0L);
+	}
+
+	private boolean isPriorityThread() {
+		if (this.priorityReserve == 0)
+			return false;
+
+		String threadName = Thread.currentThread().getName();
+		for (String priorityThreadPrefix : this.priorityThreadPrefixes)
+			if (threadName.startsWith(priorityThreadPrefix))
+				return true;
+
+		return false;
+	}
+
+	/** Waits for permission to use a connection, in priority or general lane. */
+	private void acquirePermits(boolean isPriority) throws SQLException {
+		if (!isPriority)
+			this.acquirePermit(this.generalConnectionPermits);
+
+		try {
+			this.acquirePermit(this.connectionPermits);
+		} catch (SQLException e) {
+			if (!isPriority)
+				this.generalConnectionPermits.release();
+
+			throw e;
+		}
+	}
+
+	private void acquirePermit(Semaphore permits) throws SQLException {
+		try {
+			while (!permits.tryAcquire(CONNECTION_WAIT_INTERVAL, TimeUnit.MILLISECONDS))
+				if (this.isClosed)
+					throw new SQLException("Repository closed");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for repository connection", e);
+		}
+	}
+
+	private boolean tryAcquirePermits(boolean isPriority) {
+		if (!isPriority && !this.generalConnectionPermits.tryAcquire())
+			return false;
+
+		if (this.connectionPermits.tryAcquire())
+			return true;
+
+		if (!isPriority)
+			this.generalConnectionPermits.release();
+
+		return false;
+	}
+
+	private void releasePermits(boolean isPriority) {
+		this.connectionPermits.release();
+
+		if (!isPriority)
+			this.generalConnectionPermits.release();
+	}
+
+	/**
+	 * Returns idle, or newly opened, connection.
+	 * <p>
+	 * Caller must hold permits, so there is always a connection to be had,
+	 * unless another thread is mid-way through releasing one.
+	 *
+	 * @param wait whether to wait for another thread to release connection, otherwise returns null
+	 */
+	private HSQLDBPooledConnection takeConnection(boolean wait) throws SQLException {
+		while (true) {
+			if (this.isClosed)
+				throw new SQLException("Repository closed");
+
+			HSQLDBPooledConnection pooledConnection = this.idleConnections.pollFirst();
+			if (pooledConnection != null)
+				return pooledConnection;
+
+			pooledConnection = this.openConnection();
+			if (pooledConnection != null)
+				return pooledConnection;
+
+			if (!wait)
+				return null;
+
+			try {
+				pooledConnection = this.idleConnections.pollFirst(CONNECTION_WAIT_INTERVAL, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for repository connection", e);
+			}
+
+			if (pooledConnection != null)
+				return pooledConnection;
+		}
 	}
 
-	private Connection tryConnection() throws SQLException {
-		Connection connection = this.connectionPool.tryConnection();
+	/** Returns new connection from HSQLDB's pool, or null if pool size reached. */
+	private HSQLDBPooledConnection openConnection() throws SQLException {
+		// Reserve a place in pool
+		int connectionCount;
+		do {
+			connectionCount = this.openConnectionCount.get();
+			if (connectionCount >= this.poolSize)
+				return null;
+		} while (!this.openConnectionCount.compareAndSet(connectionCount, connectionCount + 1));
+
+		Connection connection = null;
+		try {
+			connection = this.connectionPool.tryConnection();
+		} finally {
+			if (connection == null)
+				this.openConnectionCount.decrementAndGet();
+		}
+
 		if (connection == null)
 			return null;
 
-		setupConnection(connection);
-		return connection;
+		return new HSQLDBPooledConnection(connection, this.maxCachedStatements, this.statementCacheStats);
+	}
+
+	private HSQLDBPooledConnection checkOut(HSQLDBPooledConnection pooledConnection, boolean isPriority, long acquireMillis) throws SQLException {
+		pooledConnection.setPriority(isPriority);
+		this.poolMetrics.onAcquire(pooledConnection, acquireMillis);
+
+		try {
+			setupConnection(pooledConnection.getConnection());
+			return pooledConnection;
+		} catch (SQLException e) {
+			// Connection no longer usable
+			this.discardConnection(pooledConnection);
+			throw e;
+		}
 	}
 
 	private void setupConnection(Connection connection) throws SQLException {
@@ -132,8 +372,83 @@ public class HSQLDBRepositoryFactory implements RepositoryFactory {
 		connection.setAutoCommit(false);
 	}
 
+	/**
+	 * Returns connection for reuse by another repository session.
+	 * <p>
+	 * Called when repository is closed.
+	 */
+	/* package */ void releaseConnection(HSQLDBPooledConnection pooledConnection) {
+		if (this.isClosed) {
+			this.discardConnection(pooledConnection);
+			return;
+		}
+
+		try {
+			pooledConnection.reset();
+		} catch (SQLException e) {
+			LOGGER.debug(() -> String.format("Discarding unusable repository connection: %s", e.getMessage()));
+			this.discardConnection(pooledConnection);
+			return;
+		}
+
+		// Connection must be available before permits are released
+		this.poolMetrics.onRelease(pooledConnection);
+		this.idleConnections.offerFirst(pooledConnection);
+		this.releasePermits(pooledConnection.isPriority());
+
+		// Factory might have been closed while we were resetting connection
+		if (this.isClosed && this.idleConnections.remove(pooledConnection))
+			this.closeConnection(pooledConnection);
+	}
+
+	/** Closes checked-out connection, e.g. because it's no longer usable. */
+	private void discardConnection(HSQLDBPooledConnection pooledConnection) {
+		this.poolMetrics.onRelease(pooledConnection);
+		this.closeConnection(pooledConnection);
+		this.releasePermits(pooledConnection.isPriority());
+	}
+
+	private void closeConnection(HSQLDBPooledConnection pooledConnection) {
+		// Closing connection returns it to HSQLDB's pool
+		pooledConnection.close();
+		this.openConnectionCount.decrementAndGet();
+	}
+
+	public HSQLDBPooledConnection.StatementCacheStats getStatementCacheStats() {
+		return this.statementCacheStats;
+	}
+
+	/**
+	 * Returns connection pool metrics.
+	 *
+	 * @param longHoldMillis connections held for at least this long are included in <tt>longHolders</tt>, with holder's stack trace
+	 */
+	public HSQLDBPoolMetrics.PoolStats getPoolStats(long longHoldMillis) {
+		HSQLDBPoolMetrics.PoolStats poolStats = this.poolMetrics.getStats(longHoldMillis);
+
+		poolStats.poolSize = this.poolSize;
+		poolStats.priorityReserve = this.priorityReserve;
+		poolStats.openConnections = this.openConnectionCount.get();
+		poolStats.idleConnections = this.idleConnections.size();
+		poolStats.inUseConnections = this.poolSize - this.connectionPermits.availablePermits();
+		poolStats.waitingThreads = this.connectionPermits.getQueueLength() + this.generalConnectionPermits.getQueueLength();
+
+		poolStats.statementCacheHits = this.statementCacheStats.getHits();
+		poolStats.statementCacheMisses = this.statementCacheStats.getMisses();
+		poolStats.statementCacheEvictions = this.statementCacheStats.getEvictions();
+
+		return poolStats;
+	}
+
 	@Override
 	public void close() throws DataException {
+		this.isClosed = true;
+
+		// Hand idle connections back to HSQLDB's pool
+		HSQLDBPooledConnection pooledConnection;
+		while ((pooledConnection = this.idleConnections.pollFirst()) != null)
+			this.closeConnection(pooledConnection);
+
 		try {
 			// Close all existing connections immediately
 			this.connectionPool.close(0);
@@ -204,8 +204,18 @@ public class Settings {
 	private int maxNetworkThreadPoolSize = 620;
 	/** Maximum number of threads for network proof-of-work compute, used during handshaking. */
 	private int networkPoWComputePoolSize = 2;
+	/** Maximum number of threads for verifying signatures, and proof-of-work nonces, of incoming transactions. */
+	private int transactionValidationPoolSize = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	/** Maximum number of threads for verifying signatures, and memory-hard proof-of-work nonces, of incoming online accounts. */
+	private int onlineAccountsVerificationPoolSize = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	/** File in which verified online accounts nonces are kept across restarts, or empty to disable. Defaults to a file inside repository folder. */
+	private String onlineAccountsNonceCachePath = null;
 	/** Maximum number of retry attempts if a peer fails to respond with the requested data */
 	private int maxRetries = 2;
+	/** Maximum number of block requests kept outstanding while synchronizing, spread across peers. 1 disables pipelining. */
+	private int syncPipelineWindow = 16;
+	/** Maximum number of outstanding block requests to any one peer while synchronizing */
+	private int syncPipelinePeerRequests = 4;
 
 	/** The number of seconds of no activity before recovery mode begins */
 	public long recoveryModeTimeout = 9999999999999L;
@@ -260,6 +270,24 @@ public class Settings {
 	private String repositoryPath = "db";
 	/** Repository connection pool size. Needs to be a bit bigger than maxNetworkThreadPoolSize */
 	private int repositoryConnectionPoolSize = 1920;
+	/** Maximum number of prepared statements cached per repository connection, reused across repository sessions. */
+	private int repositoryStatementCacheSize = 100;
+	/** Number of repository connections reserved for threads named in repositoryPriorityThreads, e.g. so API use can't starve block sync. */
+	private int repositoryPriorityConnections = 128;
+	/** Thread name prefixes of threads allowed to use reserved repository connections. */
+	private String[] repositoryPriorityThreads = new String[] {
+		"Qortal", // Controller
+		"Synchronizer",
+		"BlockMinter",
+		"Network-SYNC",
+		"Network-CONTROL"
+	};
+	/** Whether to attribute repository connection hold times to call-site rather than thread. Costs a partial stack walk per connection. */
+	private boolean repositoryCallSiteTracking = false;
+	/** Chat repository storage path. Kept separate from main repository so bootstrapping doesn't discard chat history. */
+	private String chatRepositoryPath = "chatdb";
+	/** Chat repository connection pool size. */
+	private int chatRepositoryConnectionPoolSize = 256;
 	private List<String> fixedNetwork;
 
 	// Export/import
@@ -336,6 +364,10 @@ public class Settings {
 	private String dataPath = "data";
 	/** Data storage path (for temporary data). Defaults to {dataPath}/_temp */
 	private String tempDataPath = null;
+	/** Maximum number of QDN file digests to cache, keyed by path, size and modification time */
+	private int dataFileDigestCacheSize = 20000;
+	/** File in which cached QDN file digests are kept across restarts, or empty to disable */
+	private String dataFileDigestCachePath = "qdn-digests.dat";
 
 	/** Storage policy to indicate which data should be hosted */
 	private String storagePolicy = "FOLLOWED_OR_VIEWED";
@@ -374,6 +406,10 @@ public class Settings {
 	 * Exclude from settings.json to disable this warning. */
 	private Integer threadCountPerMessageTypeWarningThreshold = null;
 
+	/** Thread count and queue size for each lane of network message processing, e.g. SYNC or ARBITRARY.
+	 * See {@link org.qortal.network.MessageLanes.Lane} */
+	private Set<LaneLimit> messageLaneLimits = new HashSet<>();
+
 
 	// Domain mapping
 	public static class ThreadLimit {
@@ -419,6 +455,47 @@ public class Settings {
 	}
 
 
+	public static class LaneLimit {
+		private String lane;
+		private int threads;
+		private int queueSize;
+
+		private LaneLimit() { // makes JAXB happy; will never be invoked
+		}
+
+		private LaneLimit(String lane, int threads, int queueSize) {
+			this.lane = lane;
+			this.threads = threads;
+			this.queueSize = queueSize;
+		}
+
+		public String getLane() {
+			return lane;
+		}
+
+		public int getThreads() {
+			return threads;
+		}
+
+		public int getQueueSize() {
+			return queueSize;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof LaneLimit))
+				return false;
+
+			return this.lane.equals(((LaneLimit) other).getLane());
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(lane);
+		}
+	}
+
+
 	// Domain mapping
 	public static class DomainMap {
 		private String domain;
@@ -597,6 +674,13 @@ public class Settings {
 		maxThreadsPerMessageType.add(new ThreadLimit("GET_TRANSACTION", 10));
 		maxThreadsPerMessageType.add(new ThreadLimit("TRANSACTION_SIGNATURES", 5));
 		maxThreadsPerMessageType.add(new ThreadLimit("TRADE_PRESENCES", 5));
+
+		// Populate defaults for messageLaneLimits. If any are specified in settings.json, they will take priority.
+		messageLaneLimits.add(new LaneLimit("CONTROL", 4, 500));
+		messageLaneLimits.add(new LaneLimit("SYNC", 32, 500));
+		messageLaneLimits.add(new LaneLimit("TRANSACTIONS", 32, 2000));
+		messageLaneLimits.add(new LaneLimit("CHAT", 8, 1000));
+		messageLaneLimits.add(new LaneLimit("ARBITRARY", 32, 500));
 	}
 
 	// Getters / setters
@@ -811,8 +895,32 @@ public class Settings {
 		return this.networkPoWComputePoolSize;
 	}
 
+	public int getTransactionValidationPoolSize() {
+		return this.transactionValidationPoolSize;
+	}
+
+	public int getOnlineAccountsVerificationPoolSize() {
+		return this.onlineAccountsVerificationPoolSize;
+	}
+
+	public String getOnlineAccountsNonceCachePath() {
+		if (this.onlineAccountsNonceCachePath != null) {
+			return this.onlineAccountsNonceCachePath;
+		}
+		// Default to inside repository folder, so each network/repository has its own cache
+		return Paths.get(this.getRepositoryPath(), "online-accounts-nonces.dat").toString();
+	}
+
 	public int getMaxRetries() { return this.maxRetries; }
 
+	public int getSyncPipelineWindow() {
+		return this.syncPipelineWindow;
+	}
+
+	public int getSyncPipelinePeerRequests() {
+		return this.syncPipelinePeerRequests;
+	}
+
 	public long getRecoveryModeTimeout() {
 		return recoveryModeTimeout;
 	}
@@ -885,6 +993,30 @@ public class Settings {
 		return this.repositoryConnectionPoolSize;
 	}
 
+	public int getRepositoryStatementCacheSize() {
+		return this.repositoryStatementCacheSize;
+	}
+
+	public int getRepositoryPriorityConnections() {
+		return this.repositoryPriorityConnections;
+	}
+
+	public String[] getRepositoryPriorityThreads() {
+		return this.repositoryPriorityThreads;
+	}
+
+	public boolean isRepositoryCallSiteTracking() {
+		return this.repositoryCallSiteTracking;
+	}
+
+	public String getChatRepositoryPath() {
+		return this.chatRepositoryPath;
+	}
+
+	public int getChatRepositoryConnectionPoolSize() {
+		return this.chatRepositoryConnectionPoolSize;
+	}
+
 	public String getExportPath() {
 		return this.exportPath;
 	}
@@ -1066,6 +1198,14 @@ public class Settings {
 		return Paths.get(this.getDataPath(), "_temp").toString();
 	}
 
+	public int getDataFileDigestCacheSize() {
+		return this.dataFileDigestCacheSize;
+	}
+
+	public String getDataFileDigestCachePath() {
+		return this.dataFileDigestCachePath;
+	}
+
 	public StoragePolicy getStoragePolicy() {
 		return StoragePolicy.valueOf(this.storagePolicy);
 	}
@@ -1125,4 +1265,16 @@ public class Settings {
 	public Integer getThreadCountPerMessageTypeWarningThreshold() {
 		return this.threadCountPerMessageTypeWarningThreshold;
 	}
+
+	/** Returns thread count and queue size for message lane, or null if not configured. */
+	public LaneLimit getMessageLaneLimit(String lane) {
+		if (messageLaneLimits != null) {
+			for (LaneLimit laneLimit : messageLaneLimits) {
+				if (laneLimit.getLane().equals(lane)) {
+					return laneLimit;
+				}
+			}
+		}
+		return null;
+	}
 }
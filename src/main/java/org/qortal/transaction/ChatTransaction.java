@@ -3,6 +3,7 @@ package org.qortal.transaction;
 import org.qortal.account.Account;
 import org.qortal.account.PublicKeyAccount;
 import org.qortal.asset.Asset;
+import org.qortal.controller.ChatManager;
 import org.qortal.crypto.Crypto;
 import org.qortal.crypto.MemoryPoW;
 import org.qortal.data.naming.NameData;
@@ -19,10 +20,8 @@ import org.qortal.transform.transaction.TransactionTransformer;
 import org.qortal.utils.ListUtils;
 import org.qortal.utils.NTP;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.function.Predicate;
 
 public class ChatTransaction extends Transaction {
 
@@ -161,29 +160,18 @@ public class ChatTransaction extends Transaction {
 			return ValidationResult.TIMESTAMP_TOO_NEW;
 		}
 
-		// Check for blocked author by address
-		if (ListUtils.isAddressBlocked(this.chatTransactionData.getSender())) {
-			return ValidationResult.ADDRESS_BLOCKED;
-		}
-
-		// Check for blocked author by registered name
-		List<NameData> names = this.repository.getNameRepository().getNamesByOwner(this.chatTransactionData.getSender());
-		if (names != null && names.size() > 0) {
-			for (NameData nameData : names) {
-				if (nameData != null && nameData.getName() != null) {
-					if (ListUtils.isNameBlocked(nameData.getName())) {
-						return ValidationResult.NAME_BLOCKED;
-					}
-				}
-			}
-		}
+		// Check for blocked author
+		ValidationResult blockedResult = this.isSenderBlocked();
+		if (blockedResult != ValidationResult.OK)
+			return blockedResult;
 
 		PublicKeyAccount creator = this.getCreator();
 		if (creator == null)
 			return ValidationResult.MISSING_CREATOR;
 
-		// Reject if unconfirmed pile already has X recent CHAT transactions from same creator
-		if (countRecentChatTransactionsByCreator(creator) >= Settings.getInstance().getMaxRecentChatMessagesPerAccount())
+		// Reject if we already have X recent CHAT messages from same creator
+		Long now = NTP.getTime();
+		if (now != null && ChatManager.getInstance().countRecentMessagesByCreator(creator.getPublicKey(), now) >= Settings.getInstance().getMaxRecentChatMessagesPerAccount())
 			return ValidationResult.TOO_MANY_UNCONFIRMED;
 
 		// If we exist in the repository then we've been imported as unconfirmed,
@@ -203,6 +191,72 @@ public class ChatTransaction extends Transaction {
 		return ValidationResult.OK;
 	}
 
+	/**
+	 * Returns whether CHAT message, received via chat sync rather than as an unconfirmed transaction,
+	 * is valid for storing in chat repository.
+	 * <p>
+	 * Unlike {@link #isValidUnconfirmed()}, there is no expiry check, as chat repository
+	 * retains messages long after they would have left the unconfirmed pile.
+	 * <p>
+	 * Signature and proof-of-work nonce are NOT checked here - see {@link #isSignatureValid()}.
+	 */
+	public ValidationResult isValidChatMessage() throws DataException {
+		final Long now = NTP.getTime();
+		if (now == null)
+			return ValidationResult.CLOCK_NOT_SYNCED;
+
+		// Disregard messages with timestamp too far in the future (same limit as isValid())
+		if (this.chatTransactionData.getTimestamp() > now + (5 * 60 * 1000L))
+			return ValidationResult.TIMESTAMP_TOO_NEW;
+
+		ValidationResult feeValidationResult = this.isFeeValid();
+		if (feeValidationResult != ValidationResult.OK)
+			return feeValidationResult;
+
+		// Check data length
+		if (chatTransactionData.getData().length < 1 || chatTransactionData.getData().length > MAX_DATA_SIZE)
+			return ValidationResult.INVALID_DATA_LENGTH;
+
+		// If we have a recipient, check it is a valid address
+		String recipientAddress = chatTransactionData.getRecipient();
+		if (recipientAddress != null && !Crypto.isValidAddress(recipientAddress))
+			return ValidationResult.INVALID_ADDRESS;
+
+		// Lite nodes don't have enough data to check the remainder
+		if (Settings.getInstance().isLite())
+			return ValidationResult.OK;
+
+		ValidationResult blockedResult = this.isSenderBlocked();
+		if (blockedResult != ValidationResult.OK)
+			return blockedResult;
+
+		if (!this.isValidTxGroupId())
+			return ValidationResult.INVALID_TX_GROUP_ID;
+
+		return ValidationResult.OK;
+	}
+
+	private ValidationResult isSenderBlocked() throws DataException {
+		// Check for blocked author by address
+		if (ListUtils.isAddressBlocked(this.chatTransactionData.getSender())) {
+			return ValidationResult.ADDRESS_BLOCKED;
+		}
+
+		// Check for blocked author by registered name
+		List<NameData> names = this.repository.getNameRepository().getNamesByOwner(this.chatTransactionData.getSender());
+		if (names != null && names.size() > 0) {
+			for (NameData nameData : names) {
+				if (nameData != null && nameData.getName() != null) {
+					if (ListUtils.isNameBlocked(nameData.getName())) {
+						return ValidationResult.NAME_BLOCKED;
+					}
+				}
+			}
+		}
+
+		return ValidationResult.OK;
+	}
+
 	@Override
 	public boolean isSignatureValid() {
 		byte[] signature = this.transactionData.getSignature();
@@ -236,25 +290,6 @@ public class ChatTransaction extends Transaction {
 		return MemoryPoW.verify2(transactionBytes, POW_BUFFER_SIZE, difficulty, nonce);
 	}
 
-	private int countRecentChatTransactionsByCreator(PublicKeyAccount creator) throws DataException {
-		List<TransactionData> unconfirmedTransactions = repository.getTransactionRepository().getUnconfirmedTransactions();
-		final Long now = NTP.getTime();
-		long recentThreshold = Settings.getInstance().getRecentChatMessagesMaxAge();
-
-		// We only care about chat transactions, and only those that are considered 'recent'
-		Predicate<TransactionData> hasSameCreatorAndIsRecentChat = transactionData -> {
-			if (transactionData.getType() != TransactionType.CHAT)
-				return false;
-
-			if (transactionData.getTimestamp() < now - recentThreshold)
-				return false;
-
-			return Arrays.equals(creator.getPublicKey(), transactionData.getCreatorPublicKey());
-		};
-
-		return (int) unconfirmedTransactions.stream().filter(hasSameCreatorAndIsRecentChat).count();
-	}
-
 
 	/**
 	 * Ensure there's at least a skeleton account so people
@@ -266,6 +301,15 @@ public class ChatTransaction extends Transaction {
 		this.getCreator().ensureAccount();
 	}
 
+	/**
+	 * Writes message through to chat repository, which serves all chat reads,
+	 * now that it's committed to main repository.
+	 */
+	@Override
+	protected void onImportedAsUnconfirmed() throws DataException {
+		ChatManager.getInstance().saveChatTransaction(this.repository, this.chatTransactionData);
+	}
+
 	@Override
 	public void process() throws DataException {
 		throw new DataException("CHAT transactions should never be processed");
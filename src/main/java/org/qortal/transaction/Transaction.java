@@ -23,6 +23,7 @@ import org.qortal.settings.Settings;
 import org.qortal.transform.TransformationException;
 import org.qortal.transform.Transformer;
 import org.qortal.transform.transaction.TransactionTransformer;
+import org.qortal.utils.Base58;
 import org.qortal.utils.NTP;
 
 import java.lang.reflect.Constructor;
@@ -859,6 +860,13 @@ public abstract class Transaction {
 
 			repository.saveChanges();
 
+			// Transaction is imported regardless of what happens with any secondary storage
+			try {
+				this.onImportedAsUnconfirmed();
+			} catch (DataException e) {
+				LOGGER.error(String.format("Repository issue after importing transaction %s", Base58.encode(transactionData.getSignature())), e);
+			}
+
 			// Notify controller of new transaction
 			Controller.getInstance().onNewTransaction(transactionData);
 
@@ -896,6 +904,18 @@ public abstract class Transaction {
 		/* To be optionally overridden */
 	}
 
+	/**
+	 * Callback for after a transaction imported as unconfirmed has been committed to repository.
+	 * <p>
+	 * For writes to other repositories, which commit independently, so they never
+	 * refer to a transaction that didn't make it into the main repository.
+	 * <p>
+	 * Blockchain lock is being held during this time.
+	 */
+	protected void onImportedAsUnconfirmed() throws DataException {
+		/* To be optionally overridden */
+	}
+
 	/**
 	 * Returns whether transaction is 'confirmable' - i.e. is of a type that
 	 * can be included in a block. Some transactions are 'unconfirmable'
@@ -0,0 +1,256 @@
+package org.qortal.utils;
+
+import com.google.common.primitives.Longs;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Invertible Bloom lookup table over a set of signatures, used for set reconciliation.
+ * <p>
+ * Each signature is reduced to a 64-bit short ID and added to {@link #HASH_COUNT} cells.
+ * Subtracting one party's sketch from another's cancels out all signatures they have in common,
+ * leaving only the differences, which can then be recovered by {@link #decode()}.
+ * <p>
+ * Sketch size depends only on the number of cells, not on the number of signatures,
+ * so a sketch with <tt>n</tt> cells can usually recover up to around <tt>n/3</tt> differences.
+ * Decoding detects when it was unable to recover everything.
+ */
+public class SignatureSketch {
+
+	public static final int HASH_COUNT = 3;
+	public static final int MIN_CELL_COUNT = HASH_COUNT;
+	public static final int MAX_CELL_COUNT = 4096 * HASH_COUNT;
+
+	/** Serialized size of each cell: count, ID sum and check-hash sum */
+	private static final int CELL_LENGTH = 4 + 8 + 8;
+
+	/** Result of decoding a subtracted sketch. */
+	public static class Difference {
+		/** Short IDs of signatures only present in minuend sketch, i.e. "ours" */
+		public final List<Long> ourIds;
+		/** Short IDs of signatures only present in subtrahend sketch, i.e. "theirs" */
+		public final List<Long> theirIds;
+		/** Whether all differences were recovered */
+		public final boolean isComplete;
+
+		private Difference(List<Long> ourIds, List<Long> theirIds, boolean isComplete) {
+			this.ourIds = ourIds;
+			this.theirIds = theirIds;
+			this.isComplete = isComplete;
+		}
+	}
+
+	private final int[] counts;
+	private final long[] idSums;
+	private final long[] hashSums;
+
+	public SignatureSketch(int cellCount) {
+		if (cellCount < MIN_CELL_COUNT || cellCount > MAX_CELL_COUNT || cellCount % HASH_COUNT != 0)
+			throw new IllegalArgumentException(String.format("Invalid sketch cell count %d", cellCount));
+
+		this.counts = new int[cellCount];
+		this.idSums = new long[cellCount];
+		this.hashSums = new long[cellCount];
+	}
+
+	public int getCellCount() {
+		return this.counts.length;
+	}
+
+	/** Returns 64-bit short ID used to represent signature in sketch. */
+	public static long shortId(byte[] signature) {
+		return Longs.fromByteArray(signature);
+	}
+
+	public void add(byte[] signature) {
+		this.update(shortId(signature), 1);
+	}
+
+	/** Returns new sketch containing our signatures minus <tt>other</tt>'s signatures. */
+	public SignatureSketch subtract(SignatureSketch other) {
+		if (other.getCellCount() != this.getCellCount())
+			throw new IllegalArgumentException("Can't subtract sketches with different cell counts");
+
+		SignatureSketch difference = new SignatureSketch(this.getCellCount());
+
+		for (int i = 0; i < this.counts.length; ++i) {
+			difference.counts[i] = this.counts[i] - other.counts[i];
+			difference.idSums[i] = this.idSums[i] ^ other.idSums[i];
+			difference.hashSums[i] = this.hashSums[i] ^ other.hashSums[i];
+		}
+
+		return difference;
+	}
+
+	/**
+	 * Recovers short IDs from (usually subtracted) sketch by repeatedly peeling off "pure" cells.
+	 * <p>
+	 * Decoding is destructive. If there are too many differences for the number of cells
+	 * then only some IDs are recovered and {@link Difference#isComplete} is false.
+	 * <p>
+	 * Sketch might come from a peer, so decoding is bounded: at most one ID per cell is recovered,
+	 * and recovering the same ID twice (only possible with a crafted sketch) fails decoding.
+	 */
+	public Difference decode() {
+		List<Long> ourIds = new ArrayList<>();
+		List<Long> theirIds = new ArrayList<>();
+		Set<Long> recoveredIds = new HashSet<>();
+
+		Deque<Integer> pureCells = new ArrayDeque<>();
+		for (int i = 0; i < this.counts.length; ++i)
+			if (this.isPure(i))
+				pureCells.add(i);
+
+		while (!pureCells.isEmpty()) {
+			int i = pureCells.poll();
+
+			// Cell might no longer be pure due to earlier peeling
+			if (!this.isPure(i))
+				continue;
+
+			long id = this.idSums[i];
+			int count = this.counts[i];
+
+			// Genuine sketches can't yield more IDs than cells, nor the same ID twice
+			if (recoveredIds.size() >= this.counts.length || !recoveredIds.add(id))
+				return new Difference(new ArrayList<>(), new ArrayList<>(), false);
+
+			if (count > 0)
+				ourIds.add(id);
+			else
+				theirIds.add(id);
+
+			this.update(id, -count);
+
+			for (int j = 0; j < HASH_COUNT; ++j) {
+				int cellIndex = this.cellIndex(id, j);
+				if (this.isPure(cellIndex))
+					pureCells.add(cellIndex);
+			}
+		}
+
+		boolean isComplete = true;
+		for (int i = 0; i < this.counts.length; ++i)
+			if (this.counts[i] != 0 || this.idSums[i] != 0 || this.hashSums[i] != 0) {
+				isComplete = false;
+				break;
+			}
+
+		return new Difference(ourIds, theirIds, isComplete);
+	}
+
+	private boolean isPure(int i) {
+		return (this.counts[i] == 1 || this.counts[i] == -1) && this.hashSums[i] == checkHash(this.idSums[i]);
+	}
+
+	private void update(long id, int countDelta) {
+		long hash = checkHash(id);
+
+		for (int j = 0; j < HASH_COUNT; ++j) {
+			int cellIndex = this.cellIndex(id, j);
+
+			this.counts[cellIndex] += countDelta;
+			this.idSums[cellIndex] ^= id;
+			this.hashSums[cellIndex] ^= hash;
+		}
+	}
+
+	/** Returns index of <tt>j</tt>th cell for <tt>id</tt>. Each hash function maps into its own partition so cells are always distinct. */
+	private int cellIndex(long id, int j) {
+		int partitionSize = this.counts.length / HASH_COUNT;
+		long hash = mix(id + (j + 1) * 0x9E3779B97F4A7C15L);
+
+		return j * partitionSize + (int) Long.remainderUnsigned(hash, partitionSize);
+	}
+
+	private static long checkHash(long id) {
+		return mix(id ^ 0xC2B2AE3D27D4EB4FL);
+	}
+
+	/** SplitMix64 finalizer */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	// Serialization
+
+	public int getDataLength() {
+		return 4 + this.counts.length * CELL_LENGTH;
+	}
+
+	public void serialize(ByteBuffer bytes) {
+		bytes.putInt(this.counts.length);
+
+		for (int i = 0; i < this.counts.length; ++i) {
+			bytes.putInt(this.counts[i]);
+			bytes.putLong(this.idSums[i]);
+			bytes.putLong(this.hashSums[i]);
+		}
+	}
+
+	/**
+	 * Deserializes (unsubtracted) sketch, e.g. from a peer.
+	 *
+	 * @throws IllegalArgumentException if sketch couldn't have been built by adding signatures
+	 */
+	public static SignatureSketch deserialize(ByteBuffer bytes) {
+		int cellCount = bytes.getInt();
+
+		SignatureSketch sketch = new SignatureSketch(cellCount);
+
+		for (int i = 0; i < cellCount; ++i) {
+			sketch.counts[i] = bytes.getInt();
+			sketch.idSums[i] = bytes.getLong();
+			sketch.hashSums[i] = bytes.getLong();
+		}
+
+		sketch.validate();
+
+		return sketch;
+	}
+
+	/**
+	 * Checks cells are consistent with signatures having been added, as opposed to subtracted.
+	 * <p>
+	 * Cells can legitimately hold more than one ID, so counts above 1 are allowed, but counts can't be negative,
+	 * empty cells must have empty sums, and single-ID cells must be pure.
+	 * Also, each signature is added to exactly one cell per partition, so every partition must have the same total count.
+	 */
+	private void validate() {
+		int partitionSize = this.counts.length / HASH_COUNT;
+		long expectedPartitionTotal = -1;
+
+		for (int j = 0; j < HASH_COUNT; ++j) {
+			long partitionTotal = 0;
+
+			for (int i = j * partitionSize; i < (j + 1) * partitionSize; ++i) {
+				int count = this.counts[i];
+
+				if (count < 0)
+					throw new IllegalArgumentException(String.format("Negative count in sketch cell %d", i));
+
+				if (count == 0 && (this.idSums[i] != 0 || this.hashSums[i] != 0))
+					throw new IllegalArgumentException(String.format("Non-empty sums in empty sketch cell %d", i));
+
+				if (count == 1 && !this.isPure(i))
+					throw new IllegalArgumentException(String.format("Impure single-ID sketch cell %d", i));
+
+				partitionTotal += count;
+			}
+
+			if (expectedPartitionTotal == -1)
+				expectedPartitionTotal = partitionTotal;
+			else if (partitionTotal != expectedPartitionTotal)
+				throw new IllegalArgumentException("Inconsistent sketch partition counts");
+		}
+	}
+
+}
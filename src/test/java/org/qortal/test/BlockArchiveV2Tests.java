@@ -7,6 +7,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.qortal.account.PrivateKeyAccount;
 import org.qortal.controller.BlockMinter;
+import org.qortal.controller.repository.PruneManager;
 import org.qortal.data.at.ATStateData;
 import org.qortal.data.block.BlockData;
 import org.qortal.data.transaction.TransactionData;
@@ -490,8 +491,52 @@ public class BlockArchiveV2Tests extends Common {
 		}
 	}
 
+	@Test
+	public void testDeleteArchive() throws DataException, InterruptedException, TransformationException, IOException, IllegalAccessException {
+		try (final Repository repository = RepositoryManager.getRepository()) {
+
+			// Mint some blocks so that we are able to archive them later
+			for (int i = 0; i < 1000; i++) {
+				BlockMinter.mintTestingBlock(repository, Common.getTestAccount(repository, "alice-reward-share"));
+			}
+
+			// 900 blocks are trimmed (this specifies the first untrimmed height)
+			repository.getBlockRepository().setOnlineAccountsSignaturesTrimHeight(901);
+			repository.getATRepository().setAtTrimHeight(901);
+
+			// Write blocks 2-900 to the archive
+			final int maximumArchiveHeight = BlockArchiveWriter.getMaxArchiveHeight(repository);
+			BlockArchiveWriter writer = new BlockArchiveWriter(0, maximumArchiveHeight, repository);
+			writer.setShouldEnforceFileSizeTarget(false); // To avoid the need to pre-calculate file sizes
+			BlockArchiveWriter.BlockArchiveWriteResult result = writer.write();
+			assertEquals(BlockArchiveWriter.BlockArchiveWriteResult.OK, result);
+
+			// Reading from the archive maps the archive file
+			BlockArchiveReader reader = BlockArchiveReader.getInstance();
+			assertNotNull(reader.fetchBlockAtHeight(2));
+			assertEquals(900, reader.getHeightOfLastArchivedBlock());
+
+			// Archive is only deleted in top-only mode
+			PruneManager.getInstance().deleteArchive();
+			assertTrue(writer.getOutputPath().toFile().exists());
+
+			FieldUtils.writeField(Settings.getInstance(), "topOnly", true, true);
+			PruneManager.getInstance().deleteArchive();
+
+			Path archivePath = Paths.get(Settings.getInstance().getRepositoryPath(), "archive");
+			assertFalse(archivePath.toFile().exists());
+
+			// Reader mustn't keep serving blocks from deleted archive
+			assertNull(reader.fetchBlockAtHeight(2));
+			assertEquals(0, reader.getHeightOfLastArchivedBlock());
+		}
+	}
+
 
 	private void deleteArchiveDirectory() {
+		// Drop any mappings of previous tests' archive files
+		BlockArchiveReader.getInstance().releaseArchiveFiles();
+
 		// Delete archive directory if exists
 		Path archivePath = Paths.get(Settings.getInstance().getRepositoryPath(), "archive").toAbsolutePath();
 		try {
@@ -0,0 +1,325 @@
+package org.qortal.test;
+
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.block.Block;
+import org.qortal.controller.BlockFetchPipeline;
+import org.qortal.controller.BlockFetchPipeline.FetchedBlock;
+import org.qortal.data.block.BlockData;
+import org.qortal.data.network.PeerData;
+import org.qortal.network.Peer;
+import org.qortal.network.PeerAddress;
+import org.qortal.network.message.BlockV2Message;
+import org.qortal.network.message.GetBlockMessage;
+import org.qortal.network.message.Message;
+import org.qortal.network.message.MessageException;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.repository.RepositoryManager;
+import org.qortal.test.common.BlockUtils;
+import org.qortal.test.common.Common;
+import org.qortal.transform.TransformationException;
+import org.qortal.transform.block.BlockTransformer;
+import org.qortal.utils.ByteArray;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BlockFetchPipelineTests extends Common {
+
+	private static final int BLOCK_COUNT = 6;
+
+	/** Peer that answers GET_BLOCK requests from a fixed set of responses, optionally waiting for a latch first. */
+	private static class StubPeer extends Peer {
+		private final Map<ByteArray, Message> responses;
+		private final CountDownLatch releaseLatch;
+		private final Random random = new Random();
+		private final boolean isSlow;
+
+		private final AtomicInteger requestCount = new AtomicInteger();
+		private final AtomicInteger inFlightCount = new AtomicInteger();
+		private final AtomicInteger maxInFlightCount = new AtomicInteger();
+
+		private StubPeer(int port, Map<ByteArray, Message> responses, CountDownLatch releaseLatch, boolean isSlow) {
+			super(new PeerData(PeerAddress.fromString("127.0.0.1:" + port)));
+			this.responses = responses;
+			this.releaseLatch = releaseLatch;
+			this.isSlow = isSlow;
+		}
+
+		private StubPeer(int port, Map<ByteArray, Message> responses) {
+			this(port, responses, null, false);
+		}
+
+		@Override
+		public Message getResponse(Message message) throws InterruptedException {
+			this.requestCount.incrementAndGet();
+			this.maxInFlightCount.accumulateAndGet(this.inFlightCount.incrementAndGet(), Math::max);
+
+			try {
+				if (this.releaseLatch != null)
+					this.releaseLatch.await();
+
+				if (this.isSlow)
+					Thread.sleep(this.random.nextInt(20));
+
+				return this.responses.get(ByteArray.wrap(((GetBlockMessage) message).getSignature()));
+			} finally {
+				this.inFlightCount.decrementAndGet();
+			}
+		}
+	}
+
+	private final List<BlockData> blocks = new ArrayList<>();
+	private final Map<ByteArray, Message> blockMessages = new HashMap<>();
+	/** Blocks with matching signatures, but altered so signatures are no longer valid */
+	private final Map<ByteArray, Message> tamperedBlockMessages = new HashMap<>();
+	private ExecutorService fetchExecutor;
+
+	@Before
+	public void beforeTest() throws DataException, TransformationException, MessageException {
+		Common.useDefaultSettings();
+
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			BlockUtils.mintBlocks(repository, BLOCK_COUNT);
+
+			for (int height = 2; height < 2 + BLOCK_COUNT; ++height) {
+				BlockData blockData = repository.getBlockRepository().fromHeight(height);
+				this.blocks.add(blockData);
+				this.blockMessages.put(ByteArray.wrap(blockData.getSignature()), toBlockMessage(new Block(repository, blockData)));
+
+				BlockV2Message tamperedBlockMessage = (BlockV2Message) toBlockMessage(new Block(repository, blockData));
+				tamperedBlockMessage.getBlockData().getReference()[0] ^= 1;
+				this.tamperedBlockMessages.put(ByteArray.wrap(blockData.getSignature()), tamperedBlockMessage);
+			}
+		}
+
+		this.fetchExecutor = Executors.newFixedThreadPool(BLOCK_COUNT);
+	}
+
+	@After
+	public void afterTest() {
+		this.fetchExecutor.shutdownNow();
+	}
+
+	private static Message toBlockMessage(Block block) throws TransformationException, MessageException {
+		byte[] bytes = Bytes.concat(Ints.toByteArray(block.getBlockData().getHeight()), BlockTransformer.toBytesV2(block));
+		return BlockV2Message.fromByteBuffer(0, ByteBuffer.wrap(bytes));
+	}
+
+	private void requestAll(BlockFetchPipeline blockFetchPipeline, List<BlockData> blocks) {
+		for (BlockData blockData : blocks)
+			blockFetchPipeline.request(blockData.getHeight(), blockData.getSignature());
+	}
+
+	private static FetchedBlock take(BlockFetchPipeline blockFetchPipeline, BlockData blockData) throws InterruptedException {
+		FetchedBlock fetchedBlock = blockFetchPipeline.take(blockData.getHeight(), blockData.getSignature());
+
+		assertNotNull(fetchedBlock);
+		assertNotNull(fetchedBlock.getBlock());
+		assertArrayEquals(blockData.getSignature(), fetchedBlock.getBlock().getSignature());
+		assertTrue(fetchedBlock.isSignatureValid());
+
+		return fetchedBlock;
+	}
+
+	@Test
+	public void testBlocksTakenInOrder() throws InterruptedException {
+		StubPeer syncPeer = new StubPeer(1, this.blockMessages, null, true);
+		StubPeer otherPeer1 = new StubPeer(2, this.blockMessages, null, true);
+		StubPeer otherPeer2 = new StubPeer(3, this.blockMessages, null, true);
+
+		Set<Peer> suppliers = new HashSet<>();
+
+		try (BlockFetchPipeline blockFetchPipeline = new BlockFetchPipeline(syncPeer, List.of(otherPeer1, otherPeer2), BLOCK_COUNT, 2, this.fetchExecutor, null)) {
+			requestAll(blockFetchPipeline, this.blocks);
+
+			// Responses arrive in any order, but are taken in height order
+			for (BlockData blockData : this.blocks)
+				suppliers.add(take(blockFetchPipeline, blockData).getPeer());
+		}
+
+		// Requests were spread across all peers
+		assertEquals(Set.of(syncPeer, otherPeer1, otherPeer2), suppliers);
+	}
+
+	@Test
+	public void testOutOfOrderTake() throws InterruptedException {
+		StubPeer syncPeer = new StubPeer(1, this.blockMessages);
+		StubPeer otherPeer = new StubPeer(2, this.blockMessages);
+
+		try (BlockFetchPipeline blockFetchPipeline = new BlockFetchPipeline(syncPeer, List.of(otherPeer), BLOCK_COUNT, 2, this.fetchExecutor, null)) {
+			requestAll(blockFetchPipeline, this.blocks);
+
+			// Skipping ahead discards queued requests, and fetches directly from sync peer
+			FetchedBlock fetchedBlock = take(blockFetchPipeline, this.blocks.get(2));
+			assertSame(syncPeer, fetchedBlock.getPeer());
+		}
+	}
+
+	@Test
+	public void testFallbackToSyncPeer() throws InterruptedException {
+		StubPeer syncPeer = new StubPeer(1, this.blockMessages);
+		// Replies to every request with the wrong block
+		Map<ByteArray, Message> wrongBlockMessages = new HashMap<>();
+		Message wrongBlockMessage = this.blockMessages.get(ByteArray.wrap(this.blocks.get(0).getSignature()));
+		for (BlockData blockData : this.blocks)
+			wrongBlockMessages.put(ByteArray.wrap(blockData.getSignature()), wrongBlockMessage);
+		StubPeer wrongBlockPeer = new StubPeer(2, wrongBlockMessages);
+		// Never replies
+		StubPeer silentPeer = new StubPeer(3, Collections.emptyMap());
+
+		try (BlockFetchPipeline blockFetchPipeline = new BlockFetchPipeline(syncPeer, List.of(wrongBlockPeer, silentPeer), 3, 1, this.fetchExecutor, null)) {
+			requestAll(blockFetchPipeline, this.blocks);
+
+			// First block is requested from sync peer, and others' blocks are replaced by sync peer's copies
+			for (BlockData blockData : this.blocks)
+				assertSame(syncPeer, take(blockFetchPipeline, blockData).getPeer());
+		}
+
+		// Other peers aren't asked again once they fail to supply a block
+		assertEquals(1, wrongBlockPeer.requestCount.get());
+		assertEquals(1, silentPeer.requestCount.get());
+	}
+
+	@Test
+	public void testInvalidSignatureFromOtherPeer() throws InterruptedException {
+		StubPeer syncPeer = new StubPeer(1, this.blockMessages);
+		StubPeer tamperingPeer = new StubPeer(2, this.tamperedBlockMessages);
+
+		try (BlockFetchPipeline blockFetchPipeline = new BlockFetchPipeline(syncPeer, List.of(tamperingPeer), 2, 1, this.fetchExecutor, null)) {
+			requestAll(blockFetchPipeline, this.blocks);
+
+			// Other peer's block has requested signature, but it isn't valid, so sync peer's copy is used instead
+			for (BlockData blockData : this.blocks)
+				assertSame(syncPeer, take(blockFetchPipeline, blockData).getPeer());
+		}
+
+		// Other peer isn't asked again
+		assertEquals(1, tamperingPeer.requestCount.get());
+	}
+
+	@Test
+	public void testPreverificationDoesNotHoldUpFetching() throws InterruptedException {
+		ThreadPoolExecutor preverifyExecutor = (ThreadPoolExecutor) BlockFetchPipeline.newPreverifyExecutor(1);
+
+		// Keep preverify thread busy
+		CountDownLatch releaseLatch = new CountDownLatch(1);
+		preverifyExecutor.execute(() -> {
+			try {
+				releaseLatch.await();
+			} catch (InterruptedException e) {
+				// Test finished
+			}
+		});
+
+		try {
+			StubPeer syncPeer = new StubPeer(1, this.blockMessages);
+			StubPeer otherPeer = new StubPeer(2, this.blockMessages);
+
+			try (BlockFetchPipeline blockFetchPipeline = new BlockFetchPipeline(syncPeer, List.of(otherPeer), BLOCK_COUNT, 2, this.fetchExecutor, preverifyExecutor)) {
+				requestAll(blockFetchPipeline, this.blocks);
+
+				// Blocks still arrive, with excess checks discarded rather than queued
+				for (BlockData blockData : this.blocks)
+					take(blockFetchPipeline, blockData);
+			}
+
+			// Only ever one thread, with bounded queue
+			assertEquals(1, preverifyExecutor.getLargestPoolSize());
+			assertTrue(preverifyExecutor.getQueue().size() <= 1);
+		} finally {
+			releaseLatch.countDown();
+			preverifyExecutor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRefetchFromSyncPeer() throws InterruptedException {
+		StubPeer syncPeer = new StubPeer(1, this.blockMessages);
+		StubPeer otherPeer = new StubPeer(2, this.blockMessages);
+
+		try (BlockFetchPipeline blockFetchPipeline = new BlockFetchPipeline(syncPeer, List.of(otherPeer), 2, 1, this.fetchExecutor, null)) {
+			requestAll(blockFetchPipeline, this.blocks.subList(0, 2));
+
+			assertSame(syncPeer, take(blockFetchPipeline, this.blocks.get(0)).getPeer());
+
+			FetchedBlock otherPeersBlock = take(blockFetchPipeline, this.blocks.get(1));
+			assertSame(otherPeer, otherPeersBlock.getPeer());
+
+			// e.g. other peer's copy failed validation, so ask sync peer for its copy
+			FetchedBlock syncPeersBlock = blockFetchPipeline.refetchFromSyncPeer(otherPeersBlock);
+			assertSame(syncPeer, syncPeersBlock.getPeer());
+			assertArrayEquals(this.blocks.get(1).getSignature(), syncPeersBlock.getBlock().getSignature());
+
+			// Other peer is no longer asked for blocks
+			List<BlockData> remainingBlocks = this.blocks.subList(2, BLOCK_COUNT);
+			requestAll(blockFetchPipeline, remainingBlocks);
+
+			for (BlockData blockData : remainingBlocks)
+				assertSame(syncPeer, take(blockFetchPipeline, blockData).getPeer());
+		}
+
+		assertEquals(1, otherPeer.requestCount.get());
+	}
+
+	@Test
+	public void testPeerRequestLimit() throws InterruptedException {
+		CountDownLatch releaseLatch = new CountDownLatch(1);
+		StubPeer syncPeer = new StubPeer(1, this.blockMessages, releaseLatch, false);
+		StubPeer otherPeer = new StubPeer(2, this.blockMessages, releaseLatch, false);
+
+		final int peerRequestLimit = 2;
+
+		try (BlockFetchPipeline blockFetchPipeline = new BlockFetchPipeline(syncPeer, List.of(otherPeer), BLOCK_COUNT, peerRequestLimit, this.fetchExecutor, null)) {
+			requestAll(blockFetchPipeline, this.blocks);
+
+			// Wait for fetching threads to send requests
+			long deadline = System.currentTimeMillis() + 5000L;
+			while (syncPeer.inFlightCount.get() + otherPeer.inFlightCount.get() < 2 * peerRequestLimit && System.currentTimeMillis() < deadline)
+				Thread.sleep(10L);
+
+			// Give any excess requests a chance to show up
+			Thread.sleep(100L);
+
+			// Window allows all blocks, but each peer is limited
+			assertEquals(peerRequestLimit, syncPeer.requestCount.get());
+			assertEquals(peerRequestLimit, otherPeer.requestCount.get());
+
+			releaseLatch.countDown();
+
+			for (BlockData blockData : this.blocks)
+				take(blockFetchPipeline, blockData);
+		}
+
+		assertTrue(syncPeer.maxInFlightCount.get() <= peerRequestLimit);
+		assertTrue(otherPeer.maxInFlightCount.get() <= peerRequestLimit);
+	}
+
+	@Test
+	public void testNoPrefetching() throws InterruptedException {
+		StubPeer syncPeer = new StubPeer(1, this.blockMessages);
+		StubPeer otherPeer = new StubPeer(2, this.blockMessages);
+
+		try (BlockFetchPipeline blockFetchPipeline = new BlockFetchPipeline(syncPeer, List.of(otherPeer), 1, 1, this.fetchExecutor, null)) {
+			requestAll(blockFetchPipeline, this.blocks);
+
+			// Nothing requested until taken
+			assertEquals(0, syncPeer.requestCount.get());
+
+			for (BlockData blockData : this.blocks)
+				assertSame(syncPeer, take(blockFetchPipeline, blockData).getPeer());
+		}
+
+		assertEquals(0, otherPeer.requestCount.get());
+		assertEquals(BLOCK_COUNT, syncPeer.requestCount.get());
+	}
+
+}
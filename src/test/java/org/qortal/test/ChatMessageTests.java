@@ -2,17 +2,29 @@ package org.qortal.test;
 
 import org.junit.Before;
 import org.junit.Test;
-import org.qortal.data.chat.ChatMessage;
+import org.qortal.controller.ChatManager;
+import org.qortal.data.transaction.BaseTransactionData;
+import org.qortal.data.transaction.ChatTransactionData;
+import org.qortal.group.Group;
 import org.qortal.network.message.ChatMessagesMessage;
+import org.qortal.network.message.GetChatMessagesMessage;
+import org.qortal.network.message.Message;
 import org.qortal.network.message.MessageException;
+import org.qortal.repository.ChatRepositoryManager;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
 import org.qortal.repository.RepositoryManager;
+import org.qortal.settings.Settings;
 import org.qortal.test.common.Common;
 import org.qortal.test.common.TestAccount;
+import org.qortal.test.common.transaction.TestTransaction;
+import org.qortal.transaction.Transaction;
+import org.qortal.transform.Transformer;
+import org.qortal.utils.ByteArray;
 import org.qortal.utils.NTP;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
@@ -34,46 +46,156 @@ public class ChatMessageTests extends Common {
             TestAccount bob = Common.getTestAccount(repository, "bob");
 
             // Build chat message
-            long timestamp = NTP.getTime();
-            int txGroupId = 1;
-
             byte[] chatReference = new byte[64];
             new Random().nextBytes(chatReference);
 
             byte[] messageData = new byte[80];
             new Random().nextBytes(messageData);
 
-            byte[] signature = new byte[64];
-            new Random().nextBytes(signature);
-
-            ChatMessage aliceMessage = new ChatMessage(timestamp, txGroupId, alice.getLastReference(),
-                    alice.getPublicKey(), alice.getAddress(), "alice", bob.getAddress(), "bob",
-                    chatReference, messageData, true, true, signature);
+            ChatTransactionData aliceMessage = new ChatTransactionData(TestTransaction.generateBase(alice),
+                    alice.getAddress(), 1234567, bob.getAddress(), chatReference, messageData, true, true);
+            Transaction.fromData(repository, aliceMessage).sign(alice);
 
             // Serialize
             ChatMessagesMessage chatMessagesMessage = new ChatMessagesMessage(Arrays.asList(aliceMessage));
-            byte[] serializedBytes = chatMessagesMessage.getDataBytes();
+            byte[] serializedBytes = chatMessagesMessage.toBytes();
 
             // Deserialize
-            ByteBuffer byteBuffer = ByteBuffer.wrap(serializedBytes);
-            ChatMessagesMessage deserializedChatMessagesMessage = (ChatMessagesMessage) ChatMessagesMessage.fromByteBuffer(0, byteBuffer);
-            List<ChatMessage> deserializedChatMessages = deserializedChatMessagesMessage.getChatMessages();
+            ByteBuffer byteBuffer = ByteBuffer.wrap(serializedBytes).asReadOnlyBuffer();
+            ChatMessagesMessage deserializedChatMessagesMessage = (ChatMessagesMessage) Message.fromByteBuffer(byteBuffer);
+            List<ChatTransactionData> deserializedChatMessages = deserializedChatMessagesMessage.getChatTransactions();
             assertEquals(1, deserializedChatMessages.size());
-            ChatMessage deserializedChatMessage = deserializedChatMessages.get(0);
+            ChatTransactionData deserializedChatMessage = deserializedChatMessages.get(0);
 
             // Check all the values
-            assertEquals(timestamp, deserializedChatMessage.getTimestamp());
-            assertEquals(txGroupId, deserializedChatMessage.getTxGroupId());
-            assertArrayEquals(alice.getLastReference(), deserializedChatMessage.getReference());
+            assertEquals(aliceMessage.getTimestamp(), deserializedChatMessage.getTimestamp());
+            assertEquals(aliceMessage.getTxGroupId(), deserializedChatMessage.getTxGroupId());
+            assertArrayEquals(aliceMessage.getReference(), deserializedChatMessage.getReference());
             assertArrayEquals(alice.getPublicKey(), deserializedChatMessage.getSenderPublicKey());
             assertEquals(alice.getAddress(), deserializedChatMessage.getSender());
-            assertEquals("alice", deserializedChatMessage.getSenderName());
+            assertEquals(1234567, deserializedChatMessage.getNonce());
             assertEquals(bob.getAddress(), deserializedChatMessage.getRecipient());
-            assertEquals("bob", deserializedChatMessage.getRecipientName());
+            assertArrayEquals(chatReference, deserializedChatMessage.getChatReference());
             assertArrayEquals(messageData, deserializedChatMessage.getData());
-            assertEquals(true, deserializedChatMessage.isText());
-            assertEquals(true, deserializedChatMessage.isEncrypted());
-            assertArrayEquals(signature, deserializedChatMessage.getSignature());
+            assertEquals(true, deserializedChatMessage.getIsText());
+            assertEquals(true, deserializedChatMessage.getIsEncrypted());
+            assertArrayEquals(aliceMessage.getSignature(), deserializedChatMessage.getSignature());
+        }
+    }
+
+    @Test
+    public void testRecentMessagesByCreator() throws DataException {
+        try (final Repository repository = RepositoryManager.getRepository()) {
+            TestAccount alice = Common.getTestAccount(repository, "alice");
+            TestAccount bob = Common.getTestAccount(repository, "bob");
+
+            long now = NTP.getTime();
+            int initialCount = ChatManager.getInstance().countRecentMessagesByCreator(alice.getPublicKey(), now);
+            int bobsInitialCount = ChatManager.getInstance().countRecentMessagesByCreator(bob.getPublicKey(), now);
+
+            ChatTransactionData firstMessage = buildChatMessage(repository, alice, bob, now);
+            ChatTransactionData secondMessage = buildChatMessage(repository, alice, bob, now);
+            ChatTransactionData oldMessage = buildChatMessage(repository, alice, bob, now - Settings.getInstance().getRecentChatMessagesMaxAge() - 1000L);
+
+            ChatManager.getInstance().saveChatTransaction(repository, firstMessage);
+            ChatManager.getInstance().saveChatTransaction(repository, secondMessage);
+            ChatManager.getInstance().saveChatTransaction(repository, oldMessage);
+
+            // Duplicates shouldn't be counted twice
+            ChatManager.getInstance().saveChatTransaction(repository, firstMessage);
+
+            assertEquals(initialCount + 2, ChatManager.getInstance().countRecentMessagesByCreator(alice.getPublicKey(), now));
+            assertEquals(bobsInitialCount, ChatManager.getInstance().countRecentMessagesByCreator(bob.getPublicKey(), now));
+
+            // Messages age out of window
+            long later = now + Settings.getInstance().getRecentChatMessagesMaxAge() + 1000L;
+            assertEquals(0, ChatManager.getInstance().countRecentMessagesByCreator(alice.getPublicKey(), later));
+        }
+    }
+
+    private static ChatTransactionData buildChatMessage(Repository repository, TestAccount sender, TestAccount recipient, long timestamp) throws DataException {
+        byte[] messageData = new byte[80];
+        new Random().nextBytes(messageData);
+
+        BaseTransactionData baseTransactionData = new BaseTransactionData(timestamp, Group.NO_GROUP, sender.getLastReference(), sender.getPublicKey(), 0L, null);
+
+        ChatTransactionData chatTransactionData = new ChatTransactionData(baseTransactionData,
+                sender.getAddress(), 1234567, recipient.getAddress(), null, messageData, false, false);
+        Transaction.fromData(repository, chatTransactionData).sign(sender);
+
+        return chatTransactionData;
+    }
+
+    @Test
+    public void testGetChatMessagesSerialization() throws MessageException {
+        long timestamp = NTP.getTime();
+
+        GetChatMessagesMessage getChatMessagesMessage = new GetChatMessagesMessage(timestamp, 50, GetChatMessagesMessage.Direction.BACKWARDS);
+
+        ByteBuffer byteBuffer = ByteBuffer.wrap(getChatMessagesMessage.toBytes()).asReadOnlyBuffer();
+        GetChatMessagesMessage deserializedMessage = (GetChatMessagesMessage) Message.fromByteBuffer(byteBuffer);
+
+        assertEquals(timestamp, deserializedMessage.getTimestamp());
+        assertEquals(50, deserializedMessage.getNumberRequested());
+        assertEquals(GetChatMessagesMessage.Direction.BACKWARDS, deserializedMessage.getDirection());
+        assertNull(deserializedMessage.getSignature());
+
+        // With signature cursor
+        byte[] signature = new byte[Transformer.SIGNATURE_LENGTH];
+        new Random().nextBytes(signature);
+
+        getChatMessagesMessage = new GetChatMessagesMessage(timestamp, signature, 50, GetChatMessagesMessage.Direction.FORWARDS);
+
+        byteBuffer = ByteBuffer.wrap(getChatMessagesMessage.toBytes()).asReadOnlyBuffer();
+        deserializedMessage = (GetChatMessagesMessage) Message.fromByteBuffer(byteBuffer);
+
+        assertEquals(timestamp, deserializedMessage.getTimestamp());
+        assertArrayEquals(signature, deserializedMessage.getSignature());
+        assertEquals(GetChatMessagesMessage.Direction.FORWARDS, deserializedMessage.getDirection());
+    }
+
+    @Test
+    public void testTimestampAndSignaturePaging() throws DataException {
+        try (final Repository repository = RepositoryManager.getRepository();
+             final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+            TestAccount alice = Common.getTestAccount(repository, "alice");
+            TestAccount bob = Common.getTestAccount(repository, "bob");
+
+            // More messages with same timestamp than fit in one page
+            long timestamp = NTP.getTime();
+            final int messageCount = 7;
+            for (int i = 0; i < messageCount; ++i)
+                chatRepository.getChatRepository().save(buildChatMessage(repository, alice, bob, timestamp), null, null);
+
+            // Plus one later message
+            chatRepository.getChatRepository().save(buildChatMessage(repository, alice, bob, timestamp + 1), null, null);
+            chatRepository.saveChanges();
+
+            // Page forwards, 3 at a time, as chat sync does
+            List<byte[]> pagedSignatures = new ArrayList<>();
+            long cursorTimestamp = timestamp;
+            byte[] cursorSignature = null;
+            while (true) {
+                List<ChatTransactionData> page = chatRepository.getChatRepository().getChatTransactionsByTimestamp(cursorTimestamp, null, cursorSignature, 3, false);
+                if (page.isEmpty())
+                    break;
+
+                page.forEach(chatTransactionData -> pagedSignatures.add(chatTransactionData.getSignature()));
+
+                ChatTransactionData lastChatTransactionData = page.get(page.size() - 1);
+                cursorTimestamp = lastChatTransactionData.getTimestamp();
+                cursorSignature = lastChatTransactionData.getSignature();
+            }
+
+            // Every message, exactly once
+            assertEquals(messageCount + 1, pagedSignatures.size());
+            assertEquals(messageCount + 1, pagedSignatures.stream().map(ByteArray::wrap).distinct().count());
+
+            // Same, but backwards
+            List<ChatTransactionData> newestFirst = chatRepository.getChatRepository().getChatTransactionsByTimestamp(null, timestamp + 1, null, 2, true);
+            ChatTransactionData cursor = newestFirst.get(newestFirst.size() - 1);
+            List<ChatTransactionData> older = chatRepository.getChatRepository().getChatTransactionsByTimestamp(null, cursor.getTimestamp(), cursor.getSignature(), null, true);
+            assertEquals(messageCount - 1, older.size());
         }
     }
 
@@ -0,0 +1,221 @@
+package org.qortal.test;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.After;
+import org.junit.Test;
+import org.qortal.controller.ChatNotifier;
+import org.qortal.data.chat.ChatMessage;
+import org.qortal.data.chat.ChatMessage.Encoding;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ChatNotifierTests {
+
+	private static final String ALICE = "QgV4s3xnzLhVBEJxcYui4u4q11yhUHsd9v";
+	private static final String BOB = "QixPbJUwsaHsVEofJdozU9zgVqkK6aYhrK";
+	private static final String CHLOE = "QaUpHkhfF5LsHnEHGoTkQzaTPPUqEgzJHd";
+
+	private static final int GROUP_ID = 1234;
+	private static final int OTHER_GROUP_ID = 5678;
+
+	/** How long we wait for notifications we don't expect */
+	private static final long QUIET_PERIOD = 200L; // ms
+
+	private final List<Session> sessions = new ArrayList<>();
+
+	/** Session with no behaviour, other than identity, as notifier only uses sessions as keys. */
+	private Session newSession() {
+		Session session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[] { Session.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+						case "hashCode":
+							return System.identityHashCode(proxy);
+
+						case "equals":
+							return proxy == args[0];
+
+						case "toString":
+							return "test session";
+
+						default:
+							return null;
+					}
+				});
+
+		this.sessions.add(session);
+		return session;
+	}
+
+	private static ChatMessage newChatMessage(String sender, String recipient, int txGroupId) {
+		byte[] signature = new byte[64];
+		new Random().nextBytes(signature);
+
+		return new ChatMessage(System.currentTimeMillis(), txGroupId, null, new byte[32], sender, null, recipient, null, null,
+				Encoding.BASE58, new byte[10], true, false, signature);
+	}
+
+	private static void assertNotified(BlockingQueue<Optional<ChatMessage>> notifications, ChatMessage expectedChatMessage) throws InterruptedException {
+		Optional<ChatMessage> notification = notifications.poll(5, TimeUnit.SECONDS);
+		assertNotNull("Expected notification", notification);
+		assertSame(expectedChatMessage, notification.orElse(null));
+	}
+
+	private static void assertNotNotified(BlockingQueue<Optional<ChatMessage>> notifications) throws InterruptedException {
+		assertNull("Unexpected notification", notifications.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS));
+	}
+
+	@After
+	public void afterTest() {
+		for (Session session : this.sessions)
+			ChatNotifier.getInstance().deregister(session);
+	}
+
+	@Test
+	public void testDirectMessages() throws InterruptedException {
+		BlockingQueue<Optional<ChatMessage>> aliceBobNotifications = new LinkedBlockingQueue<>();
+		ChatNotifier.getInstance().registerForAddresses(newSession(), Arrays.asList(ALICE, BOB),
+				chatMessage -> aliceBobNotifications.add(Optional.ofNullable(chatMessage)));
+
+		BlockingQueue<Optional<ChatMessage>> groupNotifications = new LinkedBlockingQueue<>();
+		ChatNotifier.getInstance().registerForGroup(newSession(), GROUP_ID, chatMessage -> groupNotifications.add(Optional.ofNullable(chatMessage)));
+
+		// Indexed by both addresses, so either sender or recipient will do
+		ChatMessage fromAlice = newChatMessage(ALICE, CHLOE, 0);
+		ChatNotifier.getInstance().onNewChatMessage(fromAlice);
+		assertNotified(aliceBobNotifications, fromAlice);
+
+		ChatMessage toBob = newChatMessage(CHLOE, BOB, 0);
+		ChatNotifier.getInstance().onNewChatMessage(toBob);
+		assertNotified(aliceBobNotifications, toBob);
+
+		// Unrelated direct message
+		ChatNotifier.getInstance().onNewChatMessage(newChatMessage(CHLOE, CHLOE, 0));
+		assertNotNotified(aliceBobNotifications);
+
+		// Group listener isn't interested in direct messages
+		assertNotNotified(groupNotifications);
+	}
+
+	@Test
+	public void testGroupMessages() throws InterruptedException {
+		BlockingQueue<Optional<ChatMessage>> groupNotifications = new LinkedBlockingQueue<>();
+		ChatNotifier.getInstance().registerForGroup(newSession(), GROUP_ID, chatMessage -> groupNotifications.add(Optional.ofNullable(chatMessage)));
+
+		BlockingQueue<Optional<ChatMessage>> directNotifications = new LinkedBlockingQueue<>();
+		ChatNotifier.getInstance().registerForAddresses(newSession(), Arrays.asList(ALICE, BOB),
+				chatMessage -> directNotifications.add(Optional.ofNullable(chatMessage)));
+
+		// Group message sent by Alice only goes to group listener
+		ChatMessage groupMessage = newChatMessage(ALICE, null, GROUP_ID);
+		ChatNotifier.getInstance().onNewChatMessage(groupMessage);
+		assertNotified(groupNotifications, groupMessage);
+		assertNotNotified(directNotifications);
+
+		// Other group
+		ChatNotifier.getInstance().onNewChatMessage(newChatMessage(ALICE, null, OTHER_GROUP_ID));
+		assertNotNotified(groupNotifications);
+	}
+
+	@Test
+	public void testActiveChats() throws InterruptedException {
+		Session session = newSession();
+		BlockingQueue<Optional<ChatMessage>> notifications = new LinkedBlockingQueue<>();
+		ChatNotifier.getInstance().registerForActiveChats(session, ALICE, Collections.singleton(GROUP_ID),
+				chatMessage -> notifications.add(Optional.ofNullable(chatMessage)));
+
+		// Member's group
+		ChatMessage groupMessage = newChatMessage(BOB, null, GROUP_ID);
+		ChatNotifier.getInstance().onNewChatMessage(groupMessage);
+		assertNotified(notifications, groupMessage);
+
+		// Not a member of other group
+		ChatNotifier.getInstance().onNewChatMessage(newChatMessage(BOB, null, OTHER_GROUP_ID));
+		assertNotNotified(notifications);
+
+		// Direct message
+		ChatMessage directMessage = newChatMessage(BOB, ALICE, 0);
+		ChatNotifier.getInstance().onNewChatMessage(directMessage);
+		assertNotified(notifications, directMessage);
+
+		// Group-membership changes are delivered as null
+		ChatNotifier.getInstance().onGroupMembershipChange();
+		assertNotified(notifications, null);
+
+		// Alice joins other group
+		ChatNotifier.getInstance().updateGroups(session, Arrays.asList(GROUP_ID, OTHER_GROUP_ID));
+
+		ChatMessage otherGroupMessage = newChatMessage(BOB, null, OTHER_GROUP_ID);
+		ChatNotifier.getInstance().onNewChatMessage(otherGroupMessage);
+		assertNotified(notifications, otherGroupMessage);
+	}
+
+	@Test
+	public void testGroupMembershipChangeNotCoalesced() throws InterruptedException {
+		CountDownLatch listenerBlocked = new CountDownLatch(1);
+		CountDownLatch unblockListener = new CountDownLatch(1);
+
+		BlockingQueue<Optional<ChatMessage>> notifications = new LinkedBlockingQueue<>();
+		ChatNotifier.getInstance().registerForActiveChats(newSession(), ALICE, Collections.singleton(GROUP_ID), chatMessage -> {
+			notifications.add(Optional.ofNullable(chatMessage));
+
+			listenerBlocked.countDown();
+			try {
+				unblockListener.await();
+			} catch (InterruptedException e) {
+				// Carry on
+			}
+		});
+
+		// Keep listener busy so further notifications are pending
+		ChatMessage firstMessage = newChatMessage(BOB, ALICE, 0);
+		ChatNotifier.getInstance().onNewChatMessage(firstMessage);
+		assertTrue(listenerBlocked.await(5, TimeUnit.SECONDS));
+
+		ChatNotifier.getInstance().onGroupMembershipChange();
+		ChatNotifier.getInstance().onNewChatMessage(newChatMessage(BOB, ALICE, 0));
+		ChatMessage lastMessage = newChatMessage(BOB, ALICE, 0);
+		ChatNotifier.getInstance().onNewChatMessage(lastMessage);
+
+		unblockListener.countDown();
+
+		// Pending messages are coalesced, but group-membership change must survive
+		assertNotified(notifications, firstMessage);
+		assertNotified(notifications, null);
+		assertNotified(notifications, lastMessage);
+		assertNotNotified(notifications);
+	}
+
+	@Test
+	public void testAllMessages() throws InterruptedException {
+		BlockingQueue<Optional<ChatMessage>> notifications = new LinkedBlockingQueue<>();
+		ChatNotifier.getInstance().register(newSession(), chatMessage -> notifications.add(Optional.ofNullable(chatMessage)));
+
+		ChatMessage directMessage = newChatMessage(ALICE, BOB, 0);
+		ChatNotifier.getInstance().onNewChatMessage(directMessage);
+		assertNotified(notifications, directMessage);
+
+		ChatMessage groupMessage = newChatMessage(ALICE, null, GROUP_ID);
+		ChatNotifier.getInstance().onNewChatMessage(groupMessage);
+		assertNotified(notifications, groupMessage);
+	}
+
+	@Test
+	public void testDeregister() throws InterruptedException {
+		Session session = newSession();
+		BlockingQueue<Optional<ChatMessage>> notifications = new LinkedBlockingQueue<>();
+		ChatNotifier.getInstance().registerForAddresses(session, Arrays.asList(ALICE, BOB), chatMessage -> notifications.add(Optional.ofNullable(chatMessage)));
+
+		ChatNotifier.getInstance().deregister(session);
+
+		ChatNotifier.getInstance().onNewChatMessage(newChatMessage(ALICE, BOB, 0));
+		assertNotNotified(notifications);
+	}
+
+}
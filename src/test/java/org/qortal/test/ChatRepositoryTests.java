@@ -0,0 +1,203 @@
+package org.qortal.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.account.PrivateKeyAccount;
+import org.qortal.controller.ChatManager;
+import org.qortal.data.chat.ActiveChats;
+import org.qortal.data.chat.ChatMessage;
+import org.qortal.data.transaction.ChatTransactionData;
+import org.qortal.data.transaction.RegisterNameTransactionData;
+import org.qortal.repository.ChatRepositoryManager;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.repository.RepositoryManager;
+import org.qortal.test.common.BlockUtils;
+import org.qortal.test.common.Common;
+import org.qortal.test.common.TransactionUtils;
+import org.qortal.test.common.transaction.ChatTestTransaction;
+import org.qortal.test.common.transaction.TestTransaction;
+import org.qortal.transaction.RegisterNameTransaction;
+import org.qortal.transaction.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.qortal.data.chat.ChatMessage.Encoding;
+
+public class ChatRepositoryTests extends Common {
+
+	@Before
+	public void beforeTest() throws DataException {
+		Common.useDefaultSettings();
+	}
+
+	@Test
+	public void testSaveAndFetchDirectMessage() throws DataException {
+		try (final Repository repository = RepositoryManager.getRepository();
+			 final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+			PrivateKeyAccount alice = Common.getTestAccount(repository, "alice");
+
+			ChatTransactionData chatTransactionData = (ChatTransactionData) ChatTestTransaction.randomTransaction(repository, alice, true);
+			Transaction.fromData(repository, chatTransactionData).sign(alice);
+
+			chatRepository.getChatRepository().save(chatTransactionData, "alice", null);
+			chatRepository.saveChanges();
+
+			assertTrue(chatRepository.getChatRepository().exists(chatTransactionData.getSignature()));
+
+			List<String> involving = Arrays.asList(chatTransactionData.getSender(), chatTransactionData.getRecipient());
+			List<ChatMessage> chatMessages = chatRepository.getChatRepository().getMessagesMatchingCriteria(null, null, null, null, null,
+					null, null, null, involving, null, Encoding.BASE58, null, null, null);
+
+			assertEquals(1, chatMessages.size());
+			ChatMessage chatMessage = chatMessages.get(0);
+			assertArrayEquals(chatTransactionData.getSignature(), chatMessage.getSignature());
+			assertArrayEquals(chatTransactionData.getSenderPublicKey(), chatMessage.getSenderPublicKey());
+			assertArrayEquals(chatTransactionData.getChatReference(), chatMessage.getChatReference());
+			assertEquals("alice", chatMessage.getSenderName());
+			assertNull(chatMessage.getRecipientName());
+
+			ChatMessage fetchedMessage = chatRepository.getChatRepository().getMessageBySignature(chatTransactionData.getSignature(), Encoding.BASE64);
+			assertNotNull(fetchedMessage);
+			assertEquals(chatMessage.getData(), fetchedMessage.withEncoding(Encoding.BASE58).getData());
+
+			ActiveChats activeChats = chatRepository.getChatRepository().getActiveChats(chatTransactionData.getRecipient(), Encoding.BASE58);
+			assertEquals(1, activeChats.getDirect().size());
+			assertEquals(chatTransactionData.getSender(), activeChats.getDirect().get(0).getAddress());
+			assertEquals("alice", activeChats.getDirect().get(0).getName());
+		}
+	}
+
+	@Test
+	public void testCursorPaging() throws DataException {
+		try (final Repository repository = RepositoryManager.getRepository();
+			 final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+			PrivateKeyAccount alice = Common.getTestAccount(repository, "alice");
+			PrivateKeyAccount bob = Common.getTestAccount(repository, "bob");
+
+			final int messageCount = 7;
+			for (int i = 0; i < messageCount; ++i) {
+				// Alternate direction, as both directions belong to same conversation
+				PrivateKeyAccount sender = (i % 2 == 0) ? alice : bob;
+				PrivateKeyAccount recipient = (i % 2 == 0) ? bob : alice;
+
+				byte[] data = new byte[100];
+				new Random().nextBytes(data);
+
+				ChatTransactionData chatTransactionData = new ChatTransactionData(TestTransaction.generateBase(sender),
+						sender.getAddress(), 1234567, recipient.getAddress(), null, data, false, false);
+				Transaction.fromData(repository, chatTransactionData).sign(sender);
+
+				chatRepository.getChatRepository().save(chatTransactionData, null, null);
+			}
+			chatRepository.saveChanges();
+
+			List<String> involving = Arrays.asList(bob.getAddress(), alice.getAddress());
+
+			List<ChatMessage> allMessages = chatRepository.getChatRepository().getMessagesMatchingCriteria(null, null, null, null, null,
+					null, null, null, involving, null, Encoding.BASE58, null, null, true);
+			assertEquals(messageCount, allMessages.size());
+
+			// Page backwards through conversation, 3 at a time
+			List<ChatMessage> pagedMessages = new ArrayList<>();
+			byte[] cursor = null;
+			while (true) {
+				List<ChatMessage> page = chatRepository.getChatRepository().getMessagesMatchingCriteria(null, null, cursor, null, null,
+						null, null, null, involving, null, Encoding.BASE58, 3, null, true);
+				if (page.isEmpty())
+					break;
+
+				pagedMessages.addAll(page);
+				cursor = page.get(page.size() - 1).getSignature();
+			}
+
+			assertEquals(allMessages.size(), pagedMessages.size());
+			for (int i = 0; i < allMessages.size(); ++i)
+				assertArrayEquals(allMessages.get(i).getSignature(), pagedMessages.get(i).getSignature());
+
+			// Page forwards from oldest message
+			byte[] oldestSignature = allMessages.get(messageCount - 1).getSignature();
+			List<ChatMessage> newerMessages = chatRepository.getChatRepository().getMessagesMatchingCriteria(null, null, null, oldestSignature, null,
+					null, null, null, involving, null, Encoding.BASE58, null, null, null);
+			assertEquals(messageCount - 1, newerMessages.size());
+
+			// Active chats should only report latest message in conversation, for both participants
+			ChatMessage latestMessage = allMessages.get(0);
+			for (PrivateKeyAccount participant : Arrays.asList(alice, bob)) {
+				ActiveChats activeChats = chatRepository.getChatRepository().getActiveChats(participant.getAddress(), Encoding.BASE58);
+				assertEquals(1, activeChats.getDirect().size());
+				assertEquals(latestMessage.getTimestamp(), activeChats.getDirect().get(0).getTimestamp());
+				assertEquals(latestMessage.getSender(), activeChats.getDirect().get(0).getSender());
+			}
+
+			// Unknown cursor
+			byte[] unknownSignature = new byte[64];
+			List<ChatMessage> noMessages = chatRepository.getChatRepository().getMessagesMatchingCriteria(null, null, unknownSignature, null, null,
+					null, null, null, involving, null, Encoding.BASE58, null, null, null);
+			assertTrue(noMessages.isEmpty());
+		}
+	}
+
+	@Test
+	public void testGroupMembers() throws DataException {
+		try (final Repository repository = RepositoryManager.getRepository();
+			 final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+			PrivateKeyAccount alice = Common.getTestAccount(repository, "alice");
+			int groupId = 1234;
+
+			chatRepository.getChatRepository().saveGroupMembers(groupId, "test-group", Arrays.asList(alice.getAddress()));
+			chatRepository.saveChanges();
+
+			ActiveChats activeChats = chatRepository.getChatRepository().getActiveChats(alice.getAddress(), Encoding.BASE58);
+			assertTrue(activeChats.getGroups().stream().anyMatch(groupChat -> groupChat.getGroupId() == groupId));
+
+			// Remove group
+			chatRepository.getChatRepository().saveGroupMembers(groupId, null, null);
+			chatRepository.saveChanges();
+
+			activeChats = chatRepository.getChatRepository().getActiveChats(alice.getAddress(), Encoding.BASE58);
+			assertFalse(activeChats.getGroups().stream().anyMatch(groupChat -> groupChat.getGroupId() == groupId));
+		}
+	}
+
+	@Test
+	public void testNameChanges() throws DataException {
+		try (final Repository repository = RepositoryManager.getRepository();
+			 final Repository chatRepository = ChatRepositoryManager.getRepository()) {
+			PrivateKeyAccount alice = Common.getTestAccount(repository, "alice");
+
+			// Alice has no name when message is saved
+			ChatTransactionData chatTransactionData = (ChatTransactionData) ChatTestTransaction.randomTransaction(repository, alice, true);
+			Transaction.fromData(repository, chatTransactionData).sign(alice);
+
+			chatRepository.getChatRepository().save(chatTransactionData, null, null);
+			chatRepository.saveChanges();
+
+			assertNull(chatRepository.getChatRepository().getMessageBySignature(chatTransactionData.getSignature(), Encoding.BASE58).getSenderName());
+
+			// Alice registers name later
+			String name = "alice-chat-name";
+			RegisterNameTransactionData transactionData = new RegisterNameTransactionData(TestTransaction.generateBase(alice), name, "");
+			transactionData.setFee(new RegisterNameTransaction(null, null).getUnitFee(transactionData.getTimestamp()));
+			TransactionUtils.signAndMint(repository, transactionData, alice);
+
+			// Normally called once block is committed
+			ChatManager.getInstance().updateNames();
+			chatRepository.discardChanges();
+
+			assertEquals(name, chatRepository.getChatRepository().getMessageBySignature(chatTransactionData.getSignature(), Encoding.BASE58).getSenderName());
+
+			// Orphaning name registration removes name from existing messages too
+			BlockUtils.orphanLastBlock(repository);
+			ChatManager.getInstance().updateNames();
+			chatRepository.discardChanges();
+
+			assertNull(chatRepository.getChatRepository().getMessageBySignature(chatTransactionData.getSignature(), Encoding.BASE58).getSenderName());
+		}
+	}
+
+}
@@ -12,10 +12,13 @@ import org.qortal.crypto.Crypto;
 import org.qortal.data.account.AccountBalanceData;
 import org.qortal.data.account.AccountData;
 import org.qortal.data.chat.ChatMessage;
+import org.qortal.repository.ChatRepositoryManager;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
 import org.qortal.repository.RepositoryManager;
+import org.qortal.repository.hsqldb.HSQLDBPoolMetrics;
 import org.qortal.repository.hsqldb.HSQLDBRepository;
+import org.qortal.repository.hsqldb.HSQLDBRepositoryFactory;
 import org.qortal.test.common.BlockUtils;
 import org.qortal.test.common.Common;
 
@@ -63,6 +66,75 @@ public class RepositoryTests extends Common {
 		}
 	}
 
+	@Test
+	public void testPreparedStatementReuse() throws DataException, SQLException {
+		final String sql = "SELECT COUNT(*) FROM Blocks";
+		HSQLDBRepositoryFactory repositoryFactory = (HSQLDBRepositoryFactory) RepositoryManager.getRepositoryFactory();
+
+		PreparedStatement firstPreparedStatement;
+		try (final HSQLDBRepository hsqldb = (HSQLDBRepository) RepositoryManager.getRepository()) {
+			firstPreparedStatement = hsqldb.prepareStatement(sql);
+		}
+
+		long hitsBefore = repositoryFactory.getStatementCacheStats().getHits();
+
+		// Most-recently released connection is reused, along with its prepared statements
+		try (final HSQLDBRepository hsqldb = (HSQLDBRepository) RepositoryManager.getRepository()) {
+			PreparedStatement secondPreparedStatement = hsqldb.prepareStatement(sql);
+
+			assertSame(firstPreparedStatement, secondPreparedStatement);
+			assertFalse(secondPreparedStatement.isClosed());
+		}
+
+		assertTrue(repositoryFactory.getStatementCacheStats().getHits() > hitsBefore);
+	}
+
+	@Test
+	public void testPoolStats() throws DataException {
+		HSQLDBRepositoryFactory repositoryFactory = (HSQLDBRepositoryFactory) RepositoryManager.getRepositoryFactory();
+
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			HSQLDBPoolMetrics.PoolStats poolStats = repositoryFactory.getPoolStats(0L);
+
+			assertTrue(poolStats.inUseConnections >= 1);
+			assertTrue(poolStats.acquisitions >= 1);
+
+			// We should be listed as a (long) holder
+			String threadName = Thread.currentThread().getName();
+			assertTrue(poolStats.longHolders.stream().anyMatch(longHolder -> threadName.equals(longHolder.thread)));
+		}
+
+		HSQLDBPoolMetrics.PoolStats poolStats = repositoryFactory.getPoolStats(0L);
+		String threadName = Thread.currentThread().getName();
+		assertTrue(poolStats.idleConnections >= 1);
+		assertFalse(poolStats.longHolders.stream().anyMatch(longHolder -> threadName.equals(longHolder.thread)));
+	}
+
+	@Test
+	public void testPoolStatsHoldersCapped() throws DataException {
+		HSQLDBRepositoryFactory repositoryFactory = (HSQLDBRepositoryFactory) RepositoryManager.getRepositoryFactory();
+
+		Thread thread = Thread.currentThread();
+		String originalThreadName = thread.getName();
+
+		try {
+			// Thread names without numeric suffix, so each is a distinct holder
+			for (int i = 0; i < HSQLDBPoolMetrics.MAX_HOLDERS + 10; ++i) {
+				thread.setName("holder-" + i + "-test");
+
+				try (final Repository repository = RepositoryManager.getRepository()) {
+					assertNotNull(repository);
+				}
+			}
+		} finally {
+			thread.setName(originalThreadName);
+		}
+
+		HSQLDBPoolMetrics.PoolStats poolStats = repositoryFactory.getPoolStats(0L);
+		assertTrue(poolStats.holders.size() <= HSQLDBPoolMetrics.MAX_HOLDERS + 1);
+		assertTrue(poolStats.holders.stream().anyMatch(holderStats -> HSQLDBPoolMetrics.OTHER_HOLDER.equals(holderStats.holder)));
+	}
+
 	@Test
 	public void testAccessAfterClose() throws DataException {
 		try (final Repository repository = RepositoryManager.getRepository()) {
@@ -414,7 +486,7 @@ public class RepositoryTests extends Common {
 	/** Specifically test LATERAL() usage in Chat repository */
 	@Test
 	public void testChatLateral() {
-		try (final HSQLDBRepository hsqldb = (HSQLDBRepository) RepositoryManager.getRepository()) {
+		try (final HSQLDBRepository hsqldb = (HSQLDBRepository) ChatRepositoryManager.getRepository()) {
 			String address = Crypto.toAddress(new byte[32]);
 
 			hsqldb.getChatRepository().getActiveChats(address, ChatMessage.Encoding.BASE58);
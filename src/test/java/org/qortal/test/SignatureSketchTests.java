@@ -0,0 +1,184 @@
+package org.qortal.test;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.junit.Test;
+import org.qortal.transform.Transformer;
+import org.qortal.utils.SignatureSketch;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SignatureSketchTests {
+
+	private static final Random RANDOM = new Random();
+
+	private static List<byte[]> randomSignatures(int count) {
+		List<byte[]> signatures = new ArrayList<>();
+
+		for (int i = 0; i < count; ++i) {
+			byte[] signature = new byte[Transformer.SIGNATURE_LENGTH];
+			RANDOM.nextBytes(signature);
+			signatures.add(signature);
+		}
+
+		return signatures;
+	}
+
+	private static SignatureSketch sketchOf(int cellCount, List<byte[]>... signatureLists) {
+		SignatureSketch sketch = new SignatureSketch(cellCount);
+
+		for (List<byte[]> signatures : signatureLists)
+			for (byte[] signature : signatures)
+				sketch.add(signature);
+
+		return sketch;
+	}
+
+	private static Set<Long> shortIds(List<byte[]> signatures) {
+		Set<Long> shortIds = new HashSet<>();
+
+		for (byte[] signature : signatures)
+			shortIds.add(SignatureSketch.shortId(signature));
+
+		return shortIds;
+	}
+
+	private static void assertRejected(ByteBuffer byteBuffer, int countIndex, int count) {
+		ByteBuffer craftedBuffer = ByteBuffer.allocate(byteBuffer.capacity());
+		craftedBuffer.put(byteBuffer.duplicate().clear());
+		craftedBuffer.putInt(countIndex, count);
+		craftedBuffer.flip();
+
+		try {
+			SignatureSketch.deserialize(craftedBuffer);
+			fail("Crafted sketch should be rejected");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testReconcile() {
+		final int cellCount = 128 * SignatureSketch.HASH_COUNT;
+
+		List<byte[]> common = randomSignatures(1000);
+		List<byte[]> oursOnly = randomSignatures(30);
+		List<byte[]> theirsOnly = randomSignatures(20);
+
+		SignatureSketch ourSketch = sketchOf(cellCount, common, oursOnly);
+		SignatureSketch theirSketch = sketchOf(cellCount, common, theirsOnly);
+
+		SignatureSketch.Difference difference = ourSketch.subtract(theirSketch).decode();
+
+		assertTrue(difference.isComplete);
+		assertEquals(shortIds(oursOnly), new HashSet<>(difference.ourIds));
+		assertEquals(shortIds(theirsOnly), new HashSet<>(difference.theirIds));
+	}
+
+	@Test
+	public void testIdenticalSets() {
+		final int cellCount = 16 * SignatureSketch.HASH_COUNT;
+
+		List<byte[]> common = randomSignatures(500);
+
+		SignatureSketch.Difference difference = sketchOf(cellCount, common).subtract(sketchOf(cellCount, common)).decode();
+
+		assertTrue(difference.isComplete);
+		assertTrue(difference.ourIds.isEmpty());
+		assertTrue(difference.theirIds.isEmpty());
+	}
+
+	@Test
+	public void testTooManyDifferences() {
+		final int cellCount = 16 * SignatureSketch.HASH_COUNT;
+
+		SignatureSketch ourSketch = sketchOf(cellCount, randomSignatures(500));
+		SignatureSketch theirSketch = sketchOf(cellCount, randomSignatures(500));
+
+		SignatureSketch.Difference difference = ourSketch.subtract(theirSketch).decode();
+
+		assertFalse(difference.isComplete);
+	}
+
+	@Test
+	public void testSerialization() {
+		final int cellCount = 32 * SignatureSketch.HASH_COUNT;
+
+		List<byte[]> common = randomSignatures(200);
+		List<byte[]> oursOnly = randomSignatures(5);
+
+		SignatureSketch ourSketch = sketchOf(cellCount, common, oursOnly);
+
+		ByteBuffer byteBuffer = ByteBuffer.allocate(ourSketch.getDataLength());
+		ourSketch.serialize(byteBuffer);
+		assertFalse(byteBuffer.hasRemaining());
+
+		byteBuffer.flip();
+		SignatureSketch deserializedSketch = SignatureSketch.deserialize(byteBuffer);
+		assertEquals(cellCount, deserializedSketch.getCellCount());
+
+		SignatureSketch.Difference difference = deserializedSketch.subtract(sketchOf(cellCount, common)).decode();
+
+		assertTrue(difference.isComplete);
+		assertEquals(shortIds(oursOnly), new HashSet<>(difference.ourIds));
+	}
+
+	@Test
+	public void testCraftedSketchDecodeTerminates() throws IllegalAccessException {
+		final int cellCount = 16 * SignatureSketch.HASH_COUNT;
+
+		SignatureSketch sketch = sketchOf(cellCount, randomSignatures(1));
+
+		int[] counts = (int[]) FieldUtils.readField(sketch, "counts", true);
+		long[] idSums = (long[]) FieldUtils.readField(sketch, "idSums", true);
+		long[] hashSums = (long[]) FieldUtils.readField(sketch, "hashSums", true);
+
+		// Empty one of the signature's cells, so peeling it off one cell then restoring it from another repeats forever
+		for (int i = 0; i < cellCount; ++i)
+			if (counts[i] != 0) {
+				counts[i] = 0;
+				idSums[i] = 0;
+				hashSums[i] = 0;
+				break;
+			}
+
+		SignatureSketch.Difference difference = sketch.decode();
+
+		assertFalse(difference.isComplete);
+		assertTrue(difference.ourIds.isEmpty());
+		assertTrue(difference.theirIds.isEmpty());
+	}
+
+	@Test
+	public void testDeserializeRejectsCraftedSketch() {
+		final int cellCount = 16 * SignatureSketch.HASH_COUNT;
+
+		SignatureSketch sketch = sketchOf(cellCount, randomSignatures(10));
+
+		ByteBuffer byteBuffer = ByteBuffer.allocate(sketch.getDataLength());
+		sketch.serialize(byteBuffer);
+
+		// Empty first cell's sums, leaving its count as-is
+		final int firstCountIndex = 4;
+		final int firstCount = byteBuffer.getInt(firstCountIndex);
+		byteBuffer.putLong(firstCountIndex + 4, 0L);
+		byteBuffer.putLong(firstCountIndex + 4 + 8, 0L);
+
+		// Negative count
+		assertRejected(byteBuffer, firstCountIndex, -1);
+
+		// Impure single-ID cell, as it has no ID
+		assertRejected(byteBuffer, firstCountIndex, 1);
+
+		// Extra count in first partition only
+		assertRejected(byteBuffer, firstCountIndex, firstCount + 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCellCount() {
+		new SignatureSketch(SignatureSketch.HASH_COUNT + 1);
+	}
+
+}
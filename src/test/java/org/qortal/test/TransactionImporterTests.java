@@ -0,0 +1,84 @@
+package org.qortal.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.account.PrivateKeyAccount;
+import org.qortal.controller.TransactionImporter;
+import org.qortal.data.transaction.PaymentTransactionData;
+import org.qortal.data.transaction.TransactionData;
+import org.qortal.repository.DataException;
+import org.qortal.repository.Repository;
+import org.qortal.repository.RepositoryManager;
+import org.qortal.settings.Settings;
+import org.qortal.test.common.Common;
+import org.qortal.test.common.TransactionUtils;
+import org.qortal.test.common.transaction.TestTransaction;
+import org.qortal.transaction.Transaction;
+import org.qortal.transaction.Transaction.TransactionType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TransactionImporterTests extends Common {
+
+	@Before
+	public void beforeTest() throws DataException {
+		Common.useDefaultSettings();
+	}
+
+	private static TransactionData signedTransaction(Repository repository, PrivateKeyAccount account) throws DataException {
+		TransactionData transactionData = TransactionUtils.randomTransaction(repository, account, TransactionType.PAYMENT, true);
+		Transaction.fromData(repository, transactionData).sign(account);
+		return transactionData;
+	}
+
+	@Test
+	public void testValidAndInvalidSignatures() throws DataException, InterruptedException {
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			PrivateKeyAccount alice = Common.getTestAccount(repository, "alice");
+
+			TransactionData validTransactionData = signedTransaction(repository, alice);
+
+			TransactionData invalidTransactionData = signedTransaction(repository, alice);
+			byte[] signature = Arrays.copyOf(invalidTransactionData.getSignature(), invalidTransactionData.getSignature().length);
+			signature[0] ^= 1;
+			invalidTransactionData.setSignature(signature);
+
+			Boolean[] isSigValid = TransactionImporter.getInstance().validateSignatures(List.of(validTransactionData, invalidTransactionData));
+
+			assertEquals(Boolean.TRUE, isSigValid[0]);
+			assertEquals(Boolean.FALSE, isSigValid[1]);
+		}
+	}
+
+	@Test
+	public void testUncheckableSignature() throws DataException, InterruptedException {
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			PrivateKeyAccount alice = Common.getTestAccount(repository, "alice");
+
+			// Can't be serialized for checking
+			TransactionData brokenTransactionData = new PaymentTransactionData(TestTransaction.generateBase(alice), null, 123L);
+			brokenTransactionData.setSignature(new byte[64]);
+
+			// Enough valid transactions that at least one follows the broken transaction in the same batch
+			int batchCount = Settings.getInstance().getTransactionValidationPoolSize();
+			List<TransactionData> transactions = new ArrayList<>();
+			transactions.add(brokenTransactionData);
+			for (int i = 0; i < 2 * batchCount; ++i)
+				transactions.add(signedTransaction(repository, alice));
+
+			Boolean[] isSigValid = TransactionImporter.getInstance().validateSignatures(transactions);
+
+			// Only broken transaction is rejected, so it doesn't stay in queue forever
+			assertEquals(Boolean.FALSE, isSigValid[0]);
+
+			// Rest of its batch, and other batches, still validate
+			for (int i = 1; i < transactions.size(); ++i)
+				assertEquals(Boolean.TRUE, isSigValid[i]);
+		}
+	}
+
+}
@@ -3,9 +3,15 @@ package org.qortal.test.arbitrary;
 import org.junit.Before;
 import org.junit.Test;
 import org.qortal.arbitrary.ArbitraryDataFile;
+import org.qortal.arbitrary.ArbitraryDataFileDigestCache;
+import org.qortal.crypto.Crypto;
 import org.qortal.repository.DataException;
 import org.qortal.test.common.Common;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.Random;
 
 import static org.junit.Assert.*;
@@ -74,4 +80,27 @@ public class ArbitraryDataFileTests extends Common {
 		assertEquals(originalFileDigest, arbitraryDataFile.digest58());
 	}
 
+	@Test
+	public void testDigestCache() throws DataException, IOException {
+		byte[] data = new byte[1024];
+		new Random().nextBytes(data);
+
+		ArbitraryDataFile arbitraryDataFile = new ArbitraryDataFile(data, null, false);
+		Path path = arbitraryDataFile.getFilePath();
+		assertArrayEquals(Crypto.digest(data), arbitraryDataFile.digest());
+
+		// Modify file, keeping same size, and make sure modification time changes
+		byte[] modifiedData = data.clone();
+		modifiedData[0] ^= 0xFF;
+		Files.write(path, modifiedData);
+		Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 2000L));
+
+		// Stale digest must not be returned
+		assertArrayEquals(Crypto.digest(modifiedData), arbitraryDataFile.digest());
+		assertArrayEquals(Crypto.digest(modifiedData), ArbitraryDataFileDigestCache.getInstance().digest(path));
+
+		arbitraryDataFile.delete();
+		assertNull(arbitraryDataFile.digest());
+	}
+
 }
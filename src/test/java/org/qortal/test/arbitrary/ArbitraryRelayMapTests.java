@@ -0,0 +1,82 @@
+package org.qortal.test.arbitrary;
+
+import org.junit.Test;
+import org.qortal.controller.arbitrary.ArbitraryRelayMap;
+import org.qortal.data.arbitrary.ArbitraryRelayInfo;
+import org.qortal.data.network.PeerData;
+import org.qortal.network.Peer;
+import org.qortal.network.PeerAddress;
+
+import static org.junit.Assert.*;
+
+public class ArbitraryRelayMapTests {
+
+	private static final String HASH58 = "3eyjYjturyVe61grRX42bprGr3Cvw6ehTy4iknVnosDj";
+	private static final String OTHER_HASH58 = "4MWhbBQgEBzU2SvGdmuHx7DiKGdSNDHu8V1aGdMhtv1Y";
+	private static final String SIGNATURE58 = "signature";
+
+	private static Peer newPeer(int port) {
+		return new Peer(new PeerData(PeerAddress.fromString("127.0.0.1:" + port)));
+	}
+
+	@Test
+	public void testFewestHopsFirst() {
+		ArbitraryRelayMap relayMap = new ArbitraryRelayMap();
+		Peer peer1 = newPeer(1001);
+		Peer peer2 = newPeer(1002);
+		Peer peer3 = newPeer(1003);
+
+		relayMap.add(new ArbitraryRelayInfo(HASH58, SIGNATURE58, peer1, 1000L, 1000L, 3));
+		relayMap.add(new ArbitraryRelayInfo(HASH58, SIGNATURE58, peer2, 1000L, 1000L, 1));
+		relayMap.add(new ArbitraryRelayInfo(HASH58, SIGNATURE58, peer3, 1000L, 1000L, null));
+		relayMap.add(new ArbitraryRelayInfo(OTHER_HASH58, SIGNATURE58, peer3, 1000L, 1000L, 0));
+
+		assertSame(peer2, relayMap.getOptimal(HASH58, 0L).getPeer());
+		assertSame(peer3, relayMap.getOptimal(OTHER_HASH58, 0L).getPeer());
+		assertNull(relayMap.getOptimal("unknown", 0L));
+	}
+
+	@Test
+	public void testRenewal() {
+		ArbitraryRelayMap relayMap = new ArbitraryRelayMap();
+		Peer peer = newPeer(1001);
+
+		relayMap.add(new ArbitraryRelayInfo(HASH58, SIGNATURE58, peer, 1000L, 1000L, 2));
+		relayMap.add(new ArbitraryRelayInfo(HASH58, SIGNATURE58, peer, 2000L, 2000L, 2));
+
+		// Old entry replaced, so not expired yet
+		ArbitraryRelayInfo relayInfo = relayMap.getOptimal(HASH58, 1500L);
+		assertNotNull(relayInfo);
+		assertEquals(2000L, (long) relayInfo.getTimestamp());
+	}
+
+	@Test
+	public void testExpiry() {
+		ArbitraryRelayMap relayMap = new ArbitraryRelayMap();
+		Peer peer1 = newPeer(1001);
+		Peer peer2 = newPeer(1002);
+
+		relayMap.add(new ArbitraryRelayInfo(HASH58, SIGNATURE58, peer1, 1000L, 1000L, 1));
+		relayMap.add(new ArbitraryRelayInfo(HASH58, SIGNATURE58, peer2, 2000L, 2000L, 5));
+		relayMap.add(new ArbitraryRelayInfo(OTHER_HASH58, SIGNATURE58, peer1, 1000L, 1000L, 1));
+
+		// Expired entry with fewer hops is skipped
+		assertSame(peer2, relayMap.getOptimal(HASH58, 1500L).getPeer());
+
+		relayMap.removeExpired(1500L);
+		assertEquals(1, relayMap.size());
+		assertNull(relayMap.getOptimal(OTHER_HASH58, 0L));
+	}
+
+	@Test
+	public void testUnknownHops() {
+		ArbitraryRelayMap relayMap = new ArbitraryRelayMap();
+		Peer peer = newPeer(1001);
+
+		relayMap.add(new ArbitraryRelayInfo(HASH58, SIGNATURE58, peer, 1000L, 1000L, null));
+
+		// Still usable, even without hop count
+		assertSame(peer, relayMap.getOptimal(HASH58, 0L).getPeer());
+	}
+
+}
@@ -13,10 +13,12 @@ import org.qortal.data.account.AccountBalanceData;
 import org.qortal.data.asset.AssetData;
 import org.qortal.data.group.GroupData;
 import org.qortal.repository.AccountRepository.BalanceOrdering;
+import org.qortal.repository.ChatRepositoryManager;
 import org.qortal.repository.DataException;
 import org.qortal.repository.Repository;
 import org.qortal.repository.RepositoryFactory;
 import org.qortal.repository.RepositoryManager;
+import org.qortal.repository.hsqldb.HSQLDBChatRepositoryFactory;
 import org.qortal.repository.hsqldb.HSQLDBRepositoryFactory;
 import org.qortal.settings.Settings;
 import org.qortal.utils.NTP;
@@ -49,6 +51,7 @@ public class Common {
 
 	public static final String testConnectionUrlMemory = "jdbc:hsqldb:mem:testdb";
 	public static final String testConnectionUrlDisk = "jdbc:hsqldb:file:%s/blockchain;create=true";
+	public static final String testChatConnectionUrlMemory = "jdbc:hsqldb:mem:testchatdb";
 
 	// For debugging, use testConnectionUrlDisk instead of memory, to write DB to disk for examination.
 	// This can be achieved using `Common.useSettingsAndDb(Common.testSettingsFilename, false);`
@@ -212,6 +215,13 @@ public class Common {
 		String connectionUrl = inMemory ? testConnectionUrlMemory : connectionUrlDisk;
 		RepositoryFactory repositoryFactory = new HSQLDBRepositoryFactory(connectionUrl);
 		RepositoryManager.setRepositoryFactory(repositoryFactory);
+
+		// Chat repository is always in memory for tests
+		if (ChatRepositoryManager.getRepositoryFactory() != null)
+			ChatRepositoryManager.closeRepositoryFactory();
+
+		RepositoryFactory chatRepositoryFactory = new HSQLDBChatRepositoryFactory(testChatConnectionUrlMemory);
+		ChatRepositoryManager.setRepositoryFactory(chatRepositoryFactory);
 	}
 
 	public static void setShouldRetainRepositoryAfterTest(boolean shouldRetain) {
@@ -242,6 +252,10 @@ public class Common {
 	@AfterClass
 	public static void closeRepository() throws DataException {
 		RepositoryManager.closeRepositoryFactory();
+
+		if (ChatRepositoryManager.getRepositoryFactory() != null)
+			ChatRepositoryManager.closeRepositoryFactory();
+
 		Common.deleteTestRepository(); // Comment out this line in you need to inspect the database after running a test
 	}
 
@@ -17,6 +17,10 @@ import org.qortal.transaction.Transaction;
 import org.qortal.transaction.Transaction.ValidationResult;
 import org.qortal.utils.Base58;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 public class RewardShareTests extends Common {
@@ -111,6 +115,33 @@ public class RewardShareTests extends Common {
 		}
 	}
 
+	@Test
+	public void testGetRewardSharesByPublicKeys() throws DataException {
+		final int sharePercent = 12_80; // 12.80%
+
+		try (final Repository repository = RepositoryManager.getRepository()) {
+			PrivateKeyAccount bobAccount = Common.getTestAccount(repository, "bob");
+
+			byte[] rewardSharePrivateKey = AccountUtils.rewardShare(repository, "alice", "bob", sharePercent);
+			PrivateKeyAccount rewardShareAccount = new PrivateKeyAccount(repository, rewardSharePrivateKey);
+
+			// Unknown public key should be skipped
+			byte[] unknownPublicKey = new byte[32];
+			new Random().nextBytes(unknownPublicKey);
+
+			List<RewardShareData> rewardShares = repository.getAccountRepository().getRewardSharesByPublicKeys(
+					List.of(unknownPublicKey, rewardShareAccount.getPublicKey()));
+			assertEquals(1, rewardShares.size());
+
+			RewardShareData rewardShareData = rewardShares.get(0);
+			assertEquals("Incorrect reward-share public key", Base58.encode(rewardShareAccount.getPublicKey()), Base58.encode(rewardShareData.getRewardSharePublicKey()));
+			assertEquals("Incorrect recipient", bobAccount.getAddress(), rewardShareData.getRecipient());
+			assertEquals("Incorrect share percentage", sharePercent, rewardShareData.getSharePercent());
+
+			assertTrue(repository.getAccountRepository().getRewardSharesByPublicKeys(Collections.emptyList()).isEmpty());
+		}
+	}
+
 	@Test
 	public void testNegativeInitialShareInvalid() throws DataException {
 		try (final Repository repository = RepositoryManager.getRepository()) {
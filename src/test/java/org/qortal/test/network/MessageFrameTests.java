@@ -0,0 +1,85 @@
+package org.qortal.test.network;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.jsse.provider.BouncyCastleJsseProvider;
+import org.junit.Test;
+import org.qortal.network.message.Message;
+import org.qortal.network.message.MessageException;
+import org.qortal.network.message.TransactionSignaturesMessage;
+import org.qortal.transform.Transformer;
+
+import java.nio.ByteBuffer;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MessageFrameTests {
+
+    private static final Random RANDOM = new Random();
+    static {
+        // This must go before any calls to LogManager/Logger
+        System.setProperty("java.util.logging.manager", "org.apache.logging.log4j.jul.LogManager");
+
+        Security.insertProviderAt(new BouncyCastleProvider(), 0);
+        Security.insertProviderAt(new BouncyCastleJsseProvider(), 1);
+    }
+
+    private static Message buildMessage() {
+        byte[] signature = new byte[Transformer.SIGNATURE_LENGTH];
+        RANDOM.nextBytes(signature);
+
+        return new TransactionSignaturesMessage(List.of(signature));
+    }
+
+    private static byte[] toArray(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testFrameMatchesBytes() throws MessageException {
+        Message message = buildMessage();
+
+        assertArrayEquals(message.toBytes(), toArray(message.toFrame()));
+
+        message.setId(1234);
+        assertArrayEquals(message.toBytes(), toArray(message.toFrame()));
+    }
+
+    @Test
+    public void testFramesAreIndependent() throws MessageException {
+        Message message = buildMessage();
+
+        ByteBuffer frame1 = message.toFrame();
+        ByteBuffer frame2 = message.toFrame();
+
+        assertTrue(frame1.isReadOnly());
+
+        // Consuming one frame mustn't affect another
+        frame1.get(new byte[frame1.remaining()]);
+        assertFalse(frame1.hasRemaining());
+        assertEquals(message.toBytes().length, frame2.remaining());
+    }
+
+    @Test
+    public void testFrameUpdatedWithId() throws MessageException {
+        Message message = buildMessage();
+
+        byte[] frameWithoutId = toArray(message.toFrame());
+
+        message.setId(5678);
+        byte[] frameWithId = toArray(message.toFrame());
+
+        assertFalse(Arrays.equals(frameWithoutId, frameWithId));
+
+        Message messageIn = Message.fromByteBuffer(ByteBuffer.wrap(frameWithId).asReadOnlyBuffer());
+        assertNotNull(messageIn);
+        assertEquals(5678, messageIn.getId());
+        assertEquals(message.getType(), messageIn.getType());
+    }
+
+}
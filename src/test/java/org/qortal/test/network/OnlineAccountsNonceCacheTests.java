@@ -0,0 +1,105 @@
+package org.qortal.test.network;
+
+import org.junit.Test;
+import org.qortal.controller.OnlineAccountsNonceCache;
+import org.qortal.data.network.OnlineAccountData;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OnlineAccountsNonceCacheTests {
+
+	private static final Random RANDOM = new Random();
+
+	private static final String MARKER = "testnet:1024:5";
+
+	private static OnlineAccountData newOnlineAccountData(long timestamp, int nonce) {
+		byte[] publicKey = new byte[32];
+		RANDOM.nextBytes(publicKey);
+		return new OnlineAccountData(timestamp, null, publicKey, nonce);
+	}
+
+	@Test
+	public void testNonceMustMatch() {
+		OnlineAccountsNonceCache nonceCache = new OnlineAccountsNonceCache();
+		OnlineAccountData onlineAccountData = newOnlineAccountData(1000L, 1234);
+
+		assertFalse(nonceCache.isVerified(onlineAccountData));
+
+		nonceCache.add(onlineAccountData);
+		assertTrue(nonceCache.isVerified(onlineAccountData));
+
+		// Same account and timestamp, but different nonce
+		OnlineAccountData otherNonce = new OnlineAccountData(1000L, null, onlineAccountData.getPublicKey(), 4321);
+		assertFalse(nonceCache.isVerified(otherNonce));
+
+		// Same account and nonce, but different timestamp
+		OnlineAccountData otherTimestamp = new OnlineAccountData(2000L, null, onlineAccountData.getPublicKey(), 1234);
+		assertFalse(nonceCache.isVerified(otherTimestamp));
+	}
+
+	@Test
+	public void testExpiry() {
+		OnlineAccountsNonceCache nonceCache = new OnlineAccountsNonceCache();
+		OnlineAccountData oldOnlineAccountData = newOnlineAccountData(1000L, 1);
+		OnlineAccountData newOnlineAccountData = newOnlineAccountData(2000L, 2);
+
+		nonceCache.add(oldOnlineAccountData);
+		nonceCache.add(newOnlineAccountData);
+		assertEquals(2, nonceCache.size());
+
+		nonceCache.removeOlderThan(2000L);
+		assertEquals(1, nonceCache.size());
+		assertFalse(nonceCache.isVerified(oldOnlineAccountData));
+		assertTrue(nonceCache.isVerified(newOnlineAccountData));
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		Path cacheFilePath = Files.createTempFile("online-accounts-nonces", ".dat");
+
+		try {
+			OnlineAccountsNonceCache nonceCache = new OnlineAccountsNonceCache();
+			OnlineAccountData onlineAccountData1 = newOnlineAccountData(1000L, 1);
+			OnlineAccountData onlineAccountData2 = newOnlineAccountData(2000L, 2);
+			nonceCache.add(onlineAccountData1);
+			nonceCache.add(onlineAccountData2);
+			nonceCache.save(cacheFilePath, MARKER);
+
+			OnlineAccountsNonceCache reloadedNonceCache = new OnlineAccountsNonceCache();
+			reloadedNonceCache.load(cacheFilePath, MARKER);
+
+			assertEquals(2, reloadedNonceCache.size());
+			assertTrue(reloadedNonceCache.isVerified(onlineAccountData1));
+			assertTrue(reloadedNonceCache.isVerified(onlineAccountData2));
+		} finally {
+			Files.deleteIfExists(cacheFilePath);
+		}
+	}
+
+	@Test
+	public void testLoadWithDifferentMarker() throws IOException {
+		Path cacheFilePath = Files.createTempFile("online-accounts-nonces", ".dat");
+
+		try {
+			OnlineAccountsNonceCache nonceCache = new OnlineAccountsNonceCache();
+			OnlineAccountData onlineAccountData = newOnlineAccountData(1000L, 1);
+			nonceCache.add(onlineAccountData);
+			nonceCache.save(cacheFilePath, MARKER);
+
+			// Saved for different network or PoW parameters, so ignored
+			OnlineAccountsNonceCache otherNonceCache = new OnlineAccountsNonceCache();
+			otherNonceCache.load(cacheFilePath, "mainnet:8388608:18:19:0");
+
+			assertEquals(0, otherNonceCache.size());
+			assertFalse(otherNonceCache.isVerified(onlineAccountData));
+		} finally {
+			Files.deleteIfExists(cacheFilePath);
+		}
+	}
+
+}
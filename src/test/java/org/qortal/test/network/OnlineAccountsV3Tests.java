@@ -1,13 +1,18 @@
 package org.qortal.test.network;
 
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.commons.lang3.reflect.MethodUtils;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.jsse.provider.BouncyCastleJsseProvider;
+import org.junit.Before;
 import org.junit.Test;
 import org.qortal.controller.OnlineAccountsManager;
 import org.qortal.data.network.OnlineAccountData;
 import org.qortal.network.message.GetOnlineAccountsV3Message;
 import org.qortal.network.message.Message;
 import org.qortal.network.message.MessageException;
+import org.qortal.repository.DataException;
+import org.qortal.test.common.Common;
 import org.qortal.transform.Transformer;
 
 import java.nio.ByteBuffer;
@@ -16,7 +21,7 @@ import java.util.*;
 
 import static org.junit.Assert.*;
 
-public class OnlineAccountsV3Tests {
+public class OnlineAccountsV3Tests extends Common {
 
     private static final Random RANDOM = new Random();
     static {
@@ -27,6 +32,12 @@ public class OnlineAccountsV3Tests {
         Security.insertProviderAt(new BouncyCastleJsseProvider(), 1);
     }
 
+    @Before
+    public void beforeTest() throws DataException {
+        // OnlineAccountsManager needs settings
+        Common.useDefaultSettings();
+    }
+
     private Map<Long, Map<Byte, byte[]>> convertToHashMaps(List<OnlineAccountData> onlineAccounts) {
         // How many of each timestamp and leading byte (of public key)
         Map<Long, Map<Byte, byte[]>> hashesByTimestampThenByte = new HashMap<>();
@@ -96,6 +107,61 @@ public class OnlineAccountsV3Tests {
         System.out.printf("We need to send: %d%n%s%n", mockReply.size(), String.join(", ", mockReply));
     }
 
+    @Test
+    public void testIncrementalHashes() throws ReflectiveOperationException {
+        OnlineAccountsManager onlineAccountsManager = OnlineAccountsManager.getInstance();
+        MethodUtils.invokeMethod(onlineAccountsManager, true, "clearCurrentAccounts");
+
+        try {
+            List<OnlineAccountData> onlineAccounts = generateOnlineAccounts(false);
+
+            // Add all accounts, one at a time, then remove some, one at a time, using either removal method
+            for (OnlineAccountData onlineAccountData : onlineAccounts)
+                assertTrue((Boolean) MethodUtils.invokeMethod(onlineAccountsManager, true, "addCurrentAccount", onlineAccountData));
+
+            for (OnlineAccountData onlineAccountData : onlineAccounts) {
+                if (RANDOM.nextBoolean())
+                    continue;
+
+                if (RANDOM.nextBoolean())
+                    assertTrue((Boolean) MethodUtils.invokeMethod(onlineAccountsManager, true, "removeCurrentAccount", onlineAccountData));
+                else
+                    MethodUtils.invokeMethod(onlineAccountsManager, true, "removeCurrentAccountsByPublicKey",
+                            new Object[] { onlineAccountData.getTimestamp(), onlineAccountData.getPublicKey() },
+                            new Class<?>[] { long.class, byte[].class });
+            }
+
+            @SuppressWarnings("unchecked")
+            Map<Long, Set<OnlineAccountData>> currentOnlineAccounts =
+                    (Map<Long, Set<OnlineAccountData>>) FieldUtils.readField(onlineAccountsManager, "currentOnlineAccounts", true);
+            @SuppressWarnings("unchecked")
+            Map<Long, Map<Byte, byte[]>> incrementalHashes =
+                    (Map<Long, Map<Byte, byte[]>>) FieldUtils.readField(onlineAccountsManager, "currentOnlineAccountsHashes", true);
+
+            // Compare with hashes rebuilt from scratch over manager's remaining accounts
+            List<OnlineAccountData> remainingOnlineAccounts = new ArrayList<>();
+            currentOnlineAccounts.values().forEach(remainingOnlineAccounts::addAll);
+
+            Map<Long, Map<Byte, byte[]>> rebuiltHashes = convertToHashMaps(remainingOnlineAccounts);
+
+            for (var rebuiltEntry : rebuiltHashes.entrySet()) {
+                Map<Byte, byte[]> incrementalInnerMap = incrementalHashes.get(rebuiltEntry.getKey());
+                assertNotNull("incremental hashes missing timestamp", incrementalInnerMap);
+                assertEquals("incremental hashes leading bytes mismatch", rebuiltEntry.getValue().keySet(), incrementalInnerMap.keySet());
+
+                for (var rebuiltInnerEntry : rebuiltEntry.getValue().entrySet())
+                    assertArrayEquals("incremental hash mismatch", rebuiltInnerEntry.getValue(), incrementalInnerMap.get(rebuiltInnerEntry.getKey()));
+            }
+
+            // No stale hashes for timestamps without accounts
+            for (var incrementalEntry : incrementalHashes.entrySet())
+                if (!incrementalEntry.getValue().isEmpty())
+                    assertTrue("stale incremental hashes", rebuiltHashes.containsKey(incrementalEntry.getKey()));
+        } finally {
+            MethodUtils.invokeMethod(onlineAccountsManager, true, "clearCurrentAccounts");
+        }
+    }
+
     @Test
     public void testSerialization() throws MessageException {
         List<OnlineAccountData> onlineAccountsOut = generateOnlineAccounts(true);
@@ -0,0 +1,96 @@
+package org.qortal.test.network;
+
+import org.junit.Test;
+import org.qortal.network.PeerSendQueue;
+import org.qortal.network.PeerSendQueue.TrafficClass;
+import org.qortal.network.message.*;
+import org.qortal.transform.Transformer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PeerSendQueueTests {
+
+    private static final byte[] SIGNATURE = new byte[Transformer.SIGNATURE_LENGTH];
+
+    private static void offer(PeerSendQueue sendQueue, Message message, int frameLength) throws InterruptedException {
+        assertTrue(sendQueue.offer(message, ByteBuffer.allocate(frameLength), 0, TimeUnit.MILLISECONDS));
+    }
+
+    private static List<MessageType> drain(PeerSendQueue sendQueue) {
+        List<MessageType> messageTypes = new ArrayList<>();
+
+        PeerSendQueue.Entry entry;
+        while ((entry = sendQueue.poll()) != null)
+            messageTypes.add(entry.message.getType());
+
+        return messageTypes;
+    }
+
+    @Test
+    public void testControlFirst() throws InterruptedException {
+        PeerSendQueue sendQueue = new PeerSendQueue();
+
+        offer(sendQueue, new GetArbitraryDataFileMessage(SIGNATURE, SIGNATURE), 1000);
+        offer(sendQueue, new GetTransactionMessage(SIGNATURE), 100);
+        offer(sendQueue, new PingMessage(), 10);
+
+        assertEquals(MessageType.PING, sendQueue.poll().message.getType());
+    }
+
+    @Test
+    public void testBulkDoesNotStarveOthers() throws InterruptedException {
+        PeerSendQueue sendQueue = new PeerSendQueue();
+
+        // Lots of bulk data queued first
+        for (int i = 0; i < 2; ++i)
+            offer(sendQueue, new GetArbitraryDataFileMessage(SIGNATURE, SIGNATURE), 1024 * 1024);
+
+        offer(sendQueue, new GetBlockMessage(SIGNATURE), 1000);
+        offer(sendQueue, new GetTransactionMessage(SIGNATURE), 1000);
+
+        List<MessageType> sendOrder = drain(sendQueue);
+        assertEquals(4, sendOrder.size());
+
+        // Small sync and transaction messages shouldn't have to wait for all bulk data
+        assertEquals(MessageType.GET_BLOCK, sendOrder.get(0));
+        assertEquals(MessageType.GET_TRANSACTION, sendOrder.get(1));
+    }
+
+    @Test
+    public void testFifoWithinClass() throws InterruptedException {
+        PeerSendQueue sendQueue = new PeerSendQueue();
+
+        offer(sendQueue, new GetTransactionMessage(SIGNATURE), 100);
+        offer(sendQueue, new GetUnconfirmedTransactionsMessage(), 100);
+
+        List<MessageType> sendOrder = drain(sendQueue);
+        assertEquals(List.of(MessageType.GET_TRANSACTION, MessageType.GET_UNCONFIRMED_TRANSACTIONS), sendOrder);
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        PeerSendQueue sendQueue = new PeerSendQueue();
+
+        // Oversized message is accepted into empty class queue
+        offer(sendQueue, new GetArbitraryDataFileMessage(SIGNATURE, SIGNATURE), TrafficClass.BULK.maxQueuedBytes);
+        assertTrue(sendQueue.isCongested(TrafficClass.BULK));
+        assertFalse(sendQueue.isCongested(TrafficClass.TRANSACTIONS));
+
+        // No room for more bulk data
+        assertFalse(sendQueue.offer(new GetArbitraryDataFileMessage(SIGNATURE, SIGNATURE), ByteBuffer.allocate(1000), 10, TimeUnit.MILLISECONDS));
+
+        // Other classes unaffected
+        offer(sendQueue, new GetTransactionMessage(SIGNATURE), 1000);
+
+        // Once drained, there's room again
+        drain(sendQueue);
+        assertFalse(sendQueue.isCongested(TrafficClass.BULK));
+        offer(sendQueue, new GetArbitraryDataFileMessage(SIGNATURE, SIGNATURE), 1000);
+    }
+
+}
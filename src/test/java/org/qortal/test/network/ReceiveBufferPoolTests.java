@@ -0,0 +1,89 @@
+package org.qortal.test.network;
+
+import org.junit.Test;
+import org.qortal.network.ReceiveBufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReceiveBufferPoolTests {
+
+	private static final int LARGE_BUFFER_SIZE = 1024 * 1024;
+
+	@Test
+	public void testBufferSizes() {
+		ReceiveBufferPool pool = new ReceiveBufferPool(LARGE_BUFFER_SIZE);
+
+		ByteBuffer smallBuffer = pool.borrow(0);
+		assertEquals(ReceiveBufferPool.SMALL_BUFFER_SIZE, smallBuffer.capacity());
+		assertTrue(smallBuffer.isDirect());
+
+		ByteBuffer largeBuffer = pool.borrow(ReceiveBufferPool.SMALL_BUFFER_SIZE + 1);
+		assertEquals(LARGE_BUFFER_SIZE, largeBuffer.capacity());
+		assertTrue(largeBuffer.isDirect());
+
+		// Too big for any buffer
+		assertNull(pool.borrow(LARGE_BUFFER_SIZE + 1));
+	}
+
+	@Test
+	public void testReuse() {
+		ReceiveBufferPool pool = new ReceiveBufferPool(LARGE_BUFFER_SIZE);
+
+		ByteBuffer smallBuffer = pool.borrow(0);
+		smallBuffer.put((byte) 1);
+		pool.release(smallBuffer);
+
+		ByteBuffer reusedSmallBuffer = pool.borrow(0);
+		assertSame(smallBuffer, reusedSmallBuffer);
+		assertEquals(0, reusedSmallBuffer.position());
+		assertEquals(reusedSmallBuffer.capacity(), reusedSmallBuffer.limit());
+
+		ByteBuffer largeBuffer = pool.borrow(LARGE_BUFFER_SIZE);
+		largeBuffer.put((byte) 1);
+		pool.release(largeBuffer);
+
+		ByteBuffer reusedLargeBuffer = pool.borrow(LARGE_BUFFER_SIZE);
+		assertSame(largeBuffer, reusedLargeBuffer);
+		assertEquals(0, reusedLargeBuffer.position());
+	}
+
+	@Test
+	public void testLargeBuffersBounded() {
+		ReceiveBufferPool pool = new ReceiveBufferPool(LARGE_BUFFER_SIZE);
+
+		List<ByteBuffer> directBuffers = new ArrayList<>();
+		for (int i = 0; i < ReceiveBufferPool.MAX_LARGE_BUFFERS; ++i) {
+			ByteBuffer buffer = pool.borrow(LARGE_BUFFER_SIZE);
+			assertTrue(buffer.isDirect());
+			directBuffers.add(buffer);
+		}
+
+		// Pool exhausted, so fall back to heap
+		ByteBuffer heapBuffer = pool.borrow(LARGE_BUFFER_SIZE);
+		assertFalse(heapBuffer.isDirect());
+		assertEquals(LARGE_BUFFER_SIZE, heapBuffer.capacity());
+
+		// Heap buffers aren't pooled
+		pool.release(heapBuffer);
+		assertFalse(pool.borrow(LARGE_BUFFER_SIZE).isDirect());
+
+		// Released direct buffer is reused before falling back to heap again
+		ByteBuffer releasedBuffer = directBuffers.remove(0);
+		pool.release(releasedBuffer);
+		assertSame(releasedBuffer, pool.borrow(LARGE_BUFFER_SIZE));
+		assertFalse(pool.borrow(LARGE_BUFFER_SIZE).isDirect());
+
+		// All direct buffers are kept once released
+		directBuffers.add(releasedBuffer);
+		for (ByteBuffer buffer : directBuffers)
+			pool.release(buffer);
+
+		for (int i = 0; i < ReceiveBufferPool.MAX_LARGE_BUFFERS; ++i)
+			assertTrue(pool.borrow(LARGE_BUFFER_SIZE).isDirect());
+	}
+
+}